@@ -0,0 +1,38 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.apache.crail;
+
+/*
+ * Collects metadata operations and sends them to the namenode together. Nothing is sent 
+ * before submit, or before the first result of the batch is requested. The namenode executes 
+ * the operations in the order they were added. A batch is not thread-safe.
+ * 
+ * Packing the operations into fewer messages depends on the namenode RPC: the TCP RPC does so 
+ * with crail.namenode.tcp.batchsize > 1, the DaRPC connection and a batch size of 1 send every 
+ * operation on its own. A batch then behaves like issuing the operations asynchronously, there 
+ * is no guarantee on the number of messages.
+ */
+public interface CrailBatch {
+	public abstract Upcoming<CrailNode> create(String path, CrailNodeType type, CrailStorageClass storageClass, CrailLocationClass locationClass, boolean enumerable) throws Exception;
+	public abstract Upcoming<CrailNode> lookup(String path) throws Exception;
+	public abstract Upcoming<CrailNode> delete(String path, boolean recursive) throws Exception;
+	public abstract int size();
+	public abstract void submit() throws Exception;
+}
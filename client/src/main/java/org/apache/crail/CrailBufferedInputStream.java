@@ -22,10 +22,16 @@ import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.ByteBuffer;
+import java.util.IdentityHashMap;
 import java.util.LinkedList;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 import org.apache.crail.conf.CrailConstants;
+import org.apache.crail.utils.CrailChecksum;
+import org.apache.crail.utils.CrailCodec;
 import org.apache.crail.utils.CrailUtils;
 import org.apache.crail.utils.RingBuffer;
 import org.slf4j.Logger;
@@ -47,6 +53,16 @@ public abstract class CrailBufferedInputStream extends InputStream {
 	private CrailBufferedStatistics statistics;
 	private int actualSliceSize;
 	private long capacity;
+	private long fileCapacity;
+	private int queueDepth;
+	private CrailChecksum checksum;
+	private IdentityHashMap<CrailBuffer, ChecksumFuture> checksumFutures;
+	
+	//frames of a compressed file, the slice at position p holds the uncompressed frame p/actualSliceSize
+	private FrameIndex frames;
+	private CrailCodec codec;
+	private IdentityHashMap<CrailBuffer, FrameFuture> frameFutures;
+	private int nextFrame;
 	
 	public abstract CrailInputStream getStream() throws Exception;
 	public abstract void putStream() throws Exception;
@@ -55,6 +71,8 @@ public abstract class CrailBufferedInputStream extends InputStream {
 		this.fs = fs;
 		this.position = 0;
 		this.capacity = capacity;
+		this.fileCapacity = capacity;
+		this.queueDepth = queueDepth;
 		this.tmpByteBuf = new byte[1];
 		this.tmpBoundaryBuffer = ByteBuffer.allocate(8);
 		this.statistics = new CrailBufferedStatistics("buffered/in");
@@ -68,28 +86,45 @@ public abstract class CrailBufferedInputStream extends InputStream {
 		this.pendingFutures = new RingBuffer<Future<CrailResult>>(queueDepth);
 		this.tmpSlices = new RingBuffer<CrailBuffer>(queueDepth);
 		
-		for (int currentSize = 0; currentSize < allocationSize; currentSize += CrailConstants.BUFFER_SIZE){
-			CrailBuffer buffer = fs.allocateBuffer();
-			originalBuffers.add(buffer);
+		for (CrailBuffer slice : allocateSlices()){
+			freeSlices.add(slice);
 		}
-		for (CrailBuffer buffer : originalBuffers){
-			while(buffer.hasRemaining()){
-				buffer.limit(buffer.position() + actualSliceSize);
-				CrailBuffer slice = buffer.slice();
-				slice.clear();
-				freeSlices.add(slice);
-				if (freeSlices.size() >= queueDepth){
-					break;
-				}
-				
-				int newpos = buffer.position() + actualSliceSize;
-				buffer.clear();
-				buffer.position(newpos);
-			}			
+		if (CrailConstants.CHECKSUM_CLASSES != 0){
+			this.checksum = CrailChecksum.create();
+			this.checksumFutures = new IdentityHashMap<CrailBuffer, ChecksumFuture>();
 		}
 		this.open = true;
 	}
 	
+	//switches to reading the frames of a compressed file, must be called before the first read
+	void setFrames(FrameIndex frames) throws Exception {
+		if (frames.getFrameSize() > CrailConstants.BUFFER_SIZE){
+			throw new IOException("frame size " + frames.getFrameSize() + " exceeds buffer size " + CrailConstants.BUFFER_SIZE);
+		}
+		if (frames.getFrameSize() != actualSliceSize){
+			freeSlices.clear();
+			while(!originalBuffers.isEmpty()){
+				fs.freeBuffer(originalBuffers.remove());
+			}
+			this.actualSliceSize = frames.getFrameSize();
+			for (CrailBuffer slice : allocateSlices()){
+				freeSlices.add(slice);
+			}
+		}
+		
+		this.frames = frames;
+		this.capacity = frames.getLength();
+		this.codec = CrailCodec.createInstance(CrailConstants.COMPRESSION_CODEC);
+		this.frameFutures = new IdentityHashMap<CrailBuffer, FrameFuture>();
+		this.nextFrame = 0;
+		LinkedList<CrailBuffer> frameBuffers = allocateSlices();
+		for (int i = 0; i < freeSlices.size(); i++){
+			CrailBuffer slice = freeSlices.poll();
+			frameFutures.put(slice, new FrameFuture(slice, frameBuffers.poll()));
+			freeSlices.add(slice);
+		}
+	}
+	
 	public final int read() throws IOException {
 		int ret = read(tmpByteBuf);
 		return (ret <= 0) ? -1 : (tmpByteBuf[0] & 0xff);
@@ -363,7 +398,7 @@ public abstract class CrailBufferedInputStream extends InputStream {
 				slice.position((int) bufPosition);
 			} else {
 				long sliceStart = CrailUtils.bufferStartAddress(pos, actualSliceSize);
-				getStream().seek(sliceStart);
+				seekStream(sliceStart);
 				tmpSlices.clear();
 				while(!freeSlices.isEmpty()){
 					tmpSlices.add(freeSlices.poll());
@@ -431,6 +466,7 @@ public abstract class CrailBufferedInputStream extends InputStream {
 				}
 				if (future.isDone()){
 					future = pendingFutures.poll();
+					future.get();
 					statistics.incNonBlockingOps();
 					slice = pendingSlices.poll();
 					slice.flip();
@@ -453,11 +489,43 @@ public abstract class CrailBufferedInputStream extends InputStream {
 		}		
 	}
 	
+	private LinkedList<CrailBuffer> allocateSlices() throws Exception {
+		LinkedList<CrailBuffer> slices = new LinkedList<CrailBuffer>();
+		while(slices.size() < queueDepth){
+			CrailBuffer buffer = fs.allocateBuffer();
+			originalBuffers.add(buffer);
+			for (int offset = 0; offset + actualSliceSize <= buffer.capacity() && slices.size() < queueDepth; offset += actualSliceSize){
+				buffer.clear().position(offset);
+				buffer.limit(offset + actualSliceSize);
+				CrailBuffer slice = buffer.slice();
+				slice.clear();
+				slices.add(slice);
+			}
+			buffer.clear();
+		}
+		return slices;
+	}
+	
+	private void seekStream(long sliceStart) throws Exception {
+		if (frames == null){
+			getStream().seek(sliceStart);
+		} else {
+			nextFrame = (int) (sliceStart / actualSliceSize);
+		}
+	}
+	
 	private void triggerRead(CrailBuffer slice) throws Exception {
 		slice.clear();
 		CrailInputStream inputStream = getStream();
 		if (inputStream != null){
-			Future<CrailResult> future = inputStream.read(slice);
+			Future<CrailResult> future = null;
+			if (frames != null){
+				future = frameRead(inputStream, slice);
+			} else if (checksum == null){
+				future = inputStream.read(slice);
+			} else {
+				future = checkedRead(inputStream, slice);
+			}
 			if (future != null){
 				pendingSlices.add(slice);
 				pendingFutures.add(future);
@@ -468,4 +536,193 @@ public abstract class CrailBufferedInputStream extends InputStream {
 		}
 	}
 	
+	//reads the next frame, directly into the slice if the frame is stored uncompressed
+	private Future<CrailResult> frameRead(CrailInputStream inputStream, CrailBuffer slice) throws Exception {
+		if (nextFrame >= frames.getCount()){
+			return null;
+		}
+		int frame = nextFrame++;
+		FrameFuture frameFuture = frameFutures.get(slice);
+		CrailBuffer target = frames.isCompressed(frame) ? frameFuture.frameBuffer : slice;
+		target.clear().limit(frames.getStoredLength(frame));
+		inputStream.seek(frames.getStart(frame));
+		Future<CrailResult> future = checksum == null ? inputStream.read(target) : checkedRead(inputStream, target);
+		if (future == null){
+			return null;
+		}
+		frameFuture.init(future, target != slice, frames.getLength(frame), frames.getStoredLength(frame));
+		return frameFuture;
+	}
+	
+	private Future<CrailResult> checkedRead(CrailInputStream inputStream, CrailBuffer slice) throws Exception {
+		ChecksumFuture checksumFuture = checksumFutures.get(slice);
+		if (checksumFuture == null){
+			checksumFuture = new ChecksumFuture(slice);
+			checksumFutures.put(slice, checksumFuture);
+		}
+		long offset = inputStream.position();
+		Future<CrailResult> future = inputStream.read(slice, checksumFuture.checksums);
+		if (future == null){
+			return null;
+		}
+		checksumFuture.init(future, inputStream.getFile().getPath(), offset);
+		return checksumFuture;
+	}
+	
+	//verifies the chunks fully contained in the slice against their stored checksums once the read completes, 
+	//chunks without a stored checksum are skipped
+	private class ChecksumFuture implements Future<CrailResult> {
+		private CrailBuffer slice;
+		private long[] checksums;
+		private Future<CrailResult> future;
+		private String path;
+		private long offset;
+		private boolean verified;
+		
+		public ChecksumFuture(CrailBuffer slice){
+			this.slice = slice;
+			this.checksums = new long[actualSliceSize / CrailConstants.CHECKSUM_CHUNK_SIZE + 2];
+		}
+		
+		void init(Future<CrailResult> future, String path, long offset){
+			this.future = future;
+			this.path = path;
+			this.offset = offset;
+			this.verified = false;
+		}
+
+		@Override
+		public boolean cancel(boolean mayInterruptIfRunning) {
+			return future.cancel(mayInterruptIfRunning);
+		}
+
+		@Override
+		public boolean isCancelled() {
+			return future.isCancelled();
+		}
+
+		@Override
+		public boolean isDone() {
+			return future.isDone();
+		}
+
+		@Override
+		public CrailResult get() throws InterruptedException, ExecutionException {
+			CrailResult result = future.get();
+			verify(result);
+			return result;
+		}
+
+		@Override
+		public CrailResult get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+			CrailResult result = future.get(timeout, unit);
+			verify(result);
+			return result;
+		}
+		
+		private void verify(CrailResult result) throws ExecutionException {
+			if (verified){
+				return;
+			}
+			verified = true;
+			long start = System.nanoTime();
+			long chunkSize = CrailConstants.CHECKSUM_CHUNK_SIZE;
+			long end = offset + result.getLen();
+			long chunkStart = offset - offset % chunkSize;
+			for (int index = 0; chunkStart < end; index++, chunkStart += chunkSize){
+				long chunkEnd = Math.min(chunkStart + chunkSize, fileCapacity);
+				if (chunkStart < offset || chunkEnd > end || !CrailChecksum.isStored(checksums[index])){
+					continue;
+				}
+				int len = (int) (chunkEnd - chunkStart);
+				checksum.reset();
+				checksum.update(slice.getByteBuffer(), (int) (chunkStart - offset), len);
+				if (checksum.getValue() != (int) checksums[index]){
+					throw new ExecutionException(new IOException("checksum error, file " + path + ", offset " + chunkStart + ", length " + len));
+				}
+			}
+			statistics.incChecksum(end - offset, System.nanoTime() - start);
+		}
+	}
+	
+	//decompresses the frame into the slice once the read of the stored frame completes
+	private class FrameFuture implements Future<CrailResult>, CrailResult {
+		private CrailBuffer slice;
+		private CrailBuffer frameBuffer;
+		private Future<CrailResult> future;
+		private boolean compressed;
+		private int length;
+		private int storedLength;
+		private boolean decoded;
+		
+		public FrameFuture(CrailBuffer slice, CrailBuffer frameBuffer){
+			this.slice = slice;
+			this.frameBuffer = frameBuffer;
+		}
+		
+		void init(Future<CrailResult> future, boolean compressed, int length, int storedLength){
+			this.future = future;
+			this.compressed = compressed;
+			this.length = length;
+			this.storedLength = storedLength;
+			this.decoded = false;
+		}
+		
+		@Override
+		public long getLen() {
+			return length;
+		}
+
+		@Override
+		public boolean cancel(boolean mayInterruptIfRunning) {
+			return future.cancel(mayInterruptIfRunning);
+		}
+
+		@Override
+		public boolean isCancelled() {
+			return future.isCancelled();
+		}
+
+		@Override
+		public boolean isDone() {
+			return future.isDone();
+		}
+
+		@Override
+		public CrailResult get() throws InterruptedException, ExecutionException {
+			CrailResult result = future.get();
+			decode(result);
+			return this;
+		}
+
+		@Override
+		public CrailResult get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+			CrailResult result = future.get(timeout, unit);
+			decode(result);
+			return this;
+		}
+		
+		private void decode(CrailResult stored) throws ExecutionException {
+			if (decoded){
+				return;
+			}
+			decoded = true;
+			if (stored.getLen() != storedLength){
+				throw new ExecutionException(new IOException("short read of compressed frame, expected " + storedLength + " bytes, got " + stored.getLen()));
+			}
+			if (compressed){
+				long start = System.nanoTime();
+				try {
+					codec.decompress(frameBuffer.getByteBuffer(), 0, storedLength, slice.getByteBuffer(), 0, length);
+				} catch(IOException e){
+					throw new ExecutionException(e);
+				}
+				slice.clear().position(length);
+				statistics.incCodec(length, storedLength, System.nanoTime() - start);
+			} else {
+				statistics.incCodec(length, storedLength, 0);
+			}
+		}
+	}
+	
 }
@@ -21,10 +21,13 @@ package org.apache.crail;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.nio.ByteBuffer;
+import java.util.IdentityHashMap;
 import java.util.LinkedList;
 import java.util.concurrent.Future;
 
 import org.apache.crail.conf.CrailConstants;
+import org.apache.crail.utils.CrailChecksum;
+import org.apache.crail.utils.CrailCodec;
 import org.apache.crail.utils.CrailImmediateOperation;
 import org.apache.crail.utils.CrailUtils;
 import org.apache.crail.utils.RingBuffer;
@@ -50,8 +53,23 @@ public class CrailBufferedOutputStream extends OutputStream {
 	private CrailImmediateOperation noOp;
 	private ByteBuffer tmpBoundaryBuffer;
 	private byte[] tmpByteBuf;
+	
+	//running checksum of the chunk at checksumPosition, valid if the stream has written the chunk from its start
+	private CrailChecksum checksum;
+	private long[] checksums;
+	private long checksumPosition;
+	private boolean checksumValid;
+	
+	//compressed frame of each slice and the end offsets of the frames written so far, see FrameIndex
+	private CrailCodec codec;
+	private IdentityHashMap<CrailBuffer, CrailBuffer> frameBuffers;
+	private FrameIndex frames;
 
 	CrailBufferedOutputStream(CrailFile file, long writeHint) throws Exception {
+		this(file, writeHint, false);
+	}
+	
+	CrailBufferedOutputStream(CrailFile file, long writeHint, boolean compress) throws Exception {
 		this.crailFS = file.getFileSystem();
 		this.file = file;
 		this.writeHint = writeHint;
@@ -92,6 +110,38 @@ public class CrailBufferedOutputStream extends OutputStream {
 		this.noOp = new CrailImmediateOperation(0);
 		this.position = 0;
 		this.open = true;
+		
+		if (CrailConstants.CHECKSUM_CLASSES != 0){
+			this.checksum = CrailChecksum.create();
+			this.checksums = new long[actualSliceSize / CrailConstants.CHECKSUM_CHUNK_SIZE + 2];
+			this.checksumPosition = -1;
+			this.checksumValid = false;
+		}
+		
+		if (compress){
+			if (streamPosition != 0){
+				throw new IOException("cannot append compressed data to a non-empty file, position " + streamPosition);
+			}
+			this.codec = CrailCodec.createInstance(CrailConstants.COMPRESSION_CODEC);
+			this.frameBuffers = new IdentityHashMap<CrailBuffer, CrailBuffer>();
+			this.frames = new FrameIndex(actualSliceSize);
+			LinkedList<CrailBuffer> frameSlices = new LinkedList<CrailBuffer>();
+			for (int currentSize = 0; currentSize < allocationSize; currentSize += CrailConstants.BUFFER_SIZE){
+				CrailBuffer buffer = crailFS.allocateBuffer();
+				originalBuffers.add(buffer);
+				for (int offset = 0; offset + actualSliceSize <= buffer.capacity(); offset += actualSliceSize){
+					buffer.clear().position(offset);
+					buffer.limit(offset + actualSliceSize);
+					frameSlices.add(buffer.slice());
+				}
+				buffer.clear();
+			}
+			for (int i = 0; i < sliceCount; i++){
+				CrailBuffer slice = readySlices.poll();
+				frameBuffers.put(slice, frameSlices.poll());
+				readySlices.add(slice);
+			}
+		}
 	}
 
 	public final void write(int dataBuf) throws IOException {
@@ -232,14 +282,10 @@ public class CrailBufferedOutputStream extends OutputStream {
 		}
 
 		try {
-			while(!readySlices.isEmpty()){
-				CrailBuffer slice = readySlices.poll();
-				if (slice.position() > 0){
-					slice.flip();
-					Future<CrailResult> future = outputStream().write(slice);
-					pendingSlices.add(slice);
-					pendingFutures.add(future);
-				}
+			//frames of a compressed file are all full slices except the last one, 
+			//a partial slice is only written on close
+			if (codec == null){
+				flushSlices();
 			}
 
 			if (pendingFutures.isEmpty()){
@@ -268,14 +314,14 @@ public class CrailBufferedOutputStream extends OutputStream {
 				return;
 			}
 
-			while(!readySlices.isEmpty()){
-				CrailBuffer slice = readySlices.poll();
-				if (slice.position() > 0){
-					slice.flip();
-					Future<CrailResult> future = outputStream().write(slice);
-					pendingSlices.add(slice);
-					pendingFutures.add(future);
-				}
+			flushSlices();
+			if (codec != null && frames.getCount() > 0){
+				//the index is written uncompressed behind the last frame
+				codec = null;
+				long logicalPosition = position;
+				write(frames.serialize());
+				position = logicalPosition;
+				flushSlices();
 			}
 
 			while(!pendingFutures.isEmpty()){
@@ -332,11 +378,75 @@ public class CrailBufferedOutputStream extends OutputStream {
 		if (slice != null && slice.remaining() == 0){
 			slice = readySlices.poll();
 			slice.flip();
-			Future<CrailResult> future = outputStream().write(slice);
+			Future<CrailResult> future = writeSlice(slice);
 			pendingSlices.add(slice);
 			pendingFutures.add(future);
 		}
 	}
+	
+	private void flushSlices() throws Exception {
+		while(!readySlices.isEmpty()){
+			CrailBuffer slice = readySlices.poll();
+			if (slice.position() > 0){
+				slice.flip();
+				Future<CrailResult> future = writeSlice(slice);
+				pendingSlices.add(slice);
+				pendingFutures.add(future);
+			}
+		}
+	}
+	
+	private Future<CrailResult> writeSlice(CrailBuffer slice) throws Exception {
+		CrailBuffer data = slice;
+		if (codec != null){
+			data = compressSlice(slice);
+		}
+		if (checksum == null){
+			return outputStream().write(data);
+		}
+		long start = System.nanoTime();
+		updateChecksums(data, outputStream().position());
+		statistics.incChecksum(data.remaining(), System.nanoTime() - start);
+		return outputStream().write(data, checksums);
+	}
+	
+	//returns the frame to write for the slice, the slice itself if compression does not make it smaller
+	private CrailBuffer compressSlice(CrailBuffer slice) throws Exception {
+		long start = System.nanoTime();
+		CrailBuffer frame = frameBuffers.get(slice);
+		int length = codec.compress(slice.getByteBuffer(), slice.position(), slice.remaining(), frame.getByteBuffer(), 0, slice.remaining() - 1);
+		CrailBuffer data = slice;
+		if (length >= 0){
+			frame.clear().limit(length);
+			data = frame;
+		}
+		frames.add(slice.remaining(), outputStream().position() + data.remaining());
+		statistics.incCodec(slice.remaining(), data.remaining(), System.nanoTime() - start);
+		return data;
+	}
+	
+	//checksums of the chunks covered by the slice written at the given file offset, the checksum of the last chunk 
+	//covers the data written so far and is replaced when the chunk is completed by the next slice
+	private void updateChecksums(CrailBuffer slice, long offset){
+		ByteBuffer buffer = slice.getByteBuffer();
+		int chunkSize = CrailConstants.CHECKSUM_CHUNK_SIZE;
+		int index = 0;
+		for (int position = slice.position(); position < slice.limit(); index++){
+			long chunkOffset = offset % chunkSize;
+			if (chunkOffset == 0){
+				checksum.reset();
+				checksumValid = true;
+			} else if (offset != checksumPosition){
+				checksumValid = false;
+			}
+			int len = (int) Math.min(slice.limit() - position, chunkSize - chunkOffset);
+			checksum.update(buffer, position, len);
+			checksums[index] = checksumValid ? CrailChecksum.stored(checksum.getValue()) : 0;
+			position += len;
+			offset += len;
+			checksumPosition = offset;
+		}
+	}
 
 	final CrailOutputStream outputStream() throws IOException {
 		if (outputStream == null){
@@ -27,12 +27,22 @@ class CrailBufferedStatistics implements StatisticsProvider {
 	private AtomicLong totalOps;
 	private AtomicLong blockingOps;
 	private AtomicLong nonBlockingOps;
+	private AtomicLong checksumBytes;
+	private AtomicLong checksumTime;
+	private AtomicLong codecBytes;
+	private AtomicLong storedBytes;
+	private AtomicLong codecTime;
 	
 	public CrailBufferedStatistics(String type){
 		this.type = type;
 		this.totalOps = new AtomicLong(0);
 		this.blockingOps = new AtomicLong(0);
 		this.nonBlockingOps = new AtomicLong(0);
+		this.checksumBytes = new AtomicLong(0);
+		this.checksumTime = new AtomicLong(0);
+		this.codecBytes = new AtomicLong(0);
+		this.storedBytes = new AtomicLong(0);
+		this.codecTime = new AtomicLong(0);
 	}
 	
 	public void mergeStatistics(StatisticsProvider provider){
@@ -41,6 +51,11 @@ class CrailBufferedStatistics implements StatisticsProvider {
 			this.totalOps.addAndGet(newProvider.getTotalOps());
 			this.blockingOps.addAndGet(newProvider.getBlockingOps());
 			this.nonBlockingOps.addAndGet(newProvider.getNonBlockingOps());
+			this.checksumBytes.addAndGet(newProvider.getChecksumBytes());
+			this.checksumTime.addAndGet(newProvider.getChecksumTime());
+			this.codecBytes.addAndGet(newProvider.getCodecBytes());
+			this.storedBytes.addAndGet(newProvider.getStoredBytes());
+			this.codecTime.addAndGet(newProvider.getCodecTime());
 		}
 	}
 	
@@ -51,7 +66,8 @@ class CrailBufferedStatistics implements StatisticsProvider {
 
 	@Override
 	public String printStatistics() {
-		return "totalOps " + getTotalOps() + ", blockingOps " + getBlockingOps() + ", nonBlockingOps " + getNonBlockingOps();
+		return "totalOps " + getTotalOps() + ", blockingOps " + getBlockingOps() + ", nonBlockingOps " + getNonBlockingOps() + ", checksumBytes " + getChecksumBytes() + ", checksumTime (us) " + getChecksumTime()/1000 
+				+ ", codecBytes " + getCodecBytes() + ", storedBytes " + getStoredBytes() + ", ratio " + getRatio() + ", codecTime (us) " + getCodecTime()/1000 + ", codec MB/s " + getCodecThroughput();
 	}
 
 	@Override
@@ -59,6 +75,11 @@ class CrailBufferedStatistics implements StatisticsProvider {
 		this.totalOps.set(0);
 		this.blockingOps.set(0);
 		this.nonBlockingOps.set(0);
+		this.checksumBytes.set(0);
+		this.checksumTime.set(0);
+		this.codecBytes.set(0);
+		this.storedBytes.set(0);
+		this.codecTime.set(0);
 	}
 	
 	public void incTotalOps(){
@@ -73,6 +94,19 @@ class CrailBufferedStatistics implements StatisticsProvider {
 		this.nonBlockingOps.incrementAndGet();
 	}
 	
+	//bytes checksummed and nanoseconds spent computing the checksums
+	public void incChecksum(long bytes, long time){
+		this.checksumBytes.addAndGet(bytes);
+		this.checksumTime.addAndGet(time);
+	}
+	
+	//uncompressed bytes, bytes stored in the file and nanoseconds spent in the codec
+	public void incCodec(long bytes, long stored, long time){
+		this.codecBytes.addAndGet(bytes);
+		this.storedBytes.addAndGet(stored);
+		this.codecTime.addAndGet(time);
+	}
+	
 	public long getTotalOps(){
 		return totalOps.get();
 	}
@@ -84,4 +118,34 @@ class CrailBufferedStatistics implements StatisticsProvider {
 	public long getNonBlockingOps(){
 		return nonBlockingOps.get();
 	}
+	
+	public long getChecksumBytes(){
+		return checksumBytes.get();
+	}
+	
+	public long getChecksumTime(){
+		return checksumTime.get();
+	}
+	
+	public long getCodecBytes(){
+		return codecBytes.get();
+	}
+	
+	public long getStoredBytes(){
+		return storedBytes.get();
+	}
+	
+	public long getCodecTime(){
+		return codecTime.get();
+	}
+	
+	public double getRatio(){
+		long stored = getStoredBytes();
+		return stored == 0 ? 0 : ((double) getCodecBytes()) / ((double) stored);
+	}
+	
+	public double getCodecThroughput(){
+		long time = getCodecTime();
+		return time == 0 ? 0 : ((double) getCodecBytes()) / ((double) time) * 1000.0;
+	}
 }
@@ -23,4 +23,5 @@ import java.util.Iterator;
 public interface CrailContainer extends CrailNode {
 	public abstract int files();
 	public abstract Iterator<String> listEntries() throws Exception;
+	public abstract Iterator<CrailNode> listNodes(boolean blocks) throws Exception;
 }
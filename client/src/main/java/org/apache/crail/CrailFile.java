@@ -18,17 +18,38 @@
 
 package org.apache.crail;
 
+import org.apache.crail.conf.CrailConstants;
+import org.apache.crail.utils.CrailUtils;
+
 public interface CrailFile extends CrailNode {
 	public abstract CrailInputStream getDirectInputStream(long readHint) throws Exception;
 	public abstract CrailOutputStream getDirectOutputStream(long writeHint) throws Exception;
 	public abstract long getToken();
 	public abstract long getFd();
 
+	//storage class of the first block of the file, -1 if not known
+	default int getStorageClass() {
+		return -1;
+	}
+
+	//whether a file is compressed is recorded in the file itself, the stream probes for the frame index 
+	//independent of the compression settings of the reading client
 	default CrailBufferedInputStream getBufferedInputStream(long readHint) throws Exception {
-		return new FileBufferedInputStream(this, readHint);
+		return getBufferedInputStream(readHint, true);
+	}
+	
+	//a compressed stream reads the frames of a file written by a compressing output stream, 
+	//files without a frame index are read as is, an uncompressed stream returns the stored bytes
+	default CrailBufferedInputStream getBufferedInputStream(long readHint, boolean compressed) throws Exception {
+		return new FileBufferedInputStream(this, readHint, compressed);
 	}
 	
 	default CrailBufferedOutputStream getBufferedOutputStream(long writeHint) throws Exception {
-		return new CrailBufferedOutputStream(this, writeHint);
+		return getBufferedOutputStream(writeHint, CrailConstants.COMPRESSION_CLASSES != 0 && getCapacity() == 0 && CrailUtils.isCompressionEnabled(getStorageClass()));
+	}
+	
+	//a compressing stream can only write to an empty file
+	default CrailBufferedOutputStream getBufferedOutputStream(long writeHint, boolean compress) throws Exception {
+		return new CrailBufferedOutputStream(this, writeHint, compress);
 	}
 }
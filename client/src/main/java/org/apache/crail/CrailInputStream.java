@@ -24,6 +24,10 @@ import java.util.concurrent.Future;
 public interface CrailInputStream {
 	public CrailNode getFile();
 	public Future<CrailResult> read(CrailBuffer dataBuf) throws Exception;
+	//also fetches the stored checksums of the chunks covered by the read, starting with the chunk of the current position
+	public Future<CrailResult> read(CrailBuffer dataBuf, long[] checksums) throws Exception;
+	//stored checksums of all the chunks of the file, null if the file has no checksums
+	public long[] getChecksums() throws Exception;
 	public void seek(long pos) throws IOException;
 	public int available();
 	public long position();
@@ -24,6 +24,8 @@ import java.util.concurrent.Future;
 public interface CrailOutputStream {
 	CrailNode getFile();
 	Future<CrailResult> write(CrailBuffer dataBuf) throws Exception;
+	//checksums of the chunks covered by the write, starting with the chunk of the current position
+	Future<CrailResult> write(CrailBuffer dataBuf, long[] checksums) throws Exception;
 	Future<Void> sync() throws IOException;
 	long position();
 	long getWriteHint();
@@ -33,9 +33,12 @@ public abstract class CrailStore {
 	private static CrailStore instance = null;
 
 	public abstract Upcoming<CrailNode> create(String path, CrailNodeType type, CrailStorageClass storageClass, CrailLocationClass locationClass, boolean enumerable) throws Exception;
+	//consecutive blocks of the node rotate across stripeWidth distinct datanodes, 0 takes the width of the parent directory
+	public abstract Upcoming<CrailNode> create(String path, CrailNodeType type, CrailStorageClass storageClass, CrailLocationClass locationClass, boolean enumerable, int stripeWidth) throws Exception;
 	public abstract Upcoming<CrailNode> lookup(String path) throws Exception;
 	public abstract Upcoming<CrailNode> rename(String srcPath, String dstPath) throws Exception;
 	public abstract Upcoming<CrailNode> delete(String path, boolean recursive) throws Exception;
+	public abstract CrailBatch batch() throws Exception;
 	public abstract CrailBuffer allocateBuffer() throws Exception;
 	public abstract void freeBuffer(CrailBuffer buffer) throws Exception;
 	public abstract CrailStatistics getStatistics();
@@ -26,8 +26,18 @@ class FileBufferedInputStream extends CrailBufferedInputStream {
 	private CrailInputStream inputStream;
 	
 	FileBufferedInputStream(CrailFile file, long readHint) throws Exception {
+		this(file, readHint, false);
+	}
+	
+	FileBufferedInputStream(CrailFile file, long readHint, boolean compressed) throws Exception {
 		super(file.getFileSystem(), Math.max(CrailConstants.BUFFER_SIZE, CrailConstants.SLICE_SIZE)/Math.min(CrailConstants.BUFFER_SIZE, CrailConstants.SLICE_SIZE), file.getCapacity());
 		this.inputStream = file.getDirectInputStream(readHint);
+		if (compressed){
+			FrameIndex frames = FrameIndex.read(file.getFileSystem(), inputStream, file.getCapacity());
+			if (frames != null){
+				setFrames(frames);
+			}
+		}
 	}
 
 	@Override
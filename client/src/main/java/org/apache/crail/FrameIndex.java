@@ -0,0 +1,166 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.crail;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.Future;
+
+/*
+ * Layout of a file written by a compressing buffered output stream. The data is cut into frames 
+ * of frameSize bytes (the last one may be shorter), which are compressed independently and stored 
+ * back to back. A frame whose compressed form is not smaller than the data is stored as is. 
+ * The frames are followed by the index, the end offset of every frame in the file, and the trailer:
+ * 
+ * | frame 0 | frame 1 | ... | index (count x long) | length (long) | frameSize (int) | count (int) | MAGIC (long) |
+ * 
+ * The frame containing a position of the uncompressed data is position/frameSize, so a reader 
+ * seeks with one lookup into the index.
+ */
+class FrameIndex {
+	public static final long MAGIC = 0x4352414C4C5A3401L;
+	public static final int TRAILER_SIZE = Long.BYTES + Integer.BYTES + Integer.BYTES + Long.BYTES;
+	
+	private int frameSize;
+	private int count;
+	private long[] ends;
+	private long length;
+	
+	public FrameIndex(int frameSize){
+		this.frameSize = frameSize;
+		this.count = 0;
+		this.ends = new long[16];
+		this.length = 0;
+	}
+	
+	public int getFrameSize(){
+		return frameSize;
+	}
+	
+	public int getCount(){
+		return count;
+	}
+	
+	//length of the uncompressed data
+	public long getLength(){
+		return length;
+	}
+	
+	public long getStart(int frame){
+		return frame == 0 ? 0 : ends[frame - 1];
+	}
+	
+	public int getStoredLength(int frame){
+		return (int) (ends[frame] - getStart(frame));
+	}
+	
+	public int getLength(int frame){
+		return (int) Math.min(frameSize, length - (long) frame*frameSize);
+	}
+	
+	//a frame is stored compressed unless compression did not make it smaller
+	public boolean isCompressed(int frame){
+		return getStoredLength(frame) < getLength(frame);
+	}
+	
+	public void add(int frameLength, long end){
+		if (count == ends.length){
+			ends = Arrays.copyOf(ends, ends.length*2);
+		}
+		ends[count++] = end;
+		length += frameLength;
+	}
+	
+	//index and trailer, written behind the last frame
+	public ByteBuffer serialize(){
+		ByteBuffer buffer = ByteBuffer.allocate(count*Long.BYTES + TRAILER_SIZE);
+		for (int i = 0; i < count; i++){
+			buffer.putLong(ends[i]);
+		}
+		buffer.putLong(length);
+		buffer.putInt(frameSize);
+		buffer.putInt(count);
+		buffer.putLong(MAGIC);
+		buffer.flip();
+		return buffer;
+	}
+	
+	//reads the index of a compressed file, returns null if the file does not end with a frame index
+	public static FrameIndex read(CrailStore fs, CrailInputStream inputStream, long capacity) throws Exception {
+		if (capacity < TRAILER_SIZE){
+			return null;
+		}
+		CrailBuffer buffer = fs.allocateBuffer();
+		try {
+			return read(inputStream, capacity, buffer);
+		} finally {
+			fs.freeBuffer(buffer);
+		}
+	}
+	
+	//the buffer must hold at least the trailer, the stream is left at position 0
+	static FrameIndex read(CrailInputStream inputStream, long capacity, CrailBuffer buffer) throws Exception {
+		if (capacity < TRAILER_SIZE){
+			return null;
+		}
+		try {
+			buffer.clear().limit(TRAILER_SIZE);
+			readFully(inputStream, buffer, capacity - TRAILER_SIZE);
+			ByteBuffer trailer = buffer.getByteBuffer();
+			long length = trailer.getLong(0);
+			int frameSize = trailer.getInt(Long.BYTES);
+			int count = trailer.getInt(Long.BYTES + Integer.BYTES);
+			long magic = trailer.getLong(Long.BYTES + Integer.BYTES + Integer.BYTES);
+			long indexStart = capacity - TRAILER_SIZE - (long) count*Long.BYTES;
+			if (magic != MAGIC || frameSize <= 0 || count < 0 || indexStart < 0 || length < 0 
+					|| length > (long) count*frameSize || length <= (long) (count - 1)*frameSize){
+				return null;
+			}
+			
+			FrameIndex index = new FrameIndex(frameSize);
+			for (long position = indexStart; position < capacity - TRAILER_SIZE; ){
+				int batch = (int) Math.min(buffer.capacity()/Long.BYTES, (capacity - TRAILER_SIZE - position)/Long.BYTES);
+				buffer.clear().limit(batch*Long.BYTES);
+				readFully(inputStream, buffer, position);
+				for (int i = 0; i < batch; i++){
+					int frame = index.count;
+					index.add((int) Math.min(frameSize, length - (long) frame*frameSize), trailer.getLong(i*Long.BYTES));
+				}
+				position += batch*Long.BYTES;
+			}
+			if (index.getStart(count) != indexStart){
+				throw new IOException("invalid frame index, frames end at " + index.getStart(count) + ", index starts at " + indexStart);
+			}
+			return index;
+		} finally {
+			inputStream.seek(0);
+		}
+	}
+	
+	private static void readFully(CrailInputStream inputStream, CrailBuffer buffer, long position) throws Exception {
+		inputStream.seek(position);
+		while (buffer.hasRemaining()){
+			Future<CrailResult> future = inputStream.read(buffer);
+			if (future == null || future.get().getLen() <= 0){
+				throw new IOException("unexpected end of file reading the frame index at " + position);
+			}
+		}
+	}
+}
@@ -47,6 +47,11 @@ class MultiFileBufferedInputStream extends CrailBufferedInputStream {
 				CrailFile file = node.asFile();
 				if (file.getCapacity() > 0){
 					CrailInputStream stream = file.getDirectInputStream(file.getCapacity());
+					//files are concatenated as stored, a compressed file would be returned as its frames
+					if (FrameIndex.read(fs, stream, file.getCapacity()) != null){
+						stream.close();
+						throw new IOException("file " + path + " is compressed, multifile streams cannot decompress");
+					}
 					readyStreams.add(stream);
 				}
 			}
@@ -44,6 +44,19 @@ public class CrailConstants {
 	public static final String CACHE_PATH_KEY = "crail.cachepath";
 	public static String CACHE_PATH = "/dev/hugepages/cache";
 
+	public static final String BLOCK_CACHE_ENTRIES_KEY = "crail.blockcache.entries";
+	public static long BLOCK_CACHE_ENTRIES = 1048576;
+
+	public static final String BLOCK_CACHE_SIZE_KEY = "crail.blockcache.size";
+	public static long BLOCK_CACHE_SIZE = 134217728;
+
+	public static final String BLOCK_CACHE_FILE_ENTRIES_KEY = "crail.blockcache.fileentries";
+	public static int BLOCK_CACHE_FILE_ENTRIES = 65536;
+
+	//files looked up under a namenode lease are served from this cache until the lease expires
+	public static final String METADATA_CACHE_ENTRIES_KEY = "crail.metadatacache.entries";
+	public static int METADATA_CACHE_ENTRIES = 65536;
+
 	public static final String USER_KEY = "crail.user";
 	public static String USER = "crail";
 
@@ -68,6 +81,28 @@ public class CrailConstants {
 	public static final String SLICE_SIZE_KEY = "crail.slicesize";
 	public static int SLICE_SIZE = 524288;
 
+	//comma separated list of the storage classes whose data is checksummed, e.g. "0,1"
+	public static final String CHECKSUM_KEY = "crail.checksum";
+	public static String CHECKSUM = "";
+	public static long CHECKSUM_CLASSES = 0;
+
+	public static final String CHECKSUM_CHUNK_SIZE_KEY = "crail.checksum.chunksize";
+	public static int CHECKSUM_CHUNK_SIZE = 4096;
+
+	//comma separated list of the storage classes whose files are compressed by the buffered streams, e.g. "0,1"
+	public static final String COMPRESSION_KEY = "crail.compression";
+	public static String COMPRESSION = "";
+	public static long COMPRESSION_CLASSES = 0;
+
+	public static final String COMPRESSION_CODEC_KEY = "crail.compression.codec";
+	public static String COMPRESSION_CODEC = "lz4";
+
+	public static final String BLOCK_RANGE_KEY = "crail.blockrange";
+	public static int BLOCK_RANGE = 16;
+
+	public static final String LOCATION_RANGE_KEY = "crail.locationrange";
+	public static int LOCATION_RANGE = 512;
+
 	public static final String SINGLETON_KEY = "crail.singleton";
 	public static boolean SINGLETON = true;
 
@@ -96,6 +131,27 @@ public class CrailConstants {
 	public static final String NAMENODE_BLOCKSELECTION_KEY = "crail.namenode.blockselection";
 	public static String NAMENODE_BLOCKSELECTION = "roundrobin";
 
+	public static final String NAMENODE_STRIPEWIDTH_KEY = "crail.namenode.stripewidth";
+	public static int NAMENODE_STRIPEWIDTH = 1;
+
+	public static final String NAMENODE_REPLICAREADS_KEY = "crail.namenode.replicareads";
+	public static int NAMENODE_REPLICAREADS = 0;
+
+	public static final String NAMENODE_REPLICAS_KEY = "crail.namenode.replicas";
+	public static int NAMENODE_REPLICAS = 2;
+	
+	//resolve paths through an index of full path hashes instead of walking the directory tree
+	public static final String NAMENODE_PATHINDEX_KEY = "crail.namenode.pathindex";
+	public static boolean NAMENODE_PATHINDEX = true;
+	
+	//time (ms) for which clients may cache the metadata of files that are not being written
+	public static final String NAMENODE_LEASE_KEY = "crail.namenode.lease";
+	public static long NAMENODE_LEASE = 1000;
+	
+	//threads reclaiming the blocks of deleted files and directories
+	public static final String NAMENODE_GC_THREADS_KEY = "crail.namenode.gc.threads";
+	public static int NAMENODE_GC_THREADS = 2;
+
 	public static final String NAMENODE_RPC_TYPE_KEY = "crail.namenode.rpctype";
 	public static String NAMENODE_RPC_TYPE = "org.apache.crail.namenode.rpc.tcp.TcpNameNode";
 
@@ -105,6 +161,18 @@ public class CrailConstants {
 	public static final String NAMENODE_LOG_KEY = "crail.namenode.log";
 	public static String NAMENODE_LOG = "";
 
+	public static final String NAMENODE_LOG_BATCHSIZE_KEY = "crail.namenode.log.batchsize";
+	public static int NAMENODE_LOG_BATCHSIZE = 128;
+
+	public static final String NAMENODE_LOG_LINGER_KEY = "crail.namenode.log.linger";
+	public static long NAMENODE_LOG_LINGER = 0;
+
+	public static final String NAMENODE_LOG_SYNC_KEY = "crail.namenode.log.sync";
+	public static boolean NAMENODE_LOG_SYNC = true;
+	
+	public static final String NAMENODE_LOG_CHECKPOINT_KEY = "crail.namenode.log.checkpoint";
+	public static long NAMENODE_LOG_CHECKPOINT = 1073741824;
+
 	//storage interface
 	public static final String STORAGE_TYPES_KEY = "crail.storage.types";
 	public static String STORAGE_TYPES = "org.apache.crail.storage.tcp.TcpStorageTier";
@@ -135,6 +203,18 @@ public class CrailConstants {
 		if (conf.get(CACHE_PATH_KEY) != null) {
 			CACHE_PATH = conf.get(CACHE_PATH_KEY);
 		}
+		if (conf.get(BLOCK_CACHE_ENTRIES_KEY) != null) {
+			BLOCK_CACHE_ENTRIES = Long.parseLong(conf.get(BLOCK_CACHE_ENTRIES_KEY));
+		}
+		if (conf.get(BLOCK_CACHE_SIZE_KEY) != null) {
+			BLOCK_CACHE_SIZE = Long.parseLong(conf.get(BLOCK_CACHE_SIZE_KEY));
+		}
+		if (conf.get(BLOCK_CACHE_FILE_ENTRIES_KEY) != null) {
+			BLOCK_CACHE_FILE_ENTRIES = Integer.parseInt(conf.get(BLOCK_CACHE_FILE_ENTRIES_KEY));
+		}
+		if (conf.get(METADATA_CACHE_ENTRIES_KEY) != null) {
+			METADATA_CACHE_ENTRIES = Integer.parseInt(conf.get(METADATA_CACHE_ENTRIES_KEY));
+		}
 		if (conf.get(USER_KEY) != null) {
 			USER = conf.get(CrailConstants.USER_KEY);
 		}
@@ -159,6 +239,26 @@ public class CrailConstants {
 		if (conf.get(SLICE_SIZE_KEY) != null) {
 			SLICE_SIZE = Integer.parseInt(conf.get(SLICE_SIZE_KEY));
 		}
+		if (conf.get(CHECKSUM_KEY) != null) {
+			CHECKSUM = conf.get(CHECKSUM_KEY);
+			CHECKSUM_CLASSES = CrailUtils.getStorageClassMask(CHECKSUM);
+		}
+		if (conf.get(CHECKSUM_CHUNK_SIZE_KEY) != null) {
+			CHECKSUM_CHUNK_SIZE = Integer.parseInt(conf.get(CHECKSUM_CHUNK_SIZE_KEY));
+		}
+		if (conf.get(COMPRESSION_KEY) != null) {
+			COMPRESSION = conf.get(COMPRESSION_KEY);
+			COMPRESSION_CLASSES = CrailUtils.getStorageClassMask(COMPRESSION);
+		}
+		if (conf.get(COMPRESSION_CODEC_KEY) != null) {
+			COMPRESSION_CODEC = conf.get(COMPRESSION_CODEC_KEY);
+		}
+		if (conf.get(BLOCK_RANGE_KEY) != null) {
+			BLOCK_RANGE = Integer.parseInt(conf.get(BLOCK_RANGE_KEY));
+		}
+		if (conf.get(LOCATION_RANGE_KEY) != null) {
+			LOCATION_RANGE = Integer.parseInt(conf.get(LOCATION_RANGE_KEY));
+		}
 		if (conf.get(CrailConstants.SINGLETON_KEY) != null) {
 			SINGLETON = conf.getBoolean(CrailConstants.SINGLETON_KEY, false);
 		}
@@ -188,12 +288,42 @@ public class CrailConstants {
 		if (conf.get(NAMENODE_FILEBLOCKS_KEY) != null) {
 			NAMENODE_FILEBLOCKS = Integer.parseInt(conf.get(NAMENODE_FILEBLOCKS_KEY));
 		}
+		if (conf.get(NAMENODE_STRIPEWIDTH_KEY) != null) {
+			NAMENODE_STRIPEWIDTH = Integer.parseInt(conf.get(NAMENODE_STRIPEWIDTH_KEY));
+		}
+		if (conf.get(NAMENODE_REPLICAREADS_KEY) != null) {
+			NAMENODE_REPLICAREADS = Integer.parseInt(conf.get(NAMENODE_REPLICAREADS_KEY));
+		}
+		if (conf.get(NAMENODE_REPLICAS_KEY) != null) {
+			NAMENODE_REPLICAS = Integer.parseInt(conf.get(NAMENODE_REPLICAS_KEY));
+		}
+		if (conf.get(NAMENODE_PATHINDEX_KEY) != null) {
+			NAMENODE_PATHINDEX = conf.getBoolean(NAMENODE_PATHINDEX_KEY, true);
+		}
+		if (conf.get(NAMENODE_LEASE_KEY) != null) {
+			NAMENODE_LEASE = Long.parseLong(conf.get(NAMENODE_LEASE_KEY));
+		}
+		if (conf.get(NAMENODE_GC_THREADS_KEY) != null) {
+			NAMENODE_GC_THREADS = Integer.parseInt(conf.get(NAMENODE_GC_THREADS_KEY));
+		}
 		if (conf.get(NAMENODE_RPC_TYPE_KEY) != null) {
 			NAMENODE_RPC_TYPE = conf.get(NAMENODE_RPC_TYPE_KEY);
 		}
 		if (conf.get(NAMENODE_LOG_KEY) != null) {
 			NAMENODE_LOG = conf.get(NAMENODE_LOG_KEY);
 		}
+		if (conf.get(NAMENODE_LOG_BATCHSIZE_KEY) != null) {
+			NAMENODE_LOG_BATCHSIZE = Integer.parseInt(conf.get(NAMENODE_LOG_BATCHSIZE_KEY));
+		}
+		if (conf.get(NAMENODE_LOG_LINGER_KEY) != null) {
+			NAMENODE_LOG_LINGER = Long.parseLong(conf.get(NAMENODE_LOG_LINGER_KEY));
+		}
+		if (conf.get(NAMENODE_LOG_SYNC_KEY) != null) {
+			NAMENODE_LOG_SYNC = conf.getBoolean(NAMENODE_LOG_SYNC_KEY, true);
+		}
+		if (conf.get(NAMENODE_LOG_CHECKPOINT_KEY) != null) {
+			NAMENODE_LOG_CHECKPOINT = Long.parseLong(conf.get(NAMENODE_LOG_CHECKPOINT_KEY));
+		}
 
 		//storage interface
 		if (conf.get(STORAGE_TYPES_KEY) != null) {
@@ -219,6 +349,10 @@ public class CrailConstants {
 		LOG.info(BLOCK_SIZE_KEY + " " + BLOCK_SIZE);
 		LOG.info(CACHE_LIMIT_KEY + " " + CACHE_LIMIT);
 		LOG.info(CACHE_PATH_KEY + " " + CACHE_PATH);
+		LOG.info(BLOCK_CACHE_ENTRIES_KEY + " " + BLOCK_CACHE_ENTRIES);
+		LOG.info(BLOCK_CACHE_SIZE_KEY + " " + BLOCK_CACHE_SIZE);
+		LOG.info(BLOCK_CACHE_FILE_ENTRIES_KEY + " " + BLOCK_CACHE_FILE_ENTRIES);
+		LOG.info(METADATA_CACHE_ENTRIES_KEY + " " + METADATA_CACHE_ENTRIES);
 		LOG.info(USER_KEY + " " + USER);
 		LOG.info(SHADOW_REPLICATION_KEY + " " + SHADOW_REPLICATION);
 		LOG.info(DEBUG_KEY + " " + DEBUG);
@@ -227,6 +361,12 @@ public class CrailConstants {
 		LOG.info(DATA_TIMEOUT_KEY + " " + DATA_TIMEOUT);
 		LOG.info(BUFFER_SIZE_KEY + " " + BUFFER_SIZE);
 		LOG.info(SLICE_SIZE_KEY + " " + SLICE_SIZE);
+		LOG.info(CHECKSUM_KEY + " " + CHECKSUM);
+		LOG.info(CHECKSUM_CHUNK_SIZE_KEY + " " + CHECKSUM_CHUNK_SIZE);
+		LOG.info(COMPRESSION_KEY + " " + COMPRESSION);
+		LOG.info(COMPRESSION_CODEC_KEY + " " + COMPRESSION_CODEC);
+		LOG.info(BLOCK_RANGE_KEY + " " + BLOCK_RANGE);
+		LOG.info(LOCATION_RANGE_KEY + " " + LOCATION_RANGE);
 		LOG.info(SINGLETON_KEY + " " + SINGLETON);
 		LOG.info(REGION_SIZE_KEY + " " + REGION_SIZE);
 		LOG.info(DIRECTORY_RECORD_KEY + " " + DIRECTORY_RECORD);
@@ -236,8 +376,18 @@ public class CrailConstants {
 		LOG.info(NAMENODE_ADDRESS_KEY + " " + NAMENODE_ADDRESS);
 		LOG.info(NAMENODE_BLOCKSELECTION_KEY + " " + NAMENODE_BLOCKSELECTION);
 		LOG.info(NAMENODE_FILEBLOCKS_KEY + " " + NAMENODE_FILEBLOCKS);
+		LOG.info(NAMENODE_STRIPEWIDTH_KEY + " " + NAMENODE_STRIPEWIDTH);
+		LOG.info(NAMENODE_REPLICAREADS_KEY + " " + NAMENODE_REPLICAREADS);
+		LOG.info(NAMENODE_REPLICAS_KEY + " " + NAMENODE_REPLICAS);
+		LOG.info(NAMENODE_PATHINDEX_KEY + " " + NAMENODE_PATHINDEX);
+		LOG.info(NAMENODE_LEASE_KEY + " " + NAMENODE_LEASE);
+		LOG.info(NAMENODE_GC_THREADS_KEY + " " + NAMENODE_GC_THREADS);
 		LOG.info(NAMENODE_RPC_TYPE_KEY + " " + NAMENODE_RPC_TYPE);
 		LOG.info(NAMENODE_LOG_KEY + " " + NAMENODE_LOG);
+		LOG.info(NAMENODE_LOG_BATCHSIZE_KEY + " " + NAMENODE_LOG_BATCHSIZE);
+		LOG.info(NAMENODE_LOG_LINGER_KEY + " " + NAMENODE_LOG_LINGER);
+		LOG.info(NAMENODE_LOG_SYNC_KEY + " " + NAMENODE_LOG_SYNC);
+		LOG.info(NAMENODE_LOG_CHECKPOINT_KEY + " " + NAMENODE_LOG_CHECKPOINT);
 		LOG.info(STORAGE_TYPES_KEY + " " + STORAGE_TYPES);
 		LOG.info(STORAGE_CLASSES_KEY + " " + STORAGE_CLASSES);
 		LOG.info(STORAGE_ROOTCLASS_KEY + " " + STORAGE_ROOTCLASS);
@@ -251,6 +401,9 @@ public class CrailConstants {
 		if (Math.max(CrailConstants.BUFFER_SIZE, CrailConstants.SLICE_SIZE) % Math.min(CrailConstants.BUFFER_SIZE, CrailConstants.SLICE_SIZE) != 0){
 			throw new IOException("crail.slicesize must be multiple of buffersize " + CrailConstants.BUFFER_SIZE);
 		}
+		if (CrailConstants.CHECKSUM_CHUNK_SIZE <= 0 || CrailConstants.BLOCK_SIZE % CrailConstants.CHECKSUM_CHUNK_SIZE != 0){
+			throw new IOException("crail.blocksize must be multiple of crail.checksum.chunksize " + CrailConstants.CHECKSUM_CHUNK_SIZE);
+		}
 		if (CrailConstants.STORAGE_CLASSES < CrailUtils.getStorageClasses(STORAGE_TYPES)){
 			throw new IOException("crail.storage.classes cannot be smaller than the number of storage types " + CrailUtils.getStorageClasses(STORAGE_TYPES));
 		}
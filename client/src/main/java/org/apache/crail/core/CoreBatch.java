@@ -0,0 +1,185 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.apache.crail.core;
+
+import java.util.ArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.apache.crail.CrailBatch;
+import org.apache.crail.CrailLocationClass;
+import org.apache.crail.CrailNode;
+import org.apache.crail.CrailNodeType;
+import org.apache.crail.CrailStorageClass;
+import org.apache.crail.Upcoming;
+import org.apache.crail.rpc.RpcConnection;
+
+/*
+ * The operations of a batch are issued with the namenode connection deferring requests, 
+ * the connection then packs them into as few frames as the message size allows. Connections 
+ * that do not batch (DaRPC, crail.namenode.tcp.batchsize 1) ignore the deferral and send each 
+ * operation as it is issued.
+ */
+class CoreBatch implements CrailBatch {
+	private static final int CREATE = 0;
+	private static final int LOOKUP = 1;
+	private static final int DELETE = 2;
+	
+	private CoreDataStore fs;
+	private ArrayList<BatchOperation> operations;
+	
+	public CoreBatch(CoreDataStore fs){
+		this.fs = fs;
+		this.operations = new ArrayList<BatchOperation>();
+	}
+
+	@Override
+	public Upcoming<CrailNode> create(String path, CrailNodeType type, CrailStorageClass storageClass, CrailLocationClass locationClass, boolean enumerable) throws Exception {
+		BatchOperation operation = new BatchOperation(CREATE, path);
+		operation.type = type;
+		operation.storageClass = storageClass;
+		operation.locationClass = locationClass;
+		operation.enumerable = enumerable;
+		operations.add(operation);
+		return operation;
+	}
+
+	@Override
+	public Upcoming<CrailNode> lookup(String path) throws Exception {
+		BatchOperation operation = new BatchOperation(LOOKUP, path);
+		operations.add(operation);
+		return operation;
+	}
+
+	@Override
+	public Upcoming<CrailNode> delete(String path, boolean recursive) throws Exception {
+		BatchOperation operation = new BatchOperation(DELETE, path);
+		operation.recursive = recursive;
+		operations.add(operation);
+		return operation;
+	}
+	
+	@Override
+	public int size() {
+		return operations.size();
+	}
+
+	//an operation that cannot be issued fails on its own, the remaining operations are still sent
+	@Override
+	public void submit() throws Exception {
+		if (operations.isEmpty()){
+			return;
+		}
+		RpcConnection rpcConnection = fs.getNamenodeClientRpc();
+		rpcConnection.deferRequests();
+		try {
+			for (BatchOperation operation : operations){
+				operation.issue();
+			}
+		} finally {
+			rpcConnection.flushRequests();
+			operations.clear();
+		}
+	}
+	
+	private class BatchOperation implements Upcoming<CrailNode> {
+		private int operation;
+		private String path;
+		private CrailNodeType type;
+		private CrailStorageClass storageClass;
+		private CrailLocationClass locationClass;
+		private boolean enumerable;
+		private boolean recursive;
+		private Upcoming<CrailNode> future;
+		private Exception error;
+		
+		public BatchOperation(int operation, String path){
+			this.operation = operation;
+			this.path = path;
+			this.future = null;
+			this.error = null;
+		}
+		
+		void issue() {
+			try {
+				switch(operation){
+				case CREATE:
+					future = fs.create(path, type, storageClass, locationClass, enumerable);
+					break;
+				case LOOKUP:
+					future = fs.lookup(path);
+					break;
+				case DELETE:
+					future = fs.delete(path, recursive);
+					break;
+				}
+			} catch(Exception e){
+				error = e;
+			}
+		}
+
+		@Override
+		public boolean cancel(boolean mayInterruptIfRunning) {
+			return false;
+		}
+
+		@Override
+		public boolean isCancelled() {
+			return false;
+		}
+
+		@Override
+		public boolean isDone() {
+			return error != null || (future != null && future.isDone());
+		}
+
+		@Override
+		public CrailNode get() throws InterruptedException, ExecutionException {
+			awaitIssued();
+			return future.get();
+		}
+
+		@Override
+		public CrailNode get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+			awaitIssued();
+			return future.get(timeout, unit);
+		}
+
+		@Override
+		public CrailNode early() throws Exception {
+			awaitIssued();
+			return future.early();
+		}
+		
+		private void awaitIssued() throws ExecutionException {
+			if (future == null && error == null){
+				try {
+					submit();
+				} catch(Exception e){
+					throw new ExecutionException(e);
+				}
+			}
+			if (error != null){
+				throw new ExecutionException(error);
+			}
+		}
+	}
+}
@@ -33,6 +33,16 @@ class CoreBlockLocation implements CrailBlockLocation {
 	public CoreBlockLocation() {
 	}
 
+	//shares the location arrays of a block stored on the same data node
+	void setLocation(CoreBlockLocation other) {
+		this.names = other.names;
+		this.hosts = other.hosts;
+		this.topology = other.topology;
+		this.storageTypes = other.storageTypes;
+		this.storageClasses = other.storageClasses;
+		this.locationAffinities = other.locationAffinities;
+	}
+
 	public long getOffset() {
 		return offset;
 	}
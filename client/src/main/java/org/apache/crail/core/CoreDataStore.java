@@ -32,6 +32,7 @@ import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 
+import org.apache.crail.CrailBatch;
 import org.apache.crail.CrailBlockLocation;
 import org.apache.crail.CrailBuffer;
 import org.apache.crail.CrailStore;
@@ -57,7 +58,7 @@ import org.apache.crail.rpc.RpcDispatcher;
 import org.apache.crail.rpc.RpcErrors;
 import org.apache.crail.rpc.RpcFuture;
 import org.apache.crail.rpc.RpcGetFile;
-import org.apache.crail.rpc.RpcGetLocation;
+import org.apache.crail.rpc.RpcGetLocationRange;
 import org.apache.crail.rpc.RpcPing;
 import org.apache.crail.rpc.RpcRenameFile;
 import org.apache.crail.storage.StorageClient;
@@ -65,6 +66,7 @@ import org.apache.crail.utils.BlockCache;
 import org.apache.crail.utils.BufferCheckpoint;
 import org.apache.crail.utils.CrailUtils;
 import org.apache.crail.utils.EndpointCache;
+import org.apache.crail.utils.MetadataCache;
 import org.apache.crail.utils.NextBlockCache;
 import org.apache.crail.utils.BlockCache.FileBlockCache;
 import org.apache.crail.utils.NextBlockCache.FileNextBlockCache;
@@ -73,6 +75,7 @@ import org.slf4j.Logger;
 public class CoreDataStore extends CrailStore {
 	private static final Logger LOG = CrailUtils.getLogger();
 	private static AtomicInteger fsCount = new AtomicInteger(0);
+	private static final int LOCATION_WINDOW = 8;
 
 	//namenode operations
 	private RpcClient rpcClient;
@@ -87,6 +90,7 @@ public class CoreDataStore extends CrailStore {
 
 	private BlockCache blockCache;
 	private NextBlockCache nextBlockCache;
+	private MetadataCache metadataCache;
 	private BufferCache bufferCache;
 	private BufferCheckpoint bufferCheckpoint;
 	private ConcurrentHashMap<String, String> locationMap;
@@ -144,6 +148,7 @@ public class CoreDataStore extends CrailStore {
 		this.localClass = CrailUtils.getLocationClass();
 		this.blockCache = new BlockCache();
 		this.nextBlockCache = new NextBlockCache();
+		this.metadataCache = new MetadataCache();
 		this.openInputStreams = new ConcurrentHashMap<Long, CoreInputStream>();
 		this.openOutputStreams = new ConcurrentHashMap<Long, CoreOutputStream>();
 		this.streamCounter = new AtomicLong(0);
@@ -160,16 +165,22 @@ public class CoreDataStore extends CrailStore {
 		statistics.addProvider(streamStats);
 		statistics.addProvider(bufferCache);
 		statistics.addProvider(datanodeEndpointCache);
+		statistics.addProvider(blockCache);
+		statistics.addProvider(metadataCache);
 	}
 
 	public Upcoming<CrailNode> create(String path, CrailNodeType type, CrailStorageClass storageClass, CrailLocationClass locationClass, boolean enumerable) throws Exception {
+		return create(path, type, storageClass, locationClass, enumerable, 0);
+	}
+
+	public Upcoming<CrailNode> create(String path, CrailNodeType type, CrailStorageClass storageClass, CrailLocationClass locationClass, boolean enumerable, int stripeWidth) throws Exception {
 		FileName name = new FileName(path);
 
 		if (CrailConstants.DEBUG){
-			LOG.info("createNode: name " + path + ", type " + type + ", storageAffinity " + storageClass + ", locationAffinity " + locationClass);
+			LOG.info("createNode: name " + path + ", type " + type + ", storageAffinity " + storageClass + ", locationAffinity " + locationClass + ", stripeWidth " + stripeWidth);
 		}
 
-		RpcFuture<RpcCreateFile> fileRes = rpcConnection.createFile(name, type, storageClass.value(), locationClass.value(), enumerable);
+		RpcFuture<RpcCreateFile> fileRes = rpcConnection.createFile(name, type, storageClass.value(), locationClass.value(), enumerable, stripeWidth);
 		return new CreateNodeFuture(this, path, type, fileRes);
 	}
 
@@ -194,6 +205,7 @@ public class CoreDataStore extends CrailStore {
 
 		blockCache.remove(fileInfo.getFd());
 		nextBlockCache.remove(fileInfo.getFd());
+		metadataCache.remove(path);
 		CoreNode node = CoreNode.create(this, fileInfo, path);
 
 		BlockInfo fileBlock = fileRes.getFileBlock();
@@ -215,17 +227,29 @@ public class CoreDataStore extends CrailStore {
 	}
 
 	public Upcoming<CrailNode> lookup(String path) throws Exception {
+		MetadataCache.Entry entry = metadataCache.get(path);
+		if (entry != null){
+			FileInfo fileInfo = entry.getFile();
+			if (CrailConstants.DEBUG){
+				LOG.info("lookup: name " + path + ", cached, fd " + fileInfo.getFd() + ", version " + fileInfo.getVersion());
+			}
+			//no blocks from the cache, streams fetch them with the cached version which the namenode checks
+			return new CachedNodeFuture(CoreNode.create(this, fileInfo, path));
+		}
+		
 		FileName name = new FileName(path);
 
 		if (CrailConstants.DEBUG){
 			LOG.info("lookupDirectory: path " + path);
 		}
 
+		//the lease runs from the time the request is issued
+		long issued = System.nanoTime();
 		RpcFuture<RpcGetFile> fileRes = rpcConnection.getFile(name, false);
-		return new LookupNodeFuture(this, path, fileRes);
+		return new LookupNodeFuture(this, path, issued, fileRes);
 	}
 
-	CoreNode _lookupNode(RpcGetFile fileRes, String path) throws Exception {
+	CoreNode _lookupNode(RpcGetFile fileRes, String path, long issued) throws Exception {
 		if (fileRes.getError() == RpcErrors.ERR_GET_FILE_FAILED){
 			return null;
 		}
@@ -243,6 +267,9 @@ public class CoreDataStore extends CrailStore {
 			}
 			BlockInfo fileBlock = fileRes.getFileBlock();
 			getBlockCache(fileInfo.getFd()).put(CoreSubOperation.createKey(fileInfo.getFd(), 0), fileBlock);
+			if (fileRes.getLease() > 0){
+				metadataCache.put(path, fileInfo, issued + TimeUnit.MILLISECONDS.toNanos(fileRes.getLease()));
+			}
 
 			node = CoreNode.create(this, fileInfo, path);
 		}
@@ -258,6 +285,8 @@ public class CoreDataStore extends CrailStore {
 			LOG.info("rename: srcname " + src + ", dstname " + dst);
 		}
 
+		metadataCache.remove(src);
+		metadataCache.remove(dst);
 		RpcFuture<RpcRenameFile> renameRes = rpcConnection.renameFile(srcPath, dstPath);
 		return new RenameNodeFuture(this, src, dst, renameRes);
 	}
@@ -297,6 +326,10 @@ public class CoreDataStore extends CrailStore {
 		CoreSyncOperation syncOperationDst = getSyncOperation(dstDir, dstFile, dst, true);
 
 		blockCache.remove(srcFile.getFd());
+		if (srcFile.getType().isContainer()){
+			metadataCache.removeChildren(src);
+			metadataCache.removeChildren(dst);
+		}
 
 		if (CrailConstants.DEBUG){
 			LOG.info("rename: srcname " + src + ", dstname " + dst + ", success");
@@ -315,6 +348,7 @@ public class CoreDataStore extends CrailStore {
 			LOG.info("delete: name " + path + ", recursive " + recursive);
 		}
 
+		metadataCache.remove(path);
 		RpcFuture<RpcDeleteFile> fileRes = rpcConnection.removeFile(name, recursive);
 		return new DeleteNodeFuture(this, path, recursive, fileRes);
 	}
@@ -335,6 +369,9 @@ public class CoreDataStore extends CrailStore {
 		CoreSyncOperation syncOperation = getSyncOperation(dirInfo, fileInfo, path, false);
 
 		blockCache.remove(fileInfo.getFd());
+		if (fileInfo.getType().isContainer()){
+			metadataCache.removeChildren(path);
+		}
 
 		if (CrailConstants.DEBUG){
 			LOG.info("delete: name " + path + ", recursive " + recursive + ", success");
@@ -345,6 +382,10 @@ public class CoreDataStore extends CrailStore {
 		return node;
 	}
 
+	public CrailBatch batch() throws Exception {
+		return new CoreBatch(this);
+	}
+
 	public DirectoryInputStream listEntries(String name) throws Exception {
 		return _listEntries(name, CrailConstants.DIRECTORY_RANDOMIZE);
 	}
@@ -373,6 +414,11 @@ public class CoreDataStore extends CrailStore {
 		return inputStream;
 	}
 
+	public DirectoryNodeStream listNodes(String name, boolean blocks) throws Exception {
+		DirectoryInputStream records = _listEntries(name, CrailConstants.DIRECTORY_RANDOMIZE);
+		return new DirectoryNodeStream(this, records, new FileName(name), blocks);
+	}
+
 	public CrailBlockLocation[] getBlockLocations(String path, long start, long len) throws Exception {
 		if (CrailConstants.DEBUG){
 			LOG.info("location: path " + path + ", start " + start + ", len " + len);
@@ -396,38 +442,77 @@ public class CoreDataStore extends CrailStore {
 			blockCount++;
 		}
 		CoreBlockLocation[] blockLocations = new CoreBlockLocation[(int) blockCount];
-		HashMap<Long, DataNodeInfo> dataNodeSet = new HashMap<Long, DataNodeInfo>();
-		HashMap<Long, DataNodeInfo> offset2DataNode = new HashMap<Long, DataNodeInfo>();
-
-		for (long current = CrailUtils.blockStartAddress(start); current < start + len; current += CrailConstants.BLOCK_SIZE){
-			RpcGetLocation getLocationRes = rpcConnection.getLocation(name, current).get(CrailConstants.RPC_TIMEOUT, TimeUnit.MILLISECONDS);
-			if (getLocationRes.getError() != RpcErrors.ERR_OK) {
-				LOG.info("location: " + RpcErrors.messages[getLocationRes.getError()]);
-				throw new IOException(RpcErrors.messages[getLocationRes.getError()]);
+		int[] blockDataNodes = new int[(int) blockCount];
+		HashMap<Long, Integer> dataNodeSet = new HashMap<Long, Integer>();
+		ArrayList<DataNodeInfo> dataNodeArray = new ArrayList<DataNodeInfo>();
+		int pageSize = Math.max(1, Math.min(CrailConstants.LOCATION_RANGE, RpcGetLocationRange.MAX_BLOCKS));
+
+		//each RPC resolves a page of blocks, several pages are requested concurrently, large ranges take several rounds
+		LinkedList<RpcFuture<RpcGetLocationRange>> pendingRanges = new LinkedList<RpcFuture<RpcGetLocationRange>>();
+		LinkedList<Integer> pendingStarts = new LinkedList<Integer>();
+		int next = 0;
+		while (next < blockCount){
+			for (int i = next; i < blockCount && pendingRanges.size() < LOCATION_WINDOW; ){
+				if (blockLocations[i] != null){
+					i++;
+					continue;
+				}
+				long count = Math.min(pageSize, blockCount - i);
+				pendingRanges.add(rpcConnection.getLocationRange(name, rangeStart + i*CrailConstants.BLOCK_SIZE, count*CrailConstants.BLOCK_SIZE));
+				pendingStarts.add(i);
+				i += count;
 			}
 
-			DataNodeInfo dataNodeInfo = getLocationRes.getBlockInfo().getDnInfo();
-			dataNodeSet.put(dataNodeInfo.key(), dataNodeInfo);
-			CoreBlockLocation location = new CoreBlockLocation();
-			location.setOffset(current);
-			location.setLength(Math.min(start + len - current, CrailConstants.BLOCK_SIZE));
-			long index = (current - rangeStart) / CrailConstants.BLOCK_SIZE;
-			blockLocations[(int) index] = location;
-			offset2DataNode.put(current, dataNodeInfo);
+			for (RpcFuture<RpcGetLocationRange> future = pendingRanges.poll(); future != null; future = pendingRanges.poll()){
+				int first = pendingStarts.poll();
+				RpcGetLocationRange getLocationRes = future.get(CrailConstants.RPC_TIMEOUT, TimeUnit.MILLISECONDS);
+				if (getLocationRes.getError() != RpcErrors.ERR_OK) {
+					LOG.info("location: " + RpcErrors.messages[getLocationRes.getError()]);
+					throw new IOException(RpcErrors.messages[getLocationRes.getError()]);
+				}
+
+				//a range may end early, the remaining blocks are requested in the next round
+				for (int j = 0; j < getLocationRes.getBlockCount(); j++){
+					DataNodeInfo dataNodeInfo = getLocationRes.getDataNodeInfo(getLocationRes.getDataNodeIndex(j));
+					Integer dataNodeIndex = dataNodeSet.get(dataNodeInfo.key());
+					if (dataNodeIndex == null){
+						dataNodeIndex = dataNodeArray.size();
+						dataNodeSet.put(dataNodeInfo.key(), dataNodeIndex);
+						dataNodeArray.add(dataNodeInfo);
+					}
+					long current = rangeStart + (first + j)*CrailConstants.BLOCK_SIZE;
+					CoreBlockLocation location = new CoreBlockLocation();
+					location.setOffset(current);
+					location.setLength(Math.min(start + len - current, CrailConstants.BLOCK_SIZE));
+					blockLocations[first + j] = location;
+					blockDataNodes[first + j] = dataNodeIndex;
+				}
+			}
+			while (next < blockCount && blockLocations[next] != null){
+				next++;
+			}
 		}
 
-		//asign an identifier to each data node
-		ArrayList<DataNodeInfo> dataNodeArray = new ArrayList<DataNodeInfo>(dataNodeSet.size());
-		int index = 0;
-		for (DataNodeInfo dn : dataNodeSet.values()){
-			dataNodeArray.add(index, dn);
-			index++;
+		//resolve every data node once, blocks without replicas share the arrays of their data node
+		String[] dataNodeNames = new String[dataNodeArray.size()];
+		String[] dataNodeHosts = new String[dataNodeArray.size()];
+		for (int i = 0; i < dataNodeArray.size(); i++){
+			InetSocketAddress address = CrailUtils.datanodeInfo2SocketAddr(dataNodeArray.get(i));
+			dataNodeHosts[i] = getMappedLocation(address.getAddress().getCanonicalHostName());
+			dataNodeNames[i] = dataNodeHosts[i] + ":" + address.getPort();
 		}
+		CoreBlockLocation[] sharedLocations = new CoreBlockLocation[dataNodeArray.size()];
 
-		int locationSize = Math.min(CrailConstants.SHADOW_REPLICATION, dataNodeSet.size());
+		int locationSize = Math.min(CrailConstants.SHADOW_REPLICATION, dataNodeArray.size());
 		int blockIndex = 0;
 		for (int i = 0; i < blockLocations.length; i++){
 			CoreBlockLocation location = blockLocations[i];
+			int mainIndex = blockDataNodes[i];
+			if (locationSize == 1 && sharedLocations[mainIndex] != null){
+				location.setLocation(sharedLocations[mainIndex]);
+				continue;
+			}
+
 			String[] hosts = new String[locationSize];
 			String[] names = new String[locationSize];
 			String[] topology = new String[locationSize];
@@ -435,20 +520,17 @@ public class CoreDataStore extends CrailStore {
 			int[] storageClass = new int[locationSize];
 			int[] locationTiers = new int[locationSize];
 
-			DataNodeInfo dnInfo = offset2DataNode.get(location.getOffset());
-			DataNodeInfo mainDataNode = dataNodeSet.get(dnInfo.key());
-			InetSocketAddress address = CrailUtils.datanodeInfo2SocketAddr(mainDataNode);
-			names[0] = getMappedLocation(address.getAddress().getCanonicalHostName()) + ":" + address.getPort();
-			hosts[0] = getMappedLocation(address.getAddress().getCanonicalHostName());
+			DataNodeInfo mainDataNode = dataNodeArray.get(mainIndex);
+			names[0] = dataNodeNames[mainIndex];
+			hosts[0] = dataNodeHosts[mainIndex];
 			topology[0] = "/default-rack/" + names[0];
 			storageType[0] = mainDataNode.getStorageType();
 			storageClass[0] = mainDataNode.getStorageClass();
 			locationTiers[0] = mainDataNode.getLocationClass();
 			for (int j = 1; j < locationSize; j++){
 				DataNodeInfo replicaDataNode = dataNodeArray.get(blockIndex);
-				address = CrailUtils.datanodeInfo2SocketAddr(replicaDataNode);
-				names[j] = getMappedLocation(address.getAddress().getCanonicalHostName()) + ":" + address.getPort();
-				hosts[j] = getMappedLocation(address.getAddress().getCanonicalHostName());
+				names[j] = dataNodeNames[blockIndex];
+				hosts[j] = dataNodeHosts[blockIndex];
 				topology[j] = "/default-rack/" + names[j];
 				storageType[j] = replicaDataNode.getStorageType();
 				storageClass[j] = replicaDataNode.getStorageClass();
@@ -461,6 +543,7 @@ public class CoreDataStore extends CrailStore {
 			location.setStorageTypes(storageType);
 			location.setStorageClasses(storageClass);
 			location.setLocationAffinities(locationTiers);
+			sharedLocations[mainIndex] = location;
 		}
 
 		return blockLocations;
@@ -625,6 +708,17 @@ public class CoreDataStore extends CrailStore {
 		return nextBlockCache.getFileBlockCache(fd);
 	}
 
+	void invalidateBlockCache(long fd){
+		blockCache.remove(fd);
+		nextBlockCache.remove(fd);
+	}
+
+	//the namenode reported that the file changed since it was looked up
+	void invalidateLookup(String path, long fd){
+		metadataCache.remove(path);
+		invalidateBlockCache(fd);
+	}
+
 	RpcConnection getNamenodeClientRpc() {
 		return rpcConnection;
 	}
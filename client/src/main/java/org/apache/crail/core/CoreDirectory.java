@@ -23,6 +23,7 @@ import java.util.Iterator;
 import org.apache.crail.CrailContainer;
 import org.apache.crail.CrailDirectory;
 import org.apache.crail.CrailMultiFile;
+import org.apache.crail.CrailNode;
 import org.apache.crail.CrailTable;
 import org.apache.crail.conf.CrailConstants;
 import org.apache.crail.metadata.FileInfo;
@@ -45,6 +46,11 @@ class CoreDirectory extends CoreNode implements CrailContainer, CrailDirectory,
 	public Iterator<String> listEntries() throws Exception {
 		return fs.listEntries(path);
 	}
+	
+	@Override
+	public Iterator<CrailNode> listNodes(boolean blocks) throws Exception {
+		return fs.listNodes(path, blocks);
+	}
 
 	@Override
 	public CoreDirectory asDirectory() throws Exception {
@@ -32,6 +32,7 @@ import org.apache.crail.CrailNode;
 import org.apache.crail.CrailNodeType;
 import org.apache.crail.CrailOutputStream;
 import org.apache.crail.CrailTable;
+import org.apache.crail.metadata.BlockInfo;
 import org.apache.crail.metadata.FileInfo;
 
 public class CoreFile extends CoreNode implements CrailFile, CrailKeyValue {
@@ -66,6 +67,11 @@ public class CoreFile extends CoreNode implements CrailFile, CrailKeyValue {
 	public long getToken() {
 		return fileInfo.getToken();
 	}
+	
+	public int getStorageClass() {
+		BlockInfo block = fs.getBlockCache(fileInfo.getFd()).get(CoreSubOperation.createKey(fileInfo.getFd(), 0));
+		return block == null ? -1 : block.getDnInfo().getStorageClass();
+	}
 
 	public boolean tokenFree(){
 		return fileInfo.tokenFree();
@@ -121,6 +127,10 @@ class CoreEarlyFile implements CrailFile, CrailKeyValue {
 	public long getToken() {
 		return file().getToken();
 	}
+	
+	public int getStorageClass() {
+		return file().getStorageClass();
+	}
 
 	public CrailFile asFile() throws Exception {
 		return this;
@@ -19,6 +19,8 @@
 package org.apache.crail.core;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.concurrent.Future;
 import java.util.concurrent.atomic.AtomicLong;
 
@@ -29,6 +31,7 @@ import org.apache.crail.conf.CrailConstants;
 import org.apache.crail.metadata.BlockInfo;
 import org.apache.crail.storage.StorageEndpoint;
 import org.apache.crail.storage.StorageFuture;
+import org.apache.crail.storage.StorageSegment;
 import org.apache.crail.utils.CrailImmediateOperation;
 import org.apache.crail.utils.CrailUtils;
 import org.slf4j.Logger;
@@ -52,6 +55,10 @@ public class CoreInputStream extends CoreStream implements CrailInputStream {
 	}
 	
 	final public Future<CrailResult> read(CrailBuffer dataBuf) throws Exception {
+		return read(dataBuf, null);
+	}
+	
+	final public Future<CrailResult> read(CrailBuffer dataBuf, long[] checksums) throws Exception {
 		if (!open) {
 			throw new IOException("stream already closed");
 		}
@@ -69,8 +76,11 @@ public class CoreInputStream extends CoreStream implements CrailInputStream {
 			dataBuf.limit(dataBuf.position() + _fileAvailable);
 		}
 		
+		if (checksums != null){
+			Arrays.fill(checksums, 0);
+		}
 		inFlight.incrementAndGet();
-		CoreDataOperation future = dataOperation(dataBuf);
+		CoreDataOperation future = dataOperation(dataBuf, checksums);
 		if (position() < readHint){
 			prefetchMetadata();
 		}	
@@ -80,6 +90,13 @@ public class CoreInputStream extends CoreStream implements CrailInputStream {
 		return future;
 	}
 	
+	final public long[] getChecksums() throws Exception {
+		if (!open) {
+			throw new IOException("stream already closed");
+		}
+		return checksums();
+	}
+	
 	final public int available() {
 		long available = Math.max(0, getFile().getCapacity() - position());
 		long maxint = (long) Integer.MAX_VALUE;
@@ -109,6 +126,7 @@ public class CoreInputStream extends CoreStream implements CrailInputStream {
 		}
 		
 		updateIOStats();
+		invalidateMetadata();
 		node.closeInputStream(this);
 		open = false;
 		if (CrailConstants.DEBUG){
@@ -123,7 +141,19 @@ public class CoreInputStream extends CoreStream implements CrailInputStream {
 		return future;
 	}	
 	
+	StorageFuture triggerv(StorageEndpoint endpoint, ArrayList<StorageSegment> segments) throws Exception {
+		return endpoint.readv(segments);
+	}
+	
+	StorageFuture triggerChecksums(StorageEndpoint endpoint, long[] checksums, int index, int count, BlockInfo block, long offset) throws Exception {
+		return endpoint.readChecksums(checksums, index, count, block, offset);
+	}
+	
 	void update(long newCapacity) {
 		inFlight.decrementAndGet();
 	}
+	
+	long rangeLimit() {
+		return getFile().getCapacity();
+	}
 }
@@ -178,21 +178,62 @@ class CreateNodeFuture extends CoreMetaDataOperation<RpcCreateFile, CrailNode> {
 
 class LookupNodeFuture extends CoreMetaDataOperation<RpcGetFile, CrailNode> {
 	private String path;
+	private long issued;
 	private CoreDataStore fs;	
 
-	public LookupNodeFuture(CoreDataStore fs, String path, Future<RpcGetFile> fileRes) {
+	public LookupNodeFuture(CoreDataStore fs, String path, long issued, Future<RpcGetFile> fileRes) {
 		super(fileRes);
 		this.fs = fs;
 		this.path = path;
+		this.issued = issued;
 	}
 
 	@Override
 	CrailNode process(RpcGetFile tmp) throws Exception {
-		return fs._lookupNode(tmp, path);
+		return fs._lookupNode(tmp, path, issued);
 	}
 
 }
 
+//lookup served from the client metadata cache
+class CachedNodeFuture implements Upcoming<CrailNode> {
+	private CrailNode node;
+	
+	public CachedNodeFuture(CrailNode node) {
+		this.node = node;
+	}
+
+	@Override
+	public boolean cancel(boolean mayInterruptIfRunning) {
+		return false;
+	}
+
+	@Override
+	public boolean isCancelled() {
+		return false;
+	}
+
+	@Override
+	public boolean isDone() {
+		return true;
+	}
+
+	@Override
+	public CrailNode get() throws InterruptedException, ExecutionException {
+		return node;
+	}
+
+	@Override
+	public CrailNode get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+		return node;
+	}
+
+	@Override
+	public CrailNode early() throws Exception {
+		return node;
+	}
+}
+
 class DeleteNodeFuture extends CoreMetaDataOperation<RpcDeleteFile, CrailNode> {
 	private String path;
 	private boolean recursive;
@@ -19,6 +19,7 @@
 package org.apache.crail.core;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.concurrent.Future;
 import java.util.concurrent.atomic.AtomicLong;
 
@@ -29,6 +30,7 @@ import org.apache.crail.conf.CrailConstants;
 import org.apache.crail.metadata.BlockInfo;
 import org.apache.crail.storage.StorageEndpoint;
 import org.apache.crail.storage.StorageFuture;
+import org.apache.crail.storage.StorageSegment;
 import org.apache.crail.utils.CrailImmediateOperation;
 import org.apache.crail.utils.CrailUtils;
 import org.slf4j.Logger;
@@ -52,6 +54,10 @@ public class CoreOutputStream extends CoreStream implements CrailOutputStream {
 	}
 	
 	final public Future<CrailResult> write(CrailBuffer dataBuf) throws Exception {
+		return write(dataBuf, null);
+	}
+	
+	final public Future<CrailResult> write(CrailBuffer dataBuf, long[] checksums) throws Exception {
 		if (!open) {
 			throw new IOException("Stream closed, cannot write");
 		}
@@ -60,7 +66,7 @@ public class CoreOutputStream extends CoreStream implements CrailOutputStream {
 		}
 		
 		inFlight.incrementAndGet();
-		CoreDataOperation future = dataOperation(dataBuf);
+		CoreDataOperation future = dataOperation(dataBuf, checksums);
 		if (position() < writeHint){
 			prefetchMetadata();
 		} 	
@@ -93,6 +99,7 @@ public class CoreOutputStream extends CoreStream implements CrailOutputStream {
 		
 		sync().get();
 		updateIOStats();
+		invalidateMetadata();
 		node.closeOutputStream(this);
 		open = false;
 		if (CrailConstants.DEBUG){
@@ -107,8 +114,20 @@ public class CoreOutputStream extends CoreStream implements CrailOutputStream {
 		return dataFuture;		
 	}	
 	
+	StorageFuture triggerv(StorageEndpoint endpoint, ArrayList<StorageSegment> segments) throws Exception {
+		return endpoint.writev(segments);
+	}
+	
+	StorageFuture triggerChecksums(StorageEndpoint endpoint, long[] checksums, int index, int count, BlockInfo block, long offset) throws Exception {
+		return endpoint.writeChecksums(checksums, index, count, block, offset);
+	}
+	
 	synchronized void update(long newCapacity) {
 		inFlight.decrementAndGet();
 		setCapacity(newCapacity);
 	}
+	
+	long rangeLimit() {
+		return writeHint;
+	}
 }
@@ -19,8 +19,11 @@
 package org.apache.crail.core;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
+import java.util.Map;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 
@@ -32,8 +35,10 @@ import org.apache.crail.rpc.RpcConnection;
 import org.apache.crail.rpc.RpcErrors;
 import org.apache.crail.rpc.RpcFuture;
 import org.apache.crail.rpc.RpcGetBlock;
+import org.apache.crail.rpc.RpcGetBlockRange;
 import org.apache.crail.storage.StorageEndpoint;
 import org.apache.crail.storage.StorageFuture;
+import org.apache.crail.storage.StorageSegment;
 import org.apache.crail.utils.BufferCheckpoint;
 import org.apache.crail.utils.CrailUtils;
 import org.apache.crail.utils.EndpointCache;
@@ -58,10 +63,19 @@ public abstract class CoreStream {
 	private long streamId;
 	private CoreIOStatistics ioStats;
 	private HashMap<Integer, CoreSubOperation> blockMap;
-	private LinkedList<RpcFuture<RpcGetBlock>> pendingBlocks;
+	private LinkedList<RpcFuture<? extends RpcGetBlock>> pendingBlocks;
+	private LinkedList<CoreSubOperation> pendingRange;
+	private LinkedHashMap<StorageEndpoint, ArrayList<CoreSubOperation>> pendingTransfers;
+	//checksums of the chunks covered by the current data operation, starting with the chunk of the operation offset
+	private long[] checksums;
+	private long checksumChunk;
 
 	abstract StorageFuture trigger(StorageEndpoint endpoint, CoreSubOperation opDesc, CrailBuffer buffer, BlockInfo block) throws Exception;
+	abstract StorageFuture triggerv(StorageEndpoint endpoint, ArrayList<StorageSegment> segments) throws Exception;
+	abstract StorageFuture triggerChecksums(StorageEndpoint endpoint, long[] checksums, int index, int count, BlockInfo block, long offset) throws Exception;
 	abstract void update(long newCapacity);
+	//file offset up to which block mappings are worth fetching ahead
+	abstract long rangeLimit();
 
 	CoreStream(CoreNode node, long streamId, long fileOffset) throws Exception {
 		this.node = node;
@@ -79,13 +93,32 @@ public abstract class CoreStream {
 		this.ioStats = new CoreIOStatistics("core");
 
 		this.blockMap = new HashMap<Integer, CoreSubOperation>();
-		this.pendingBlocks = new LinkedList<RpcFuture<RpcGetBlock>>();
+		this.pendingBlocks = new LinkedList<RpcFuture<? extends RpcGetBlock>>();
+		this.pendingRange = new LinkedList<CoreSubOperation>();
+		this.pendingTransfers = new LinkedHashMap<StorageEndpoint, ArrayList<CoreSubOperation>>();
+		this.checksums = null;
+		this.checksumChunk = 0;
+	}
+
+	//data operation that also transfers the checksums of the chunks it covers, on storage classes keeping checksums
+	final CoreDataOperation dataOperation(CrailBuffer dataBuf, long[] checksums) throws Exception {
+		this.checksums = checksums;
+		this.checksumChunk = position / CrailConstants.CHECKSUM_CHUNK_SIZE;
+		try {
+			return dataOperation(dataBuf);
+		} finally {
+			this.checksums = null;
+		}
 	}
 
 	final CoreDataOperation dataOperation(CrailBuffer dataBuf) throws Exception {
 		blockMap.clear();
 		pendingBlocks.clear();
+		pendingRange.clear();
+		pendingTransfers.clear();
 		CoreDataOperation multiOperation = new CoreDataOperation(this, dataBuf);
+		long rangeStart = 0;
+		long rangeEnd = 0;
 
 		//compute off, len for the fragments, start transfer or start RPC if block info is missing
 		while(multiOperation.remaining() > 0){
@@ -95,54 +128,50 @@ public abstract class CoreStream {
 //			LOG.info("OpDesc: " + opDesc.toString());
 			ioStats.incTotalOps((long) opLen);
 
-			if (blockCache.containsKey(subOperation.key())){
-				BlockInfo block = blockCache.get(subOperation.key());
-				StorageFuture subFuture = this.prepareAndTrigger(subOperation, dataBuf, block);
-				multiOperation.add(subFuture);
+			BlockInfo cachedBlock = blockCache.get(subOperation.key());
+			RpcFuture<? extends RpcGetBlock> prefetchedBlock = cachedBlock == null ? nextBlockCache.remove(subOperation.key()) : null;
+			if (cachedBlock != null){
+				prepareTransfer(subOperation, cachedBlock);
 				this.ioStats.incCachedOps();
-			} else if (nextBlockCache.containsKey(subOperation.key())){
-				RpcFuture<RpcGetBlock> rpcFuture = nextBlockCache.get(subOperation.key());
-				blockMap.put(rpcFuture.getTicket(), subOperation);
-				pendingBlocks.add(rpcFuture);
+			} else if (prefetchedBlock != null){
+				blockMap.put(prefetchedBlock.getTicket(), subOperation);
+				pendingBlocks.add(prefetchedBlock);
+			} else if (subOperation.key() >= rangeStart && subOperation.key() < rangeEnd){
+				//mapping is part of a block range requested earlier in this operation
+				pendingRange.add(subOperation);
 			} else {
-				this.syncedCapacity = fileInfo.getCapacity();
-				RpcFuture<RpcGetBlock> rpcFuture = namenodeClientRpc.getBlock(fileInfo.getFd(), fileInfo.getToken(), position, syncedCapacity);
+				int count = blockRange(Math.max(position + multiOperation.remaining(), rangeLimit()));
+				RpcFuture<? extends RpcGetBlock> rpcFuture = getBlocks(count);
 				blockMap.put(rpcFuture.getTicket(), subOperation);
 				pendingBlocks.add(rpcFuture);
+				rangeStart = subOperation.key();
+				rangeEnd = rangeStart + count*CrailConstants.BLOCK_SIZE;
 			}
 
 			position += opLen;
 			multiOperation.incProcessedLen(opLen);
 		}
+		triggerTransfers(multiOperation, dataBuf);
 
 		//wait for RPC results and start reads for those blocks as well
-		for (RpcFuture<RpcGetBlock> rpcFuture = pendingBlocks.poll(); rpcFuture != null; rpcFuture = pendingBlocks.poll()){
-			if (!rpcFuture.isDone()){
-				this.ioStats.incBlockingOps();
-				if (rpcFuture.isPrefetched()){
-					this.ioStats.incPrefetchedBlockingOps();
-				}
-			} else {
-				this.ioStats.incNonblockingOps();
-				if (rpcFuture.isPrefetched()){
-					this.ioStats.incPrefetchedNonblockingOps();
-				}
-			}
+		triggerPending(multiOperation, dataBuf);
 
-			RpcGetBlock getBlockRes = rpcFuture.get(CrailConstants.RPC_TIMEOUT, TimeUnit.MILLISECONDS);
-			if (!rpcFuture.isDone()){
-				throw new IOException("rpc timeout ");
-			}
-			if (getBlockRes.getError() != RpcErrors.ERR_OK) {
-				LOG.info("inputStream: " + RpcErrors.messages[getBlockRes.getError()]);
-				throw new IOException(RpcErrors.messages[getBlockRes.getError()]);
+		//operations covered by a block range, the range may have ended early in which case we fall back to getBlock,
+		//all missing mappings are requested before waiting so that transfers to different datanodes overlap
+		for (CoreSubOperation subOperation = pendingRange.poll(); subOperation != null; subOperation = pendingRange.poll()){
+			BlockInfo block = blockCache.get(subOperation.key());
+			if (block == null){
+				this.syncedCapacity = fileInfo.getCapacity();
+				RpcFuture<RpcGetBlock> rpcFuture = namenodeClientRpc.getBlock(fileInfo.getFd(), fileInfo.getToken(), fileInfo.getVersion(), subOperation.getBlockStart(), syncedCapacity);
+				blockMap.put(rpcFuture.getTicket(), subOperation);
+				pendingBlocks.add(rpcFuture);
+			} else {
+				this.ioStats.incCachedOps();
+				prepareTransfer(subOperation, block);
 			}
-			BlockInfo block = getBlockRes.getBlockInfo();
-			CoreSubOperation subOperation = blockMap.get(rpcFuture.getTicket());
-			StorageFuture subFuture = prepareAndTrigger(subOperation, dataBuf, block);
-			multiOperation.add(subFuture);
-			blockCache.put(subOperation.key(), block);
 		}
+		triggerTransfers(multiOperation, dataBuf);
+		triggerPending(multiOperation, dataBuf);
 
 		if (!multiOperation.isProcessed()){
 			throw new IOException("Internal error, processed data != operation length");
@@ -161,13 +190,17 @@ public abstract class CoreStream {
 		if (nextBlockCache.containsKey(key)){
 			return;
 		}
-		this.syncedCapacity = fileInfo.getCapacity();
-		RpcFuture<RpcGetBlock> nextBlock = namenodeClientRpc.getBlock(fileInfo.getFd(), fileInfo.getToken(), position, syncedCapacity);
+		RpcFuture<? extends RpcGetBlock> nextBlock = getBlocks(blockRange(rangeLimit()));
 		nextBlock.setPrefetched(true);
 		nextBlockCache.put(key, nextBlock);
 		this.ioStats.incPrefetchedOps();
 	}
 
+	//drops the cached and prefetched blocks of the file, other open streams of the file refetch on demand
+	void invalidateMetadata() {
+		fs.invalidateBlockCache(fileInfo.getFd());
+	}
+
 	void seek(long pos) throws IOException {
 		long newOffset = Math.min(fileInfo.getCapacity(), Math.max(0, pos));
 		if (newOffset == pos){
@@ -219,18 +252,187 @@ public abstract class CoreStream {
 		fileInfo.setCapacity(currentCapacity);
 	}
 
+	//number of block mappings to request for the block at the current position
+	private int blockRange(long limit){
+		long blockStart = CrailUtils.blockStartAddress(position);
+		long blocks = (limit - blockStart + CrailConstants.BLOCK_SIZE - 1) / CrailConstants.BLOCK_SIZE;
+		int maxBlocks = Math.min(CrailConstants.BLOCK_RANGE, RpcGetBlockRange.MAX_BLOCKS);
+		return (int) Math.max(1, Math.min(blocks, maxBlocks));
+	}
+
+	private RpcFuture<? extends RpcGetBlock> getBlocks(int count) throws IOException {
+		this.syncedCapacity = fileInfo.getCapacity();
+		if (count > 1){
+			return namenodeClientRpc.getBlockRange(fileInfo.getFd(), fileInfo.getToken(), fileInfo.getVersion(), position, syncedCapacity, count);
+		} else {
+			return namenodeClientRpc.getBlock(fileInfo.getFd(), fileInfo.getToken(), fileInfo.getVersion(), position, syncedCapacity);
+		}
+	}
+
+	//the first block of a range is handled by the caller, the others go to the block cache
+	private void cacheRange(long key, RpcGetBlock getBlockRes){
+		if (getBlockRes instanceof RpcGetBlockRange){
+			RpcGetBlockRange range = (RpcGetBlockRange) getBlockRes;
+			for (int i = 1; i < range.getBlockCount(); i++){
+				blockCache.put(key + i*CrailConstants.BLOCK_SIZE, range.getBlockInfo(i));
+			}
+		}
+	}
+
+	//waits for the pending block RPCs and starts the transfers of the corresponding sub-operations
+	private void triggerPending(CoreDataOperation multiOperation, CrailBuffer dataBuf) throws Exception {
+		for (RpcFuture<? extends RpcGetBlock> rpcFuture = pendingBlocks.poll(); rpcFuture != null; rpcFuture = pendingBlocks.poll()){
+			if (!rpcFuture.isDone()){
+				this.ioStats.incBlockingOps();
+				if (rpcFuture.isPrefetched()){
+					this.ioStats.incPrefetchedBlockingOps();
+				}
+			} else {
+				this.ioStats.incNonblockingOps();
+				if (rpcFuture.isPrefetched()){
+					this.ioStats.incPrefetchedNonblockingOps();
+				}
+			}
+
+			RpcGetBlock getBlockRes = rpcFuture.get(CrailConstants.RPC_TIMEOUT, TimeUnit.MILLISECONDS);
+			if (!rpcFuture.isDone()){
+				throw new IOException("rpc timeout ");
+			}
+			if (getBlockRes.getError() == RpcErrors.ERR_FILE_CHANGED){
+				fs.invalidateLookup(node.getPath(), fileInfo.getFd());
+			}
+			if (getBlockRes.getError() != RpcErrors.ERR_OK) {
+				LOG.info("inputStream: " + RpcErrors.messages[getBlockRes.getError()]);
+				throw new IOException(RpcErrors.messages[getBlockRes.getError()]);
+			}
+			BlockInfo block = getBlockRes.getBlockInfo();
+			CoreSubOperation subOperation = blockMap.get(rpcFuture.getTicket());
+			prepareTransfer(subOperation, block);
+			blockCache.put(subOperation.key(), block);
+			cacheRange(subOperation.key(), getBlockRes);
+		}
+		triggerTransfers(multiOperation, dataBuf);
+	}
+
+	//queues a sub-operation whose block is known, sub-operations are started per endpoint by triggerTransfers
+	private void prepareTransfer(CoreSubOperation opDesc, BlockInfo block) throws Exception {
+		try {
+			StorageEndpoint endpoint = endpointCache.getDataEndpoint(block.getDnInfo());
+			opDesc.setBlock(block);
+			ArrayList<CoreSubOperation> transfers = pendingTransfers.get(endpoint);
+			if (transfers == null){
+				transfers = new ArrayList<CoreSubOperation>();
+				pendingTransfers.put(endpoint, transfers);
+			}
+			transfers.add(opDesc);
+		} catch(IOException e){
+			LOG.info("ERROR: failed data operation");
+			e.printStackTrace();
+			throw e;
+		}
+	}
+
+	//starts the queued sub-operations, several sub-operations for the same endpoint are issued as one vectored operation
+	private void triggerTransfers(CoreDataOperation multiOperation, CrailBuffer dataBuf) throws Exception {
+		for (Map.Entry<StorageEndpoint, ArrayList<CoreSubOperation>> entry : pendingTransfers.entrySet()){
+			StorageEndpoint endpoint = entry.getKey();
+			ArrayList<CoreSubOperation> transfers = entry.getValue();
+			if (transfers.size() == 1){
+				CoreSubOperation opDesc = transfers.get(0);
+				multiOperation.add(prepareAndTrigger(endpoint, opDesc, dataBuf, opDesc.getBlock()));
+			} else {
+				try {
+					ArrayList<StorageSegment> segments = new ArrayList<StorageSegment>(transfers.size());
+					for (CoreSubOperation opDesc : transfers){
+						prepareBuffer(opDesc, dataBuf);
+						segments.add(new StorageSegment(dataBuf, opDesc.getBlock(), opDesc.getBlockOffset()));
+						incStats(endpoint.isLocal());
+					}
+					multiOperation.add(triggerv(endpoint, segments));
+				} catch(IOException e){
+					LOG.info("ERROR: failed data operation");
+					e.printStackTrace();
+					throw e;
+				}
+			}
+			if (checksums != null){
+				for (CoreSubOperation opDesc : transfers){
+					checksumOperation(multiOperation, endpoint, opDesc);
+				}
+			}
+		}
+		pendingTransfers.clear();
+	}
+
+	//transfers the checksums of the chunks covered by a sub-operation, issued after the data so that the storage server
+	//sees the checksums after the data they belong to
+	private void checksumOperation(CoreDataOperation multiOperation, StorageEndpoint endpoint, CoreSubOperation opDesc) throws Exception {
+		BlockInfo block = opDesc.getBlock();
+		if (!CrailUtils.isChecksumEnabled(block.getDnInfo().getStorageClass())){
+			return;
+		}
+		long fileOffset = opDesc.getBlockStart() + opDesc.getBlockOffset();
+		long firstChunk = fileOffset / CrailConstants.CHECKSUM_CHUNK_SIZE;
+		long lastChunk = (fileOffset + opDesc.getLen() - 1) / CrailConstants.CHECKSUM_CHUNK_SIZE;
+		long blockOffset = firstChunk*CrailConstants.CHECKSUM_CHUNK_SIZE - opDesc.getBlockStart();
+		StorageFuture future = triggerChecksums(endpoint, checksums, (int) (firstChunk - checksumChunk), (int) (lastChunk - firstChunk + 1), block, blockOffset);
+		if (future != null){
+			multiOperation.add(future);
+		}
+	}
+
+	//stored checksums of all the chunks of the file, null if the blocks of the file do not have checksums
+	final long[] checksums() throws Exception {
+		long capacity = fileInfo.getCapacity();
+		int chunks = (int) ((capacity + CrailConstants.CHECKSUM_CHUNK_SIZE - 1) / CrailConstants.CHECKSUM_CHUNK_SIZE);
+		int chunksPerBlock = (int) (CrailConstants.BLOCK_SIZE / CrailConstants.CHECKSUM_CHUNK_SIZE);
+		long[] fileChecksums = new long[chunks];
+		LinkedList<StorageFuture> futures = new LinkedList<StorageFuture>();
+		for (long blockStart = 0; blockStart < capacity; blockStart += CrailConstants.BLOCK_SIZE){
+			BlockInfo block = blockCache.get(blockStart);
+			if (block == null){
+				RpcGetBlock getBlockRes = namenodeClientRpc.getBlock(fileInfo.getFd(), fileInfo.getToken(), fileInfo.getVersion(), blockStart, capacity).get(CrailConstants.RPC_TIMEOUT, TimeUnit.MILLISECONDS);
+				if (getBlockRes.getError() == RpcErrors.ERR_FILE_CHANGED){
+					fs.invalidateLookup(node.getPath(), fileInfo.getFd());
+				}
+				if (getBlockRes.getError() != RpcErrors.ERR_OK) {
+					throw new IOException(RpcErrors.messages[getBlockRes.getError()]);
+				}
+				block = getBlockRes.getBlockInfo();
+				blockCache.put(blockStart, block);
+			}
+			if (!CrailUtils.isChecksumEnabled(block.getDnInfo().getStorageClass())){
+				return null;
+			}
+			int index = (int) (blockStart / CrailConstants.CHECKSUM_CHUNK_SIZE);
+			StorageEndpoint endpoint = endpointCache.getDataEndpoint(block.getDnInfo());
+			StorageFuture future = endpoint.readChecksums(fileChecksums, index, Math.min(chunksPerBlock, chunks - index), block, 0);
+			if (future == null){
+				return null;
+			}
+			futures.add(future);
+		}
+		for (StorageFuture future : futures){
+			future.get(CrailConstants.DATA_TIMEOUT, TimeUnit.MILLISECONDS);
+		}
+		return fileChecksums;
+	}
+
 	private long blockRemaining(){
 		long blockOffset = position % CrailConstants.BLOCK_SIZE;
 		long blockRemaining = CrailConstants.BLOCK_SIZE - blockOffset;
 		return blockRemaining;
 	}
 
-	private StorageFuture prepareAndTrigger(CoreSubOperation opDesc, CrailBuffer dataBuf, BlockInfo block) throws Exception {
+	private void prepareBuffer(CoreSubOperation opDesc, CrailBuffer dataBuf){
+		dataBuf.clear();
+		dataBuf.position(opDesc.getBufferPosition());
+		dataBuf.limit(dataBuf.position() + opDesc.getLen());
+	}
+
+	private StorageFuture prepareAndTrigger(StorageEndpoint endpoint, CoreSubOperation opDesc, CrailBuffer dataBuf, BlockInfo block) throws Exception {
 		try {
-			StorageEndpoint endpoint = endpointCache.getDataEndpoint(block.getDnInfo());
-			dataBuf.clear();
-			dataBuf.position(opDesc.getBufferPosition());
-			dataBuf.limit(dataBuf.position() + opDesc.getLen());
+			prepareBuffer(opDesc, dataBuf);
 			StorageFuture subFuture = trigger(endpoint, opDesc, dataBuf, block);
 			incStats(endpoint.isLocal());
 			return subFuture;
@@ -21,6 +21,7 @@ package org.apache.crail.core;
 import java.io.IOException;
 
 import org.apache.crail.conf.CrailConstants;
+import org.apache.crail.metadata.BlockInfo;
 import org.apache.crail.utils.CrailUtils;
 
 public class CoreSubOperation {
@@ -32,6 +33,7 @@ public class CoreSubOperation {
 	private long blockOffset;
 	private long blockStart;
 	private long key;
+	private BlockInfo block;
 	
 	public CoreSubOperation(long fd, long fileOffset, int bufferPosition, int writeLen) throws IOException {
 		this.fd = fd;
@@ -70,6 +72,14 @@ public class CoreSubOperation {
 		return "fd " + fd + ", fileOffset " + fileOffset + ", blockOffset " + blockOffset + ", len " + len + ", blockStart " + blockStart;
 	}
 
+	public BlockInfo getBlock() {
+		return block;
+	}
+
+	void setBlock(BlockInfo block) {
+		this.block = block;
+	}
+
 	public long key(){
 		return this.key;
 	}
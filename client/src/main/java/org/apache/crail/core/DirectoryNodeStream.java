@@ -0,0 +1,167 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.apache.crail.core;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.NoSuchElementException;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.crail.CrailNode;
+import org.apache.crail.conf.CrailConstants;
+import org.apache.crail.metadata.BlockInfo;
+import org.apache.crail.metadata.FileInfo;
+import org.apache.crail.metadata.FileName;
+import org.apache.crail.rpc.RpcErrors;
+import org.apache.crail.rpc.RpcFuture;
+import org.apache.crail.rpc.RpcGetChildren;
+import org.apache.crail.utils.CrailUtils;
+import org.slf4j.Logger;
+
+/*
+ * Lists the nodes of a directory together with their attributes. The names come from the 
+ * directory records, the attributes are fetched from the namenode in pages of children, 
+ * several pages are in flight at the same time. Children the namenode does not return, 
+ * e.g., because they were removed or live on a different namenode, are looked up one by one.
+ */
+public class DirectoryNodeStream implements Iterator<CrailNode> {
+	private static final Logger LOG = CrailUtils.getLogger();
+	private static final int PAGE_WINDOW = 8;
+	
+	private CoreDataStore fs;
+	private DirectoryInputStream records;
+	private FileName directory;
+	private boolean blocks;
+	private int pageSize;
+	private LinkedList<Page> pages;
+	private CrailNode currentNode;
+	
+	public DirectoryNodeStream(CoreDataStore fs, DirectoryInputStream records, FileName directory, boolean blocks) {
+		this.fs = fs;
+		this.records = records;
+		this.directory = directory;
+		this.blocks = blocks;
+		this.pageSize = blocks ? RpcGetChildren.MAX_CHILDREN_BLOCKS : RpcGetChildren.MAX_CHILDREN;
+		this.pages = new LinkedList<Page>();
+		this.currentNode = null;
+	}
+	
+	public boolean hasNext() {
+		try {
+			while (currentNode == null){
+				issuePages();
+				Page page = pages.peek();
+				if (page == null){
+					return false;
+				}
+				if (page.hasNext()){
+					currentNode = page.next();
+				} else {
+					pages.poll();
+				}
+			}
+			return true;
+		} catch(Exception e){
+			LOG.info("error when listing directory " + e.getMessage());
+			throw new RuntimeException(e);
+		}
+	}
+	
+	public CrailNode next() {
+		if (!hasNext()){
+			throw new NoSuchElementException();
+		}
+		CrailNode node = currentNode;
+		currentNode = null;
+		return node;
+	}
+	
+	public void close() throws IOException {
+		pages.clear();
+		records.close();
+	}
+	
+	private void issuePages() throws Exception {
+		while (pages.size() < PAGE_WINDOW && records.hasRecord()){
+			Page page = new Page(pageSize);
+			while (page.count < pageSize && records.hasRecord()){
+				DirectoryRecord record = records.nextRecord();
+				if (record.isValid()){
+					page.add(record);
+				}
+			}
+			if (page.count > 0){
+				page.future = fs.getNamenodeClientRpc().getChildren(directory, page.components, page.count, blocks);
+				pages.add(page);
+			}
+		}
+	}
+	
+	private class Page {
+		private String[] paths;
+		private int[] components;
+		private int count;
+		private int consumed;
+		private RpcFuture<RpcGetChildren> future;
+		private RpcGetChildren children;
+		
+		public Page(int size){
+			this.paths = new String[size];
+			this.components = new int[size];
+			this.count = 0;
+			this.consumed = 0;
+		}
+		
+		public void add(DirectoryRecord record){
+			paths[count] = CrailUtils.combinePath(record.getParent(), record.getFile());
+			components[count] = record.getFile().hashCode();
+			count++;
+		}
+		
+		public boolean hasNext(){
+			return consumed < count;
+		}
+		
+		public CrailNode next() throws Exception {
+			if (children == null){
+				children = future.get(CrailConstants.RPC_TIMEOUT, TimeUnit.MILLISECONDS);
+				if (children.getError() != RpcErrors.ERR_OK){
+					LOG.info("listNodes: " + RpcErrors.messages[children.getError()]);
+				}
+			}
+			int index = consumed++;
+			String path = paths[index];
+			
+			//the page may have ended early or the child is gone, either way fall back to a lookup
+			if (children.getError() != RpcErrors.ERR_OK || index >= children.getChildCount() || children.getChild(index).getFd() < 0){
+				return fs.lookup(path).get();
+			}
+			
+			FileInfo fileInfo = new FileInfo();
+			fileInfo.setFileInfo(children.getChild(index));
+			if (blocks){
+				BlockInfo fileBlock = children.getChildBlock(index);
+				fs.getBlockCache(fileInfo.getFd()).put(CoreSubOperation.createKey(fileInfo.getFd(), 0), fileBlock);
+			}
+			return CoreNode.create(fs, fileInfo, path);
+		}
+	}
+}
@@ -54,6 +54,15 @@ public class BlockInfo {
 		this.lkey = blockInfo.getLkey();
 		
 	}
+	
+	//sets this block to the slice of the given region starting at offset
+	public void setBlockInfo(BlockInfo region, long offset, int length) {
+		this.dnInfo.setDataNodeInfo(region.getDnInfo());
+		this.lba = region.getLba() + offset;
+		this.addr = region.getAddr() + offset;
+		this.length = length;
+		this.lkey = region.getLkey();
+	}
 
 	public int write(ByteBuffer buffer){
 		this.getDnInfo().write(buffer);
@@ -58,7 +58,7 @@ public class DataNodeInfo {
 		this.port = port;
 	}	
 	
-	void setDataNodeInfo(DataNodeInfo info) {
+	public void setDataNodeInfo(DataNodeInfo info) {
 		this.storageType = info.getStorageType();
 		this.storageClass = info.getStorageClass();
 		this.locationClass = info.getLocationClass();
@@ -38,6 +38,8 @@ public class FileInfo {
 	private long dirOffset;
 	private long token;
 	private long modificationTime;
+	//not part of the serialized file info, only shipped by lookups, 0 if unknown
+	private long version;
 	
 	public FileInfo(){
 		this(-1, CrailNodeType.DATAFILE, true);
@@ -50,6 +52,7 @@ public class FileInfo {
 		this.capacity = new AtomicLong(0);
 		this.token = 0;
 		this.modificationTime = 0;
+		this.version = 0;
 	}
 	
 	public void setFileInfo(FileInfo fileInfo){
@@ -60,6 +63,7 @@ public class FileInfo {
 		this.capacity.set(fileInfo.getCapacity());
 		this.token = fileInfo.getToken();
 		this.modificationTime = fileInfo.getModificationTime();
+		this.version = fileInfo.getVersion();
 	}
 	
 	public int write(ByteBuffer buffer, boolean shipToken){
@@ -84,6 +88,7 @@ public class FileInfo {
 		dirOffset = buffer.getLong();
 		token = buffer.getLong();
 		modificationTime = buffer.getLong();
+		version = 0;
 	}
 	
 	public long getCapacity() {
@@ -131,6 +136,15 @@ public class FileInfo {
 		this.modificationTime = modificationTime;
 	}
 
+	//changes whenever the node is opened for writing or deleted
+	public long getVersion() {
+		return version;
+	}
+
+	public void setVersion(long version) {
+		this.version = version;
+	}
+
 	public long getDirOffset() {
 		return dirOffset;
 	}
@@ -28,7 +28,7 @@ import org.apache.crail.metadata.FileName;
 
 public interface RpcConnection {
 	public abstract RpcFuture<RpcCreateFile> createFile(
-			FileName filename, CrailNodeType type, int storageClass, int locationClass, boolean enumerable) throws IOException;
+			FileName filename, CrailNodeType type, int storageClass, int locationClass, boolean enumerable, int stripeWidth) throws IOException;
 
 	public abstract RpcFuture<RpcGetFile> getFile(FileName filename,
 			boolean writeable) throws IOException;
@@ -43,11 +43,20 @@ public interface RpcConnection {
 			FileName srcHash, FileName dstHash) throws IOException;
 
 	public abstract RpcFuture<RpcGetBlock> getBlock(long fd,
-			long token, long position, long capacity) throws IOException;
+			long token, long version, long position, long capacity) throws IOException;
+
+	public abstract RpcFuture<RpcGetBlockRange> getBlockRange(long fd,
+			long token, long version, long position, long capacity, int count) throws IOException;
 
 	public abstract RpcFuture<RpcGetLocation> getLocation(
 			FileName fileName, long position) throws IOException;
 
+	public abstract RpcFuture<RpcGetLocationRange> getLocationRange(
+			FileName fileName, long position, long length) throws IOException;
+
+	public abstract RpcFuture<RpcGetChildren> getChildren(
+			FileName directory, int[] components, int count, boolean blocks) throws IOException;
+
 	public abstract RpcFuture<RpcVoid> setBlock(BlockInfo blockInfo)
 			throws Exception;
 
@@ -60,6 +69,12 @@ public interface RpcConnection {
 	public abstract RpcFuture<RpcPing> pingNameNode()
 			throws Exception;
 	
+	//requests issued by the calling thread are held back until flushRequests and sent together,
+	//connections that do not batch requests send them right away, waiting on a deferred request sends it
+	public abstract void deferRequests() throws IOException;
+
+	public abstract void flushRequests() throws IOException;
+	
 	public abstract void close() throws Exception;
 	
 	@SuppressWarnings("unchecked")
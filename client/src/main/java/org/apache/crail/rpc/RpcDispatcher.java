@@ -47,11 +47,11 @@ public class RpcDispatcher implements RpcConnection {
 
 	@Override
 	public RpcFuture<RpcCreateFile> createFile(FileName filename,
-			CrailNodeType type, int storageClass, int locationClass, boolean enumerable)
+			CrailNodeType type, int storageClass, int locationClass, boolean enumerable, int stripeWidth)
 			throws IOException {
 		int index = computeIndex(filename.getComponent(0));
 //		LOG.info("issuing create file for filename [" + filename.toString() + "], on index " + index);
-		return connections[index].createFile(filename, type, storageClass, locationClass, enumerable);
+		return connections[index].createFile(filename, type, storageClass, locationClass, enumerable, stripeWidth);
 	}
 
 	@Override
@@ -92,11 +92,18 @@ public class RpcDispatcher implements RpcConnection {
 	}
 
 	@Override
-	public RpcFuture<RpcGetBlock> getBlock(long fd, long token, long position,
+	public RpcFuture<RpcGetBlock> getBlock(long fd, long token, long version, long position,
 			long capacity) throws IOException {
 		int index = computeIndex(fd);
 //		LOG.info("issuing get block for fd [" + fd + "], on index " + index);		
-		return connections[index].getBlock(fd, token, position, capacity);
+		return connections[index].getBlock(fd, token, version, position, capacity);
+	}
+
+	@Override
+	public RpcFuture<RpcGetBlockRange> getBlockRange(long fd, long token, long version, long position,
+			long capacity, int count) throws IOException {
+		int index = computeIndex(fd);
+		return connections[index].getBlockRange(fd, token, version, position, capacity, count);
 	}
 
 	@Override
@@ -107,6 +114,20 @@ public class RpcDispatcher implements RpcConnection {
 		return connections[index].getLocation(fileName, position);
 	}
 
+	@Override
+	public RpcFuture<RpcGetLocationRange> getLocationRange(FileName fileName,
+			long position, long length) throws IOException {
+		int index = computeIndex(fileName.getComponent(0));
+		return connections[index].getLocationRange(fileName, position, length);
+	}
+
+	@Override
+	public RpcFuture<RpcGetChildren> getChildren(FileName directory,
+			int[] components, int count, boolean blocks) throws IOException {
+		int index = computeIndex(directory.getComponent(0));
+		return connections[index].getChildren(directory, components, count, blocks);
+	}
+
 	@Override
 	public RpcFuture<RpcVoid> setBlock(BlockInfo blockInfo) throws Exception {
 //		LOG.info("issuing set block on index " + setBlockIndex);
@@ -134,6 +155,20 @@ public class RpcDispatcher implements RpcConnection {
 		return connections[0].pingNameNode();
 	}
 
+	@Override
+	public void deferRequests() throws IOException {
+		for (RpcConnection connection : connections){
+			connection.deferRequests();
+		}
+	}
+
+	@Override
+	public void flushRequests() throws IOException {
+		for (RpcConnection connection : connections){
+			connection.flushRequests();
+		}
+	}
+
 	@Override
 	public void close() throws Exception {
 		for (RpcConnection connection : connections){
@@ -24,4 +24,5 @@ import org.apache.crail.metadata.FileInfo;
 public interface RpcGetFile extends RpcResponse {
 	public FileInfo getFile();
 	public BlockInfo getFileBlock();
+	public long getLease();
 }
@@ -19,6 +19,7 @@
 package org.apache.crail.storage;
 
 import java.io.IOException;
+import java.util.List;
 
 import org.apache.crail.CrailBuffer;
 import org.apache.crail.metadata.BlockInfo;
@@ -31,6 +32,34 @@ public interface StorageEndpoint{
 	public abstract StorageFuture read(CrailBuffer buffer, BlockInfo remoteMr, long remoteOffset) throws IOException,
 			InterruptedException;
 
+	//vectored operations on segments located on this endpoint, the segments are consumed before the call returns,
+	//endpoints able to carry several segments in a single message override these
+	public default StorageFuture writev(List<StorageSegment> segments) throws IOException, InterruptedException {
+		StorageMultiFuture future = new StorageMultiFuture();
+		for (StorageSegment segment : segments){
+			future.add(write(segment.prepare(), segment.getBlock(), segment.getOffset()));
+		}
+		return future;
+	}
+
+	public default StorageFuture readv(List<StorageSegment> segments) throws IOException, InterruptedException {
+		StorageMultiFuture future = new StorageMultiFuture();
+		for (StorageSegment segment : segments){
+			future.add(read(segment.prepare(), segment.getBlock(), segment.getOffset()));
+		}
+		return future;
+	}
+
+	//checksums[index..index+count) are the checksums of the chunks starting at the given chunk aligned offset of the block,
+	//see CrailChecksum.stored for the format, 0 means the chunk has none, endpoints not storing checksums return null
+	public default StorageFuture writeChecksums(long[] checksums, int index, int count, BlockInfo block, long offset) throws IOException, InterruptedException {
+		return null;
+	}
+
+	public default StorageFuture readChecksums(long[] checksums, int index, int count, BlockInfo block, long offset) throws IOException, InterruptedException {
+		return null;
+	}
+
 	public abstract void close() throws IOException, InterruptedException;
 	
 	public abstract boolean isLocal();
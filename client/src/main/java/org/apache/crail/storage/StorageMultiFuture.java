@@ -0,0 +1,62 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.crail.storage;
+
+import java.util.concurrent.Future;
+
+import org.apache.crail.utils.MultiFuture;
+
+//completes once all the added operations have completed, the length is the sum of their lengths
+public class StorageMultiFuture extends MultiFuture<StorageResult, StorageResult> implements StorageFuture, StorageResult {
+	private int len;
+	private boolean isSynchronous;
+	
+	public StorageMultiFuture(){
+		this.len = 0;
+		this.isSynchronous = false;
+	}
+	
+	@Override
+	public synchronized void add(Future<StorageResult> dataFuture) {
+		super.add(dataFuture);
+		if (((StorageFuture) dataFuture).isSynchronous()){
+			this.isSynchronous = true;
+		}
+	}
+
+	@Override
+	public void aggregate(StorageResult result) {
+		len += result.getLen();
+	}
+
+	@Override
+	public StorageResult getAggregate() {
+		return this;
+	}
+
+	@Override
+	public int getLen() {
+		return len;
+	}
+
+	@Override
+	public boolean isSynchronous() {
+		return isSynchronous;
+	}
+}
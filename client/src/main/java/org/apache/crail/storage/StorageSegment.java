@@ -0,0 +1,71 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.crail.storage;
+
+import org.apache.crail.CrailBuffer;
+import org.apache.crail.metadata.BlockInfo;
+
+/*
+ * One element of a vectored storage operation: the remaining bytes of the buffer at the time the
+ * segment is created are transferred to or from the block at the given offset. The position and limit
+ * are captured, so segments of different ranges can share a buffer.
+ */
+public class StorageSegment {
+	private CrailBuffer buffer;
+	private int bufferPosition;
+	private int length;
+	private BlockInfo block;
+	private long offset;
+	
+	public StorageSegment(CrailBuffer buffer, BlockInfo block, long offset){
+		this.buffer = buffer;
+		this.bufferPosition = buffer.position();
+		this.length = buffer.remaining();
+		this.block = block;
+		this.offset = offset;
+	}
+	
+	//sets the position and the limit of the buffer to the range of this segment
+	public CrailBuffer prepare(){
+		buffer.clear();
+		buffer.position(bufferPosition);
+		buffer.limit(bufferPosition + length);
+		return buffer;
+	}
+
+	public CrailBuffer getBuffer() {
+		return buffer;
+	}
+
+	public int getBufferPosition() {
+		return bufferPosition;
+	}
+
+	public int getLength() {
+		return length;
+	}
+
+	public BlockInfo getBlock() {
+		return block;
+	}
+
+	public long getOffset() {
+		return offset;
+	}
+}
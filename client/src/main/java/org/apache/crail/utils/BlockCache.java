@@ -18,60 +18,333 @@
 
 package org.apache.crail.utils;
 
+import java.util.Arrays;
+import java.util.Iterator;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
+import org.apache.crail.CrailStatistics;
+import org.apache.crail.CrailStatistics.StatisticsProvider;
+import org.apache.crail.conf.CrailConstants;
 import org.apache.crail.metadata.BlockInfo;
 
-public class BlockCache {
+/*
+ * Block metadata cached by the client, bounded in the number of entries per file
+ * and in total. Within a file entries are replaced using CLOCK, once the total budget
+ * is exceeded whole files are evicted, again in CLOCK order. The streams of a file
+ * remove its entries when they close.
+ */
+public class BlockCache implements CrailStatistics.StatisticsProvider {
+	//approximate heap footprint of a cached block, used to translate the byte budget into entries
+	public static final int ENTRY_SIZE = 128;
+	
 	private ConcurrentHashMap<Long, FileBlockCache> blockCache;
+	private AtomicLong entries;
+	private long maxEntries;
+	private int maxFileEntries;
+	private Iterator<FileBlockCache> clockHand;
+	private Object evictionLock;
+	
+	private AtomicLong hits;
+	private AtomicLong misses;
+	private AtomicLong evictions;
+	private AtomicLong fileEvictions;
+	private AtomicLong invalidations;
 	
 	public BlockCache(){
+		this(CrailConstants.BLOCK_CACHE_ENTRIES, CrailConstants.BLOCK_CACHE_SIZE, CrailConstants.BLOCK_CACHE_FILE_ENTRIES);
+	}
+	
+	public BlockCache(long maxEntries, long maxBytes, int maxFileEntries){
 		this.blockCache = new ConcurrentHashMap<Long, FileBlockCache>();  
+		this.entries = new AtomicLong(0);
+		this.maxEntries = Math.max(1, Math.min(maxEntries, maxBytes / ENTRY_SIZE));
+		this.maxFileEntries = (int) Math.max(1, Math.min(maxFileEntries, this.maxEntries));
+		this.clockHand = null;
+		this.evictionLock = new Object();
+		this.hits = new AtomicLong(0);
+		this.misses = new AtomicLong(0);
+		this.evictions = new AtomicLong(0);
+		this.fileEvictions = new AtomicLong(0);
+		this.invalidations = new AtomicLong(0);
+	}
+	
+	@Override
+	public String providerName() {
+		return "cache/block";
+	}
+
+	@Override
+	public String printStatistics() {
+		return "files " + blockCache.size() + ", entries " + entries.get() + ", maxEntries " + maxEntries + ", hits " + hits.get() + ", misses " + misses.get() + 
+				", evictions " + evictions.get() + ", fileEvictions " + fileEvictions.get() + ", invalidations " + invalidations.get();
+	}
+
+	@Override
+	public void mergeStatistics(StatisticsProvider provider) {
+	}
+
+	@Override
+	public void resetStatistics() {
+		this.hits.set(0);
+		this.misses.set(0);
+		this.evictions.set(0);
+		this.fileEvictions.set(0);
+		this.invalidations.set(0);
 	}
 	
 	public FileBlockCache getFileBlockCache(long fd){
 		FileBlockCache fileBlockCache = blockCache.get(fd);
 		if (fileBlockCache == null){
-			fileBlockCache = new FileBlockCache(fd);
+			fileBlockCache = new FileBlockCache(this, fd);
 			FileBlockCache oldFileBlockCache = blockCache.putIfAbsent(fd, fileBlockCache);
 			if (oldFileBlockCache != null){
 				fileBlockCache = oldFileBlockCache;
+			} else if (entries.incrementAndGet() > maxEntries){
+				//an empty file is charged as one entry so that idle files are evicted too
+				evict();
 			}
 		}
 		return fileBlockCache;
 	}
 	
 	public void remove(long fd) {
-		blockCache.remove(fd);
+		FileBlockCache fileBlockCache = blockCache.remove(fd);
+		if (fileBlockCache != null){
+			fileBlockCache.invalidate();
+			invalidations.incrementAndGet();
+		}
 	}	
 	
 	public void purge() {
-		blockCache.clear();
+		for (Long fd : blockCache.keySet()){
+			remove(fd);
+		}
+	}
+	
+	public long size() {
+		return entries.get();
+	}
+	
+	private void evict() {
+		synchronized(evictionLock){
+			int scanned = 0;
+			while(entries.get() > maxEntries){
+				if (clockHand == null || !clockHand.hasNext()){
+					clockHand = blockCache.values().iterator();
+					if (!clockHand.hasNext()){
+						return;
+					}
+				}
+				FileBlockCache fileBlockCache = clockHand.next();
+				if (fileBlockCache.referenced && scanned <= blockCache.size()){
+					fileBlockCache.referenced = false;
+					scanned++;
+				} else if (blockCache.remove(fileBlockCache.getFd(), fileBlockCache)){
+					fileBlockCache.invalidate();
+					fileEvictions.incrementAndGet();
+				}
+			}
+		}
 	}
 
 	public static class FileBlockCache {
+		private static final long EMPTY = -1;
+		
+		private BlockCache parent;
 		private long fd;
-		private ConcurrentHashMap<Long, BlockInfo> fileBlockCache;
+		private long[] keys;
+		private BlockInfo[] values;
+		private boolean[] used;
+		private int size;
+		private int hand;
+		private volatile boolean valid;
+		private volatile boolean referenced;
 		
-		public FileBlockCache(long fd){
+		public FileBlockCache(BlockCache parent, long fd){
+			this.parent = parent;
 			this.fd = fd;
-			this.fileBlockCache = new ConcurrentHashMap<Long, BlockInfo>();
+			this.keys = new long[8];
+			this.values = new BlockInfo[8];
+			this.used = new boolean[8];
+			Arrays.fill(keys, EMPTY);
+			this.size = 0;
+			this.hand = 0;
+			this.valid = true;
+			this.referenced = true;
 		}
 
 		public void put(long blockstart, BlockInfo block){
-			this.fileBlockCache.put(blockstart, block);
+			if (block == null){
+				return;
+			}
+			synchronized(this){
+				if (valid){
+					insert(blockstart, block);
+				}
+			}
+			if (!valid){
+				//this file has been evicted while still in use, continue with a fresh cache
+				parent.getFileBlockCache(fd).put(blockstart, block);
+			} else if (parent.entries.get() > parent.maxEntries){
+				parent.evict();
+			}
 		}
 		
 		public BlockInfo get(long blockstart){
-			return this.fileBlockCache.get(blockstart);
+			if (!valid){
+				return parent.getFileBlockCache(fd).get(blockstart);
+			}
+			BlockInfo block = null;
+			synchronized(this){
+				int slot = find(blockstart);
+				if (slot >= 0){
+					used[slot] = true;
+					block = values[slot];
+				}
+			}
+			if (CrailConstants.STATISTICS){
+				if (block != null){
+					parent.hits.incrementAndGet();
+				} else {
+					parent.misses.incrementAndGet();
+				}
+			}
+			referenced = true;
+			return block;
 		}
 
 		public boolean containsKey(long blockstart) {
-			return this.fileBlockCache.containsKey(blockstart);
+			if (!valid){
+				return parent.getFileBlockCache(fd).containsKey(blockstart);
+			}
+			synchronized(this){
+				return find(blockstart) >= 0;
+			}
 		}
 
 		public long getFd() {
 			return fd;
 		}
+		
+		public synchronized int size() {
+			return size;
+		}
+		
+		private void invalidate() {
+			synchronized(this){
+				if (!valid){
+					return;
+				}
+				valid = false;
+				parent.entries.addAndGet(-size - 1);
+				keys = new long[0];
+				values = new BlockInfo[0];
+				used = new boolean[0];
+				size = 0;
+			}
+		}
+		
+		private int find(long blockstart){
+			if (size == 0){
+				return -1;
+			}
+			int mask = keys.length - 1;
+			for (int slot = hash(blockstart) & mask; keys[slot] != EMPTY; slot = (slot + 1) & mask){
+				if (keys[slot] == blockstart){
+					return slot;
+				}
+			}
+			return -1;
+		}
+		
+		private void insert(long blockstart, BlockInfo block){
+			int slot = find(blockstart);
+			if (slot >= 0){
+				values[slot] = block;
+				used[slot] = true;
+				return;
+			}
+			if (size >= parent.maxFileEntries){
+				evictEntry();
+			} else if ((size + 1)*4 > keys.length*3){
+				resize(keys.length*2);
+			}
+			int mask = keys.length - 1;
+			slot = hash(blockstart) & mask;
+			while(keys[slot] != EMPTY){
+				slot = (slot + 1) & mask;
+			}
+			keys[slot] = blockstart;
+			values[slot] = block;
+			used[slot] = true;
+			size++;
+			parent.entries.incrementAndGet();
+		}
+		
+		private void evictEntry(){
+			int mask = keys.length - 1;
+			while(true){
+				hand = (hand + 1) & mask;
+				if (keys[hand] == EMPTY){
+					continue;
+				}
+				if (used[hand]){
+					used[hand] = false;
+				} else {
+					delete(hand);
+					parent.evictions.incrementAndGet();
+					return;
+				}
+			}
+		}
+		
+		//backward shift deletion keeps the probe sequences intact
+		private void delete(int slot){
+			int mask = keys.length - 1;
+			int next = (slot + 1) & mask;
+			while(keys[next] != EMPTY){
+				int home = hash(keys[next]) & mask;
+				if (((next - home) & mask) >= ((next - slot) & mask)){
+					keys[slot] = keys[next];
+					values[slot] = values[next];
+					used[slot] = used[next];
+					slot = next;
+				}
+				next = (next + 1) & mask;
+			}
+			keys[slot] = EMPTY;
+			values[slot] = null;
+			used[slot] = false;
+			size--;
+			parent.entries.decrementAndGet();
+		}
+		
+		private void resize(int capacity){
+			long[] oldKeys = keys;
+			BlockInfo[] oldValues = values;
+			boolean[] oldUsed = used;
+			keys = new long[capacity];
+			values = new BlockInfo[capacity];
+			used = new boolean[capacity];
+			Arrays.fill(keys, EMPTY);
+			int mask = capacity - 1;
+			for (int i = 0; i < oldKeys.length; i++){
+				if (oldKeys[i] != EMPTY){
+					int slot = hash(oldKeys[i]) & mask;
+					while(keys[slot] != EMPTY){
+						slot = (slot + 1) & mask;
+					}
+					keys[slot] = oldKeys[i];
+					values[slot] = oldValues[i];
+					used[slot] = oldUsed[i];
+				}
+			}
+		}
+		
+		private static int hash(long key){
+			long h = key * 0x9E3779B97F4A7C15L;
+			return (int) (h ^ (h >>> 32));
+		}
 	}
 }
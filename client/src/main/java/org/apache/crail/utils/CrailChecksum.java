@@ -0,0 +1,174 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.crail.utils;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.nio.ByteBuffer;
+import java.util.zip.Checksum;
+
+/*
+ * CRC32C of byte buffers. Uses java.util.zip.CRC32C, which the JIT compiles to the CRC32
+ * instructions of the CPU, when running on Java 9 or later, and a table driven implementation
+ * (slicing by 8) on Java 8. Not thread safe.
+ */
+public abstract class CrailChecksum {
+	//a stored checksum carries the CRC32C in its low 32 bits and this flag, a chunk without a checksum is stored as 0
+	public static final long VALID = 1L << 32;
+	
+	private static final MethodHandle INTRINSIC = lookupIntrinsic();
+	private static final MethodHandle UPDATE = lookupUpdate();
+	
+	public abstract void reset();
+	public abstract int getValue();
+	//consumes length bytes of the buffer starting at the given index, the position of the buffer is not modified
+	public abstract void update(ByteBuffer buffer, int index, int length);
+	
+	public static CrailChecksum create() {
+		if (INTRINSIC != null && UPDATE != null){
+			try {
+				return new IntrinsicChecksum((Checksum) INTRINSIC.invoke());
+			} catch(Throwable e){
+			}
+		}
+		return new TableChecksum();
+	}
+	
+	public static int checksum(ByteBuffer buffer, int index, int length){
+		CrailChecksum checksum = create();
+		checksum.update(buffer, index, length);
+		return checksum.getValue();
+	}
+	
+	public static long stored(int checksum){
+		return (checksum & 0xFFFFFFFFL) | VALID;
+	}
+	
+	public static boolean isStored(long checksum){
+		return (checksum & VALID) != 0;
+	}
+	
+	private static MethodHandle lookupIntrinsic(){
+		try {
+			Class<?> crc32c = Class.forName("java.util.zip.CRC32C");
+			return MethodHandles.publicLookup().findConstructor(crc32c, MethodType.methodType(void.class));
+		} catch(Exception e){
+			return null;
+		}
+	}
+	
+	private static MethodHandle lookupUpdate(){
+		try {
+			return MethodHandles.publicLookup().findVirtual(Checksum.class, "update", MethodType.methodType(void.class, ByteBuffer.class));
+		} catch(Exception e){
+			return null;
+		}
+	}
+	
+	private static class IntrinsicChecksum extends CrailChecksum {
+		private Checksum checksum;
+		
+		IntrinsicChecksum(Checksum checksum){
+			this.checksum = checksum;
+		}
+
+		@Override
+		public void reset() {
+			checksum.reset();
+		}
+
+		@Override
+		public int getValue() {
+			return (int) checksum.getValue();
+		}
+
+		@Override
+		public void update(ByteBuffer buffer, int index, int length) {
+			int position = buffer.position();
+			int limit = buffer.limit();
+			buffer.limit(index + length);
+			buffer.position(index);
+			try {
+				UPDATE.invokeExact(checksum, buffer);
+			} catch(RuntimeException | Error e){
+				throw e;
+			} catch(Throwable e){
+				throw new IllegalStateException(e);
+			} finally {
+				buffer.limit(limit);
+				buffer.position(position);
+			}
+		}
+	}
+	
+	private static class TableChecksum extends CrailChecksum {
+		private static final int POLYNOMIAL = 0x82F63B78;
+		private static final int[][] TABLES = createTables();
+		
+		private int crc;
+		
+		TableChecksum(){
+			reset();
+		}
+
+		@Override
+		public void reset() {
+			crc = 0xFFFFFFFF;
+		}
+
+		@Override
+		public int getValue() {
+			return ~crc;
+		}
+
+		@Override
+		public void update(ByteBuffer buffer, int index, int length) {
+			int[][] t = TABLES;
+			int c = crc;
+			int end = index + length;
+			for (; index + 8 <= end; index += 8){
+				c ^= (buffer.get(index) & 0xFF) | (buffer.get(index + 1) & 0xFF) << 8 | (buffer.get(index + 2) & 0xFF) << 16 | (buffer.get(index + 3) & 0xFF) << 24;
+				c = t[7][c & 0xFF] ^ t[6][(c >>> 8) & 0xFF] ^ t[5][(c >>> 16) & 0xFF] ^ t[4][c >>> 24] 
+						^ t[3][buffer.get(index + 4) & 0xFF] ^ t[2][buffer.get(index + 5) & 0xFF] ^ t[1][buffer.get(index + 6) & 0xFF] ^ t[0][buffer.get(index + 7) & 0xFF];
+			}
+			for (; index < end; index++){
+				c = (c >>> 8) ^ t[0][(c ^ buffer.get(index)) & 0xFF];
+			}
+			crc = c;
+		}
+		
+		private static int[][] createTables(){
+			int[][] tables = new int[8][256];
+			for (int i = 0; i < 256; i++){
+				int c = i;
+				for (int j = 0; j < 8; j++){
+					c = (c & 1) != 0 ? (c >>> 1) ^ POLYNOMIAL : c >>> 1;
+				}
+				tables[0][i] = c;
+			}
+			for (int i = 0; i < 256; i++){
+				for (int k = 1; k < 8; k++){
+					tables[k][i] = (tables[k - 1][i] >>> 8) ^ tables[0][tables[k - 1][i] & 0xFF];
+				}
+			}
+			return tables;
+		}
+	}
+}
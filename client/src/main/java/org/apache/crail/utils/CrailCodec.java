@@ -0,0 +1,53 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.crail.utils;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/*
+ * Block compression codec of the compressing buffered streams. Every frame is compressed 
+ * independently, a codec instance is only used by one stream at a time. The positions and 
+ * limits of the buffers passed to the codec are not modified.
+ */
+public abstract class CrailCodec {
+	
+	//compresses length bytes of src starting at srcIndex into dst starting at dstIndex, returns the compressed length, 
+	//or -1 if the compressed data would exceed maxLength bytes
+	public abstract int compress(ByteBuffer src, int srcIndex, int length, ByteBuffer dst, int dstIndex, int maxLength);
+	
+	//decompresses length bytes of src into exactly originalLength bytes of dst
+	public abstract void decompress(ByteBuffer src, int srcIndex, int length, ByteBuffer dst, int dstIndex, int originalLength) throws IOException;
+	
+	@SuppressWarnings("unchecked")
+	public static CrailCodec createInstance(String name) throws Exception {
+		if (name.equalsIgnoreCase("lz4")){
+			return new Lz4Codec();
+		}
+		
+		Class<?> nodeClass = Class.forName(name);
+		if (CrailCodec.class.isAssignableFrom(nodeClass)){
+			Class<? extends CrailCodec> codecClass = (Class<? extends CrailCodec>) nodeClass;
+			CrailCodec codec = codecClass.newInstance();
+			return codec;
+		} else {
+			throw new Exception("Cannot instantiate codec of type " + name);
+		}
+	}
+}
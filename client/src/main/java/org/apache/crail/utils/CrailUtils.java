@@ -265,6 +265,28 @@ public class CrailUtils {
 		return tokenizer.countTokens();
 	}
 	
+	//bit mask of a comma separated list of storage classes
+	public static long getStorageClassMask(String storageClasses) {
+		long mask = 0;
+		StringTokenizer tokenizer = new StringTokenizer(storageClasses, ",");
+		while(tokenizer.hasMoreTokens()){
+			int storageClass = Integer.parseInt(tokenizer.nextToken().trim());
+			if (storageClass < 0 || storageClass >= Long.SIZE){
+				throw new IllegalArgumentException("invalid storage class " + storageClass);
+			}
+			mask |= 1L << storageClass;
+		}
+		return mask;
+	}
+	
+	public static boolean isChecksumEnabled(int storageClass) {
+		return storageClass >= 0 && storageClass < Long.SIZE && (CrailConstants.CHECKSUM_CLASSES & (1L << storageClass)) != 0;
+	}
+	
+	public static boolean isCompressionEnabled(int storageClass) {
+		return storageClass >= 0 && storageClass < Long.SIZE && (CrailConstants.COMPRESSION_CLASSES & (1L << storageClass)) != 0;
+	}
+	
 	public static String getIPAddressFromBytes(byte[] bytes){
 		String address = "/unresolved";
 		try {
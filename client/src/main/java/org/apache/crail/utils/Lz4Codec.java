@@ -0,0 +1,233 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.crail.utils;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/*
+ * LZ4 block format compressor and decompressor. The frame is staged in heap arrays, 
+ * matches are found with a single hash table probe per position and the scan accelerates 
+ * over data without matches, which keeps incompressible frames cheap.
+ */
+public class Lz4Codec extends CrailCodec {
+	private static final int MIN_MATCH = 4;
+	private static final int HASH_LOG = 14;
+	private static final int MAX_DISTANCE = 65535;
+	//the last 5 bytes are always literals and the last match starts at least 12 bytes before the end
+	private static final int LAST_LITERALS = 5;
+	private static final int MF_LIMIT = 12;
+	private static final int SKIP_TRIGGER = 6;
+	
+	private int[] hashTable;
+	private byte[] src;
+	private byte[] dst;
+	
+	public Lz4Codec(){
+		this.hashTable = new int[1 << HASH_LOG];
+		this.src = new byte[0];
+		this.dst = new byte[0];
+	}
+
+	@Override
+	public int compress(ByteBuffer srcBuffer, int srcIndex, int length, ByteBuffer dstBuffer, int dstIndex, int maxLength) {
+		src = ensure(src, length);
+		dst = ensure(dst, maxLength);
+		copy(srcBuffer, srcIndex, src, length);
+		int compressed = compress(src, length, dst, maxLength);
+		if (compressed >= 0){
+			copy(dst, dstBuffer, dstIndex, compressed);
+		}
+		return compressed;
+	}
+
+	@Override
+	public void decompress(ByteBuffer srcBuffer, int srcIndex, int length, ByteBuffer dstBuffer, int dstIndex, int originalLength) throws IOException {
+		src = ensure(src, length);
+		dst = ensure(dst, originalLength);
+		copy(srcBuffer, srcIndex, src, length);
+		decompress(src, length, dst, originalLength);
+		copy(dst, dstBuffer, dstIndex, originalLength);
+	}
+	
+	private int compress(byte[] src, int length, byte[] dst, int maxLength) {
+		Arrays.fill(hashTable, -1);
+		int anchor = 0;
+		int op = 0;
+		int matchLimit = length - LAST_LITERALS;
+		int mfLimit = length - MF_LIMIT;
+		int ip = 0;
+		while (ip < mfLimit){
+			int sequence = readInt(src, ip);
+			int hash = hash(sequence);
+			int ref = hashTable[hash];
+			hashTable[hash] = ip;
+			if (ref < 0 || ip - ref > MAX_DISTANCE || readInt(src, ref) != sequence){
+				ip += 1 + ((ip - anchor) >>> SKIP_TRIGGER);
+				continue;
+			}
+			while (ip > anchor && ref > 0 && src[ip - 1] == src[ref - 1]){
+				ip--;
+				ref--;
+			}
+			int matchLength = MIN_MATCH;
+			while (ip + matchLength < matchLimit && src[ref + matchLength] == src[ip + matchLength]){
+				matchLength++;
+			}
+			
+			int literals = ip - anchor;
+			if (op + 1 + literals/255 + 1 + literals + 2 + (matchLength - MIN_MATCH)/255 + 1 > maxLength){
+				return -1;
+			}
+			int token = op++;
+			op = writeLength(dst, op, literals);
+			System.arraycopy(src, anchor, dst, op, literals);
+			op += literals;
+			int offset = ip - ref;
+			dst[op++] = (byte) offset;
+			dst[op++] = (byte) (offset >>> 8);
+			op = writeLength(dst, op, matchLength - MIN_MATCH);
+			dst[token] = (byte) ((Math.min(literals, 15) << 4) | Math.min(matchLength - MIN_MATCH, 15));
+			
+			ip += matchLength;
+			anchor = ip;
+			if (ip - 2 < mfLimit){
+				hashTable[hash(readInt(src, ip - 2))] = ip - 2;
+			}
+		}
+		
+		int literals = length - anchor;
+		if (op + 1 + literals/255 + 1 + literals > maxLength){
+			return -1;
+		}
+		int token = op++;
+		op = writeLength(dst, op, literals);
+		System.arraycopy(src, anchor, dst, op, literals);
+		op += literals;
+		dst[token] = (byte) (Math.min(literals, 15) << 4);
+		return op;
+	}
+	
+	private static void decompress(byte[] src, int length, byte[] dst, int originalLength) throws IOException {
+		int ip = 0;
+		int op = 0;
+		while (true){
+			if (ip >= length){
+				throw new IOException("corrupt LZ4 frame, truncated sequence at " + ip);
+			}
+			int token = src[ip++] & 0xff;
+			int literals = token >>> 4;
+			if (literals == 15){
+				int value;
+				do {
+					if (ip >= length){
+						throw new IOException("corrupt LZ4 frame, truncated literal length at " + ip);
+					}
+					value = src[ip++] & 0xff;
+					literals += value;
+				} while (value == 255);
+			}
+			if (literals > length - ip || literals > originalLength - op){
+				throw new IOException("corrupt LZ4 frame, literals exceed frame at " + ip);
+			}
+			System.arraycopy(src, ip, dst, op, literals);
+			ip += literals;
+			op += literals;
+			if (ip == length){
+				break;
+			}
+			
+			if (ip + 2 > length){
+				throw new IOException("corrupt LZ4 frame, truncated offset at " + ip);
+			}
+			int offset = (src[ip] & 0xff) | ((src[ip + 1] & 0xff) << 8);
+			ip += 2;
+			int matchLength = token & 15;
+			if (matchLength == 15){
+				int value;
+				do {
+					if (ip >= length){
+						throw new IOException("corrupt LZ4 frame, truncated match length at " + ip);
+					}
+					value = src[ip++] & 0xff;
+					matchLength += value;
+				} while (value == 255);
+			}
+			matchLength += MIN_MATCH;
+			int ref = op - offset;
+			if (offset == 0 || ref < 0 || matchLength > originalLength - op){
+				throw new IOException("corrupt LZ4 frame, invalid match at " + ip);
+			}
+			if (offset >= matchLength){
+				System.arraycopy(dst, ref, dst, op, matchLength);
+			} else {
+				//overlapping match, repeats the last offset bytes
+				for (int i = 0; i < matchLength; i++){
+					dst[op + i] = dst[ref + i];
+				}
+			}
+			op += matchLength;
+		}
+		if (op != originalLength){
+			throw new IOException("corrupt LZ4 frame, decompressed " + op + " bytes, expected " + originalLength);
+		}
+	}
+	
+	//the length remaining after the 4 bits of the token, as a run of 255s and a final byte
+	private static int writeLength(byte[] dst, int op, int length){
+		if (length >= 15){
+			length -= 15;
+			while (length >= 255){
+				dst[op++] = (byte) 255;
+				length -= 255;
+			}
+			dst[op++] = (byte) length;
+		}
+		return op;
+	}
+	
+	private static int readInt(byte[] src, int index){
+		return (src[index] & 0xff) | ((src[index + 1] & 0xff) << 8) | ((src[index + 2] & 0xff) << 16) | ((src[index + 3] & 0xff) << 24);
+	}
+	
+	private static int hash(int sequence){
+		return (sequence * -1640531535) >>> (32 - HASH_LOG);
+	}
+	
+	private static byte[] ensure(byte[] array, int length){
+		return array.length >= length ? array : new byte[length];
+	}
+	
+	private static void copy(ByteBuffer buffer, int index, byte[] array, int length){
+		int position = buffer.position();
+		int limit = buffer.limit();
+		buffer.limit(index + length).position(index);
+		buffer.get(array, 0, length);
+		buffer.limit(limit).position(position);
+	}
+	
+	private static void copy(byte[] array, ByteBuffer buffer, int index, int length){
+		int position = buffer.position();
+		int limit = buffer.limit();
+		buffer.limit(index + length).position(index);
+		buffer.put(array, 0, length);
+		buffer.limit(limit).position(position);
+	}
+}
@@ -0,0 +1,194 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.apache.crail.utils;
+
+import java.util.Iterator;
+import java.util.StringTokenizer;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.crail.CrailStatistics;
+import org.apache.crail.CrailStatistics.StatisticsProvider;
+import org.apache.crail.conf.CrailConstants;
+import org.apache.crail.metadata.FileInfo;
+
+/*
+ * File metadata cached by the client while the lease granted by the namenode on lookup 
+ * is valid. The namenode only grants leases for files nobody is writing to. Entries hold 
+ * no block locations: streams opened from an entry ask the namenode for the blocks and 
+ * send the node version of the lookup along, the namenode fails the request if the file 
+ * has been deleted or reopened for writing since. A stale entry can therefore answer 
+ * lookups but not read data of a changed file. Block locations already in the block 
+ * cache are not rechecked, the namenode keeps the blocks and read replicas of deleted 
+ * files for the token expiration before reusing them. Mutations issued by this client 
+ * invalidate the affected paths right away.
+ */
+public class MetadataCache implements CrailStatistics.StatisticsProvider {
+	private ConcurrentHashMap<String, Entry> metadataCache;
+	private int maxEntries;
+	
+	private AtomicLong hits;
+	private AtomicLong misses;
+	private AtomicLong evictions;
+	private AtomicLong invalidations;
+	
+	public MetadataCache(){
+		this(CrailConstants.METADATA_CACHE_ENTRIES);
+	}
+	
+	public MetadataCache(int maxEntries){
+		this.metadataCache = new ConcurrentHashMap<String, Entry>();
+		this.maxEntries = Math.max(0, maxEntries);
+		this.hits = new AtomicLong(0);
+		this.misses = new AtomicLong(0);
+		this.evictions = new AtomicLong(0);
+		this.invalidations = new AtomicLong(0);
+	}
+	
+	@Override
+	public String providerName() {
+		return "cache/metadata";
+	}
+
+	@Override
+	public String printStatistics() {
+		return "entries " + metadataCache.size() + ", maxEntries " + maxEntries + ", hits " + hits.get() + ", misses " + misses.get() + 
+				", evictions " + evictions.get() + ", invalidations " + invalidations.get();
+	}
+
+	@Override
+	public void mergeStatistics(StatisticsProvider provider) {
+	}
+
+	@Override
+	public void resetStatistics() {
+		this.hits.set(0);
+		this.misses.set(0);
+		this.evictions.set(0);
+		this.invalidations.set(0);
+	}
+	
+	public Entry get(String path){
+		if (maxEntries == 0){
+			return null;
+		}
+		String key = key(path);
+		Entry entry = metadataCache.get(key);
+		if (entry != null && entry.expiry - System.nanoTime() > 0){
+			hits.incrementAndGet();
+			return entry;
+		}
+		if (entry != null){
+			metadataCache.remove(key, entry);
+		}
+		misses.incrementAndGet();
+		return null;
+	}
+	
+	//expiry is a System.nanoTime() deadline
+	public void put(String path, FileInfo fileInfo, long expiry){
+		if (maxEntries == 0){
+			return;
+		}
+		if (metadataCache.size() >= maxEntries){
+			evict();
+		}
+		metadataCache.put(key(path), new Entry(fileInfo, expiry));
+	}
+	
+	public void remove(String path){
+		if (metadataCache.isEmpty()){
+			return;
+		}
+		if (metadataCache.remove(key(path)) != null){
+			invalidations.incrementAndGet();
+		}
+	}
+	
+	//drops every entry below a directory that has been deleted or renamed
+	public void removeChildren(String path){
+		if (metadataCache.isEmpty()){
+			return;
+		}
+		String prefix = key(path);
+		prefix = prefix.endsWith("/") ? prefix : prefix + "/";
+		for (Iterator<String> iter = metadataCache.keySet().iterator(); iter.hasNext(); ){
+			if (iter.next().startsWith(prefix)){
+				iter.remove();
+				invalidations.incrementAndGet();
+			}
+		}
+	}
+	
+	public void purge(){
+		metadataCache.clear();
+	}
+	
+	public long size(){
+		return metadataCache.size();
+	}
+	
+	//expired entries go first, if the cache is still full arbitrary ones follow
+	private void evict(){
+		long now = System.nanoTime();
+		for (Iterator<Entry> iter = metadataCache.values().iterator(); iter.hasNext(); ){
+			if (iter.next().expiry - now <= 0){
+				iter.remove();
+				evictions.incrementAndGet();
+			}
+		}
+		for (Iterator<Entry> iter = metadataCache.values().iterator(); iter.hasNext() && metadataCache.size() >= maxEntries; ){
+			iter.next();
+			iter.remove();
+			evictions.incrementAndGet();
+		}
+	}
+	
+	//paths name the same file regardless of repeated or trailing slashes
+	private static String key(String path){
+		if (path.indexOf("//") < 0 && (path.length() <= 1 || !path.endsWith("/"))){
+			return path;
+		}
+		StringBuilder key = new StringBuilder();
+		StringTokenizer tokenizer = new StringTokenizer(path, "/");
+		while (tokenizer.hasMoreTokens()){
+			key.append('/').append(tokenizer.nextToken());
+		}
+		return key.length() == 0 ? "/" : key.toString();
+	}
+	
+	public static class Entry {
+		private FileInfo fileInfo;
+		private long expiry;
+		
+		Entry(FileInfo fileInfo, long expiry){
+			this.fileInfo = new FileInfo();
+			this.fileInfo.setFileInfo(fileInfo);
+			this.expiry = expiry;
+		}
+		
+		//a copy, callers may modify the file info of the nodes they create from it
+		public FileInfo getFile(){
+			FileInfo copy = new FileInfo();
+			copy.setFileInfo(fileInfo);
+			return copy;
+		}
+	}
+}
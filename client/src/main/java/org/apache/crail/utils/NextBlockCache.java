@@ -43,7 +43,10 @@ public class NextBlockCache {
 	}
 	
 	public void remove(long fd) {
-		nextBlockCache.remove(fd);
+		FileNextBlockCache fileBlockCache = nextBlockCache.remove(fd);
+		if (fileBlockCache != null){
+			fileBlockCache.clear();
+		}
 	}	
 	
 	public void purge() {
@@ -52,20 +55,29 @@ public class NextBlockCache {
 
 	public static class FileNextBlockCache {
 		private long fd;
-		private ConcurrentHashMap<Long, RpcFuture<RpcGetBlock>> fileBlockCache;
+		private ConcurrentHashMap<Long, RpcFuture<? extends RpcGetBlock>> fileBlockCache;
 		
 		public FileNextBlockCache(long fd){
 			this.fd = fd;
-			this.fileBlockCache = new ConcurrentHashMap<Long, RpcFuture<RpcGetBlock>>();
+			this.fileBlockCache = new ConcurrentHashMap<Long, RpcFuture<? extends RpcGetBlock>>();
 		}
 
-		public void put(long blockstart, RpcFuture<RpcGetBlock> block){
+		public void put(long blockstart, RpcFuture<? extends RpcGetBlock> block){
 			this.fileBlockCache.putIfAbsent(blockstart, block);
 		}
 		
-		public RpcFuture<RpcGetBlock> get(long blockstart){
+		public RpcFuture<? extends RpcGetBlock> get(long blockstart){
 			return this.fileBlockCache.get(blockstart);
 		}
+		
+		//prefetched blocks are handed out once, the result is kept in the block cache
+		public RpcFuture<? extends RpcGetBlock> remove(long blockstart){
+			return this.fileBlockCache.remove(blockstart);
+		}
+		
+		public void clear(){
+			this.fileBlockCache.clear();
+		}
 
 		public boolean containsKey(long blockstart) {
 			return this.fileBlockCache.containsKey(blockstart);
@@ -0,0 +1,177 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.apache.crail;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.Future;
+
+import org.apache.crail.memory.OffHeapBuffer;
+import org.apache.crail.utils.CrailImmediateOperation;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class FrameIndexTest {
+	private static final int BUFFER_SIZE = 4096;
+
+	//serves a file from memory, reads return at most 1000 bytes to exercise partial reads
+	private static class MemoryInputStream implements CrailInputStream {
+		private byte[] data;
+		private long position;
+
+		MemoryInputStream(byte[] data){
+			this.data = data;
+			this.position = 0;
+		}
+
+		@Override
+		public CrailNode getFile() {
+			return null;
+		}
+
+		@Override
+		public Future<CrailResult> read(CrailBuffer dataBuf) throws Exception {
+			int length = (int) Math.min(Math.min(dataBuf.remaining(), 1000), data.length - position);
+			if (length <= 0){
+				return null;
+			}
+			dataBuf.put(data, (int) position, length);
+			position += length;
+			return new CrailImmediateOperation(length);
+		}
+
+		@Override
+		public Future<CrailResult> read(CrailBuffer dataBuf, long[] checksums) throws Exception {
+			return read(dataBuf);
+		}
+
+		@Override
+		public long[] getChecksums() throws Exception {
+			return null;
+		}
+
+		@Override
+		public void seek(long pos) throws IOException {
+			this.position = pos;
+		}
+
+		@Override
+		public int available() {
+			return (int) (data.length - position);
+		}
+
+		@Override
+		public long position() {
+			return position;
+		}
+
+		@Override
+		public void close() throws Exception {
+		}
+	}
+
+	private static FrameIndex read(byte[] file) throws Exception {
+		MemoryInputStream stream = new MemoryInputStream(file);
+		CrailBuffer buffer = OffHeapBuffer.wrap(ByteBuffer.allocateDirect(BUFFER_SIZE));
+		FrameIndex index = FrameIndex.read(stream, file.length, buffer);
+		Assert.assertEquals(0, stream.position());
+		return index;
+	}
+
+	//frames of random stored length followed by the serialized index
+	private static byte[] writeFile(FrameIndex index, int frameSize, long length, Random random){
+		long end = 0;
+		for (long position = 0; position < length; position += frameSize){
+			int frameLength = (int) Math.min(frameSize, length - position);
+			int stored = random.nextBoolean() ? frameLength : 1 + random.nextInt(frameLength);
+			end += stored;
+			index.add(frameLength, end);
+		}
+		ByteBuffer serialized = index.serialize();
+		byte[] file = new byte[(int) end + serialized.remaining()];
+		random.nextBytes(file);
+		serialized.get(file, (int) end, serialized.remaining());
+		return file;
+	}
+
+	@Test
+	public void testRoundTrip() throws Exception {
+		Random random = new Random(1);
+		int frameSize = 1024;
+		long[] lengths = new long[]{1, frameSize - 1, frameSize, frameSize + 1, 7*frameSize + 5, 3000L*frameSize + 17};
+		for (long length : lengths){
+			FrameIndex written = new FrameIndex(frameSize);
+			byte[] file = writeFile(written, frameSize, length, random);
+			FrameIndex index = read(file);
+			Assert.assertNotNull(index);
+			Assert.assertEquals(frameSize, index.getFrameSize());
+			Assert.assertEquals(length, index.getLength());
+			Assert.assertEquals(written.getCount(), index.getCount());
+			for (int i = 0; i < index.getCount(); i++){
+				Assert.assertEquals(written.getStart(i), index.getStart(i));
+				Assert.assertEquals(written.getStoredLength(i), index.getStoredLength(i));
+				Assert.assertEquals(written.getLength(i), index.getLength(i));
+				Assert.assertEquals(written.isCompressed(i), index.isCompressed(i));
+			}
+		}
+	}
+
+	@Test
+	public void testUncompressedFiles() throws Exception {
+		Random random = new Random(2);
+		Assert.assertNull(read(new byte[0]));
+		Assert.assertNull(read(new byte[FrameIndex.TRAILER_SIZE - 1]));
+		for (int i = 0; i < 100; i++){
+			byte[] file = new byte[random.nextInt(100000)];
+			random.nextBytes(file);
+			Assert.assertNull(read(file));
+		}
+	}
+
+	@Test
+	public void testInconsistentTrailer() throws Exception {
+		Random random = new Random(3);
+		int frameSize = 512;
+		FrameIndex written = new FrameIndex(frameSize);
+		byte[] file = writeFile(written, frameSize, 10*frameSize, random);
+		int trailer = file.length - FrameIndex.TRAILER_SIZE;
+
+		//a length that does not fit the number of frames
+		byte[] corrupt = file.clone();
+		ByteBuffer.wrap(corrupt).putLong(trailer, 12L*frameSize);
+		Assert.assertNull(read(corrupt));
+
+		//more frames than the file can hold
+		corrupt = file.clone();
+		ByteBuffer.wrap(corrupt).putInt(trailer + Long.BYTES + Integer.BYTES, Integer.MAX_VALUE);
+		Assert.assertNull(read(corrupt));
+
+		//frames that do not end where the index starts
+		corrupt = file.clone();
+		int lastEnd = trailer - Long.BYTES;
+		ByteBuffer.wrap(corrupt).putLong(lastEnd, ByteBuffer.wrap(file).getLong(lastEnd) + 1);
+		try {
+			read(corrupt);
+			Assert.fail("index with inconsistent frame ends accepted");
+		} catch(IOException e){
+		}
+	}
+}
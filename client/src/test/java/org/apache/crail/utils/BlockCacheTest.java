@@ -0,0 +1,156 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.apache.crail.utils;
+
+import org.apache.crail.metadata.BlockInfo;
+import org.apache.crail.utils.BlockCache.FileBlockCache;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class BlockCacheTest {
+	private static final long BLOCK = 1024;
+	private static final long MAX_BYTES = 1L << 20;
+
+	private static void fill(FileBlockCache fileCache, int blocks) {
+		for (int i = 0; i < blocks; i++){
+			fileCache.put(i*BLOCK, new BlockInfo());
+		}
+	}
+
+	//every file is charged one entry plus one per cached block
+	@Test
+	public void testFileEntries() {
+		BlockCache cache = new BlockCache(1000, MAX_BYTES, 4);
+		FileBlockCache fileCache = cache.getFileBlockCache(1);
+		fill(fileCache, 4);
+		Assert.assertEquals(4, fileCache.size());
+		Assert.assertEquals(5, cache.size());
+
+		//the first replacement clears every reference bit, so the remaining old blocks are unreferenced
+		fileCache.put(4*BLOCK, new BlockInfo());
+		Assert.assertEquals(4, fileCache.size());
+		Assert.assertEquals(5, cache.size());
+		Assert.assertTrue(fileCache.containsKey(4*BLOCK));
+		long kept = -1;
+		for (long i = 0; i < 4; i++){
+			if (fileCache.containsKey(i*BLOCK)){
+				kept = i*BLOCK;
+			}
+		}
+		Assert.assertNotNull(fileCache.get(kept));
+
+		fileCache.put(5*BLOCK, new BlockInfo());
+		Assert.assertEquals(4, fileCache.size());
+		Assert.assertEquals(5, cache.size());
+		Assert.assertTrue(fileCache.containsKey(kept));
+		Assert.assertTrue(fileCache.containsKey(4*BLOCK));
+		Assert.assertTrue(fileCache.containsKey(5*BLOCK));
+	}
+
+	@Test
+	public void testTotalEntries() {
+		BlockCache cache = new BlockCache(10, MAX_BYTES, 4);
+		for (long fd = 0; fd < 20; fd++){
+			FileBlockCache fileCache = cache.getFileBlockCache(fd);
+			for (int i = 0; i < 4; i++){
+				fileCache.put(i*BLOCK, new BlockInfo());
+				Assert.assertTrue(cache.size() <= 10);
+			}
+			Assert.assertTrue(fileCache.containsKey(3*BLOCK));
+		}
+		cache.purge();
+		Assert.assertEquals(0, cache.size());
+	}
+
+	@Test
+	public void testByteBudget() {
+		BlockCache cache = new BlockCache(1000, 4*BlockCache.ENTRY_SIZE, 100);
+		Assert.assertTrue(cache.printStatistics().contains("maxEntries 4,"));
+		FileBlockCache fileCache = cache.getFileBlockCache(1);
+		for (int i = 0; i < 10; i++){
+			fileCache.put(i*BLOCK, new BlockInfo());
+			Assert.assertTrue(cache.size() <= 4);
+		}
+	}
+
+	@Test
+	public void testReferencedFileSurvives() {
+		BlockCache cache = new BlockCache(6, MAX_BYTES, 1);
+		FileBlockCache[] files = new FileBlockCache[3];
+		for (int fd = 0; fd < files.length; fd++){
+			files[fd] = cache.getFileBlockCache(fd);
+			fill(files[fd], 1);
+		}
+		Assert.assertEquals(6, cache.size());
+
+		//evicts one file and leaves the others unreferenced
+		cache.getFileBlockCache(3);
+		FileBlockCache referenced = null;
+		for (FileBlockCache fileCache : files){
+			if (fileCache.size() > 0){
+				referenced = fileCache;
+			}
+		}
+		Assert.assertNotNull(referenced.get(0));
+
+		cache.getFileBlockCache(4);
+		cache.getFileBlockCache(5);
+		Assert.assertTrue(cache.size() <= 6);
+		Assert.assertEquals(1, referenced.size());
+		Assert.assertTrue(referenced.containsKey(0));
+	}
+
+	@Test
+	public void testRemove() {
+		BlockCache cache = new BlockCache(1000, MAX_BYTES, 8);
+		fill(cache.getFileBlockCache(1), 3);
+		fill(cache.getFileBlockCache(2), 5);
+		Assert.assertEquals(10, cache.size());
+		cache.remove(1);
+		Assert.assertEquals(6, cache.size());
+		cache.remove(1);
+		cache.remove(3);
+		Assert.assertEquals(6, cache.size());
+		Assert.assertFalse(cache.getFileBlockCache(1).containsKey(0));
+		cache.purge();
+		Assert.assertEquals(0, cache.size());
+	}
+
+	//a stream may still hold the cache of a file that has been evicted, it continues on a fresh cache
+	@Test
+	public void testEvictedFileCache() {
+		BlockCache cache = new BlockCache(1000, MAX_BYTES, 8);
+		FileBlockCache fileCache = cache.getFileBlockCache(1);
+		fileCache.put(0, new BlockInfo());
+		fileCache.put(BLOCK, null);
+		Assert.assertEquals(1, fileCache.size());
+		cache.remove(1);
+		Assert.assertEquals(0, cache.size());
+		Assert.assertEquals(0, fileCache.size());
+
+		BlockInfo block = new BlockInfo();
+		fileCache.put(BLOCK, block);
+		Assert.assertEquals(2, cache.size());
+		Assert.assertSame(block, cache.getFileBlockCache(1).get(BLOCK));
+		Assert.assertSame(block, fileCache.get(BLOCK));
+		Assert.assertFalse(fileCache.containsKey(0));
+		Assert.assertEquals(2, cache.size());
+	}
+}
@@ -0,0 +1,50 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.apache.crail.utils;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class CrailChecksumTest {
+
+	@Test
+	public void testCheckValue() {
+		ByteBuffer buffer = ByteBuffer.allocateDirect(16);
+		buffer.position(3);
+		buffer.put("123456789".getBytes(StandardCharsets.US_ASCII));
+		Assert.assertEquals(0xE3069283, CrailChecksum.checksum(buffer, 3, 9));
+		Assert.assertEquals(12, buffer.position());
+	}
+
+	//every CRC32C value, including zero, must remain distinguishable from a chunk without a checksum
+	@Test
+	public void testStored() {
+		Assert.assertFalse(CrailChecksum.isStored(0));
+		for (int checksum : new int[]{0, 1, -1, 0x80000000, 0xE3069283}){
+			long stored = CrailChecksum.stored(checksum);
+			Assert.assertTrue(CrailChecksum.isStored(stored));
+			Assert.assertNotEquals(0, stored);
+			Assert.assertEquals(checksum, (int) stored);
+		}
+	}
+}
@@ -0,0 +1,181 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.apache.crail.utils;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class Lz4CodecTest {
+	private static final int OFFSET = 7;
+
+	private Lz4Codec codec = new Lz4Codec();
+
+	//compresses and decompresses the data at an offset into direct buffers, returns the compressed length or -1
+	private int roundTrip(byte[] data, int maxLength) throws IOException {
+		ByteBuffer src = ByteBuffer.allocateDirect(OFFSET + data.length);
+		for (int i = 0; i < data.length; i++){
+			src.put(OFFSET + i, data[i]);
+		}
+		ByteBuffer dst = ByteBuffer.allocateDirect(OFFSET + Math.max(maxLength, 0));
+		int compressed = codec.compress(src, OFFSET, data.length, dst, OFFSET, maxLength);
+		Assert.assertEquals(0, src.position());
+		Assert.assertEquals(0, dst.position());
+		if (compressed < 0){
+			return compressed;
+		}
+		Assert.assertTrue(compressed <= maxLength);
+
+		ByteBuffer out = ByteBuffer.allocateDirect(OFFSET + data.length);
+		codec.decompress(dst, OFFSET, compressed, out, OFFSET, data.length);
+		Assert.assertEquals(0, out.position());
+		byte[] back = new byte[data.length];
+		for (int i = 0; i < data.length; i++){
+			back[i] = out.get(OFFSET + i);
+		}
+		Assert.assertArrayEquals(data, back);
+		return compressed;
+	}
+
+	private static int bound(int length){
+		return length + length/255 + 16;
+	}
+
+	@Test
+	public void testEmptyAndShort() throws Exception {
+		for (int length = 0; length < 40; length++){
+			byte[] data = new byte[length];
+			Arrays.fill(data, (byte) 'a');
+			Assert.assertTrue(roundTrip(data, bound(length)) >= 0);
+		}
+	}
+
+	@Test
+	public void testRepetitiveData() throws Exception {
+		byte[] zeros = new byte[1048576];
+		int compressed = roundTrip(zeros, bound(zeros.length));
+		Assert.assertTrue(compressed < zeros.length/100);
+
+		byte[] text = new byte[65536];
+		byte[] line = "the quick brown fox jumps over the lazy dog, ".getBytes(StandardCharsets.US_ASCII);
+		for (int i = 0; i < text.length; i++){
+			text[i] = line[i % line.length];
+		}
+		Assert.assertTrue(roundTrip(text, bound(text.length)) < text.length/10);
+	}
+
+	@Test
+	public void testOverlappingMatches() throws Exception {
+		//matches with an offset shorter than the match repeat the last bytes
+		for (int period = 1; period < 20; period++){
+			byte[] data = new byte[5000 + period];
+			for (int i = 0; i < data.length; i++){
+				data[i] = (byte) (i % period);
+			}
+			roundTrip(data, bound(data.length));
+		}
+	}
+
+	@Test
+	public void testLengthBoundaries() throws Exception {
+		//literal and match lengths around the 15 and 255 byte steps of the length encoding
+		Random random = new Random(11);
+		int[] lengths = new int[]{14, 15, 16, 18, 19, 20, 269, 270, 271, 524, 525, 526, 100000};
+		for (int literals : lengths){
+			for (int match : lengths){
+				byte[] data = new byte[literals + match + 64];
+				random.nextBytes(data);
+				Arrays.fill(data, literals, literals + match, (byte) 3);
+				roundTrip(data, bound(data.length));
+			}
+		}
+	}
+
+	@Test
+	public void testMixedData() throws Exception {
+		Random random = new Random(5);
+		for (int i = 0; i < 200; i++){
+			byte[] data = new byte[random.nextInt(70000)];
+			int position = 0;
+			while (position < data.length){
+				int run = Math.min(data.length - position, 1 + random.nextInt(2000));
+				if (random.nextBoolean()){
+					byte[] chunk = new byte[run];
+					random.nextBytes(chunk);
+					System.arraycopy(chunk, 0, data, position, run);
+				} else if (position > 0){
+					//copy of earlier data at a random distance, within the 64KB window or beyond
+					int from = random.nextInt(position);
+					for (int j = 0; j < run; j++){
+						data[position + j] = data[from + j];
+					}
+				}
+				position += run;
+			}
+			roundTrip(data, bound(data.length));
+		}
+	}
+
+	@Test
+	public void testIncompressible() throws Exception {
+		byte[] data = new byte[65536];
+		new Random(3).nextBytes(data);
+		//the stream stores a frame as is unless compression saves at least a byte
+		Assert.assertEquals(-1, roundTrip(data, data.length - 1));
+		Assert.assertTrue(roundTrip(data, bound(data.length)) >= data.length);
+	}
+
+	@Test
+	public void testCorruptFrames() throws Exception {
+		byte[] data = new byte[30000];
+		for (int i = 0; i < data.length; i++){
+			data[i] = (byte) (i % 97 + i / 1000);
+		}
+		ByteBuffer src = ByteBuffer.wrap(data);
+		ByteBuffer compressed = ByteBuffer.allocate(bound(data.length));
+		int length = codec.compress(src, 0, data.length, compressed, 0, compressed.capacity());
+		Assert.assertTrue(length > 0);
+
+		ByteBuffer out = ByteBuffer.allocate(data.length);
+		int[] truncated = new int[]{0, 1, length/2, length - 1};
+		for (int cut : truncated){
+			try {
+				codec.decompress(compressed, 0, cut, out, 0, data.length);
+				Assert.fail("truncated frame of " + cut + " bytes decompressed");
+			} catch(IOException e){
+			}
+		}
+		try {
+			codec.decompress(compressed, 0, length, out, 0, data.length - 1);
+			Assert.fail("frame decompressed into a shorter buffer");
+		} catch(IOException e){
+		}
+		try {
+			codec.decompress(compressed, 0, length, ByteBuffer.allocate(data.length + 1), 0, data.length + 1);
+			Assert.fail("frame decompressed to more bytes than it holds");
+		} catch(IOException e){
+		}
+	}
+}
@@ -39,6 +39,7 @@ import org.apache.hadoop.fs.FsStatus;
 import org.apache.hadoop.fs.Options.ChecksumOpt;
 import org.apache.hadoop.fs.ParentNotDirectoryException;
 import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.RemoteIterator;
 import org.apache.hadoop.fs.UnresolvedLinkException;
 import org.apache.hadoop.fs.UnsupportedFileSystemException;
 import org.apache.hadoop.fs.permission.FsPermission;
@@ -110,7 +111,7 @@ public class CrailHDFS extends AbstractFileSystem {
 
 	@Override
 	public FileChecksum getFileChecksum(Path f) throws AccessControlException, FileNotFoundException, UnresolvedLinkException, IOException {
-		return null;
+		return dfs.getFileChecksum(f);
 	}
 
 	@Override
@@ -133,6 +134,11 @@ public class CrailHDFS extends AbstractFileSystem {
 		return dfs.listStatus(path);
 	}
 
+	@Override
+	public RemoteIterator<FileStatus> listStatusIterator(Path path) throws AccessControlException, FileNotFoundException, UnresolvedLinkException, IOException {
+		return dfs.listStatusIterator(path);
+	}
+
 	@Override
 	public void setVerifyChecksum(boolean verifyChecksum) throws AccessControlException, IOException {
 		dfs.setVerifyChecksum(verifyChecksum);
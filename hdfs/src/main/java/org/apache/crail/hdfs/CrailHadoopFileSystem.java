@@ -21,6 +21,7 @@ package org.apache.crail.hdfs;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.net.URI;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Iterator;
 
@@ -31,6 +32,7 @@ import org.apache.crail.CrailBufferedOutputStream;
 import org.apache.crail.CrailDirectory;
 import org.apache.crail.CrailStore;
 import org.apache.crail.CrailFile;
+import org.apache.crail.CrailInputStream;
 import org.apache.crail.CrailLocationClass;
 import org.apache.crail.CrailNode;
 import org.apache.crail.CrailNodeType;
@@ -38,15 +40,20 @@ import org.apache.crail.CrailStorageClass;
 import org.apache.crail.conf.CrailConfiguration;
 import org.apache.crail.conf.CrailConstants;
 import org.apache.crail.rpc.RpcErrors;
+import org.apache.crail.utils.CrailChecksum;
 import org.apache.crail.utils.CrailUtils;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.BlockLocation;
 import org.apache.hadoop.fs.FSDataInputStream;
 import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileChecksum;
 import org.apache.hadoop.fs.FileStatus;
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.FsStatus;
+import org.apache.hadoop.fs.MD5MD5CRC32CastagnoliFileChecksum;
 import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.RemoteIterator;
+import org.apache.hadoop.io.MD5Hash;
 import org.apache.hadoop.fs.permission.FsPermission;
 import org.apache.hadoop.util.Progressable;
 
@@ -178,19 +185,10 @@ public class CrailHadoopFileSystem extends FileSystem {
 	public FileStatus[] listStatus(Path path) throws FileNotFoundException, IOException {
 		try {
 			CrailNode node = dfs.lookup(path.toUri().getRawPath()).get();
-			Iterator<String> iter = node.asContainer().listEntries();
+			Iterator<CrailNode> iter = node.asContainer().listNodes(false);
 			ArrayList<FileStatus> statusList = new ArrayList<FileStatus>();
 			while(iter.hasNext()){
-				String filepath = iter.next();
-				CrailNode directFile = dfs.lookup(filepath).get();
-				if (directFile != null){
-					FsPermission permission = FsPermission.getFileDefault();
-					if (directFile.getType().isDirectory()) {
-						permission = FsPermission.getDirDefault();
-					}
-					FileStatus status = new FileStatus(directFile.getCapacity(), directFile.getType().isContainer(), CrailConstants.SHADOW_REPLICATION, CrailConstants.BLOCK_SIZE, directFile.getModificationTime(), directFile.getModificationTime(), permission, CrailConstants.USER, CrailConstants.USER, new Path(filepath).makeQualified(this.getUri(), this.workingDir));	
-					statusList.add(status);
-				}
+				statusList.add(getStatus(iter.next()));
 			}
 			FileStatus[] list = new FileStatus[statusList.size()];
 			statusList.toArray(list);
@@ -200,6 +198,35 @@ public class CrailHadoopFileSystem extends FileSystem {
 		}
 	}
 
+	public RemoteIterator<FileStatus> listStatusIterator(Path path) throws FileNotFoundException, IOException {
+		final Iterator<CrailNode> iter;
+		try {
+			CrailNode node = dfs.lookup(path.toUri().getRawPath()).get();
+			iter = node.asContainer().listNodes(false);
+		} catch(Exception e){
+			throw new FileNotFoundException(path.toUri().getRawPath());
+		}
+		return new RemoteIterator<FileStatus>() {
+			@Override
+			public boolean hasNext() throws IOException {
+				try {
+					return iter.hasNext();
+				} catch(RuntimeException e){
+					throw new IOException(e);
+				}
+			}
+
+			@Override
+			public FileStatus next() throws IOException {
+				try {
+					return getStatus(iter.next());
+				} catch(RuntimeException e){
+					throw new IOException(e);
+				}
+			}
+		};
+	}
+
 	@Override
 	public void setWorkingDirectory(Path new_dir) {
 		this.workingDir = new_dir;
@@ -230,6 +257,53 @@ public class CrailHadoopFileSystem extends FileSystem {
 		}
 	}
 
+	//the stored CRC32C chunk checksums combined the way HDFS does, the MD5 of the MD5s of the checksums of every block,
+	//null if the file is not stored with checksums
+	@Override
+	public FileChecksum getFileChecksum(Path path) throws IOException {
+		statistics.incrementReadOps(1);
+		long[] checksums = null;
+		try {
+			CrailNode node = dfs.lookup(path.toUri().getRawPath()).get();
+			if (node == null) {
+				throw new FileNotFoundException("File does not exist: " + path);
+			}
+			if (!node.getType().isDataFile()) {
+				return null;
+			}
+			CrailInputStream inputStream = node.asFile().getDirectInputStream(0);
+			try {
+				checksums = inputStream.getChecksums();
+			} finally {
+				inputStream.close();
+			}
+		} catch (FileNotFoundException e) {
+			throw e;
+		} catch (Exception e) {
+			throw new IOException(e);
+		}
+		if (checksums == null) {
+			return null;
+		}
+		
+		int chunksPerBlock = (int) (CrailConstants.BLOCK_SIZE / CrailConstants.CHECKSUM_CHUNK_SIZE);
+		int blocks = (checksums.length + chunksPerBlock - 1) / chunksPerBlock;
+		ByteBuffer crcs = ByteBuffer.allocate(chunksPerBlock*Integer.BYTES);
+		ByteBuffer blockDigests = ByteBuffer.allocate(blocks*MD5Hash.MD5_LEN);
+		for (int i = 0; i < checksums.length; i += chunksPerBlock) {
+			crcs.clear();
+			for (int j = i; j < Math.min(i + chunksPerBlock, checksums.length); j++) {
+				if (!CrailChecksum.isStored(checksums[j])) {
+					//part of the file has been written without checksums
+					return null;
+				}
+				crcs.putInt((int) checksums[j]);
+			}
+			blockDigests.put(MD5Hash.digest(crcs.array(), 0, crcs.position()).getDigest());
+		}
+		return new MD5MD5CRC32CastagnoliFileChecksum(CrailConstants.CHECKSUM_CHUNK_SIZE, chunksPerBlock, MD5Hash.digest(blockDigests.array()));
+	}
+
 	@Override
 	public FileStatus getFileStatus(Path path) throws IOException {
 		statistics.incrementReadOps(1);
@@ -250,6 +324,14 @@ public class CrailHadoopFileSystem extends FileSystem {
 		return status;
 	}
 
+	private FileStatus getStatus(CrailNode directFile) {
+		FsPermission permission = FsPermission.getFileDefault();
+		if (directFile.getType().isDirectory()) {
+			permission = FsPermission.getDirDefault();
+		}
+		return new FileStatus(directFile.getCapacity(), directFile.getType().isContainer(), CrailConstants.SHADOW_REPLICATION, CrailConstants.BLOCK_SIZE, directFile.getModificationTime(), directFile.getModificationTime(), permission, CrailConstants.USER, CrailConstants.USER, new Path(directFile.getPath()).makeQualified(this.getUri(), this.workingDir));
+	}
+
 	@Override
 	public BlockLocation[] getFileBlockLocations(FileStatus file, long start, long len) throws IOException {
 		return this.getFileBlockLocations(file.getPath(), start, len);
@@ -18,18 +18,22 @@
 
 package org.apache.crail.namenode;
 
+import java.util.List;
 import java.util.Queue;
-import java.util.concurrent.Delayed;
 import java.util.concurrent.TimeUnit;
 
 import org.apache.crail.CrailNodeType;
+import org.apache.crail.conf.CrailConstants;
+import org.apache.crail.metadata.BlockInfo;
+import org.apache.crail.metadata.DataNodeInfo;
 import org.apache.crail.metadata.FileInfo;
 
-public abstract class AbstractNode extends FileInfo implements Delayed {
+public abstract class AbstractNode extends FileInfo {
 	private int fileComponent;
 	private long delay;
 	private int storageClass;
 	private int locationClass;
+	private int stripeWidth;
 	
 	//children manipulation
 	//adds or replaces a child, returns previous value or null if there was no mapping
@@ -47,8 +51,24 @@ public abstract class AbstractNode extends FileInfo implements Delayed {
 	public abstract boolean addBlock(int index, NameNodeBlockInfo block) throws Exception;
 	//get block at the given index, returns a valid block or null otherwise
 	public abstract NameNodeBlockInfo getBlock(int index) throws Exception;
-	//clear all the blocks (used by GC)
-	public abstract void freeBlocks(BlockStore blockStore) throws Exception;	
+	//clear all the blocks (used by GC), the blocks are appended to the given list
+	public abstract void freeBlocks(List<NameNodeBlockInfo> freed) throws Exception;	
+	
+	//copy the block at the given index into the given block info, returns false if there is no such block
+	public boolean copyBlock(int index, BlockInfo block) throws Exception {
+		NameNodeBlockInfo nnBlock = getBlock(index);
+		if (nnBlock == null){
+			return false;
+		}
+		block.setBlockInfo(nnBlock);
+		return true;
+	}
+	
+	//get the datanode storing the block at the given index, returns null if there is no such block
+	public DataNodeInfo getBlockDataNode(int index) throws Exception {
+		NameNodeBlockInfo nnBlock = getBlock(index);
+		return nnBlock != null ? nnBlock.getDnInfo() : null;
+	}
 	
 	public AbstractNode(long fd, int fileComponent, CrailNodeType type, int storageClass, int locationAffinity, boolean enumerable){
 		super(fd, type, enumerable);
@@ -56,13 +76,28 @@ public abstract class AbstractNode extends FileInfo implements Delayed {
 		this.fileComponent = fileComponent;
 		this.storageClass = storageClass;
 		this.locationClass = locationAffinity;
+		this.stripeWidth = Math.max(1, CrailConstants.NAMENODE_STRIPEWIDTH);
 		this.delay = System.currentTimeMillis();
 		this.setModificationTime(System.currentTimeMillis());
+		this.setVersion(1);
 	}
 	
 	void rename(int newFileComponent) throws Exception {
 		this.fileComponent = newFileComponent;
 	}	
+	
+	//used when loading a snapshot
+	void restore(long capacity, long dirOffset, long token, long modificationTime){
+		this.capacity.set(capacity);
+		this.setDirOffset(dirOffset);
+		this.setToken(token);
+		this.setModificationTime(modificationTime);
+	}
+
+	//invalidates the version clients got with earlier lookups
+	void updateVersion(){
+		this.setVersion(getVersion() + 1);
+	}
 
 	public int getComponent() {
 		return this.fileComponent;
@@ -82,22 +117,15 @@ public abstract class AbstractNode extends FileInfo implements Delayed {
 		return String.format("%08d\t%08d\t\t%08d\t\t%08d\t\t%08d", getFd(), fileComponent, getCapacity(), getType().getLabel(), getDirOffset());
 	}	
 
-	@Override
-	public long getDelay(TimeUnit unit) {
-		long diff = delay - System.currentTimeMillis();
-		long _delay = unit.convert(diff, TimeUnit.MILLISECONDS);
-		return _delay;		
+	//time (ms) at which a deleted node may be reclaimed
+	public long getExpiration() {
+		return delay;
 	}
 
 	public void setDelay(long delay) {
 		this.delay = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(delay);
 	}
 
-	@Override
-	public int compareTo(Delayed o) {
-		return 0;
-	}
-
 	public int getStorageClass() {
 		return storageClass;
 	}
@@ -105,4 +133,13 @@ public abstract class AbstractNode extends FileInfo implements Delayed {
 	public int getLocationClass() {
 		return locationClass;
 	}
+	
+	//number of distinct datanodes consecutive blocks of this node rotate across
+	public int getStripeWidth() {
+		return stripeWidth;
+	}
+
+	void setStripeWidth(int stripeWidth) {
+		this.stripeWidth = Math.max(1, stripeWidth);
+	}
 }
@@ -0,0 +1,151 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.crail.namenode;
+
+import java.util.Arrays;
+
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.CommandLineParser;
+import org.apache.commons.cli.DefaultParser;
+import org.apache.commons.cli.HelpFormatter;
+import org.apache.commons.cli.Option;
+import org.apache.commons.cli.Options;
+import org.apache.crail.conf.CrailConstants;
+import org.apache.crail.metadata.BlockInfo;
+import org.apache.crail.metadata.DataNodeInfo;
+
+/*
+ * Measures block allocations/sec of the BlockStore for an increasing number of threads.
+ * Every thread repeatedly allocates a batch of blocks and returns them, the way files
+ * are written and deleted.
+ */
+public class BlockAllocationBenchmark {
+	private static final int REGION_BLOCKS = 1024;
+
+	private static BlockStore createBlockStore(int dataNodes, int blocks) throws Exception {
+		BlockStore blockStore = new BlockStore();
+		for (int i = 0; i < dataNodes; i++){
+			DataNodeInfo dnInfo = new DataNodeInfo(0, 0, 0, new byte[]{10, 0, (byte) (i >> 8), (byte) i}, 50020);
+			for (long lba = 0; lba < blocks; lba += REGION_BLOCKS){
+				int regionBlocks = (int) Math.min(REGION_BLOCKS, blocks - lba);
+				BlockInfo region = new BlockInfo(dnInfo, lba*CrailConstants.BLOCK_SIZE, lba*CrailConstants.BLOCK_SIZE, (int) (regionBlocks*CrailConstants.BLOCK_SIZE), 0);
+				for (int j = 0; j < regionBlocks; j++){
+					blockStore.addBlock(new NameNodeBlockInfo(region, j*CrailConstants.BLOCK_SIZE, (int) CrailConstants.BLOCK_SIZE));
+				}
+			}
+		}
+		return blockStore;
+	}
+
+	private static double run(final BlockStore blockStore, final int threads, final long loop, final int batch) throws Exception {
+		Thread[] workers = new Thread[threads];
+		final Exception[] failures = new Exception[threads];
+		for (int t = 0; t < threads; t++){
+			final int id = t;
+			workers[t] = new Thread(new Runnable() {
+				public void run() {
+					NameNodeBlockInfo[] blocks = new NameNodeBlockInfo[batch];
+					try {
+						for (long i = 0; i < loop; i += batch){
+							for (int j = 0; j < batch; j++){
+								blocks[j] = blockStore.getBlock(0, 0);
+								if (blocks[j] == null){
+									throw new Exception("out of blocks, increase the number of blocks per datanode");
+								}
+							}
+							for (int j = 0; j < batch; j++){
+								blockStore.addBlock(blocks[j]);
+							}
+						}
+					} catch(Exception e){
+						failures[id] = e;
+					}
+				}
+			});
+		}
+		long start = System.nanoTime();
+		for (Thread worker : workers){
+			worker.start();
+		}
+		for (Thread worker : workers){
+			worker.join();
+		}
+		long end = System.nanoTime();
+		for (Exception failure : failures){
+			if (failure != null){
+				throw failure;
+			}
+		}
+		return ((double) loop*threads) / ((double) (end - start)) * 1000000000.0;
+	}
+
+	public static void main(String[] args) throws Exception {
+		int maxThreads = Runtime.getRuntime().availableProcessors();
+		int dataNodes = 8;
+		int blocks = 65536;
+		long loop = 1000000;
+		int batch = 16;
+
+		Option threadsOption = Option.builder("k").desc("maximum number of threads, doubled from 1 [1..n]").hasArg().build();
+		Option dataNodeOption = Option.builder("d").desc("number of datanodes [1..n]").hasArg().build();
+		Option blocksOption = Option.builder("b").desc("blocks per datanode [1..n]").hasArg().build();
+		Option loopOption = Option.builder("n").desc("allocations per thread [1..n]").hasArg().build();
+		Option batchOption = Option.builder("s").desc("blocks held by a thread before returning them [1..n]").hasArg().build();
+		Option helpOption = Option.builder("h").desc("show this help message").build();
+
+		Options options = new Options();
+		options.addOption(threadsOption);
+		options.addOption(dataNodeOption);
+		options.addOption(blocksOption);
+		options.addOption(loopOption);
+		options.addOption(batchOption);
+		options.addOption(helpOption);
+
+		CommandLineParser parser = new DefaultParser();
+		CommandLine line = parser.parse(options, Arrays.copyOfRange(args, 0, args.length));
+		if (line.hasOption(helpOption.getOpt())) {
+			HelpFormatter formatter = new HelpFormatter();
+			formatter.printHelp("BlockAllocationBenchmark", options);
+			System.exit(-1);
+		}
+		if (line.hasOption(threadsOption.getOpt())) {
+			maxThreads = Integer.parseInt(line.getOptionValue(threadsOption.getOpt()));
+		}
+		if (line.hasOption(dataNodeOption.getOpt())) {
+			dataNodes = Integer.parseInt(line.getOptionValue(dataNodeOption.getOpt()));
+		}
+		if (line.hasOption(blocksOption.getOpt())) {
+			blocks = Integer.parseInt(line.getOptionValue(blocksOption.getOpt()));
+		}
+		if (line.hasOption(loopOption.getOpt())) {
+			loop = Long.parseLong(line.getOptionValue(loopOption.getOpt()));
+		}
+		if (line.hasOption(batchOption.getOpt())) {
+			batch = Integer.parseInt(line.getOptionValue(batchOption.getOpt()));
+		}
+
+		BlockStore blockStore = createBlockStore(dataNodes, blocks);
+		//warm up
+		run(blockStore, 1, loop, batch);
+		System.out.println("datanodes " + dataNodes + ", blocks/datanode " + blocks + ", batch " + batch);
+		for (int threads = 1; threads <= maxThreads; threads *= 2){
+			System.out.println("threads " + threads + ", allocations/sec " + (long) run(blockStore, threads, loop, batch));
+		}
+	}
+}
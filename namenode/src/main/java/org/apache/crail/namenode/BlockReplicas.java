@@ -0,0 +1,74 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.crail.namenode;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/*
+ * Read replicas of the blocks of a data file together with the number of reads per block.
+ * Replicas are soft state: they are neither logged nor written to snapshots, and the whole set
+ * is replaced once the file is written again or deleted. Readers do not lock, a replica is
+ * published by swapping in a copy of the per-block array.
+ */
+class BlockReplicas {
+	private static final NameNodeBlockInfo[] NO_REPLICAS = new NameNodeBlockInfo[0];
+	
+	private AtomicIntegerArray reads;
+	private AtomicReferenceArray<NameNodeBlockInfo[]> replicas;
+	
+	BlockReplicas(int blockCount){
+		this.reads = new AtomicIntegerArray(blockCount);
+		this.replicas = new AtomicReferenceArray<NameNodeBlockInfo[]>(blockCount);
+	}
+	
+	//counts a read of the given block, returns the number of reads so far or 0 for blocks added later
+	int read(int index){
+		if (index < 0 || index >= reads.length()){
+			return 0;
+		}
+		return reads.incrementAndGet(index) & Integer.MAX_VALUE;
+	}
+	
+	NameNodeBlockInfo[] get(int index){
+		if (index < 0 || index >= replicas.length()){
+			return NO_REPLICAS;
+		}
+		NameNodeBlockInfo[] blockReplicas = replicas.get(index);
+		return blockReplicas == null ? NO_REPLICAS : blockReplicas;
+	}
+	
+	//must be called with the file locked
+	void add(int index, NameNodeBlockInfo replica){
+		NameNodeBlockInfo[] blockReplicas = get(index);
+		NameNodeBlockInfo[] newReplicas = Arrays.copyOf(blockReplicas, blockReplicas.length + 1);
+		newReplicas[blockReplicas.length] = replica;
+		replicas.set(index, newReplicas);
+	}
+	
+	void collect(List<NameNodeBlockInfo> blocks){
+		for (int i = 0; i < replicas.length(); i++){
+			for (NameNodeBlockInfo replica : get(i)){
+				blocks.add(replica);
+			}
+		}
+	}
+}
@@ -0,0 +1,54 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.crail.namenode;
+
+/*
+ * Decides which datanode of a storage or location class a new block is taken from.
+ * The namenode starts at the returned position and moves on to the next datanodes
+ * if the chosen one is offline or has no free blocks. Configured through
+ * crail.namenode.blockselection, either by one of the short names below or by the
+ * name of a class implementing this interface.
+ */
+public interface BlockSelection {
+	
+	//returns the position in the given (non-empty) array of datanodes to start the search at
+	public abstract int getNext(DataNodeBlocks[] dataNodes);
+	
+	@SuppressWarnings("unchecked")
+	public static BlockSelection createInstance(String name) throws Exception {
+		if (name.equalsIgnoreCase("roundrobin")){
+			return new RoundRobinBlockSelection();
+		} else if (name.equalsIgnoreCase("random")){
+			return new RandomBlockSelection();
+		} else if (name.equalsIgnoreCase("poweroftwo")){
+			return new PowerOfTwoBlockSelection();
+		} else if (name.equalsIgnoreCase("loadweighted")){
+			return new LoadWeightedBlockSelection();
+		}
+		
+		Class<?> nodeClass = Class.forName(name);
+		if (BlockSelection.class.isAssignableFrom(nodeClass)){
+			Class<? extends BlockSelection> blockSelectionClass = (Class<? extends BlockSelection>) nodeClass;
+			BlockSelection blockSelection = blockSelectionClass.newInstance();
+			return blockSelection;
+		} else {
+			throw new Exception("Cannot instantiate block selection of type " + name);
+		}
+	}
+}
@@ -20,15 +20,15 @@ package org.apache.crail.namenode;
 
 import java.net.UnknownHostException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ThreadLocalRandom;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import org.apache.crail.conf.CrailConstants;
 import org.apache.crail.metadata.BlockInfo;
 import org.apache.crail.metadata.DataNodeInfo;
 import org.apache.crail.rpc.RpcErrors;
-import org.apache.crail.utils.AtomicIntegerModulo;
 import org.apache.crail.utils.CrailUtils;
 import org.slf4j.Logger;
 
@@ -37,7 +37,7 @@ public class BlockStore {
 	
 	private StorageClass[] storageClasses;
 	
-	public BlockStore(){
+	public BlockStore() throws Exception {
 		storageClasses = new StorageClass[CrailConstants.STORAGE_CLASSES]; 
 		for (int i = 0; i < CrailConstants.STORAGE_CLASSES; i++){
 			this.storageClasses[i] = new StorageClass(i);
@@ -49,6 +49,34 @@ public class BlockStore {
 		return storageClasses[storageClass].addBlock(blockInfo);
 	}
 
+	//returns a batch of blocks, every datanode is looked up and its free counter updated once per batch
+	public void addBlocks(List<NameNodeBlockInfo> blocks) throws UnknownHostException {
+		DataNodeBlocks[] dataNodes = new DataNodeBlocks[4];
+		int[] released = new int[dataNodes.length];
+		int count = 0;
+		for (NameNodeBlockInfo block : blocks){
+			DataNodeInfo dnInfo = block.getDnInfo();
+			int index = 0;
+			while (index < count && (dataNodes[index].key() != dnInfo.key() || dataNodes[index].getStorageClass() != dnInfo.getStorageClass())){
+				index++;
+			}
+			if (index == count){
+				if (count == dataNodes.length){
+					dataNodes = Arrays.copyOf(dataNodes, 2*count);
+					released = Arrays.copyOf(released, 2*count);
+				}
+				dataNodes[count++] = storageClasses[dnInfo.getStorageClass()].getOrAddDataNode(dnInfo);
+			}
+			if (dataNodes[index].releaseBlock(block)){
+				released[index]++;
+			}
+		}
+		for (int i = 0; i < count; i++){
+			dataNodes[i].touch();
+			dataNodes[i].addReleasedBlocks(released[i]);
+		}
+	}
+
 	public boolean regionExists(BlockInfo region) {
 		int storageClass = region.getDnInfo().getStorageClass();
 		return storageClasses[storageClass].regionExists(region);
@@ -60,17 +88,49 @@ public class BlockStore {
 	}
 
 	public NameNodeBlockInfo getBlock(int storageClass, int locationAffinity) throws InterruptedException {
+		return getBlock(storageClass, locationAffinity, null, 0);
+	}
+	
+	//avoids the first excludedCount datanodes in excluded (by key), if no other datanode has free blocks
+	//the exclusions are relaxed from the end of the array, i.e., the first entries are avoided the longest
+	public NameNodeBlockInfo getBlock(int storageClass, int locationAffinity, long[] excluded, int excludedCount) throws InterruptedException {
+		NameNodeBlockInfo block = null;
+		for (int count = excludedCount; block == null && count >= 0; count--){
+			block = _getBlock(storageClass, locationAffinity, excluded, count);
+		}
+		return block;
+	}
+	
+	public DataNodeBlocks getDataNode(DataNodeInfo dnInfo) {
+		int storageClass = dnInfo.getStorageClass();
+		return storageClasses[storageClass].getDataNode(dnInfo);
+	}
+	
+	short addDataNode(DataNodeBlocks dataNode) {
+		int storageClass = dataNode.getStorageClass();
+		return storageClasses[storageClass].addDataNode(dataNode);
+	}
+	
+	ArrayList<DataNodeBlocks> getDataNodes() {
+		ArrayList<DataNodeBlocks> dataNodes = new ArrayList<DataNodeBlocks>();
+		for (int i = 0; i < storageClasses.length; i++){
+			dataNodes.addAll(storageClasses[i].getDataNodes());
+		}
+		return dataNodes;
+	}
+	
+	private NameNodeBlockInfo _getBlock(int storageClass, int locationAffinity, long[] excluded, int excludedCount) throws InterruptedException {
 		NameNodeBlockInfo block = null;
 		if (storageClass > 0){
 			if (storageClass < storageClasses.length){
-				block = storageClasses[storageClass].getBlock(locationAffinity);
+				block = storageClasses[storageClass].getBlock(locationAffinity, excluded, excludedCount);
 			} else {
 				//TODO: warn if requested storage class is invalid
 			}
 		}
 		if (block == null){
 			for (int i = 0; i < storageClasses.length; i++){
-				block = storageClasses[i].getBlock(locationAffinity);
+				block = storageClasses[i].getBlock(locationAffinity, excluded, excludedCount);
 				if (block != null){
 					break;
 				}
@@ -79,11 +139,6 @@ public class BlockStore {
 		
 		return block;
 	}
-
-	public DataNodeBlocks getDataNode(DataNodeInfo dnInfo) {
-		int storageClass = dnInfo.getStorageClass();
-		return storageClasses[storageClass].getDataNode(dnInfo);
-	}
 	
 }
 
@@ -96,15 +151,11 @@ class StorageClass {
 	private DataNodeArray anySet;
 	private BlockSelection blockSelection;
 	
-	public StorageClass(int storageClass){
+	public StorageClass(int storageClass) throws Exception {
 		this.storageClass = storageClass;
 		this.membership = new ConcurrentHashMap<Long, DataNodeBlocks>();
 		this.affinitySets = new ConcurrentHashMap<Integer, DataNodeArray>();
-		if (CrailConstants.NAMENODE_BLOCKSELECTION.equalsIgnoreCase("roundrobin")){
-			this.blockSelection = new RoundRobinBlockSelection();
-		} else {
-			this.blockSelection = new RandomBlockSelection();
-		}
+		this.blockSelection = BlockSelection.createInstance(CrailConstants.NAMENODE_BLOCKSELECTION);
 		this.anySet = new DataNodeArray(blockSelection);
 	}
 	
@@ -141,14 +192,24 @@ class StorageClass {
 		return RpcErrors.ERR_OK;
 	}
 
-	NameNodeBlockInfo getBlock(int affinity) throws InterruptedException {
+	DataNodeBlocks getOrAddDataNode(DataNodeInfo dnInfo) throws UnknownHostException {
+		DataNodeBlocks current = membership.get(dnInfo.key());
+		if (current == null) {
+			current = DataNodeBlocks.fromDataNodeInfo(dnInfo);
+			addDataNode(current);
+			current = membership.get(dnInfo.key());
+		}
+		return current;
+	}
+
+	NameNodeBlockInfo getBlock(int affinity, long[] excluded, int excludedCount) throws InterruptedException {
 		NameNodeBlockInfo block = null;
 		if (affinity == 0) {
-			block = anySet.get();
+			block = anySet.get(excluded, excludedCount);
 		} else {
-			block = _getAffinityBlock(affinity);
+			block = _getAffinityBlock(affinity, excluded, excludedCount);
 			if (block == null) {
-				block = anySet.get();
+				block = anySet.get(excluded, excludedCount);
 			} else {
 			}
 		}
@@ -158,6 +219,10 @@ class StorageClass {
 	DataNodeBlocks getDataNode(DataNodeInfo dataNode) {
 		return membership.get(dataNode.key());
 	}
+	
+	Collection<DataNodeBlocks> getDataNodes() {
+		return membership.values();
+	}
 
 	short addDataNode(DataNodeBlocks dataNode) {
 		DataNodeBlocks current = membership.putIfAbsent(dataNode.key(), dataNode);
@@ -188,86 +253,58 @@ class StorageClass {
 		anySet.add(dataNode);
 	}
 	
-	private NameNodeBlockInfo _getAffinityBlock(int affinity) throws InterruptedException {
+	private NameNodeBlockInfo _getAffinityBlock(int affinity, long[] excluded, int excludedCount) throws InterruptedException {
 		NameNodeBlockInfo block = null;
 		DataNodeArray affinitySet = affinitySets.get(affinity);
 		if (affinitySet != null){
-			block = affinitySet.get();
+			block = affinitySet.get(excluded, excludedCount);
 		}
 		return block;
 	}
 	
-	public static interface BlockSelection {
-		int getNext(int size);
-	}
-	
-	private class RoundRobinBlockSelection implements BlockSelection {
-		private AtomicIntegerModulo counter;
-		
-		public RoundRobinBlockSelection(){
-			LOG.info("round robin block selection");
-			counter = new AtomicIntegerModulo();
-		}
-		
-		@Override
-		public int getNext(int size) {
-			return counter.getAndIncrement() % size;
-		}
-	}
-	
-	private class RandomBlockSelection implements BlockSelection {
-		public RandomBlockSelection(){
-			LOG.info("random block selection");
-		}		
-		
-		@Override
-		public int getNext(int size) {
-			return ThreadLocalRandom.current().nextInt(size);
-		}
-	}	
-	
+	//copy on write, datanodes are rarely added but every block allocation scans the array
 	private class DataNodeArray {
-		private ArrayList<DataNodeBlocks> arrayList;
-		private ReentrantReadWriteLock lock;
+		private volatile DataNodeBlocks[] array;
 		private BlockSelection blockSelection;
 		
 		public DataNodeArray(BlockSelection blockSelection){
-			this.arrayList = new ArrayList<DataNodeBlocks>();
-			this.lock = new ReentrantReadWriteLock();
+			this.array = new DataNodeBlocks[0];
 			this.blockSelection = blockSelection;
 		}
 		
-		public void add(DataNodeBlocks dataNode){
-			lock.writeLock().lock();
-			try {
-				arrayList.add(dataNode);
-			} finally {
-				lock.writeLock().unlock();
-			}
+		public synchronized void add(DataNodeBlocks dataNode){
+			DataNodeBlocks[] newArray = Arrays.copyOf(array, array.length + 1);
+			newArray[array.length] = dataNode;
+			this.array = newArray;
 		}
 		
-		private NameNodeBlockInfo get() throws InterruptedException {
-			lock.readLock().lock();
-			try {
-				NameNodeBlockInfo block = null;
-				int size = arrayList.size();
-				if (size > 0){
-					int startIndex = blockSelection.getNext(size);
-					for (int i = 0; i < size; i++){
-						int index = (startIndex + i) % size;
-						DataNodeBlocks anyDn = arrayList.get(index);
-						if (anyDn.isOnline()){
-							block = anyDn.getFreeBlock();
-						}
-						if (block != null){
-							break;
-						} 
+		private NameNodeBlockInfo get(long[] excluded, int excludedCount) throws InterruptedException {
+			DataNodeBlocks[] array = this.array;
+			NameNodeBlockInfo block = null;
+			int size = array.length;
+			if (size > 0){
+				int startIndex = blockSelection.getNext(array);
+				for (int i = 0; i < size; i++){
+					int index = (startIndex + i) % size;
+					DataNodeBlocks anyDn = array[index];
+					if (anyDn.isOnline() && !isExcluded(anyDn, excluded, excludedCount)){
+						block = anyDn.getFreeBlock();
 					}
+					if (block != null){
+						break;
+					} 
 				}
-				return block;
-			} finally {
-				lock.readLock().unlock();
 			}
+			return block;
+		}
+		
+		private boolean isExcluded(DataNodeBlocks dataNode, long[] excluded, int excludedCount){
+			for (int i = 0; i < excludedCount; i++){
+				if (excluded[i] == dataNode.key()){
+					return true;
+				}
+			}
+			return false;
 		}
 	}
 }
@@ -0,0 +1,410 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.crail.namenode;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.LockSupport;
+
+import org.apache.crail.CrailNodeType;
+import org.apache.crail.conf.CrailConstants;
+import org.apache.crail.metadata.BlockInfo;
+import org.apache.crail.metadata.DataNodeInfo;
+import org.apache.crail.utils.CrailUtils;
+import org.slf4j.Logger;
+
+/*
+ * Periodically writes the namenode state to <log>.snapshot so that the log records
+ * covered by the snapshot can be dropped. The state is captured while holding the
+ * checkpoint lock exclusively, together with a rotation of the log, which makes the
+ * snapshot and the remaining log tail consistent with each other.
+ */
+public class CheckpointService implements Runnable {
+	private static final Logger LOG = CrailUtils.getLogger();
+	private static final int MAGIC = 0x43524c53;
+	private static final int VERSION = 2;
+	private static final int BUFFER_SIZE = 1024*1024;
+	private static final byte NODE = 1;
+	private static final byte END = 0;
+	private static final long ROOT = -1;
+	private static final long ORPHAN = -2;
+	private static final int NODE_RECORD = 1 + 8*2 + 4*5 + 8*5 + 4;
+	private static final int BLOCK_RECORD = 4*2 + 8*2 + 4;
+
+	private NameNodeService service;
+	private LogService logService;
+	private volatile boolean running;
+	private volatile Thread thread;
+
+	public CheckpointService(NameNodeService service, LogService logService){
+		this.service = service;
+		this.logService = logService;
+		this.running = true;
+		this.thread = null;
+	}
+
+	public void start() {
+		this.thread = new Thread(this, "checkpoint");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	@Override
+	public void run() {
+		while(running){
+			try {
+				LockSupport.parkNanos(TimeUnit.SECONDS.toNanos(1));
+				if (running && CrailConstants.NAMENODE_LOG_CHECKPOINT > 0 && logService.size() >= CrailConstants.NAMENODE_LOG_CHECKPOINT){
+					checkpoint();
+				}
+			} catch(Exception e){
+				LOG.info("Exception during checkpoint: " + e.getMessage());
+			}
+		}
+	}
+
+	//lets a checkpoint in progress complete and waits for the service to exit
+	public void close() throws IOException {
+		this.running = false;
+		if (thread == null){
+			return;
+		}
+		LockSupport.unpark(thread);
+		try {
+			thread.join();
+		} catch(InterruptedException e){
+			Thread.currentThread().interrupt();
+			throw new IOException("interrupted while closing the checkpoint service", e);
+		}
+	}
+
+	public void checkpoint() throws Exception {
+		long start = System.nanoTime();
+		File tmpFile = new File(CrailConstants.NAMENODE_LOG + ".snapshot.tmp");
+		File snapshotFile = new File(CrailConstants.NAMENODE_LOG + ".snapshot");
+		FileChannel channel = FileChannel.open(tmpFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+		long checkpointId = 0;
+		long logSize = 0;
+		long lockTime = 0;
+		try {
+			Lock lock = service.getCheckpointLock().writeLock();
+			lock.lock();
+			try {
+				lockTime = System.nanoTime();
+				logSize = logService.size();
+				checkpointId = logService.rotate();
+				write(channel, checkpointId, logSize);
+				lockTime = System.nanoTime() - lockTime;
+			} finally {
+				lock.unlock();
+			}
+			channel.force(true);
+		} finally {
+			channel.close();
+		}
+
+		//the snapshot only becomes visible once it is complete, afterwards the covered logs are obsolete
+		Files.move(tmpFile.toPath(), snapshotFile.toPath(), StandardCopyOption.ATOMIC_MOVE);
+		LogService.syncDirectory(snapshotFile);
+		logService.deleteRotated(checkpointId);
+
+		long total = System.nanoTime() - start;
+		LOG.info("checkpoint " + checkpointId + " done, log size " + logSize + ", snapshot size " + snapshotFile.length() + ", lock held " + TimeUnit.NANOSECONDS.toMillis(lockTime) + "ms, total " + TimeUnit.NANOSECONDS.toMillis(total) + "ms");
+	}
+
+	//loads the snapshot if there is one, returns the id of the checkpoint or 0
+	public static long load(NameNodeService service, Map<Long, Long> tokens) throws Exception {
+		File snapshotFile = new File(CrailConstants.NAMENODE_LOG + ".snapshot");
+		if (!snapshotFile.exists()){
+			return 0;
+		}
+
+		long start = System.nanoTime();
+		FileChannel channel = FileChannel.open(snapshotFile.toPath(), StandardOpenOption.READ);
+		try {
+			MappedFileReader reader = new MappedFileReader(channel);
+			ByteBuffer buffer = reader.ensure(8 + 8*3);
+			if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION){
+				throw new IOException("invalid namenode snapshot " + snapshotFile.getAbsolutePath());
+			}
+			long checkpointId = buffer.getLong();
+			long logSize = buffer.getLong();
+			service.setSequenceId(buffer.getLong());
+
+			DataNodeBlocks[] dataNodes = readDataNodes(reader, service.getBlockStore());
+			long nodes = readNodes(reader, service, dataNodes, tokens);
+
+			LOG.info("loaded checkpoint " + checkpointId + ", covering " + logSize + " bytes of log, datanodes " + dataNodes.length + ", nodes " + nodes + ", time " + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + "ms");
+			return checkpointId;
+		} finally {
+			channel.close();
+		}
+	}
+
+	private void write(FileChannel channel, long checkpointId, long logSize) throws Exception {
+		SnapshotWriter writer = new SnapshotWriter(channel);
+		ByteBuffer buffer = writer.ensure(8 + 8*3);
+		buffer.putInt(MAGIC);
+		buffer.putInt(VERSION);
+		buffer.putLong(checkpointId);
+		buffer.putLong(logSize);
+		buffer.putLong(service.getSequenceId());
+
+		//blocks waiting for GC are written as free blocks
+		ArrayList<NameNodeBlockInfo> pendingBlocks = new ArrayList<NameNodeBlockInfo>(service.getGCServer().getPendingBlocks());
+		HashMap<Long, Integer> dataNodeIndex = writeDataNodes(writer, service.getBlockStore(), pendingBlocks);
+
+		ArrayDeque<AbstractNode> nodes = new ArrayDeque<AbstractNode>();
+		ArrayDeque<Long> parents = new ArrayDeque<Long>();
+		nodes.push(service.getFileStore().getRoot());
+		parents.push(ROOT);
+		//files waiting for GC still own their blocks
+		for (AbstractNode orphan : service.getGCServer().getPendingNodes()){
+			nodes.push(orphan);
+			parents.push(ORPHAN);
+		}
+
+		//pre-order, a parent is always written before its children
+		while(!nodes.isEmpty()){
+			AbstractNode node = nodes.pop();
+			long parent = parents.pop();
+			writeNode(writer, node, parent, dataNodeIndex);
+			if (node instanceof DirectoryBlocks){
+				for (AbstractNode child : ((DirectoryBlocks) node).getChildren()){
+					nodes.push(child);
+					parents.push(node.getFd());
+				}
+			}
+		}
+
+		writer.ensure(1).put(END);
+		writer.flush();
+	}
+
+	private static HashMap<Long, Integer> writeDataNodes(SnapshotWriter writer, BlockStore blockStore, ArrayList<NameNodeBlockInfo> pendingBlocks) throws IOException {
+		ArrayList<DataNodeBlocks> dataNodes = blockStore.getDataNodes();
+		HashMap<Long, Integer> dataNodeIndex = new HashMap<Long, Integer>();
+		writer.ensure(4).putInt(dataNodes.size());
+		for (DataNodeBlocks dataNode : dataNodes){
+			dataNodeIndex.put(dataNode.key(), dataNodeIndex.size());
+			writer.ensure(DataNodeInfo.CSIZE);
+			dataNode.write(writer.buffer());
+
+			ArrayList<BlockInfo> regions = new ArrayList<BlockInfo>(dataNode.getRegions());
+			writer.ensure(4).putInt(regions.size());
+			for (BlockInfo region : regions){
+				writer.ensure(BlockInfo.CSIZE);
+				region.write(writer.buffer());
+			}
+
+			ArrayList<NameNodeBlockInfo> freeBlocks = new ArrayList<NameNodeBlockInfo>(dataNode.getFreeBlocks());
+			for (NameNodeBlockInfo block : pendingBlocks){
+				if (block.getDnInfo().key() == dataNode.key()){
+					freeBlocks.add(block);
+				}
+			}
+			writer.ensure(4).putInt(freeBlocks.size());
+			for (NameNodeBlockInfo block : freeBlocks){
+				ByteBuffer buffer = writer.ensure(8*2 + 4);
+				buffer.putLong(block.getRegion().getLba());
+				buffer.putLong(block.getOffset());
+				buffer.putInt(block.getLength());
+			}
+		}
+		return dataNodeIndex;
+	}
+
+	private static DataNodeBlocks[] readDataNodes(MappedFileReader reader, BlockStore blockStore) throws Exception {
+		DataNodeBlocks[] dataNodes = new DataNodeBlocks[reader.ensure(4).getInt()];
+		for (int i = 0; i < dataNodes.length; i++){
+			DataNodeInfo dnInfo = new DataNodeInfo();
+			dnInfo.update(reader.ensure(DataNodeInfo.CSIZE));
+			DataNodeBlocks dataNode = DataNodeBlocks.fromDataNodeInfo(dnInfo);
+			dataNode.touch();
+			blockStore.addDataNode(dataNode);
+			dataNodes[i] = dataNode;
+
+			int regions = reader.ensure(4).getInt();
+			for (int j = 0; j < regions; j++){
+				BlockInfo region = new BlockInfo();
+				region.update(reader.ensure(BlockInfo.CSIZE));
+				dataNode.addRegion(region);
+			}
+
+			int freeBlocks = reader.ensure(4).getInt();
+			for (int j = 0; j < freeBlocks; j++){
+				ByteBuffer buffer = reader.ensure(8*2 + 4);
+				BlockInfo region = getRegion(dataNode, buffer.getLong());
+				dataNode.addFreeBlock(new NameNodeBlockInfo(region, buffer.getLong(), buffer.getInt()));
+			}
+		}
+		return dataNodes;
+	}
+
+	private static void writeNode(SnapshotWriter writer, AbstractNode node, long parent, HashMap<Long, Integer> dataNodeIndex) throws Exception {
+		ArrayList<Map.Entry<Integer, NameNodeBlockInfo>> blocks = new ArrayList<Map.Entry<Integer, NameNodeBlockInfo>>();
+		long dirOffsetCounter = 0;
+		if (node instanceof DirectoryBlocks){
+			DirectoryBlocks directory = (DirectoryBlocks) node;
+			blocks.addAll(directory.getBlocks());
+			dirOffsetCounter = directory.getDirOffsetCounter();
+		} else if (node instanceof FileBlocks){
+			FileBlocks file = (FileBlocks) node;
+			int count = file.getBlockCount();
+			for (int i = 0; i < count; i++){
+				blocks.add(new HashMap.SimpleEntry<Integer, NameNodeBlockInfo>(i, file.getBlock(i)));
+			}
+		}
+
+		ByteBuffer buffer = writer.ensure(NODE_RECORD);
+		buffer.put(NODE);
+		buffer.putLong(parent);
+		buffer.putLong(node.getFd());
+		buffer.putInt(node.getComponent());
+		buffer.putInt(node.getType().getLabel());
+		buffer.putInt(node.getStorageClass());
+		buffer.putInt(node.getLocationClass());
+		buffer.putInt(node.getStripeWidth());
+		buffer.putLong(node.getCapacity());
+		buffer.putLong(node.getDirOffset());
+		buffer.putLong(node.getToken());
+		buffer.putLong(node.getModificationTime());
+		buffer.putLong(dirOffsetCounter);
+		buffer.putInt(blocks.size());
+		for (Map.Entry<Integer, NameNodeBlockInfo> entry : blocks){
+			NameNodeBlockInfo block = entry.getValue();
+			Integer index = dataNodeIndex.get(block.getDnInfo().key());
+			if (index == null){
+				throw new IOException("block of fd " + node.getFd() + " refers to unknown datanode");
+			}
+			buffer = writer.ensure(BLOCK_RECORD);
+			buffer.putInt(entry.getKey());
+			buffer.putInt(index);
+			buffer.putLong(block.getRegion().getLba());
+			buffer.putLong(block.getOffset());
+			buffer.putInt(block.getLength());
+		}
+	}
+
+	private static long readNodes(MappedFileReader reader, NameNodeService service, DataNodeBlocks[] dataNodes, Map<Long, Long> tokens) throws Exception {
+		FileStore fileStore = service.getFileStore();
+		ConcurrentLongMap<AbstractNode> fileTable = service.getFileTable();
+		long count = 0;
+		while(reader.ensure(1).get() == NODE){
+			ByteBuffer buffer = reader.ensure(NODE_RECORD - 1);
+			long parent = buffer.getLong();
+			long fd = buffer.getLong();
+			int component = buffer.getInt();
+			CrailNodeType type = CrailNodeType.parse(buffer.getInt());
+			int storageClass = buffer.getInt();
+			int locationClass = buffer.getInt();
+			int stripeWidth = buffer.getInt();
+			long capacity = buffer.getLong();
+			long dirOffset = buffer.getLong();
+			long token = buffer.getLong();
+			long modificationTime = buffer.getLong();
+			long dirOffsetCounter = buffer.getLong();
+			int blocks = buffer.getInt();
+
+			AbstractNode node = null;
+			if (parent == ROOT){
+				node = fileStore.getRoot();
+				if (node.getFd() != fd){
+					throw new IOException("snapshot root fd " + fd + " does not match namenode root fd " + node.getFd());
+				}
+			} else {
+				node = fileStore.createNode(fd, component, type, storageClass, locationClass, true);
+			}
+			node.restore(capacity, dirOffset, token, modificationTime);
+			node.setStripeWidth(stripeWidth);
+			if (node instanceof DirectoryBlocks){
+				((DirectoryBlocks) node).setDirOffsetCounter(dirOffsetCounter);
+			}
+			for (int i = 0; i < blocks; i++){
+				buffer = reader.ensure(BLOCK_RECORD);
+				int index = buffer.getInt();
+				DataNodeBlocks dataNode = dataNodes[buffer.getInt()];
+				BlockInfo region = getRegion(dataNode, buffer.getLong());
+				node.addBlock(index, new NameNodeBlockInfo(region, buffer.getLong(), buffer.getInt()));
+			}
+
+			if (parent == ORPHAN){
+				service.appendToDeleteQueue(node);
+			} else if (parent != ROOT){
+				AbstractNode parentNode = fileTable.get(parent);
+				if (parentNode == null || !(parentNode instanceof DirectoryBlocks)){
+					throw new IOException("snapshot entry fd " + fd + " has invalid parent " + parent);
+				}
+				((DirectoryBlocks) parentNode).restoreChild(node);
+			}
+			fileTable.put(fd, node);
+			tokens.put(fd, token);
+			count++;
+		}
+		return count;
+	}
+
+	private static BlockInfo getRegion(DataNodeBlocks dataNode, long lba) throws IOException {
+		BlockInfo region = dataNode.getRegion(lba);
+		if (region == null){
+			throw new IOException("snapshot refers to unknown region " + lba);
+		}
+		return region;
+	}
+
+	private static class SnapshotWriter {
+		private FileChannel channel;
+		private ByteBuffer buffer;
+
+		public SnapshotWriter(FileChannel channel){
+			this.channel = channel;
+			this.buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+		}
+
+		public ByteBuffer ensure(int size) throws IOException {
+			if (buffer.remaining() < size){
+				flush();
+			}
+			return buffer;
+		}
+
+		public ByteBuffer buffer(){
+			return buffer;
+		}
+
+		public void flush() throws IOException {
+			buffer.flip();
+			while(buffer.hasRemaining()){
+				channel.write(buffer);
+			}
+			buffer.clear();
+		}
+	}
+}
@@ -0,0 +1,332 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.crail.namenode;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/*
+ * Concurrent map with primitive long keys, used for the namenode file table and
+ * the directory tables. Keys and values are kept in flat arrays with linear probing,
+ * so an entry costs two array slots instead of a boxed key plus a hash node.
+ *
+ * The map is split into segments, writers lock their segment, readers do not lock.
+ * A value is published before its key and a key never moves while a table is in use,
+ * removal only clears the value. Tables are rebuilt (dropping removed keys) when the used slots
+ * exceed the load factor, readers still holding the old table see a consistent snapshot.
+ * Iteration is weakly consistent. Integer keys are widened.
+ */
+class ConcurrentLongMap<V> {
+	private static final long EMPTY = Long.MIN_VALUE;
+	private static final int MIN_CAPACITY = 4;
+	private static final int MAX_CAPACITY = 1 << 30;
+
+	private Segment<V>[] segments;
+	private int segmentShift;
+
+	public ConcurrentLongMap(){
+		this(1, MIN_CAPACITY);
+	}
+
+	@SuppressWarnings("unchecked")
+	public ConcurrentLongMap(int segmentCount, int initialCapacity){
+		int count = Integer.highestOneBit(Math.max(1, segmentCount));
+		this.segments = (Segment<V>[]) new Segment<?>[count];
+		this.segmentShift = 64 - Integer.numberOfTrailingZeros(count);
+		int capacity = tableSize(Math.max(MIN_CAPACITY, initialCapacity / count));
+		for (int i = 0; i < count; i++){
+			segments[i] = new Segment<V>(capacity);
+		}
+	}
+
+	public V get(long key){
+		long hash = hash(key);
+		return segmentFor(hash).get(key, hash);
+	}
+
+	public boolean containsKey(long key){
+		return get(key) != null;
+	}
+
+	public V put(long key, V value){
+		checkArguments(key, value);
+		long hash = hash(key);
+		return segmentFor(hash).put(key, hash, value, false);
+	}
+
+	public V putIfAbsent(long key, V value){
+		checkArguments(key, value);
+		long hash = hash(key);
+		return segmentFor(hash).put(key, hash, value, true);
+	}
+
+	public V remove(long key){
+		long hash = hash(key);
+		return segmentFor(hash).remove(key, hash);
+	}
+
+	public int size(){
+		long size = 0;
+		for (Segment<V> segment : segments){
+			size += segment.size;
+		}
+		return (int) Math.min(size, Integer.MAX_VALUE);
+	}
+
+	public boolean isEmpty(){
+		for (Segment<V> segment : segments){
+			if (segment.size > 0){
+				return false;
+			}
+		}
+		return true;
+	}
+
+	//keys of the entries present at the time each segment is visited
+	public long[] keys(){
+		long[] keys = new long[size()];
+		int count = 0;
+		for (Segment<V> segment : segments){
+			Table<V> table = segment.table;
+			for (int i = 0; i < table.capacity(); i++){
+				long key = table.keys.get(i);
+				if (key != EMPTY && table.values.get(i) != null){
+					if (count == keys.length){
+						keys = Arrays.copyOf(keys, Math.max(4, keys.length*2));
+					}
+					keys[count++] = key;
+				}
+			}
+		}
+		return count == keys.length ? keys : Arrays.copyOf(keys, count);
+	}
+
+	public Iterable<V> values(){
+		return new Iterable<V>() {
+			@Override
+			public Iterator<V> iterator() {
+				return new ValueIterator();
+			}
+		};
+	}
+
+	private Segment<V> segmentFor(long hash){
+		return segmentShift == 64 ? segments[0] : segments[(int) (hash >>> segmentShift)];
+	}
+
+	private static long hash(long key){
+		return key * 0x9E3779B97F4A7C15L;
+	}
+
+	private static int index(long hash, int mask){
+		return (int) (hash ^ (hash >>> 32)) & mask;
+	}
+
+	private static int tableSize(int entries){
+		long slots = Math.max(MIN_CAPACITY, (long) entries * 4 / 3 + 1);
+		if (slots >= MAX_CAPACITY){
+			return MAX_CAPACITY;
+		}
+		return Integer.highestOneBit((int) slots - 1) << 1;
+	}
+
+	private static void checkArguments(long key, Object value){
+		if (key == EMPTY){
+			throw new IllegalArgumentException("key " + key + " is reserved");
+		}
+		if (value == null){
+			throw new NullPointerException();
+		}
+	}
+
+	private static class Table<V> {
+		private final AtomicLongArray keys;
+		private final AtomicReferenceArray<V> values;
+		private final int mask;
+
+		Table(int capacity){
+			this.keys = new AtomicLongArray(capacity);
+			this.values = new AtomicReferenceArray<V>(capacity);
+			this.mask = capacity - 1;
+			for (int i = 0; i < capacity; i++){
+				keys.lazySet(i, EMPTY);
+			}
+		}
+
+		int capacity(){
+			return mask + 1;
+		}
+	}
+
+	private static class Segment<V> {
+		private volatile Table<V> table;
+		private volatile int size;
+		//slots holding a key, including the ones whose entry has been removed
+		private int used;
+
+		Segment(int capacity){
+			this.table = new Table<V>(capacity);
+			this.size = 0;
+			this.used = 0;
+		}
+
+		V get(long key, long hash){
+			Table<V> table = this.table;
+			for (int i = index(hash, table.mask), probes = 0; probes <= table.mask; i = (i + 1) & table.mask, probes++){
+				long current = table.keys.get(i);
+				if (current == key){
+					return table.values.get(i);
+				} else if (current == EMPTY){
+					return null;
+				}
+			}
+			return null;
+		}
+
+		synchronized V put(long key, long hash, V value, boolean onlyIfAbsent){
+			Table<V> table = this.table;
+			int i = index(hash, table.mask);
+			while(true){
+				long current = table.keys.get(i);
+				if (current == key){
+					V old = table.values.get(i);
+					if (old == null){
+						table.values.set(i, value);
+						size++;
+					} else if (!onlyIfAbsent){
+						table.values.set(i, value);
+					}
+					return old;
+				} else if (current == EMPTY){
+					break;
+				}
+				i = (i + 1) & table.mask;
+			}
+
+			if (used + 1 > table.capacity() - (table.capacity() >> 2) && table.capacity() < MAX_CAPACITY){
+				table = rehash(Math.max(table.capacity(), tableSize((size + 1)*2)));
+				i = index(hash, table.mask);
+				while(table.keys.get(i) != EMPTY){
+					i = (i + 1) & table.mask;
+				}
+			} else if (used + 1 > table.mask){
+				throw new IllegalStateException("map segment is full");
+			}
+			//publish the value before the key becomes visible to readers of this slot
+			table.values.lazySet(i, value);
+			table.keys.set(i, key);
+			used++;
+			size++;
+			return null;
+		}
+
+		synchronized V remove(long key, long hash){
+			Table<V> table = this.table;
+			for (int i = index(hash, table.mask), probes = 0; probes <= table.mask; i = (i + 1) & table.mask, probes++){
+				long current = table.keys.get(i);
+				if (current == key){
+					V old = table.values.get(i);
+					if (old != null){
+						table.values.set(i, null);
+						size--;
+					}
+					return old;
+				} else if (current == EMPTY){
+					return null;
+				}
+			}
+			return null;
+		}
+
+		//copies the live entries into a new table and publishes it
+		private Table<V> rehash(int capacity){
+			Table<V> oldTable = this.table;
+			Table<V> newTable = new Table<V>(capacity);
+			int count = 0;
+			for (int j = 0; j < oldTable.capacity(); j++){
+				long key = oldTable.keys.get(j);
+				V value = oldTable.values.get(j);
+				if (key == EMPTY || value == null){
+					continue;
+				}
+				int i = index(hash(key), newTable.mask);
+				while(newTable.keys.get(i) != EMPTY){
+					i = (i + 1) & newTable.mask;
+				}
+				newTable.keys.lazySet(i, key);
+				newTable.values.lazySet(i, value);
+				count++;
+			}
+			this.used = count;
+			this.table = newTable;
+			return newTable;
+		}
+	}
+
+	private class ValueIterator implements Iterator<V> {
+		private int segment;
+		private Table<V> table;
+		private int slot;
+		private V next;
+
+		ValueIterator(){
+			this.segment = 0;
+			this.table = segments[0].table;
+			this.slot = 0;
+			this.next = advance();
+		}
+
+		@Override
+		public boolean hasNext() {
+			return next != null;
+		}
+
+		@Override
+		public V next() {
+			if (next == null){
+				throw new NoSuchElementException();
+			}
+			V value = next;
+			next = advance();
+			return value;
+		}
+
+		private V advance(){
+			while(true){
+				while(slot < table.capacity()){
+					int i = slot++;
+					if (table.keys.get(i) != EMPTY){
+						V value = table.values.get(i);
+						if (value != null){
+							return value;
+						}
+					}
+				}
+				if (++segment == segments.length){
+					return null;
+				}
+				table = segments[segment].table;
+				slot = 0;
+			}
+		}
+	}
+}
@@ -19,9 +19,14 @@
 package org.apache.crail.namenode;
 
 import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
 
 import org.apache.crail.conf.CrailConstants;
 import org.apache.crail.metadata.BlockInfo;
@@ -30,12 +35,27 @@ import org.apache.crail.rpc.RpcErrors;
 import org.apache.crail.utils.CrailUtils;
 import org.slf4j.Logger;
 
+/*
+ * Free blocks are tracked with one bit per block in a bitmap per region. A block is
+ * taken by first reserving it on the free counter and then clearing any set bit with
+ * a CAS, it is returned by setting its bit and then releasing it on the counter. A
+ * successful reservation therefore always finds a free bit, and neither path locks
+ * or allocates a queue node. The choice of block only depends on the preceding
+ * allocations and frees, the namenode log does not record it.
+ */
 public class DataNodeBlocks extends DataNodeInfo {
 	private static final Logger LOG = CrailUtils.getLogger();
+	private static final RegionBlocks[] NO_REGIONS = new RegionBlocks[0];
 	
-	private ConcurrentHashMap<Long, BlockInfo> regions;
-	private LinkedBlockingQueue<NameNodeBlockInfo> freeBlocks;
+	private ConcurrentHashMap<Long, RegionBlocks> regions;
+	//copy on write, regions are only ever added
+	private volatile RegionBlocks[] regionArray;
+	private AtomicLong freeBlocks;
 	private long token;
+	//blocks handed out, and the smoothed number handed out per keepalive interval
+	private LongAdder allocatedBlocks;
+	private long lastAllocatedBlocks;
+	private volatile double load;
 	
 	public static DataNodeBlocks fromDataNodeInfo(DataNodeInfo dnInfo) throws UnknownHostException{
 		DataNodeBlocks dnInfoNn = new DataNodeBlocks(dnInfo.getStorageType(), dnInfo.getStorageClass(), dnInfo.getLocationClass(), dnInfo.getIpAddress(), dnInfo.getPort());
@@ -44,22 +64,61 @@ public class DataNodeBlocks extends DataNodeInfo {
 
 	private DataNodeBlocks(int storageType, int getStorageClass, int locationClass, byte[] ipAddress, int port) throws UnknownHostException {
 		super(storageType, getStorageClass, locationClass, ipAddress, port);
-		this.regions = new ConcurrentHashMap<Long, BlockInfo>();
-		this.freeBlocks = new LinkedBlockingQueue<NameNodeBlockInfo>();
+		this.regions = new ConcurrentHashMap<Long, RegionBlocks>();
+		this.regionArray = NO_REGIONS;
+		this.freeBlocks = new AtomicLong(0);
+		this.allocatedBlocks = new LongAdder();
+		this.lastAllocatedBlocks = 0;
+		this.load = 0;
 	}
 	
 	public void addFreeBlock(NameNodeBlockInfo nnBlock) {
-		regions.put(nnBlock.getRegion().getLba(), nnBlock.getRegion());
-		freeBlocks.add(nnBlock);
+		RegionBlocks region = addRegion(nnBlock.getRegion());
+		if (nnBlock.getOffset() % CrailConstants.BLOCK_SIZE != 0 || !region.release(nnBlock.getOffset() / CrailConstants.BLOCK_SIZE)){
+			LOG.info("ignoring invalid or duplicate free block, region " + nnBlock.getRegion().getLba() + ", offset " + nnBlock.getOffset());
+			return;
+		}
+		freeBlocks.incrementAndGet();
+	}
+	
+	//sets the bit of a returned block, the caller then counts the released blocks with addReleasedBlocks
+	boolean releaseBlock(NameNodeBlockInfo nnBlock) {
+		RegionBlocks region = addRegion(nnBlock.getRegion());
+		if (nnBlock.getOffset() % CrailConstants.BLOCK_SIZE != 0 || !region.release(nnBlock.getOffset() / CrailConstants.BLOCK_SIZE)){
+			LOG.info("ignoring invalid or duplicate free block, region " + nnBlock.getRegion().getLba() + ", offset " + nnBlock.getOffset());
+			return false;
+		}
+		return true;
+	}
+	
+	void addReleasedBlocks(int count) {
+		freeBlocks.addAndGet(count);
 	}
 
 	public NameNodeBlockInfo getFreeBlock() throws InterruptedException {
-		NameNodeBlockInfo block = this.freeBlocks.poll();
-		return block;
+		long free;
+		do {
+			free = freeBlocks.get();
+			if (free <= 0){
+				return null;
+			}
+		} while(!freeBlocks.compareAndSet(free, free - 1));
+		
+		//a block is reserved, so at least one bit is set in one of the regions. The scan always starts
+		//at the first region so that log replay hands out the same blocks as the original allocations
+		while(true){
+			for (RegionBlocks region : this.regionArray){
+				long index = region.allocate();
+				if (index >= 0){
+					allocatedBlocks.increment();
+					return new NameNodeBlockInfo(region.getRegion(), index*CrailConstants.BLOCK_SIZE, (int) CrailConstants.BLOCK_SIZE);
+				}
+			}
+		}
 	}
 	
 	public int getBlockCount() {
-		return freeBlocks.size();
+		return (int) freeBlocks.get();
 	}
 
 	public boolean regionExists(BlockInfo region) {
@@ -70,20 +129,140 @@ public class DataNodeBlocks extends DataNodeInfo {
 	}
 
 	public short updateRegion(BlockInfo region) {
-		BlockInfo oldRegion = regions.get(region.getLba());
+		RegionBlocks oldRegion = regions.get(region.getLba());
 		if (oldRegion == null){
 			return RpcErrors.ERR_ADD_BLOCK_FAILED;
 		} else {
-			oldRegion.setBlockInfo(region);
+			oldRegion.getRegion().setBlockInfo(region);
 			return 0;
 		}
 	}
 
+	Collection<BlockInfo> getRegions() {
+		ArrayList<BlockInfo> list = new ArrayList<BlockInfo>();
+		for (RegionBlocks region : regionArray){
+			list.add(region.getRegion());
+		}
+		return list;
+	}
+	
+	//the blocks free at the time each region is visited
+	Collection<NameNodeBlockInfo> getFreeBlocks() {
+		ArrayList<NameNodeBlockInfo> list = new ArrayList<NameNodeBlockInfo>();
+		for (RegionBlocks region : regionArray){
+			region.collect(list);
+		}
+		return list;
+	}
+	
+	RegionBlocks addRegion(BlockInfo region) {
+		RegionBlocks regionBlocks = regions.get(region.getLba());
+		if (regionBlocks != null){
+			return regionBlocks;
+		}
+		synchronized(this){
+			regionBlocks = regions.get(region.getLba());
+			if (regionBlocks == null){
+				regionBlocks = new RegionBlocks(region);
+				RegionBlocks[] newArray = Arrays.copyOf(regionArray, regionArray.length + 1);
+				newArray[regionArray.length] = regionBlocks;
+				this.regionArray = newArray;
+				regions.put(region.getLba(), regionBlocks);
+			}
+			return regionBlocks;
+		}
+	}
+	
+	BlockInfo getRegion(long lba) {
+		RegionBlocks region = regions.get(lba);
+		return region != null ? region.getRegion() : null;
+	}
+
 	public void touch() {
 		this.token = System.nanoTime() + TimeUnit.SECONDS.toNanos(CrailConstants.STORAGE_KEEPALIVE*8);		
 	}
 	
+	//called on every keepalive of the datanode
+	public synchronized void updateLoad() {
+		long allocated = allocatedBlocks.sum();
+		this.load = (load + (allocated - lastAllocatedBlocks)) / 2;
+		this.lastAllocatedBlocks = allocated;
+	}
+	
+	public double getLoad() {
+		return load;
+	}
+	
 	public boolean isOnline(){
 		return System.nanoTime() <= token;
 	}	
+	
+	static class RegionBlocks {
+		private BlockInfo region;
+		//bit set means free
+		private AtomicLongArray bitmap;
+		private long blockCount;
+		private volatile int hint;
+		
+		RegionBlocks(BlockInfo region){
+			this.region = region;
+			this.blockCount = ((long) region.getLength()) / CrailConstants.BLOCK_SIZE;
+			this.bitmap = new AtomicLongArray((int) ((blockCount + 63) / 64));
+			this.hint = 0;
+		}
+		
+		BlockInfo getRegion() {
+			return region;
+		}
+		
+		//clears one set bit, returns the block index or -1 if no bit is set
+		long allocate(){
+			int words = bitmap.length();
+			int start = hint;
+			for (int i = 0; i < words; i++){
+				int word = start + i < words ? start + i : start + i - words;
+				long value = bitmap.get(word);
+				while(value != 0){
+					long bit = Long.lowestOneBit(value);
+					if (bitmap.compareAndSet(word, value, value & ~bit)){
+						if (word != start){
+							hint = word;
+						}
+						return ((long) word)*64 + Long.numberOfTrailingZeros(bit);
+					}
+					value = bitmap.get(word);
+				}
+			}
+			return -1;
+		}
+		
+		//sets the bit of the given block, returns false if the block is outside the region or already free
+		boolean release(long index){
+			if (index < 0 || index >= blockCount){
+				return false;
+			}
+			int word = (int) (index / 64);
+			long bit = 1L << (index % 64);
+			long value = bitmap.get(word);
+			while((value & bit) == 0){
+				if (bitmap.compareAndSet(word, value, value | bit)){
+					return true;
+				}
+				value = bitmap.get(word);
+			}
+			return false;
+		}
+		
+		void collect(Collection<NameNodeBlockInfo> list){
+			for (int word = 0; word < bitmap.length(); word++){
+				long value = bitmap.get(word);
+				while(value != 0){
+					long bit = Long.lowestOneBit(value);
+					value &= ~bit;
+					long index = ((long) word)*64 + Long.numberOfTrailingZeros(bit);
+					list.add(new NameNodeBlockInfo(region, index*CrailConstants.BLOCK_SIZE, (int) CrailConstants.BLOCK_SIZE));
+				}
+			}
+		}
+	}
 }
@@ -18,9 +18,13 @@
 
 package org.apache.crail.namenode;
 
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
 import java.util.Queue;
-import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.crail.CrailNodeType;
@@ -29,14 +33,14 @@ import org.apache.crail.metadata.BlockInfo;
 
 public class DirectoryBlocks extends AbstractNode {
 	protected AtomicLong dirOffsetCounter;
-	protected ConcurrentHashMap<Integer, AbstractNode> children;	
-	private ConcurrentHashMap<Integer, NameNodeBlockInfo> blocks;
+	protected ConcurrentLongMap<AbstractNode> children;	
+	private ConcurrentLongMap<NameNodeBlockInfo> blocks;
 	
 	DirectoryBlocks(long fd, int fileComponent, CrailNodeType type, int storageClass, int locationClass, boolean enumerable) {
 		super(fd, fileComponent, type, storageClass, locationClass, enumerable);
-		this.children = new ConcurrentHashMap<Integer, AbstractNode>();
+		this.children = new ConcurrentLongMap<AbstractNode>();
 		this.dirOffsetCounter = new AtomicLong(0);
-		this.blocks = new ConcurrentHashMap<Integer, NameNodeBlockInfo>();
+		this.blocks = new ConcurrentLongMap<NameNodeBlockInfo>();
 	}
 	
 	public AbstractNode putChild(AbstractNode child) throws Exception {
@@ -70,11 +74,11 @@ public class DirectoryBlocks extends AbstractNode {
 	}
 
 	@Override
-	public void freeBlocks(BlockStore blockStore) throws Exception {
+	public void freeBlocks(List<NameNodeBlockInfo> freed) throws Exception {
 		Iterator<NameNodeBlockInfo> iter = blocks.values().iterator();
 		while (iter.hasNext()){
 			NameNodeBlockInfo blockInfo = iter.next();
-			blockStore.addBlock(blockInfo);
+			freed.add(blockInfo);
 		}	
 	}
 
@@ -96,6 +100,35 @@ public class DirectoryBlocks extends AbstractNode {
 		}		
 	}
 
+	Iterable<AbstractNode> getChildren() {
+		return children.values();
+	}
+	
+	Collection<Map.Entry<Integer, NameNodeBlockInfo>> getBlocks() {
+		long[] keys = blocks.keys();
+		ArrayList<Map.Entry<Integer, NameNodeBlockInfo>> entries = new ArrayList<Map.Entry<Integer, NameNodeBlockInfo>>(keys.length);
+		for (long key : keys){
+			NameNodeBlockInfo block = blocks.get(key);
+			if (block != null){
+				entries.add(new AbstractMap.SimpleEntry<Integer, NameNodeBlockInfo>((int) key, block));
+			}
+		}
+		return entries;
+	}
+	
+	long getDirOffsetCounter() {
+		return dirOffsetCounter.get();
+	}
+	
+	void setDirOffsetCounter(long value) {
+		dirOffsetCounter.set(value);
+	}
+	
+	//used when loading a snapshot, the child keeps its directory offset
+	void restoreChild(AbstractNode child) {
+		children.put(child.getComponent(), child);
+	}
+
 	@Override
 	public void dump() {
 		super.dump();
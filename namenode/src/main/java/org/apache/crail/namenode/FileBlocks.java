@@ -18,71 +18,140 @@
 
 package org.apache.crail.namenode;
 
-import java.util.ArrayList;
-import java.util.Iterator;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Queue;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import org.apache.crail.CrailNodeType;
 import org.apache.crail.conf.CrailConstants;
+import org.apache.crail.metadata.BlockInfo;
+import org.apache.crail.metadata.DataNodeInfo;
 
+/*
+ * Blocks are kept in parallel arrays (region, offset within the region, length)
+ * instead of one NameNodeBlockInfo per block. Blocks are only ever appended: the
+ * writer fills the slot, grows the arrays by copying if needed, and publishes the
+ * slot by incrementing the volatile block count. Readers check the count before
+ * touching the arrays and never lock.
+ */
 public class FileBlocks extends AbstractNode {
-	private ArrayList<NameNodeBlockInfo> blocks;
-	private final ReentrantReadWriteLock lock;
-	private final Lock readLock;
-	private final Lock writeLock;
+	private static final BlockInfo[] NO_REGIONS = new BlockInfo[0];
+	private static final long[] NO_OFFSETS = new long[0];
+	private static final int[] NO_LENGTHS = new int[0];
+	
+	private volatile BlockInfo[] regions;
+	private volatile long[] offsets;
+	private volatile int[] lengths;
+	private volatile int count;
+	private volatile BlockReplicas replicas;
 	
 	public FileBlocks(long fd, int fileComponent, CrailNodeType type, int storageClass, int locationClass, boolean enumerable) {
 		super(fd, fileComponent, type, storageClass, locationClass, enumerable);
-		this.blocks = new ArrayList<NameNodeBlockInfo>(CrailConstants.NAMENODE_FILEBLOCKS);
-		this.lock = new ReentrantReadWriteLock();
-		this.readLock = lock.readLock();
-		this.writeLock = lock.writeLock();
+		this.regions = NO_REGIONS;
+		this.offsets = NO_OFFSETS;
+		this.lengths = NO_LENGTHS;
+		this.count = 0;
+		this.replicas = null;
 	}
 
 	@Override
 	public NameNodeBlockInfo getBlock(int index) {
-		readLock.lock();
-		try {
-			if (index < blocks.size()){
-				return blocks.get(index);
-			} else {
-				return null;
-			}
-		} catch(Exception e){ 
+		if (index < 0 || index >= count){
+			return null;
+		}
+		return new NameNodeBlockInfo(regions[index], offsets[index], lengths[index]);
+	}
+	
+	@Override
+	public boolean copyBlock(int index, BlockInfo block) {
+		if (index < 0 || index >= count){
+			return false;
+		}
+		block.setBlockInfo(regions[index], offsets[index], lengths[index]);
+		return true;
+	}
+	
+	@Override
+	public DataNodeInfo getBlockDataNode(int index) {
+		if (index < 0 || index >= count){
 			return null;
-		} finally {
-			readLock.unlock();
 		}
+		return regions[index].getDnInfo();
 	}
 
 	@Override
-	public boolean addBlock(int index, NameNodeBlockInfo block) {
-		writeLock.lock();
-		try {
-			if (index == blocks.size()){
-				blocks.add(index, block);
-				return true;
-			} else {
-				return false;
+	public synchronized boolean addBlock(int index, NameNodeBlockInfo block) {
+		if (index != count){
+			return false;
+		}
+		if (index == regions.length){
+			//single block files stay at one slot, larger files start at the configured size
+			int capacity = index == 0 ? 1 : Math.max(index*2, CrailConstants.NAMENODE_FILEBLOCKS);
+			BlockInfo[] newRegions = Arrays.copyOf(regions, capacity);
+			long[] newOffsets = Arrays.copyOf(offsets, capacity);
+			int[] newLengths = Arrays.copyOf(lengths, capacity);
+			newRegions[index] = block.getRegion();
+			newOffsets[index] = block.getOffset();
+			newLengths[index] = block.getLength();
+			this.regions = newRegions;
+			this.offsets = newOffsets;
+			this.lengths = newLengths;
+		} else {
+			regions[index] = block.getRegion();
+			offsets[index] = block.getOffset();
+			lengths[index] = block.getLength();
+		}
+		this.count = index + 1;
+		return true;
+	}
+
+	int getBlockCount() {
+		return count;
+	}
+	
+	//read replicas of the current content, created on first use
+	BlockReplicas getReplicas() {
+		BlockReplicas current = replicas;
+		if (current != null){
+			return current;
+		}
+		synchronized(this){
+			if (replicas == null){
+				replicas = new BlockReplicas(count);
 			}
-		} finally {
-			writeLock.unlock();
+			return replicas;
 		}
 	}
+	
+	//publishes a replica unless the replica set has been dropped in the meantime
+	synchronized boolean addReplica(BlockReplicas current, int index, NameNodeBlockInfo replica) {
+		if (replicas != current){
+			return false;
+		}
+		current.add(index, replica);
+		return true;
+	}
+	
+	//detaches the replica set, returns null if there is none
+	synchronized BlockReplicas clearReplicas() {
+		BlockReplicas current = replicas;
+		replicas = null;
+		return current;
+	}
+	
+	//current replica set without creating one
+	BlockReplicas peekReplicas() {
+		return replicas;
+	}
 
 	@Override
-	public void freeBlocks(BlockStore blockStore) throws Exception {
-		readLock.lock();
-		try {
-			Iterator<NameNodeBlockInfo> iter = blocks.iterator();
-			while (iter.hasNext()){
-				NameNodeBlockInfo blockInfo = iter.next();
-				blockStore.addBlock(blockInfo);
-			}	
-		} finally {
-			readLock.unlock();
+	public void freeBlocks(List<NameNodeBlockInfo> freed) throws Exception {
+		int blockCount = count;
+		BlockInfo[] regions = this.regions;
+		long[] offsets = this.offsets;
+		int[] lengths = this.lengths;
+		for (int i = 0; i < blockCount; i++){
+			freed.add(new NameNodeBlockInfo(regions[i], offsets[i], lengths[i]));
 		}
 	}
 
@@ -19,6 +19,7 @@
 package org.apache.crail.namenode;
 
 import java.io.IOException;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.crail.CrailNodeType;
 import org.apache.crail.conf.CrailConstants;
@@ -26,26 +27,45 @@ import org.apache.crail.metadata.FileName;
 import org.apache.crail.rpc.RpcErrors;
 import org.apache.crail.rpc.RpcNameNodeState;
 
+/*
+ * Paths are resolved through an index from the hash of all components of a path to the node, its parent 
+ * and the components, so a lookup costs one probe of the index plus one of the parent instead of one per 
+ * component. An entry is only used if its components match and the parent still holds the node, otherwise 
+ * the tree is walked and the entry replaced. Moving or removing a directory changes the path of everything 
+ * below it, such operations start a new index and advance its version before and after the change, which 
+ * also invalidates entries added by lookups that raced with the change.
+ */
 public class FileStore {
+	private static final int PATH_INDEX_SEGMENTS = 64;
+	private static final int PATH_INDEX_CAPACITY = 4096;
+	
 	private Sequencer sequencer;
 	private AbstractNode root;
+	private volatile ConcurrentLongMap<PathEntry> pathIndex;
+	private AtomicLong version;
 	
 	public FileStore(Sequencer sequencer) throws IOException { 
 		this.sequencer = sequencer;
 		this.root = createNode(new FileName("/").getFileComponent(), CrailNodeType.DIRECTORY, CrailConstants.STORAGE_ROOTCLASS, 0, false);
+		this.pathIndex = new ConcurrentLongMap<PathEntry>(PATH_INDEX_SEGMENTS, PATH_INDEX_CAPACITY);
+		this.version = new AtomicLong(0);
 	}
 	
 	public AbstractNode createNode(int fileComponent, CrailNodeType type, int storageClass, int locationClass, boolean enumerable) throws IOException {
+		return createNode(sequencer.getNextId(), fileComponent, type, storageClass, locationClass, enumerable);
+	}
+	
+	AbstractNode createNode(long fd, int fileComponent, CrailNodeType type, int storageClass, int locationClass, boolean enumerable) throws IOException {
 		if (type == CrailNodeType.DIRECTORY){
-			return new DirectoryBlocks(sequencer.getNextId(), fileComponent, type, storageClass, locationClass, enumerable);
+			return new DirectoryBlocks(fd, fileComponent, type, storageClass, locationClass, enumerable);
 		} else if (type == CrailNodeType.MULTIFILE){
-			return new MultiFileBlocks(sequencer.getNextId(), fileComponent, type, storageClass, locationClass, enumerable);
+			return new MultiFileBlocks(fd, fileComponent, type, storageClass, locationClass, enumerable);
 		} else if (type == CrailNodeType.TABLE){
-			return new TableBlocks(sequencer.getNextId(), fileComponent, type, storageClass, locationClass, enumerable);
+			return new TableBlocks(fd, fileComponent, type, storageClass, locationClass, enumerable);
 		} else if (type == CrailNodeType.KEYVALUE){
-			return new KeyValueBlocks(sequencer.getNextId(), fileComponent, type, storageClass, locationClass, enumerable);
+			return new KeyValueBlocks(fd, fileComponent, type, storageClass, locationClass, enumerable);
 		} else if (type == CrailNodeType.DATAFILE){
-			return new FileBlocks(sequencer.getNextId(), fileComponent, type, storageClass, locationClass, enumerable);
+			return new FileBlocks(fd, fileComponent, type, storageClass, locationClass, enumerable);
 		} else {
 			throw new IOException("File type unkown: " + type);
 		}
@@ -59,6 +79,48 @@ public class FileStore {
 		return retrieveFileInternal(filename, filename.getLength()-1, error);
 	}	
 	
+	//resolves the file once its parent is known, saves resolving the path a second time
+	public AbstractNode retrieveChild(FileName filename, AbstractNode parent, RpcNameNodeState error) throws Exception{
+		if (filename.getLength() >= CrailConstants.DIRECTORY_DEPTH){
+			error.setError(RpcErrors.ERR_FILE_COMPONENTS_EXCEEDED);
+			return null;
+		}
+		if (filename.getLength() <= 0){
+			return root;
+		}
+		return parent.getChild(filename.getFileComponent());
+	}
+	
+	//the version has to be taken before the parent of the file is resolved
+	public long getVersion() {
+		return version.get();
+	}
+	
+	//adds a file just inserted into the given parent to the index
+	public void addFile(FileName filename, long version, AbstractNode parent, AbstractNode file) {
+		int length = filename.getLength();
+		if (!CrailConstants.NAMENODE_PATHINDEX || length <= 0 || length >= CrailConstants.DIRECTORY_DEPTH){
+			return;
+		}
+		pathIndex.put(hash(filename, length), new PathEntry(filename, length, version, parent, file));
+	}
+	
+	//removes a file from its parent, moving or removing a directory invalidates the whole index
+	public AbstractNode removeFile(FileName filename, AbstractNode parent, AbstractNode file) throws Exception {
+		boolean container = file.getType().isContainer();
+		if (container){
+			invalidate();
+		}
+		AbstractNode removed = parent.removeChild(file.getComponent());
+		if (CrailConstants.NAMENODE_PATHINDEX && filename.getLength() > 0 && filename.getLength() < CrailConstants.DIRECTORY_DEPTH){
+			pathIndex.remove(hash(filename, filename.getLength()));
+		}
+		if (container){
+			invalidate();
+		}
+		return removed;
+	}
+	
 	public AbstractNode getRoot() {
 		return root;
 	}	
@@ -73,6 +135,30 @@ public class FileStore {
 			return null;
 		}
 		
+		if (!CrailConstants.NAMENODE_PATHINDEX || length <= 0){
+			return walk(filename, length);
+		}
+		
+		long currentVersion = version.get();
+		ConcurrentLongMap<PathEntry> pathIndex = this.pathIndex;
+		long key = hash(filename, length);
+		PathEntry entry = pathIndex.get(key);
+		if (entry != null && entry.version == currentVersion && entry.matches(filename, length) 
+				&& entry.parent.getChild(filename.getComponent(length - 1)) == entry.node){
+			return entry.node;
+		}
+		
+		AbstractNode parent = length > 1 ? retrieveFileInternal(filename, length - 1, error) : root;
+		AbstractNode current = parent != null ? parent.getChild(filename.getComponent(length - 1)) : null;
+		if (current != null){
+			pathIndex.put(key, new PathEntry(filename, length, currentVersion, parent, current));
+		} else if (entry != null){
+			pathIndex.remove(key);
+		}
+		return current;
+	}
+	
+	private AbstractNode walk(FileName filename, int length) throws Exception {
 		AbstractNode current = root;
 		for (int i = 0; i < length; i++){
 			int component = filename.getComponent(i);
@@ -84,4 +170,50 @@ public class FileStore {
 		
 		return current;
 	}
+	
+	//entries of the old index are dropped rather than left pointing into removed subtrees
+	private void invalidate() {
+		if (CrailConstants.NAMENODE_PATHINDEX){
+			version.incrementAndGet();
+			pathIndex = new ConcurrentLongMap<PathEntry>(PATH_INDEX_SEGMENTS, PATH_INDEX_CAPACITY);
+		}
+	}
+	
+	//hash of the first length components of the path
+	private static long hash(FileName filename, int length) {
+		long hash = length;
+		for (int i = 0; i < length; i++){
+			hash = (hash ^ filename.getComponent(i)) * 0x9E3779B97F4A7C15L;
+		}
+		return hash ^ (hash >>> 32);
+	}
+	
+	private static class PathEntry {
+		final int[] components;
+		final long version;
+		final AbstractNode parent;
+		final AbstractNode node;
+		
+		PathEntry(FileName filename, int length, long version, AbstractNode parent, AbstractNode node) {
+			this.components = new int[length];
+			for (int i = 0; i < length; i++){
+				components[i] = filename.getComponent(i);
+			}
+			this.version = version;
+			this.parent = parent;
+			this.node = node;
+		}
+		
+		boolean matches(FileName filename, int length) {
+			if (components.length != length){
+				return false;
+			}
+			for (int i = length - 1; i >= 0; i--){
+				if (components[i] != filename.getComponent(i)){
+					return false;
+				}
+			}
+			return true;
+		}
+	}
 }
@@ -0,0 +1,183 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.crail.namenode;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.CommandLineParser;
+import org.apache.commons.cli.DefaultParser;
+import org.apache.commons.cli.HelpFormatter;
+import org.apache.commons.cli.Option;
+import org.apache.commons.cli.Options;
+
+/*
+ * Compares the boxed ConcurrentHashMap previously used for the namenode file table
+ * with ConcurrentLongMap: insert and lookup throughput over a number of threads and
+ * the heap retained by the table, e.g. with -n 10000000 or -n 100000000 (needs a large -Xmx).
+ */
+public class FileTableBenchmark {
+	private static final Object VALUE = new Object();
+	//visits the entries in scattered order during lookups, prime so that it is coprime to most entry counts
+	private static final long STEP = 1000003;
+
+	private interface Table {
+		void put(long key);
+		boolean get(long key);
+	}
+
+	private static class BoxedTable implements Table {
+		private ConcurrentHashMap<Long, Object> map = new ConcurrentHashMap<Long, Object>();
+
+		public void put(long key) {
+			map.put(key, VALUE);
+		}
+
+		public boolean get(long key) {
+			return map.get(key) != null;
+		}
+	}
+
+	private static class LongTable implements Table {
+		private ConcurrentLongMap<Object> map = new ConcurrentLongMap<Object>(64, 1024*1024);
+
+		public void put(long key) {
+			map.put(key, VALUE);
+		}
+
+		public boolean get(long key) {
+			return map.get(key) != null;
+		}
+	}
+
+	private static Table createTable(String type) {
+		if (type.equals("boxed")){
+			return new BoxedTable();
+		} else if (type.equals("long")){
+			return new LongTable();
+		}
+		throw new IllegalArgumentException("unknown map type " + type);
+	}
+
+	//fds are handed out with a stride of the namenode service size
+	private static long key(long index, int stride){
+		return index*stride;
+	}
+
+	private static long usedMemory() {
+		Runtime runtime = Runtime.getRuntime();
+		for (int i = 0; i < 3; i++){
+			System.gc();
+		}
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+
+	private static double run(final Table table, final long entries, final int threads, final int stride, final boolean insert) throws Exception {
+		Thread[] workers = new Thread[threads];
+		final long[] misses = new long[threads];
+		for (int t = 0; t < threads; t++){
+			final int id = t;
+			workers[t] = new Thread(new Runnable() {
+				public void run() {
+					for (long i = id; i < entries; i += threads){
+						if (insert){
+							table.put(key(i, stride));
+						} else if (!table.get(key((i*STEP) % entries, stride))){
+							misses[id]++;
+						}
+					}
+				}
+			});
+		}
+		long start = System.nanoTime();
+		for (Thread worker : workers){
+			worker.start();
+		}
+		for (Thread worker : workers){
+			worker.join();
+		}
+		long end = System.nanoTime();
+		long missed = 0;
+		for (long miss : misses){
+			missed += miss;
+		}
+		if (missed > 0){
+			throw new Exception("lookup missed " + missed + " entries");
+		}
+		return ((double) entries) / ((double) (end - start)) * 1000.0;
+	}
+
+	public static void main(String[] args) throws Exception {
+		String type = "long";
+		long entries = 10000000;
+		int threads = 1;
+		int stride = 1;
+		int experiments = 3;
+
+		Option typeOption = Option.builder("t").desc("type of map [boxed|long]").hasArg().build();
+		Option entriesOption = Option.builder("n").desc("number of entries [1..n]").hasArg().build();
+		Option threadsOption = Option.builder("k").desc("number of threads [1..n]").hasArg().build();
+		Option strideOption = Option.builder("s").desc("distance between keys, i.e., the namenode service size [1..n]").hasArg().build();
+		Option experimentOption = Option.builder("e").desc("number of lookup rounds [1..n]").hasArg().build();
+		Option helpOption = Option.builder("h").desc("show this help message").build();
+
+		Options options = new Options();
+		options.addOption(typeOption);
+		options.addOption(entriesOption);
+		options.addOption(threadsOption);
+		options.addOption(strideOption);
+		options.addOption(experimentOption);
+		options.addOption(helpOption);
+
+		CommandLineParser parser = new DefaultParser();
+		CommandLine line = parser.parse(options, Arrays.copyOfRange(args, 0, args.length));
+		if (line.hasOption(helpOption.getOpt())) {
+			HelpFormatter formatter = new HelpFormatter();
+			formatter.printHelp("FileTableBenchmark", options);
+			System.exit(-1);
+		}
+		if (line.hasOption(typeOption.getOpt())) {
+			type = line.getOptionValue(typeOption.getOpt());
+		}
+		if (line.hasOption(entriesOption.getOpt())) {
+			entries = Long.parseLong(line.getOptionValue(entriesOption.getOpt()));
+		}
+		if (line.hasOption(threadsOption.getOpt())) {
+			threads = Integer.parseInt(line.getOptionValue(threadsOption.getOpt()));
+		}
+		if (line.hasOption(strideOption.getOpt())) {
+			stride = Integer.parseInt(line.getOptionValue(strideOption.getOpt()));
+		}
+		if (line.hasOption(experimentOption.getOpt())) {
+			experiments = Integer.parseInt(line.getOptionValue(experimentOption.getOpt()));
+		}
+
+		long baseMemory = usedMemory();
+		Table table = createTable(type);
+		double putRate = run(table, entries, threads, stride, true);
+		long tableMemory = usedMemory() - baseMemory;
+		System.out.println("type " + type + ", entries " + entries + ", threads " + threads);
+		System.out.println("put, ops/usec " + putRate);
+		for (int i = 0; i < experiments; i++){
+			System.out.println("get, ops/usec " + run(table, entries, threads, stride, false));
+		}
+		System.out.println("heap, bytes " + tableMemory + ", bytes/entry " + (tableMemory / Math.max(1, entries)));
+	}
+}
@@ -16,37 +16,279 @@
  * limitations under the License.
  */
 
+
 package org.apache.crail.namenode;
 
-import java.util.concurrent.DelayQueue;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Lock;
 
+import org.apache.crail.conf.CrailConstants;
 import org.apache.crail.utils.CrailUtils;
 import org.slf4j.Logger;
 
+/*
+ * Deleted nodes wait in a hierarchical timer wheel until their delay has passed. Every tick the 
+ * timer thread moves the expired nodes of the wheel to the workers. Expiration is rounded up to 
+ * the tick, a node is never reclaimed early.
+ * 
+ * A worker frees the files of a directory itself and hands its subdirectories to the other workers, 
+ * large trees are thus reclaimed in parallel. Freed blocks are collected and returned to the block 
+ * store in bulk. Moving and reclaiming nodes holds the checkpoint lock shared, a snapshot finds every 
+ * node that still owns blocks in getPendingNodes. Idle workers wait without the lock.
+ * 
+ * Blocks owned by no node, like dropped read replicas, are released the same way: clients may 
+ * still read them until the delay has passed, only then the timer thread returns them to the 
+ * block store. Until then snapshots write them as free blocks, see getPendingBlocks.
+ */
 public class GCServer implements Runnable {
 	private static final Logger LOG = CrailUtils.getLogger();
+	private static final long TICK = 100;
+	private static final int BLOCK_BATCH = 1024;
+	private static final long REPORT_INTERVAL = 10000;
 	
 	private NameNodeService rpcService;
-	private DelayQueue<AbstractNode> deleteQueue;
+	private ConcurrentLinkedQueue<AbstractNode> incoming;
+	private TimerWheel<AbstractNode> wheel;
+	private ConcurrentLinkedQueue<AbstractNode> expired;
+	private ConcurrentLinkedQueue<ReleasedBlocks> incomingBlocks;
+	private TimerWheel<ReleasedBlocks> blockWheel;
+	//one permit per node in the expired queue, a worker only takes a node it holds a permit for
+	private Semaphore available;
+	private AtomicLong scheduledNodes;
+	private LongAdder freedNodes;
+	private LongAdder freedBlocks;
+	private volatile long lag;
 	
-	public GCServer(NameNodeService service, DelayQueue<AbstractNode> deleteQueue){
+	public GCServer(NameNodeService service){
 		this.rpcService = service;
-		this.deleteQueue = deleteQueue;
+		this.incoming = new ConcurrentLinkedQueue<AbstractNode>();
+		this.wheel = new TimerWheel<AbstractNode>(TICK, System.currentTimeMillis(), AbstractNode::getExpiration);
+		this.expired = new ConcurrentLinkedQueue<AbstractNode>();
+		this.incomingBlocks = new ConcurrentLinkedQueue<ReleasedBlocks>();
+		this.blockWheel = new TimerWheel<ReleasedBlocks>(TICK, System.currentTimeMillis(), ReleasedBlocks::getExpiration);
+		this.available = new Semaphore(0);
+		this.scheduledNodes = new AtomicLong(0);
+		this.freedNodes = new LongAdder();
+		this.freedBlocks = new LongAdder();
+		this.lag = 0;
+	}
+	
+	//the node is picked up by the timer thread within a tick
+	public void schedule(AbstractNode node){
+		scheduledNodes.incrementAndGet();
+		incoming.add(node);
+	}
+	
+	//the blocks are returned to the block store once crail.tokenexpiration has passed
+	public void release(List<NameNodeBlockInfo> blocks){
+		if (!blocks.isEmpty()){
+			incomingBlocks.add(new ReleasedBlocks(blocks, System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(CrailConstants.TOKEN_EXPIRATION)));
+		}
 	}
 
 	@Override
 	public void run() {
+		for (int i = 0; i < Math.max(1, CrailConstants.NAMENODE_GC_THREADS); i++){
+			Thread worker = new Thread(new Worker(), "gc-worker-" + i);
+			worker.setDaemon(true);
+			worker.start();
+		}
+		
+		ArrayList<AbstractNode> expiredNodes = new ArrayList<AbstractNode>();
+		ArrayList<ReleasedBlocks> expiredBlocks = new ArrayList<ReleasedBlocks>();
+		long lastReport = System.currentTimeMillis();
+		String lastBacklog = "";
 		while(true){
-			try{
-				AbstractNode file = deleteQueue.take();
-				if (file.getType().isContainer()){
-					file.clearChildren(deleteQueue);
+			try {
+				Thread.sleep(TICK);
+				//a node moved between the wheel and the workers must not be missed by a concurrent snapshot
+				Lock lock = rpcService.getCheckpointLock().readLock();
+				lock.lock();
+				try {
+					wheel.advance(System.currentTimeMillis(), expiredNodes);
+					for (AbstractNode node = incoming.poll(); node != null; node = incoming.poll()){
+						wheel.add(node, expiredNodes);
+					}
+					scheduledNodes.addAndGet(-expiredNodes.size());
+					expire(expiredNodes);
+					expiredNodes.clear();
+					
+					blockWheel.advance(System.currentTimeMillis(), expiredBlocks);
+					for (ReleasedBlocks blocks = incomingBlocks.poll(); blocks != null; blocks = incomingBlocks.poll()){
+						blockWheel.add(blocks, expiredBlocks);
+					}
+					for (ReleasedBlocks blocks : expiredBlocks){
+						rpcService.getBlockStore().addBlocks(blocks.getBlocks());
+						freedBlocks.add(blocks.getBlocks().size());
+					}
+					expiredBlocks.clear();
+				} finally {
+					lock.unlock();
+				}
+				
+				long time = System.currentTimeMillis();
+				if (time - lastReport >= REPORT_INTERVAL){
+					lastReport = time;
+					String backlog = getBacklog();
+					if (!backlog.equals(lastBacklog)){
+						LOG.info(backlog);
+						lastBacklog = backlog;
+					}
 				}
-				rpcService.freeFile(file);
 			} catch(Exception e){
 				LOG.info("Exception during GC: " + e.getMessage());
 			}
 		}
 	}
-
+	
+	//nodes waiting for their delay or for a worker, they still own their blocks
+	Collection<AbstractNode> getPendingNodes() {
+		ArrayList<AbstractNode> nodes = new ArrayList<AbstractNode>();
+		nodes.addAll(incoming);
+		wheel.collect(nodes);
+		nodes.addAll(expired);
+		return nodes;
+	}
+	
+	//released blocks not yet returned to the block store
+	Collection<NameNodeBlockInfo> getPendingBlocks() {
+		ArrayList<ReleasedBlocks> pending = new ArrayList<ReleasedBlocks>(incomingBlocks);
+		blockWheel.collect(pending);
+		ArrayList<NameNodeBlockInfo> blocks = new ArrayList<NameNodeBlockInfo>();
+		for (ReleasedBlocks released : pending){
+			blocks.addAll(released.getBlocks());
+		}
+		return blocks;
+	}
+	
+	//nodes not yet expired
+	public long getScheduledNodes() {
+		return scheduledNodes.get();
+	}
+	
+	//expired nodes waiting for a worker
+	public long getExpiredNodes() {
+		return available.availablePermits();
+	}
+	
+	public long getFreedNodes() {
+		return freedNodes.sum();
+	}
+	
+	public long getFreedBlocks() {
+		return freedBlocks.sum();
+	}
+	
+	//time (ms) the last reclaimed node waited beyond its expiration
+	public long getLag() {
+		return lag;
+	}
+	
+	public String getBacklog() {
+		return "gc backlog: scheduled " + getScheduledNodes() + ", expired " + getExpiredNodes() + ", lag " + getLag() + " ms, freed nodes " + getFreedNodes() + ", freed blocks " + getFreedBlocks();
+	}
+	
+	private void expire(Collection<AbstractNode> nodes) {
+		if (nodes.isEmpty()){
+			return;
+		}
+		expired.addAll(nodes);
+		available.release(nodes.size());
+	}
+	
+	private static class ReleasedBlocks {
+		private List<NameNodeBlockInfo> blocks;
+		private long expiration;
+		
+		public ReleasedBlocks(List<NameNodeBlockInfo> blocks, long expiration){
+			this.blocks = blocks;
+			this.expiration = expiration;
+		}
+		
+		public List<NameNodeBlockInfo> getBlocks() {
+			return blocks;
+		}
+		
+		public long getExpiration() {
+			return expiration;
+		}
+	}
+	
+	private class Worker implements Runnable {
+		private ArrayList<NameNodeBlockInfo> blocks;
+		private ArrayDeque<AbstractNode> children;
+		private ArrayList<AbstractNode> subdirectories;
+		
+		public Worker(){
+			this.blocks = new ArrayList<NameNodeBlockInfo>(BLOCK_BATCH);
+			this.children = new ArrayDeque<AbstractNode>();
+			this.subdirectories = new ArrayList<AbstractNode>();
+		}
+		
+		@Override
+		public void run() {
+			while(true){
+				try {
+					if (!available.tryAcquire(TICK, TimeUnit.MILLISECONDS)){
+						continue;
+					}
+				} catch(InterruptedException e){
+					return;
+				}
+				//the node is only taken from the queue under the lock, a concurrent snapshot either finds it there or waits
+				Lock lock = rpcService.getCheckpointLock().readLock();
+				lock.lock();
+				try {
+					AbstractNode node = expired.poll();
+					lag = Math.max(0, System.currentTimeMillis() - node.getExpiration());
+					if (node.getType().isContainer()){
+						node.clearChildren(children);
+						for (AbstractNode child = children.poll(); child != null; child = children.poll()){
+							if (child.getType().isContainer()){
+								child.setDelay(0);
+								subdirectories.add(child);
+							} else {
+								free(child);
+							}
+						}
+					}
+					free(node);
+					flush();
+				} catch(Exception e){
+					LOG.info("Exception during GC: " + e.getMessage());
+					subdirectories.addAll(children);
+					children.clear();
+				} finally {
+					expire(subdirectories);
+					subdirectories.clear();
+					lock.unlock();
+				}
+			}
+		}
+		
+		private void free(AbstractNode node) throws Exception {
+			rpcService.freeFile(node, blocks);
+			freedNodes.increment();
+			if (blocks.size() >= BLOCK_BATCH){
+				flush();
+			}
+		}
+		
+		private void flush() throws Exception {
+			if (blocks.isEmpty()){
+				return;
+			}
+			rpcService.getBlockStore().addBlocks(blocks);
+			freedBlocks.add(blocks.size());
+			blocks.clear();
+		}
+	}
 }
@@ -18,14 +18,20 @@
 
 package org.apache.crail.namenode;
 
+import java.io.IOException;
+import java.util.concurrent.locks.Lock;
+
 import org.apache.crail.rpc.RpcNameNodeService;
 import org.apache.crail.rpc.RpcNameNodeState;
 import org.apache.crail.rpc.RpcProtocol;
 import org.apache.crail.rpc.RpcRequestMessage.CreateFileReq;
 import org.apache.crail.rpc.RpcRequestMessage.DumpNameNodeReq;
+import org.apache.crail.rpc.RpcRequestMessage.GetBlockRangeReq;
 import org.apache.crail.rpc.RpcRequestMessage.GetBlockReq;
+import org.apache.crail.rpc.RpcRequestMessage.GetChildrenReq;
 import org.apache.crail.rpc.RpcRequestMessage.GetDataNodeReq;
 import org.apache.crail.rpc.RpcRequestMessage.GetFileReq;
+import org.apache.crail.rpc.RpcRequestMessage.GetLocationRangeReq;
 import org.apache.crail.rpc.RpcRequestMessage.GetLocationReq;
 import org.apache.crail.rpc.RpcRequestMessage.PingNameNodeReq;
 import org.apache.crail.rpc.RpcRequestMessage.RemoveFileReq;
@@ -34,9 +40,12 @@ import org.apache.crail.rpc.RpcRequestMessage.SetBlockReq;
 import org.apache.crail.rpc.RpcRequestMessage.SetFileReq;
 import org.apache.crail.rpc.RpcResponseMessage.CreateFileRes;
 import org.apache.crail.rpc.RpcResponseMessage.DeleteFileRes;
+import org.apache.crail.rpc.RpcResponseMessage.GetBlockRangeRes;
 import org.apache.crail.rpc.RpcResponseMessage.GetBlockRes;
+import org.apache.crail.rpc.RpcResponseMessage.GetChildrenRes;
 import org.apache.crail.rpc.RpcResponseMessage.GetDataNodeRes;
 import org.apache.crail.rpc.RpcResponseMessage.GetFileRes;
+import org.apache.crail.rpc.RpcResponseMessage.GetLocationRangeRes;
 import org.apache.crail.rpc.RpcResponseMessage.GetLocationRes;
 import org.apache.crail.rpc.RpcResponseMessage.PingNameNodeRes;
 import org.apache.crail.rpc.RpcResponseMessage.RenameRes;
@@ -45,11 +54,29 @@ import org.apache.crail.rpc.RpcResponseMessage.VoidRes;
 public class LogDispatcher implements RpcNameNodeService {
 	private RpcNameNodeService service;
 	private LogService logService;
+	private CheckpointService checkpointService;
+	private Lock checkpointLock;
 	
 	public LogDispatcher(RpcNameNodeService service) throws Exception{
 		this.service = service;
 		this.logService = new LogService();
 		this.logService.replay(service);
+		this.checkpointService = null;
+		this.checkpointLock = null;
+		if (service instanceof NameNodeService){
+			NameNodeService nameNode = (NameNodeService) service;
+			this.checkpointLock = nameNode.getCheckpointLock().readLock();
+			this.checkpointService = new CheckpointService(nameNode, logService);
+			checkpointService.start();
+		}
+	}
+	
+	//stops checkpointing and closes the log, no records must be in flight
+	public void close() throws IOException {
+		if (checkpointService != null){
+			checkpointService.close();
+		}
+		logService.close();
 	}
 
 	@Override
@@ -57,8 +84,15 @@ public class LogDispatcher implements RpcNameNodeService {
 			RpcNameNodeState errorState) throws Exception {
 		LogRecord record = new LogRecord(request);
 		record.setCommand(RpcProtocol.CMD_CREATE_FILE);
-		logService.writeRecord(record);
-		return service.createFile(request, response, errorState);
+		lock();
+		try {
+			long ticket = logService.appendRecord(record);
+			short error = service.createFile(request, response, errorState);
+			logService.syncRecord(ticket);
+			return error;
+		} finally {
+			unlock();
+		}
 	}
 
 	@Override
@@ -72,8 +106,15 @@ public class LogDispatcher implements RpcNameNodeService {
 			RpcNameNodeState errorState) throws Exception {
 		LogRecord record = new LogRecord(request);
 		record.setCommand(RpcProtocol.CMD_SET_FILE);
-		logService.writeRecord(record);		
-		return service.setFile(request, response, errorState);
+		lock();
+		try {
+			long ticket = logService.appendRecord(record);
+			short error = service.setFile(request, response, errorState);
+			logService.syncRecord(ticket);
+			return error;
+		} finally {
+			unlock();
+		}
 	}
 
 	@Override
@@ -81,8 +122,15 @@ public class LogDispatcher implements RpcNameNodeService {
 			RpcNameNodeState errorState) throws Exception {
 		LogRecord record = new LogRecord(request);
 		record.setCommand(RpcProtocol.CMD_REMOVE_FILE);
-		logService.writeRecord(record);		
-		return service.removeFile(request, response, errorState);
+		lock();
+		try {
+			long ticket = logService.appendRecord(record);
+			short error = service.removeFile(request, response, errorState);
+			logService.syncRecord(ticket);
+			return error;
+		} finally {
+			unlock();
+		}
 	}
 
 	@Override
@@ -90,8 +138,15 @@ public class LogDispatcher implements RpcNameNodeService {
 			RpcNameNodeState errorState) throws Exception {
 		LogRecord record = new LogRecord(request);
 		record.setCommand(RpcProtocol.CMD_RENAME_FILE);
-		logService.writeRecord(record);		
-		return service.renameFile(request, response, errorState);
+		lock();
+		try {
+			long ticket = logService.appendRecord(record);
+			short error = service.renameFile(request, response, errorState);
+			logService.syncRecord(ticket);
+			return error;
+		} finally {
+			unlock();
+		}
 	}
 
 	@Override
@@ -105,8 +160,15 @@ public class LogDispatcher implements RpcNameNodeService {
 			RpcNameNodeState errorState) throws Exception {
 		LogRecord record = new LogRecord(request);
 		record.setCommand(RpcProtocol.CMD_SET_BLOCK);
-		logService.writeRecord(record);		
-		return service.setBlock(request, response, errorState);
+		lock();
+		try {
+			long ticket = logService.appendRecord(record);
+			short error = service.setBlock(request, response, errorState);
+			logService.syncRecord(ticket);
+			return error;
+		} finally {
+			unlock();
+		}
 	}
 
 	@Override
@@ -114,8 +176,31 @@ public class LogDispatcher implements RpcNameNodeService {
 			RpcNameNodeState errorState) throws Exception {
 		LogRecord record = new LogRecord(request);
 		record.setCommand(RpcProtocol.CMD_GET_BLOCK);
-		logService.writeRecord(record);		
-		return service.getBlock(request, response, errorState);
+		lock();
+		try {
+			long ticket = logService.appendRecord(record);
+			short error = service.getBlock(request, response, errorState);
+			logService.syncRecord(ticket);
+			return error;
+		} finally {
+			unlock();
+		}
+	}
+
+	@Override
+	public short getBlockRange(GetBlockRangeReq request, GetBlockRangeRes response,
+			RpcNameNodeState errorState) throws Exception {
+		LogRecord record = new LogRecord(request);
+		record.setCommand(RpcProtocol.CMD_GET_BLOCK_RANGE);
+		lock();
+		try {
+			long ticket = logService.appendRecord(record);
+			short error = service.getBlockRange(request, response, errorState);
+			logService.syncRecord(ticket);
+			return error;
+		} finally {
+			unlock();
+		}
 	}
 
 	@Override
@@ -124,6 +209,18 @@ public class LogDispatcher implements RpcNameNodeService {
 		return service.getLocation(request, response, errorState);
 	}
 
+	@Override
+	public short getLocationRange(GetLocationRangeReq request, GetLocationRangeRes response,
+			RpcNameNodeState errorState) throws Exception {
+		return service.getLocationRange(request, response, errorState);
+	}
+
+	@Override
+	public short getChildren(GetChildrenReq request, GetChildrenRes response,
+			RpcNameNodeState errorState) throws Exception {
+		return service.getChildren(request, response, errorState);
+	}
+
 	@Override
 	public short dump(DumpNameNodeReq request, VoidRes response,
 			RpcNameNodeState errorState) throws Exception {
@@ -136,4 +233,16 @@ public class LogDispatcher implements RpcNameNodeService {
 		return service.ping(request, response, errorState);
 	}
 	
+	
+	private void lock(){
+		if (checkpointLock != null){
+			checkpointLock.lock();
+		}
+	}
+	
+	private void unlock(){
+		if (checkpointLock != null){
+			checkpointLock.unlock();
+		}
+	}
 }
@@ -0,0 +1,251 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.crail.namenode;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import org.apache.crail.conf.CrailConstants;
+import org.apache.crail.utils.CrailUtils;
+import org.slf4j.Logger;
+
+/*
+ * Group commit for the namenode log. RPC threads serialize their record into a
+ * slot of a fixed size ring (claimed with a single atomic increment), the flusher
+ * thread collects consecutive published slots into one write and forces the
+ * channel once per batch. Callers wait on the sequence number of their record.
+ * 
+ * A record is serialized before its slot is claimed, a record that fails to
+ * serialize never leaves a hole in the sequence the flusher would wait on.
+ */
+public class LogFlusher implements Runnable {
+	private static final Logger LOG = CrailUtils.getLogger();
+	private static final int ALIGNMENT = 4096;
+
+	private volatile FileChannel channel;
+	private LogSlot[] slots;
+	private int mask;
+	private int batchSize;
+	private long lingerNanos;
+	private boolean sync;
+	private ByteBuffer batch;
+	private ThreadLocal<ByteBuffer> staging;
+
+	private AtomicLong sequence;
+	private volatile long consumed;
+	private volatile long durable;
+	private volatile IOException failure;
+	private volatile boolean running;
+	private volatile Thread thread;
+	private Object durableLock;
+
+	private AtomicLong batches;
+	private AtomicLong records;
+
+	public LogFlusher(FileChannel channel){
+		this.channel = channel;
+		this.batchSize = Math.max(1, CrailConstants.NAMENODE_LOG_BATCHSIZE);
+		this.lingerNanos = TimeUnit.MICROSECONDS.toNanos(CrailConstants.NAMENODE_LOG_LINGER);
+		this.sync = CrailConstants.NAMENODE_LOG_SYNC;
+
+		int capacity = Integer.highestOneBit(Math.max(batchSize*4 - 1, 1)) << 1;
+		this.slots = new LogSlot[capacity];
+		for (int i = 0; i < capacity; i++){
+			slots[i] = new LogSlot();
+		}
+		this.mask = capacity - 1;
+
+		int batchBytes = batchSize*LogSlot.SIZE;
+		batchBytes = ((batchBytes + ALIGNMENT - 1) / ALIGNMENT) * ALIGNMENT;
+		this.batch = ByteBuffer.allocateDirect(batchBytes);
+		this.staging = ThreadLocal.withInitial(() -> ByteBuffer.allocate(LogSlot.SIZE));
+
+		this.sequence = new AtomicLong(0);
+		this.consumed = -1;
+		this.durable = -1;
+		this.failure = null;
+		this.running = true;
+		this.durableLock = new Object();
+		this.batches = new AtomicLong(0);
+		this.records = new AtomicLong(0);
+	}
+
+	public void start() {
+		this.thread = new Thread(this, "log-flusher");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	//serializes the record into the ring, returns the sequence number of the record
+	public long append(LogRecord record) throws IOException {
+		checkFailure();
+		ByteBuffer buffer = staging.get();
+		buffer.clear();
+		buffer.position(4);
+		record.write(buffer);
+		buffer.putInt(0, buffer.position() - 4);
+		buffer.flip();
+		
+		long ticket = sequence.getAndIncrement();
+		LogSlot slot = slots[(int) (ticket & mask)];
+		while(ticket - slots.length > consumed){
+			//ring is full, the previous occupant of this slot has not been flushed yet
+			checkFailure();
+			LockSupport.unpark(thread);
+			Thread.yield();
+		}
+		slot.write(buffer);
+		slot.published = ticket;
+		LockSupport.unpark(thread);
+		return ticket;
+	}
+
+	//blocks until the record with the given sequence number is durable
+	public void sync(long ticket) throws IOException {
+		if (durable >= ticket){
+			return;
+		}
+		synchronized(durableLock){
+			while(durable < ticket){
+				checkFailure();
+				try {
+					durableLock.wait();
+				} catch (InterruptedException e) {
+					throw new IOException(e);
+				}
+			}
+		}
+	}
+
+	//only valid while no records are in flight, i.e. all appended records are durable
+	void setChannel(FileChannel channel) {
+		this.channel = channel;
+	}
+
+	//flushes the records appended so far and waits for the flusher to exit, 
+	//the channel may be closed afterwards
+	public void close() throws IOException {
+		this.running = false;
+		if (thread == null){
+			return;
+		}
+		LockSupport.unpark(thread);
+		try {
+			thread.join();
+		} catch(InterruptedException e){
+			Thread.currentThread().interrupt();
+			throw new IOException("interrupted while closing the namenode log", e);
+		}
+	}
+
+	@Override
+	public void run() {
+		long next = 0;
+		try {
+			while(running || slots[(int) (next & mask)].published == next){
+				LogSlot slot = slots[(int) (next & mask)];
+				if (slot.published != next){
+					LockSupport.parkNanos(this, TimeUnit.MILLISECONDS.toNanos(1));
+					continue;
+				}
+
+				batch.clear();
+				long last = next - 1;
+				long deadline = System.nanoTime() + lingerNanos;
+				for (int count = 0; count < batchSize; ){
+					slot = slots[(int) ((last + 1) & mask)];
+					if (slot.published == last + 1){
+						slot.read(batch);
+						last++;
+						count++;
+						consumed = last;
+					} else if (lingerNanos > 0 && System.nanoTime() < deadline){
+						Thread.yield();
+					} else {
+						break;
+					}
+				}
+
+				batch.flip();
+				while(batch.hasRemaining()){
+					channel.write(batch);
+				}
+				if (sync){
+					channel.force(false);
+				}
+
+				batches.incrementAndGet();
+				records.addAndGet(last - next + 1);
+				next = last + 1;
+				publish(last);
+			}
+		} catch(IOException e){
+			LOG.info("Exception while flushing namenode log: " + e.getMessage());
+			this.failure = e;
+			publish(durable);
+		}
+	}
+
+	public long getBatches() {
+		return batches.get();
+	}
+
+	public long getRecords() {
+		return records.get();
+	}
+
+	private void publish(long ticket){
+		synchronized(durableLock){
+			this.durable = ticket;
+			durableLock.notifyAll();
+		}
+	}
+
+	private void checkFailure() throws IOException {
+		if (failure != null){
+			throw new IOException("namenode log failed", failure);
+		}
+	}
+
+	private static class LogSlot {
+		public static final int SIZE = 4 + LogRecord.CSIZE;
+
+		private ByteBuffer buffer;
+		private volatile long published;
+
+		public LogSlot(){
+			this.buffer = ByteBuffer.allocate(SIZE);
+			this.published = -1;
+		}
+
+		public void write(ByteBuffer record){
+			buffer.clear();
+			buffer.put(record);
+			buffer.flip();
+		}
+
+		public void read(ByteBuffer dst){
+			dst.put(buffer.duplicate());
+		}
+	}
+}
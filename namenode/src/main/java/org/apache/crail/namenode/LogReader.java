@@ -0,0 +1,166 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.crail.namenode;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ArrayBlockingQueue;
+
+import org.apache.crail.utils.CrailUtils;
+import org.slf4j.Logger;
+
+/*
+ * Decodes the records of a log file on its own thread and hands them to the
+ * replaying thread in batches. Batches are recycled, the number of records in
+ * flight is bounded by the number of batches.
+ */
+public class LogReader implements Runnable {
+	private static final Logger LOG = CrailUtils.getLogger();
+	private static final int BATCH_SIZE = 1024;
+	private static final int BATCHES = 4;
+
+	private File file;
+	private ArrayBlockingQueue<LogBatch> freeBatches;
+	private ArrayBlockingQueue<LogBatch> readyBatches;
+	private volatile long position;
+	private volatile long size;
+	private volatile Exception failure;
+
+	public LogReader(File file){
+		this.file = file;
+		this.freeBatches = new ArrayBlockingQueue<LogBatch>(BATCHES);
+		this.readyBatches = new ArrayBlockingQueue<LogBatch>(BATCHES + 1);
+		for (int i = 0; i < BATCHES; i++){
+			freeBatches.add(new LogBatch());
+		}
+		this.position = 0;
+		this.size = file.length();
+		this.failure = null;
+	}
+
+	@Override
+	public void run() {
+		try {
+			FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+			try {
+				read(new MappedFileReader(channel));
+			} finally {
+				channel.close();
+			}
+		} catch(Exception e){
+			this.failure = e;
+		} finally {
+			readyBatches.add(LogBatch.END);
+		}
+	}
+
+	//returns the next batch of records, an empty batch marks the end of the log
+	public LogBatch take() throws Exception {
+		LogBatch batch = readyBatches.take();
+		if (batch == LogBatch.END && failure != null){
+			throw failure;
+		}
+		return batch;
+	}
+
+	public void release(LogBatch batch){
+		batch.clear();
+		freeBatches.add(batch);
+	}
+
+	//length of the log up to the end of the last complete record
+	public long getPosition() {
+		return position;
+	}
+
+	public long getSize() {
+		return size;
+	}
+
+	private void read(MappedFileReader reader) throws Exception {
+		size = reader.size();
+		LogBatch batch = freeBatches.take();
+		while(reader.available(4)){
+			long start = reader.position();
+			int length = reader.ensure(4).getInt();
+			if (length <= 0 || length > LogRecord.CSIZE || !reader.available(length)){
+				//the namenode went down in the middle of a write
+				LOG.info("incomplete record in log " + file.getAbsolutePath() + " at position " + start + ", ignoring the remaining " + (size - start) + " bytes");
+				break;
+			}
+
+			ByteBuffer buffer = reader.ensure(length);
+			int limit = buffer.limit();
+			int end = buffer.position() + length;
+			buffer.limit(end);
+			batch.next().update(buffer);
+			buffer.limit(limit);
+			buffer.position(end);
+
+			if (batch.size() == BATCH_SIZE){
+				readyBatches.put(batch);
+				batch = freeBatches.take();
+			}
+			position = reader.position();
+		}
+		if (batch.size() > 0){
+			readyBatches.put(batch);
+		} else {
+			freeBatches.add(batch);
+		}
+	}
+
+	public static class LogBatch {
+		private static final LogBatch END = new LogBatch(0);
+
+		private LogRecord[] records;
+		private int size;
+
+		private LogBatch(){
+			this(BATCH_SIZE);
+		}
+
+		private LogBatch(int capacity){
+			this.records = new LogRecord[capacity];
+			for (int i = 0; i < capacity; i++){
+				records[i] = new LogRecord();
+			}
+			this.size = 0;
+		}
+
+		public LogRecord get(int index){
+			return records[index];
+		}
+
+		public int size(){
+			return size;
+		}
+
+		private LogRecord next(){
+			return records[size++];
+		}
+
+		private void clear(){
+			size = 0;
+		}
+	}
+}
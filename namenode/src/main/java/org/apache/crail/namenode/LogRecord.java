@@ -38,7 +38,9 @@ public class LogRecord {
 	private RpcRequestMessage.RemoveFileReq removeReq;
 	private RpcRequestMessage.RenameFileReq renameFileReq;
 	private RpcRequestMessage.GetBlockReq getBlockReq;
+	private RpcRequestMessage.GetBlockRangeReq getBlockRangeReq;
 	private RpcRequestMessage.GetLocationReq getLocationReq;
+	private RpcRequestMessage.GetLocationRangeReq getLocationRangeReq;
 	private RpcRequestMessage.SetBlockReq setBlockReq;
 	private RpcRequestMessage.GetDataNodeReq getDataNodeReq;
 	private RpcRequestMessage.DumpNameNodeReq dumpNameNodeReq;
@@ -53,7 +55,9 @@ public class LogRecord {
 		this.removeReq = new RpcRequestMessage.RemoveFileReq();
 		this.renameFileReq = new RpcRequestMessage.RenameFileReq();
 		this.getBlockReq = new RpcRequestMessage.GetBlockReq();
+		this.getBlockRangeReq = new RpcRequestMessage.GetBlockRangeReq();
 		this.getLocationReq = new RpcRequestMessage.GetLocationReq();
+		this.getLocationRangeReq = new RpcRequestMessage.GetLocationRangeReq();
 		this.setBlockReq = new RpcRequestMessage.SetBlockReq();
 		this.dumpNameNodeReq = new RpcRequestMessage.DumpNameNodeReq();
 		this.pingNameNodeReq = new RpcRequestMessage.PingNameNodeReq();
@@ -89,11 +93,21 @@ public class LogRecord {
 		this.getBlockReq = message;
 	}
 	
+	public LogRecord(RpcRequestMessage.GetBlockRangeReq message) {
+		this.type = message.getType();
+		this.getBlockRangeReq = message;
+	}
+	
 	public LogRecord(RpcRequestMessage.GetLocationReq message) {
 		this.type = message.getType();
 		this.getLocationReq = message;
 	}
 	
+	public LogRecord(RpcRequestMessage.GetLocationRangeReq message) {
+		this.type = message.getType();
+		this.getLocationRangeReq = message;
+	}
+	
 	public LogRecord(RpcRequestMessage.SetBlockReq message) {
 		this.type = message.getType();
 		this.setBlockReq = message;
@@ -146,9 +160,15 @@ public class LogRecord {
 		case RpcProtocol.REQ_GET_BLOCK:
 			written += getBlockReq.write(buffer);
 			break;
+		case RpcProtocol.REQ_GET_BLOCK_RANGE:
+			written += getBlockRangeReq.write(buffer);
+			break;
 		case RpcProtocol.REQ_GET_LOCATION:
 			written += getLocationReq.write(buffer);
 			break;			
+		case RpcProtocol.REQ_GET_LOCATION_RANGE:
+			written += getLocationRangeReq.write(buffer);
+			break;			
 		case RpcProtocol.REQ_SET_BLOCK:
 			written += setBlockReq.write(buffer);
 			break;
@@ -189,9 +209,15 @@ public class LogRecord {
 		case RpcProtocol.REQ_GET_BLOCK:
 			getBlockReq.update(buffer);
 			break;
+		case RpcProtocol.REQ_GET_BLOCK_RANGE:
+			getBlockRangeReq.update(buffer);
+			break;
 		case RpcProtocol.REQ_GET_LOCATION:
 			getLocationReq.update(buffer);
 			break;			
+		case RpcProtocol.REQ_GET_LOCATION_RANGE:
+			getLocationRangeReq.update(buffer);
+			break;			
 		case RpcProtocol.REQ_SET_BLOCK:
 			setBlockReq.update(buffer);
 			break;
@@ -239,10 +265,18 @@ public class LogRecord {
 		return getBlockReq;
 	}
 	
+	public RpcRequestMessage.GetBlockRangeReq getBlockRange() {
+		return getBlockRangeReq;
+	}
+	
 	public RpcRequestMessage.GetLocationReq getLocation() {
 		return getLocationReq;
 	}	
 
+	public RpcRequestMessage.GetLocationRangeReq getLocationRange() {
+		return getLocationRangeReq;
+	}	
+
 	public RpcRequestMessage.SetBlockReq setBlock() {
 		return setBlockReq;
 	}
@@ -284,6 +318,9 @@ public class LogRecord {
 		case RpcProtocol.REQ_GET_LOCATION:
 			message += getLocationReq.toString();
 			break;			
+		case RpcProtocol.REQ_GET_LOCATION_RANGE:
+			message += getLocationRangeReq.toString();
+			break;			
 		case RpcProtocol.REQ_SET_BLOCK:
 			message += setBlockReq.toString();
 			break;
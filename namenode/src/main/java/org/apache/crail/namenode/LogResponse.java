@@ -25,7 +25,7 @@ import org.apache.crail.rpc.RpcProtocol;
 import org.apache.crail.rpc.RpcResponseMessage;
 
 public class LogResponse implements RpcNameNodeState {
-	public static final int CSIZE = 4 + Math.max(RpcResponseMessage.GetBlockRes.CSIZE, RpcResponseMessage.RenameRes.CSIZE);
+	public static final int CSIZE = 4 + Math.max(Math.max(RpcResponseMessage.GetBlockRangeRes.CSIZE, RpcResponseMessage.GetLocationRangeRes.CSIZE), RpcResponseMessage.RenameRes.CSIZE);
 	
 	private short type;
 	private short error;
@@ -35,7 +35,9 @@ public class LogResponse implements RpcNameNodeState {
 	private RpcResponseMessage.DeleteFileRes delFileRes;
 	private RpcResponseMessage.RenameRes renameRes;
 	private RpcResponseMessage.GetBlockRes getBlockRes;
+	private RpcResponseMessage.GetBlockRangeRes getBlockRangeRes;
 	private RpcResponseMessage.GetLocationRes getLocationRes;	
+	private RpcResponseMessage.GetLocationRangeRes getLocationRangeRes;	
 	private RpcResponseMessage.GetDataNodeRes getDataNodeRes;
 	private RpcResponseMessage.PingNameNodeRes pingNameNodeRes;
 	
@@ -49,7 +51,9 @@ public class LogResponse implements RpcNameNodeState {
 		this.delFileRes = new RpcResponseMessage.DeleteFileRes();
 		this.renameRes = new RpcResponseMessage.RenameRes();
 		this.getBlockRes = new RpcResponseMessage.GetBlockRes();
+		this.getBlockRangeRes = new RpcResponseMessage.GetBlockRangeRes();
 		this.getLocationRes = new RpcResponseMessage.GetLocationRes();
+		this.getLocationRangeRes = new RpcResponseMessage.GetLocationRangeRes();
 		this.getDataNodeRes = new RpcResponseMessage.GetDataNodeRes();
 		this.pingNameNodeRes = new RpcResponseMessage.PingNameNodeRes();
 	}
@@ -84,11 +88,21 @@ public class LogResponse implements RpcNameNodeState {
 		this.getBlockRes = message;
 	}
 	
+	public LogResponse(RpcResponseMessage.GetBlockRangeRes message) {
+		this.type = message.getType();
+		this.getBlockRangeRes = message;
+	}
+	
 	public LogResponse(RpcResponseMessage.GetLocationRes message) {
 		this.type = message.getType();
 		this.getLocationRes = message;
 	}
 	
+	public LogResponse(RpcResponseMessage.GetLocationRangeRes message) {
+		this.type = message.getType();
+		this.getLocationRangeRes = message;
+	}
+	
 	public LogResponse(RpcResponseMessage.GetDataNodeRes message) {
 		this.type = message.getType();
 		this.getDataNodeRes = message;
@@ -132,11 +146,21 @@ public class LogResponse implements RpcNameNodeState {
 				throw new Exception("Response type not set");
 			}
 			break;
+		case RpcProtocol.RES_GET_BLOCK_RANGE:
+			if (getBlockRangeRes == null){
+				throw new Exception("Response type not set");
+			}
+			break;
 		case RpcProtocol.RES_GET_LOCATION:
 			if (getLocationRes == null){
 				throw new Exception("Response type not set");
 			}
 			break;			
+		case RpcProtocol.RES_GET_LOCATION_RANGE:
+			if (getLocationRangeRes == null){
+				throw new Exception("Response type not set");
+			}
+			break;			
 		case RpcProtocol.RES_GET_DATANODE:
 			if (getDataNodeRes == null){
 				throw new Exception("Response type not set");
@@ -178,9 +202,15 @@ public class LogResponse implements RpcNameNodeState {
 		case RpcProtocol.RES_GET_BLOCK:
 			written += getBlockRes.write(buffer);
 			break;
+		case RpcProtocol.RES_GET_BLOCK_RANGE:
+			written += getBlockRangeRes.write(buffer);
+			break;
 		case RpcProtocol.RES_GET_LOCATION:
 			written += getLocationRes.write(buffer);
 			break;			
+		case RpcProtocol.RES_GET_LOCATION_RANGE:
+			written += getLocationRangeRes.write(buffer);
+			break;			
 		case RpcProtocol.RES_GET_DATANODE:
 			written += getDataNodeRes.write(buffer);
 			break;			
@@ -221,10 +251,18 @@ public class LogResponse implements RpcNameNodeState {
 			getBlockRes.update(buffer);
 			getBlockRes.setError(error);
 			break;
+		case RpcProtocol.RES_GET_BLOCK_RANGE:
+			getBlockRangeRes.update(buffer);
+			getBlockRangeRes.setError(error);
+			break;
 		case RpcProtocol.RES_GET_LOCATION:
 			getLocationRes.update(buffer);
 			getLocationRes.setError(error);
 			break;			
+		case RpcProtocol.RES_GET_LOCATION_RANGE:
+			getLocationRangeRes.update(buffer);
+			getLocationRangeRes.setError(error);
+			break;			
 		case RpcProtocol.RES_GET_DATANODE:
 			getDataNodeRes.update(buffer);
 			getDataNodeRes.setError(error);
@@ -272,10 +310,18 @@ public class LogResponse implements RpcNameNodeState {
 		return getBlockRes;
 	}	
 	
+	public RpcResponseMessage.GetBlockRangeRes getBlockRange() {
+		return getBlockRangeRes;
+	}
+	
 	public RpcResponseMessage.GetLocationRes getLocation() {
 		return getLocationRes;
 	}	
 	
+	public RpcResponseMessage.GetLocationRangeRes getLocationRange() {
+		return getLocationRangeRes;
+	}	
+	
 	public RpcResponseMessage.GetDataNodeRes getDataNode() {
 		return getDataNodeRes;
 	}	
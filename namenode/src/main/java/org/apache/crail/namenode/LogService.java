@@ -19,14 +19,19 @@
 package org.apache.crail.namenode;
 
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
-import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.TreeMap;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.crail.conf.CrailConstants;
+import org.apache.crail.namenode.LogReader.LogBatch;
 import org.apache.crail.rpc.RpcErrors;
 import org.apache.crail.rpc.RpcNameNodeService;
 import org.apache.crail.rpc.RpcProtocol;
@@ -35,12 +40,13 @@ import org.slf4j.Logger;
 
 public class LogService {
 	public static final Logger LOG = CrailUtils.getLogger();
+	private static final int REPORT_INTERVAL = 5;
 	
 	private ConcurrentHashMap<Long, Long> tokens;
 	private FileOutputStream outStream;
 	private FileChannel outChannel;
-	private ByteBuffer header;
-	private ByteBuffer payload;
+	private LogFlusher flusher;
+	private long checkpointId;
 	
 	public LogService() throws IOException {
 		File file = new File(CrailConstants.NAMENODE_LOG);
@@ -49,60 +55,147 @@ public class LogService {
 		}
 		outStream = new FileOutputStream(CrailConstants.NAMENODE_LOG, true);
 		outChannel = outStream.getChannel();
-		header = ByteBuffer.allocate(4);
-		payload = ByteBuffer.allocate(512);
 		tokens = new ConcurrentHashMap<Long, Long>();
+		checkpointId = 0;
+		flusher = new LogFlusher(outChannel);
+		flusher.start();
 	}
 	
-	public void writeRecord(LogRecord record) throws IOException{
-		payload.clear();
-		record.write(payload);
-		payload.flip();
-		
-		header.clear();
-		header.putInt(payload.remaining());
-		header.flip();
-		
-		outChannel.write(header);
-		while(payload.hasRemaining()){
-			outChannel.write(payload);
-		}
+	public long appendRecord(LogRecord record) throws IOException{
+		return flusher.append(record);
+	}
+	
+	public void syncRecord(long ticket) throws IOException{
+		flusher.sync(ticket);
 	}
 	
+	//restores the latest snapshot, then replays the logs not covered by it
 	public void replay(RpcNameNodeService service) throws Exception {
-		File file = new File(CrailConstants.NAMENODE_LOG);
-		if (!file.exists()){
-			return;
+		long snapshotId = 0;
+		if (service instanceof NameNodeService){
+			snapshotId = CheckpointService.load((NameNodeService) service, tokens);
+		}
+		checkpointId = snapshotId;
+		for (Map.Entry<Long, File> entry : listRotated().entrySet()){
+			if (entry.getKey() <= snapshotId){
+				entry.getValue().delete();
+			} else {
+				replay(service, entry.getValue());
+				checkpointId = entry.getKey();
+			}
+		}
+		long length = replay(service, new File(CrailConstants.NAMENODE_LOG));
+		if (length < outChannel.size()){
+			//drop a partially written record so that new records are appended after the last complete one
+			outChannel.truncate(length);
+		}
+	}
+	
+	synchronized long size() throws IOException {
+		return outChannel.size();
+	}
+	
+	//moves the current log to <log>.<id> and continues with an empty log, 
+	//must only be called while no records are in flight
+	synchronized long rotate() throws IOException {
+		long id = ++checkpointId;
+		outChannel.force(true);
+		outChannel.close();
+		outStream.close();
+		File current = new File(CrailConstants.NAMENODE_LOG);
+		Files.move(current.toPath(), new File(CrailConstants.NAMENODE_LOG + "." + id).toPath(), StandardCopyOption.ATOMIC_MOVE);
+		outStream = new FileOutputStream(CrailConstants.NAMENODE_LOG, true);
+		outChannel = outStream.getChannel();
+		flusher.setChannel(outChannel);
+		syncDirectory(current);
+		return id;
+	}
+	
+	//removes the rotated logs covered by the given checkpoint
+	void deleteRotated(long id){
+		for (Map.Entry<Long, File> entry : listRotated().entrySet()){
+			if (entry.getKey() <= id && !entry.getValue().delete()){
+				LOG.info("cannot delete obsolete log " + entry.getValue().getAbsolutePath());
+			}
+		}
+	}
+	
+	static void syncDirectory(File file) {
+		File directory = file.getAbsoluteFile().getParentFile();
+		try {
+			FileChannel channel = FileChannel.open(directory.toPath(), StandardOpenOption.READ);
+			try {
+				channel.force(true);
+			} finally {
+				channel.close();
+			}
+		} catch(IOException e){
+			//not supported on all platforms
+		}
+	}
+	
+	private TreeMap<Long, File> listRotated(){
+		TreeMap<Long, File> rotated = new TreeMap<Long, File>();
+		File log = new File(CrailConstants.NAMENODE_LOG).getAbsoluteFile();
+		String prefix = log.getName() + ".";
+		File[] files = log.getParentFile().listFiles();
+		if (files == null){
+			return rotated;
+		}
+		for (File file : files){
+			String name = file.getName();
+			if (name.startsWith(prefix)){
+				try {
+					rotated.put(Long.parseLong(name.substring(prefix.length())), file);
+				} catch(NumberFormatException e){
+				}
+			}
+		}
+		return rotated;
+	}
+	
+	//replays the given log, returns the length of the log up to the last complete record
+	private long replay(RpcNameNodeService service, File file) throws Exception {
+		if (!file.exists() || file.length() == 0){
+			return 0;
 		}		
 		
-		FileInputStream inStream = new FileInputStream(CrailConstants.NAMENODE_LOG);
-		FileChannel inChannel = inStream.getChannel();
-		LogRecord record = new LogRecord();
+		long start = System.nanoTime();
+		long lastReport = start;
+		long records = 0;
+		LogReader reader = new LogReader(file);
+		Thread readerThread = new Thread(reader);
+		readerThread.start();
 		LogResponse response = new LogResponse();
 		
-		header.clear();
-		int ret = inChannel.read(header);
-		while(ret > 0){
-			header.flip();
-			int size = header.getInt();
-			
-			payload.clear().limit(size);
-			while(payload.hasRemaining()){
-				inChannel.read(payload);
+		try {
+			for (LogBatch batch = reader.take(); batch.size() > 0; batch = reader.take()){
+				for (int i = 0; i < batch.size(); i++){
+					processServerEvent(service, batch.get(i), response);
+				}
+				records += batch.size();
+				reader.release(batch);
+				
+				long now = System.nanoTime();
+				if (now - lastReport >= TimeUnit.SECONDS.toNanos(REPORT_INTERVAL)){
+					LOG.info("replaying " + file.getName() + ", " + (reader.getPosition()*100/Math.max(1, reader.getSize())) + "% done, records " + records + ", records/sec " + rate(records, now - start));
+					lastReport = now;
+				}
 			}
-			payload.flip();
-			record.update(payload);
-			processServerEvent(service, record, response);
-			
-			header.clear();
-			ret = inChannel.read(header);
+		} finally {
+			readerThread.join();
 		}
 		
-		inChannel.close();
-		inStream.close();
+		LOG.info("replayed " + file.getName() + ", records " + records + ", bytes " + reader.getPosition() + ", time " + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + "ms, records/sec " + rate(records, System.nanoTime() - start));
+		return reader.getPosition();
+	}
+	
+	private static long rate(long records, long nanos){
+		return records*TimeUnit.SECONDS.toNanos(1)/Math.max(1, nanos);
 	}
 	
 	public void close() throws IOException{
+		flusher.close();
 		outChannel.close();
 		outStream.close();
 	}
@@ -130,8 +223,14 @@ public class LogService {
 				break;		
 			case RpcProtocol.CMD_GET_BLOCK:
 				record.getBlock().setToken(tokens.get(record.getBlock().getFd()));
+				record.getBlock().setVersion(0);
 				error = service.getBlock(record.getBlock(), response.getBlock(), response);
 				break;
+			case RpcProtocol.CMD_GET_BLOCK_RANGE:
+				record.getBlockRange().setToken(tokens.get(record.getBlockRange().getFd()));
+				record.getBlockRange().setVersion(0);
+				error = service.getBlockRange(record.getBlockRange(), response.getBlockRange(), response);
+				break;
 			case RpcProtocol.CMD_SET_BLOCK:
 				error = service.setBlock(record.setBlock(), response.getVoid(), response);
 				break;
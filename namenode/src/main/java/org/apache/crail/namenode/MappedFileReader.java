@@ -0,0 +1,65 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.crail.namenode;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+//sequential reads through a sliding memory mapped window, used for log replay and snapshots
+class MappedFileReader {
+	private static final int WINDOW_SIZE = 256*1024*1024;
+
+	private FileChannel channel;
+	private long size;
+	private long base;
+	private ByteBuffer buffer;
+
+	public MappedFileReader(FileChannel channel) throws IOException {
+		this.channel = channel;
+		this.size = channel.size();
+		this.base = 0;
+		this.buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(WINDOW_SIZE, size));
+	}
+
+	//returns the window with at least the given number of bytes remaining
+	public ByteBuffer ensure(int bytes) throws IOException {
+		if (buffer.remaining() < bytes){
+			base += buffer.position();
+			if (size - base < bytes){
+				throw new EOFException("unexpected end of file at position " + base);
+			}
+			buffer = channel.map(FileChannel.MapMode.READ_ONLY, base, Math.min(WINDOW_SIZE, size - base));
+		}
+		return buffer;
+	}
+
+	public boolean available(int bytes) {
+		return size - position() >= bytes;
+	}
+
+	public long position() {
+		return base + buffer.position();
+	}
+
+	public long size() {
+		return size;
+	}
+}
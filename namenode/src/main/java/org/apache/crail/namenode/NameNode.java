@@ -83,8 +83,9 @@ public class NameNode {
 		CrailConstants.verify();
 		
 		RpcNameNodeService service = RpcNameNodeService.createInstance(CrailConstants.NAMENODE_RPC_SERVICE);
+		LogDispatcher logDispatcher = null;
 		if (!CrailConstants.NAMENODE_LOG.isEmpty()){
-			LogDispatcher logDispatcher = new LogDispatcher(service);
+			logDispatcher = new LogDispatcher(service);
 			service = logDispatcher;
 		}
 		RpcBinding rpcBinding = RpcBinding.createInstance(CrailConstants.NAMENODE_RPC_TYPE);
@@ -92,6 +93,9 @@ public class NameNode {
 		rpcServer.init(conf, null);
 		rpcServer.printConf(LOG);
 		rpcServer.run();
+		if (logDispatcher != null){
+			logDispatcher.close();
+		}
 		System.exit(0);;
 	}
 }
@@ -60,4 +60,8 @@ public class NameNodeBlockInfo extends BlockInfo {
 		return region;
 	}
 	
+	public long getOffset() {
+		return offset;
+	}
+	
 }
@@ -18,12 +18,12 @@
 
 package org.apache.crail.namenode;
 
-import java.io.IOException;
 import java.net.URI;
+import java.util.List;
 import java.util.StringTokenizer;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.DelayQueue;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import org.apache.crail.CrailNodeType;
 import org.apache.crail.conf.CrailConstants;
@@ -42,18 +42,22 @@ import org.slf4j.Logger;
 
 public class NameNodeService implements RpcNameNodeService, Sequencer {
 	private static final Logger LOG = CrailUtils.getLogger();
+	private static final int FILE_TABLE_SEGMENTS = 64;
+	private static final int FILE_TABLE_CAPACITY = 1024*1024;
 	
 	//data structures for datanodes, blocks, files
 	private long serviceId;
 	private long serviceSize;
 	private AtomicLong sequenceId;
 	private BlockStore blockStore;
-	private DelayQueue<AbstractNode> deleteQueue;
 	private FileStore fileTree;
-	private ConcurrentHashMap<Long, AbstractNode> fileTable;	
+	private ConcurrentLongMap<AbstractNode> fileTable;	
 	private GCServer gcServer;
+	private ReplicationService replicationService;
+	private ReentrantReadWriteLock checkpointLock;
+	private long lease;
 	
-	public NameNodeService() throws IOException {
+	public NameNodeService() throws Exception {
 		URI uri = URI.create(CrailConstants.NAMENODE_ADDRESS);
 		String query = uri.getRawQuery();
 		StringTokenizer tokenizer = new StringTokenizer(query, "&");
@@ -61,15 +65,26 @@ public class NameNodeService implements RpcNameNodeService, Sequencer {
 		this.serviceSize = Long.parseLong(tokenizer.nextToken().substring(5));
 		this.sequenceId = new AtomicLong(serviceId);
 		this.blockStore = new BlockStore();
-		this.deleteQueue = new DelayQueue<AbstractNode>();
 		this.fileTree = new FileStore(this);
-		this.fileTable = new ConcurrentHashMap<Long, AbstractNode>();
-		this.gcServer = new GCServer(this, deleteQueue);
+		this.fileTable = new ConcurrentLongMap<AbstractNode>(FILE_TABLE_SEGMENTS, FILE_TABLE_CAPACITY);
+		this.checkpointLock = new ReentrantReadWriteLock();
+		this.gcServer = new GCServer(this);
+		//deleted files keep their blocks for TOKEN_EXPIRATION, a lease must not outlive them
+		this.lease = Math.min(CrailConstants.NAMENODE_LEASE, TimeUnit.SECONDS.toMillis(CrailConstants.TOKEN_EXPIRATION));
 		
 		AbstractNode root = fileTree.getRoot();
 		fileTable.put(root.getFd(), root);
 		Thread gc = new Thread(gcServer);
 		gc.start();				
+		
+		this.replicationService = null;
+		if (CrailConstants.NAMENODE_REPLICAREADS > 0 && !CrailConstants.NAMENODE_LOG.isEmpty()){
+			LOG.info("read replication disabled, replica blocks are not recorded in the namenode log");
+		} else if (CrailConstants.NAMENODE_REPLICAREADS > 0){
+			this.replicationService = new ReplicationService(this);
+			Thread replication = new Thread(replicationService);
+			replication.start();
+		}
 	}
 	
 	public long getNextId(){
@@ -90,6 +105,7 @@ public class NameNodeService implements RpcNameNodeService, Sequencer {
 		int storageClass = request.getStorageClass();
 		int locationClass = request.getLocationClass();
 		boolean enumerable = request.isEnumerable();
+		int stripeWidth = request.getStripeWidth();
 		
 		//check params
 		if (type.isContainer() && locationClass > 0){
@@ -97,6 +113,7 @@ public class NameNodeService implements RpcNameNodeService, Sequencer {
 		}
 		
 		//rpc
+		long version = fileTree.getVersion();
 		AbstractNode parentInfo = fileTree.retrieveParent(fileHash, errorState);
 		if (errorState.getError() != RpcErrors.ERR_OK){
 			return errorState.getError();
@@ -111,8 +128,12 @@ public class NameNodeService implements RpcNameNodeService, Sequencer {
 		if (storageClass < 0){
 			storageClass = parentInfo.getStorageClass();
 		}
+		if (stripeWidth <= 0){
+			stripeWidth = parentInfo.getStripeWidth();
+		}
 		
 		AbstractNode fileInfo = fileTree.createNode(fileHash.getFileComponent(), type, storageClass, locationClass, enumerable);
+		fileInfo.setStripeWidth(stripeWidth);
 		try {
 			AbstractNode oldNode = parentInfo.putChild(fileInfo);
 			if (oldNode != null && oldNode.getFd() != fileInfo.getFd()){
@@ -122,6 +143,7 @@ public class NameNodeService implements RpcNameNodeService, Sequencer {
 			return RpcErrors.ERR_FILE_EXISTS;
 		}
 		fileTable.put(fileInfo.getFd(), fileInfo);
+		fileTree.addFile(fileHash, version, parentInfo, fileInfo);
 		
 		NameNodeBlockInfo fileBlock = blockStore.getBlock(fileInfo.getStorageClass(), fileInfo.getLocationClass());
 		if (fileBlock == null){
@@ -195,6 +217,10 @@ public class NameNodeService implements RpcNameNodeService, Sequencer {
 		
 		if (writeable){
 			fileInfo.updateToken();
+			fileInfo.updateVersion();
+			if (replicationService != null){
+				replicationService.dropReplicas(fileInfo);
+			}
 		}
 		fileTable.put(fileInfo.getFd(), fileInfo);
 		
@@ -205,6 +231,12 @@ public class NameNodeService implements RpcNameNodeService, Sequencer {
 		if (writeable){
 			response.shipToken();
 		}
+		//only files nobody is writing to can be cached, directories change with every child
+		if (!writeable && !fileInfo.getType().isContainer() && fileInfo.tokenFree()){
+			response.setLease(lease);
+		} else {
+			response.setLease(0);
+		}
 		
 		if (CrailConstants.DEBUG){
 			LOG.info("getFile: fd " + fileInfo.getFd() + ", isDir " + fileInfo.getType().isDirectory() + ", token " + fileInfo.getToken() + ", capacity " + fileInfo.getCapacity());
@@ -263,7 +295,7 @@ public class NameNodeService implements RpcNameNodeService, Sequencer {
 			return RpcErrors.ERR_CREATE_FILE_FAILED;
 		} 		
 		
-		AbstractNode fileInfo = fileTree.retrieveFile(fileHash, errorState);
+		AbstractNode fileInfo = fileTree.retrieveChild(fileHash, parentInfo, errorState);
 		if (errorState.getError() != RpcErrors.ERR_OK){
 			return errorState.getError();
 		}		
@@ -274,7 +306,7 @@ public class NameNodeService implements RpcNameNodeService, Sequencer {
 		response.setParentInfo(parentInfo);
 		response.setFileInfo(fileInfo);
 		
-		fileInfo = parentInfo.removeChild(fileInfo.getComponent());
+		fileInfo = fileTree.removeFile(fileHash, parentInfo, fileInfo);
 		if (fileInfo == null){
 			return RpcErrors.ERR_GET_FILE_FAILED;
 		}
@@ -300,6 +332,7 @@ public class NameNodeService implements RpcNameNodeService, Sequencer {
 		FileName dstFileHash = request.getDstFileName();
 		
 		//rpc
+		long version = fileTree.getVersion();
 		AbstractNode srcParent = fileTree.retrieveParent(srcFileHash, errorState);
 		if (errorState.getError() != RpcErrors.ERR_OK){
 			return errorState.getError();
@@ -308,7 +341,7 @@ public class NameNodeService implements RpcNameNodeService, Sequencer {
 			return RpcErrors.ERR_GET_FILE_FAILED;
 		} 		
 		
-		AbstractNode srcFile = fileTree.retrieveFile(srcFileHash, errorState);
+		AbstractNode srcFile = fileTree.retrieveChild(srcFileHash, srcParent, errorState);
 		if (errorState.getError() != RpcErrors.ERR_OK){
 			return errorState.getError();
 		}		
@@ -336,15 +369,16 @@ public class NameNodeService implements RpcNameNodeService, Sequencer {
 			return RpcErrors.ERR_GET_FILE_FAILED;
 		} 
 		
-		AbstractNode dstFile = fileTree.retrieveFile(dstFileHash, errorState);
+		AbstractNode dstFile = fileTree.retrieveChild(dstFileHash, dstParent, errorState);
 		if (dstFile != null && !dstFile.getType().isDirectory()){
 			return RpcErrors.ERR_FILE_EXISTS;
 		}		
-		if (dstFile != null && dstFile.getType().isDirectory()){
+		boolean intoDirectory = dstFile != null && dstFile.getType().isDirectory();
+		if (intoDirectory){
 			dstParent = dstFile;
 		} 
 		
-		srcFile = srcParent.removeChild(srcFile.getComponent());
+		srcFile = fileTree.removeFile(srcFileHash, srcParent, srcFile);
 		if (srcFile == null){
 			return RpcErrors.ERR_SRC_FILE_NOT_FOUND;
 		}
@@ -358,6 +392,9 @@ public class NameNodeService implements RpcNameNodeService, Sequencer {
 		} catch(Exception e){
 			return RpcErrors.ERR_FILE_EXISTS;
 		}
+		if (!intoDirectory){
+			fileTree.addFile(dstFileHash, version, dstParent, srcFile);
+		}
 		
 		//directory block
 		index = CrailUtils.computeIndex(srcFile.getDirOffset());
@@ -411,6 +448,7 @@ public class NameNodeService implements RpcNameNodeService, Sequencer {
 		}
 		
 		dnInfoNn.touch();
+		dnInfoNn.updateLoad();
 		response.setServiceId(serviceId);
 		response.setFreeBlockCount(dnInfoNn.getBlockCount());
 		
@@ -459,6 +497,7 @@ public class NameNodeService implements RpcNameNodeService, Sequencer {
 		//get params
 		long fd = request.getFd();
 		long token = request.getToken();
+		long version = request.getVersion();
 		long position = request.getPosition();
 		long capacity = request.getCapacity();
 		
@@ -472,33 +511,118 @@ public class NameNodeService implements RpcNameNodeService, Sequencer {
 		if (fileInfo == null){
 			return RpcErrors.ERR_FILE_NOT_OPEN;			
 		}
+		//clients reading with a cached lookup must not see blocks of a file that has changed since
+		if (version > 0 && version != fileInfo.getVersion()){
+			return RpcErrors.ERR_FILE_CHANGED;
+		}
 		
 		int index = CrailUtils.computeIndex(position);
 		if (index < 0){
 			return RpcErrors.ERR_POSITION_NEGATIV;			
 		}
 		
-		NameNodeBlockInfo block = fileInfo.getBlock(index);
-		if (block == null && fileInfo.getToken() == token){
-			block = blockStore.getBlock(fileInfo.getStorageClass(), fileInfo.getLocationClass());
+		//existing blocks are copied straight into the response, readers may be sent to a replica
+		if (fileInfo.copyBlock(index, response.getBlockInfo())){
+			if (token == 0 && replicationService != null){
+				replicationService.readBlock(fileInfo, index, response.getBlockInfo());
+			}
+			return RpcErrors.ERR_OK;
+		} else if (fileInfo.getToken() == token){
+			NameNodeBlockInfo block = allocateBlock(fileInfo, index);
 			if (block == null){
 				return RpcErrors.ERR_NO_FREE_BLOCKS;
 			}
 			if (!fileInfo.addBlock(index, block)){
 				return RpcErrors.ERR_ADD_BLOCK_FAILED;
 			}
-			block = fileInfo.getBlock(index);
-			if (block == null){
+			if (!fileInfo.copyBlock(index, response.getBlockInfo())){
 				return RpcErrors.ERR_ADD_BLOCK_FAILED;
 			}
 			fileInfo.setCapacity(capacity);
-		} else if (block == null && token > 0){ 
+		} else if (token > 0){ 
 			return RpcErrors.ERR_TOKEN_MISMATCH;
-		} else if (block == null && token == 0){ 
+		} else { 
 			return RpcErrors.ERR_CAPACITY_EXCEEDED;
 		} 
 		
-		response.setBlockInfo(block);
+		return RpcErrors.ERR_OK;
+	}
+	
+	@Override
+	public short getBlockRange(RpcRequestMessage.GetBlockRangeReq request, RpcResponseMessage.GetBlockRangeRes response, RpcNameNodeState errorState) throws Exception {
+		//check protocol
+		if (!RpcProtocol.verifyProtocol(RpcProtocol.CMD_GET_BLOCK_RANGE, request, response)){
+			return RpcErrors.ERR_PROTOCOL_MISMATCH;
+		}			
+		
+		//get params
+		long fd = request.getFd();
+		long token = request.getToken();
+		long version = request.getVersion();
+		long position = request.getPosition();
+		long capacity = request.getCapacity();
+		int count = Math.min(Math.max(request.getCount(), 1), RpcResponseMessage.GetBlockRangeRes.MAX_BLOCKS);
+		
+		//check params
+		if (position < 0){
+			return RpcErrors.ERR_POSITION_NEGATIV;
+		}
+	
+		//rpc
+		AbstractNode fileInfo = fileTable.get(fd);
+		if (fileInfo == null){
+			return RpcErrors.ERR_FILE_NOT_OPEN;			
+		}
+		//clients reading with a cached lookup must not see blocks of a file that has changed since
+		if (version > 0 && version != fileInfo.getVersion()){
+			return RpcErrors.ERR_FILE_CHANGED;
+		}
+		
+		int index = CrailUtils.computeIndex(position);
+		if (index < 0){
+			return RpcErrors.ERR_POSITION_NEGATIV;			
+		}
+		
+		//the first block follows the semantics of getBlock, further blocks are only 
+		//allocated for the writer holding the token, otherwise the range ends early
+		response.clear();
+		short error = RpcErrors.ERR_OK;
+		for (int i = 0; i < count; i++, index++){
+			BlockInfo blockInfo = response.nextBlockInfo();
+			if (fileInfo.copyBlock(index, blockInfo)){
+				if (token == 0 && replicationService != null){
+					replicationService.readBlock(fileInfo, index, blockInfo);
+				}
+				response.commitBlockInfo();
+				continue;
+			} else if (fileInfo.getToken() == token && (token > 0 || i == 0)){
+				NameNodeBlockInfo block = allocateBlock(fileInfo, index);
+				if (block == null){
+					error = RpcErrors.ERR_NO_FREE_BLOCKS;
+					break;
+				}
+				if (!fileInfo.addBlock(index, block)){
+					error = RpcErrors.ERR_ADD_BLOCK_FAILED;
+					break;
+				}
+				if (!fileInfo.copyBlock(index, blockInfo)){
+					error = RpcErrors.ERR_ADD_BLOCK_FAILED;
+					break;
+				}
+				fileInfo.setCapacity(capacity);
+			} else if (token > 0){ 
+				error = RpcErrors.ERR_TOKEN_MISMATCH;
+				break;
+			} else { 
+				error = RpcErrors.ERR_CAPACITY_EXCEEDED;
+				break;
+			}
+			response.commitBlockInfo();
+		}
+		
+		if (response.getBlockCount() == 0){
+			return error;
+		}
 		return RpcErrors.ERR_OK;
 	}
 	
@@ -531,12 +655,103 @@ public class NameNodeService implements RpcNameNodeService, Sequencer {
 		if (index < 0){
 			return RpcErrors.ERR_POSITION_NEGATIV;			
 		}		
-		BlockInfo block = fileInfo.getBlock(index);
-		if (block == null){
+		if (!fileInfo.copyBlock(index, response.getBlockInfo())){
+			return RpcErrors.ERR_OFFSET_TOO_LARGE;
+		}
+		if (replicationService != null){
+			replicationService.readBlock(fileInfo, index, response.getBlockInfo());
+		}
+		
+		return RpcErrors.ERR_OK;
+	}
+	
+	@Override
+	public short getLocationRange(RpcRequestMessage.GetLocationRangeReq request, RpcResponseMessage.GetLocationRangeRes response, RpcNameNodeState errorState) throws Exception {
+		//check protocol
+		if (!RpcProtocol.verifyProtocol(RpcProtocol.CMD_GET_LOCATION_RANGE, request, response)){
+			return RpcErrors.ERR_PROTOCOL_MISMATCH;
+		}			
+		
+		//get params
+		FileName fileName = request.getFileName();
+		long position = request.getPosition();
+		long length = request.getLength();
+		
+		//check params
+		if (position < 0 || length < 0){
+			return RpcErrors.ERR_POSITION_NEGATIV;
+		}	
+		
+		//rpc
+		AbstractNode fileInfo = fileTree.retrieveFile(fileName, errorState);
+		if (errorState.getError() != RpcErrors.ERR_OK){
+			return errorState.getError();
+		}		
+		if (fileInfo == null){
+			return RpcErrors.ERR_GET_FILE_FAILED;
+		}	
+		
+		int index = CrailUtils.computeIndex(position);
+		if (index < 0){
+			return RpcErrors.ERR_POSITION_NEGATIV;			
+		}
+		long end = position + Math.max(length, 1);
+		
+		//the range ends early once the response runs out of block or datanode slots
+		response.clear();
+		for (long current = CrailUtils.blockStartAddress(position); current < end; current += CrailConstants.BLOCK_SIZE, index++){
+			DataNodeInfo dataNode = replicationService != null ? replicationService.readDataNode(fileInfo, index) : fileInfo.getBlockDataNode(index);
+			if (dataNode == null || !response.addBlock(dataNode)){
+				break;
+			}
+		}
+		if (response.getBlockCount() == 0){
 			return RpcErrors.ERR_OFFSET_TOO_LARGE;
 		}
 		
-		response.setBlockInfo(block);
+		return RpcErrors.ERR_OK;
+	}
+	
+	@Override
+	public short getChildren(RpcRequestMessage.GetChildrenReq request, RpcResponseMessage.GetChildrenRes response, RpcNameNodeState errorState) throws Exception {
+		//check protocol
+		if (!RpcProtocol.verifyProtocol(RpcProtocol.CMD_GET_CHILDREN, request, response)){
+			return RpcErrors.ERR_PROTOCOL_MISMATCH;
+		}			
+		
+		//get params
+		FileName fileName = request.getFileName();
+		boolean blocks = request.includeBlocks();
+		
+		//rpc
+		AbstractNode directory = fileTree.retrieveFile(fileName, errorState);
+		if (errorState.getError() != RpcErrors.ERR_OK){
+			return errorState.getError();
+		}		
+		if (directory == null){
+			return RpcErrors.ERR_GET_FILE_FAILED;
+		}
+		if (!directory.getType().isContainer()){
+			return RpcErrors.ERR_FILE_IS_NOT_DIR;
+		}
+		
+		//children removed in the meantime are shipped as missing, the page ends early once the response is full
+		response.clear();
+		response.setBlocks(blocks);
+		for (int i = 0; i < request.getCount(); i++){
+			AbstractNode child = directory.getChild(request.getComponent(i));
+			if (child != null){
+				fileTable.put(child.getFd(), child);
+			}
+			BlockInfo childBlock = child != null && blocks ? child.getBlock(0) : null;
+			if (!response.addChild(child, childBlock)){
+				break;
+			}
+		}
+		
+		if (CrailConstants.DEBUG){
+			LOG.info("getChildren: fd " + directory.getFd() + ", requested " + request.getCount() + ", shipped " + response.getChildCount());
+		}
 		
 		return RpcErrors.ERR_OK;
 	}
@@ -553,6 +768,7 @@ public class NameNodeService implements RpcNameNodeService, Sequencer {
 		fileTree.dump();
 		System.out.println("#fd\t\tfilecomp\t\tcapacity\t\tisdir\t\t\tdiroffset");
 		dumpFastMap();
+		System.out.println(gcServer.getBacklog());
 		
 		return RpcErrors.ERR_OK;
 	}	
@@ -574,20 +790,75 @@ public class NameNodeService implements RpcNameNodeService, Sequencer {
 	void appendToDeleteQueue(AbstractNode fileInfo) throws Exception {
 		if (fileInfo != null) {
 			fileInfo.setDelay(CrailConstants.TOKEN_EXPIRATION);
-			deleteQueue.add(fileInfo);			
+			fileInfo.updateVersion();
+			gcServer.schedule(fileInfo);
 		}
 	}	
 	
-	void freeFile(AbstractNode fileInfo) throws Exception {
+	//held shared by every state change, exclusively while a snapshot is taken
+	ReentrantReadWriteLock getCheckpointLock() {
+		return checkpointLock;
+	}
+	
+	FileStore getFileStore() {
+		return fileTree;
+	}
+	
+	BlockStore getBlockStore() {
+		return blockStore;
+	}
+	
+	ReplicationService getReplicationService() {
+		return replicationService;
+	}
+	
+	GCServer getGCServer() {
+		return gcServer;
+	}
+	
+	ConcurrentLongMap<AbstractNode> getFileTable() {
+		return fileTable;
+	}
+	
+	long getSequenceId() {
+		return sequenceId.get();
+	}
+	
+	void setSequenceId(long value) {
+		sequenceId.set(value);
+	}
+	
+	//takes a free block for the given index, avoiding the datanodes of the preceding blocks within the stripe width,
+	//the closest preceding blocks first
+	private NameNodeBlockInfo allocateBlock(AbstractNode fileInfo, int index) throws Exception {
+		int width = Math.min(fileInfo.getStripeWidth(), index + 1);
+		if (width <= 1){
+			return blockStore.getBlock(fileInfo.getStorageClass(), fileInfo.getLocationClass());
+		}
+		long[] excluded = new long[width - 1];
+		int excludedCount = 0;
+		for (int i = 1; i < width; i++){
+			DataNodeInfo dataNode = fileInfo.getBlockDataNode(index - i);
+			if (dataNode != null){
+				excluded[excludedCount++] = dataNode.key();
+			}
+		}
+		return blockStore.getBlock(fileInfo.getStorageClass(), fileInfo.getLocationClass(), excluded, excludedCount);
+	}
+	
+	//the blocks of the file are appended to freed, the caller returns them to the block store
+	void freeFile(AbstractNode fileInfo, List<NameNodeBlockInfo> freed) throws Exception {
 		if (fileInfo != null) {
 			fileTable.remove(fileInfo.getFd());
-			fileInfo.freeBlocks(blockStore);
+			if (replicationService != null){
+				replicationService.dropReplicas(fileInfo);
+			}
+			fileInfo.freeBlocks(freed);
 		}
 	}
 
 	private void dumpFastMap(){
-		for (Long key : fileTable.keySet()){
-			AbstractNode file = fileTable.get(key);
+		for (AbstractNode file : fileTable.values()){
 			System.out.println(file.toString());
 		}		
 	}
@@ -0,0 +1,289 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.crail.namenode;
+
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.StringTokenizer;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+
+import org.apache.crail.CrailBuffer;
+import org.apache.crail.CrailStatistics;
+import org.apache.crail.conf.CrailConfiguration;
+import org.apache.crail.conf.CrailConstants;
+import org.apache.crail.metadata.BlockInfo;
+import org.apache.crail.metadata.DataNodeInfo;
+import org.apache.crail.memory.BufferCache;
+import org.apache.crail.storage.StorageClient;
+import org.apache.crail.storage.StorageEndpoint;
+import org.apache.crail.utils.CrailUtils;
+import org.apache.crail.utils.EndpointCache;
+import org.slf4j.Logger;
+
+/*
+ * On-demand read replication. Reads of data file blocks are counted at the namenode, 
+ * every crail.namenode.replicareads reads of a block schedule one more copy (up to 
+ * crail.namenode.replicas) on a datanode not yet holding the block. Copies are made 
+ * asynchronously by this service through the regular storage clients. Block lookups of 
+ * readers rotate over the original block and its replicas so that the clients of a hot 
+ * block spread across the datanodes. The namenode picks the copy a reader is sent to, the 
+ * replica set itself is not shipped to clients and clients do not prefer replicas on their 
+ * own host.
+ * 
+ * Replicas are dropped once the file is opened for writing or deleted. Clients may still hold 
+ * a dropped replica in their block caches, its block is therefore only returned to the block 
+ * store through the GC server once crail.tokenexpiration has passed, like the blocks of a 
+ * deleted file.
+ * 
+ * Replica blocks come from the same free blocks as file blocks, and the namenode log does not 
+ * record which blocks the service takes. Replay would then hand out different blocks to the 
+ * files allocated after a replica, the service is therefore not started if crail.namenode.log 
+ * is set.
+ */
+public class ReplicationService implements Runnable {
+	private static final Logger LOG = CrailUtils.getLogger();
+	private static final int QUEUE_SIZE = 1024;
+	
+	private NameNodeService service;
+	private LinkedBlockingQueue<ReplicationTask> tasks;
+	private BufferCache bufferCache;
+	private EndpointCache endpointCache;
+	private volatile boolean running;
+	
+	public ReplicationService(NameNodeService service){
+		this.service = service;
+		this.tasks = new LinkedBlockingQueue<ReplicationTask>(QUEUE_SIZE);
+		this.bufferCache = null;
+		this.endpointCache = null;
+		this.running = true;
+	}
+
+	@Override
+	public void run() {
+		while(running){
+			try {
+				ReplicationTask task = tasks.poll(100, TimeUnit.MILLISECONDS);
+				if (task != null){
+					replicate(task);
+				}
+			} catch(Exception e){
+				LOG.info("Exception during replication: " + e.getMessage());
+			}
+		}
+		try {
+			if (endpointCache != null){
+				endpointCache.close();
+			}
+			if (bufferCache != null){
+				bufferCache.close();
+			}
+		} catch(Exception e){
+			LOG.info("Exception closing replication clients: " + e.getMessage());
+		}
+	}
+	
+	public void close() {
+		this.running = false;
+	}
+	
+	//counts a read of a block that has been copied into the given response slot, 
+	//replaces the block with one of its replicas if it is the reader's turn
+	void readBlock(AbstractNode fileInfo, int index, BlockInfo block) {
+		NameNodeBlockInfo replica = selectReplica(fileInfo, index);
+		if (replica != null){
+			block.setBlockInfo(replica.getRegion(), replica.getOffset(), replica.getLength());
+		}
+	}
+	
+	//datanode a reader of the given block should go to
+	DataNodeInfo readDataNode(AbstractNode fileInfo, int index) throws Exception {
+		NameNodeBlockInfo replica = selectReplica(fileInfo, index);
+		if (replica != null){
+			return replica.getDnInfo();
+		}
+		return fileInfo.getBlockDataNode(index);
+	}
+	
+	//drops the replicas of a file that is written or deleted, the blocks are released with a delay
+	void dropReplicas(AbstractNode fileInfo) throws Exception {
+		if (!(fileInfo instanceof FileBlocks) || ((FileBlocks) fileInfo).peekReplicas() == null){
+			return;
+		}
+		Lock lock = service.getCheckpointLock().readLock();
+		lock.lock();
+		try {
+			BlockReplicas replicas = ((FileBlocks) fileInfo).clearReplicas();
+			if (replicas != null){
+				ArrayList<NameNodeBlockInfo> blocks = new ArrayList<NameNodeBlockInfo>();
+				replicas.collect(blocks);
+				service.getGCServer().release(blocks);
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+	
+	private NameNodeBlockInfo selectReplica(AbstractNode fileInfo, int index) {
+		//blocks of a file open for writing are neither counted nor replicated
+		if (!(fileInfo instanceof FileBlocks) || !fileInfo.getType().isDataFile() || !fileInfo.tokenFree()){
+			return null;
+		}
+		FileBlocks file = (FileBlocks) fileInfo;
+		BlockReplicas replicas = file.getReplicas();
+		int reads = replicas.read(index);
+		if (reads == 0){
+			return null;
+		}
+		NameNodeBlockInfo[] blockReplicas = replicas.get(index);
+		if (reads % CrailConstants.NAMENODE_REPLICAREADS == 0 && reads / CrailConstants.NAMENODE_REPLICAREADS <= CrailConstants.NAMENODE_REPLICAS){
+			//drop the request if the copies fall behind, a later read will ask again
+			tasks.offer(new ReplicationTask(file, replicas, index));
+		}
+		int slot = reads % (blockReplicas.length + 1);
+		//the token may have been taken in the meantime, the replicas of a file being written are stale
+		if (slot == 0 || !file.tokenFree() || file.peekReplicas() != replicas){
+			return null;
+		}
+		return blockReplicas[slot - 1];
+	}
+	
+	private void replicate(ReplicationTask task) throws Exception {
+		FileBlocks file = task.getFile();
+		int index = task.getIndex();
+		NameNodeBlockInfo source = null;
+		NameNodeBlockInfo target = null;
+		Lock lock = service.getCheckpointLock().readLock();
+		lock.lock();
+		try {
+			NameNodeBlockInfo[] blockReplicas = task.getReplicas().get(index);
+			source = file.getBlock(index);
+			if (source == null || !file.tokenFree() || blockReplicas.length >= CrailConstants.NAMENODE_REPLICAS || file.peekReplicas() != task.getReplicas()){
+				return;
+			}
+			long[] excluded = new long[blockReplicas.length + 1];
+			excluded[0] = source.getDnInfo().key();
+			for (int i = 0; i < blockReplicas.length; i++){
+				excluded[i + 1] = blockReplicas[i].getDnInfo().key();
+			}
+			target = service.getBlockStore().getBlock(file.getStorageClass(), file.getLocationClass(), excluded, excluded.length);
+			if (target == null){
+				return;
+			}
+			for (long key : excluded){
+				if (target.getDnInfo().key() == key){
+					//no datanode left that does not hold the block already
+					freeReplica(target);
+					return;
+				}
+			}
+		} finally {
+			lock.unlock();
+		}
+		
+		long length = Math.min(source.getLength(), file.getCapacity() - ((long) index)*CrailConstants.BLOCK_SIZE);
+		boolean copied = false;
+		try {
+			copied = copy(source, target, length);
+		} catch(Exception e){
+			LOG.info("replication of block " + index + " of fd " + file.getFd() + " failed, " + e.getMessage());
+		}
+		
+		lock.lock();
+		try {
+			if (!copied || !file.addReplica(task.getReplicas(), index, target)){
+				freeReplica(target);
+			} else if (CrailConstants.DEBUG){
+				LOG.info("replicated block " + index + " of fd " + file.getFd() + " to " + target.getDnInfo());
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+	
+	private boolean copy(BlockInfo source, BlockInfo target, long length) throws Exception {
+		if (endpointCache == null){
+			createClients();
+		}
+		StorageEndpoint sourceEndpoint = endpointCache.getDataEndpoint(source.getDnInfo());
+		StorageEndpoint targetEndpoint = endpointCache.getDataEndpoint(target.getDnInfo());
+		CrailBuffer buffer = bufferCache.allocateBuffer();
+		try {
+			for (long offset = 0; offset < length; offset += buffer.capacity()){
+				int chunk = (int) Math.min(buffer.capacity(), length - offset);
+				buffer.clear();
+				buffer.limit(chunk);
+				sourceEndpoint.read(buffer, source, offset).get(CrailConstants.DATA_TIMEOUT, TimeUnit.MILLISECONDS);
+				buffer.clear();
+				buffer.limit(chunk);
+				targetEndpoint.write(buffer, target, offset).get(CrailConstants.DATA_TIMEOUT, TimeUnit.MILLISECONDS);
+			}
+		} finally {
+			bufferCache.freeBuffer(buffer);
+		}
+		return true;
+	}
+	
+	//the storage clients are only set up once the first block turns hot
+	private void createClients() throws Exception {
+		CrailConfiguration conf = new CrailConfiguration();
+		CrailStatistics statistics = new CrailStatistics();
+		BufferCache cache = BufferCache.createInstance(CrailConstants.CACHE_IMPL);
+		StringTokenizer tokenizer = new StringTokenizer(CrailConstants.STORAGE_TYPES, ",");
+		LinkedList<StorageClient> storageClients = new LinkedList<StorageClient>();
+		while (tokenizer.hasMoreTokens()){
+			String name = tokenizer.nextToken();
+			StorageClient storageClient = StorageClient.createInstance(name);
+			storageClient.init(statistics, cache, conf, null);
+			storageClients.add(storageClient);
+		}
+		this.bufferCache = cache;
+		this.endpointCache = new EndpointCache(0, storageClients);
+	}
+	
+	//for replicas never handed out to readers
+	private void freeReplica(NameNodeBlockInfo block) throws Exception {
+		service.getBlockStore().addBlock(block);
+	}
+	
+	private static class ReplicationTask {
+		private FileBlocks file;
+		private BlockReplicas replicas;
+		private int index;
+		
+		public ReplicationTask(FileBlocks file, BlockReplicas replicas, int index){
+			this.file = file;
+			this.replicas = replicas;
+			this.index = index;
+		}
+
+		public FileBlocks getFile() {
+			return file;
+		}
+
+		public BlockReplicas getReplicas() {
+			return replicas;
+		}
+
+		public int getIndex() {
+			return index;
+		}
+	}
+}
@@ -0,0 +1,132 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.apache.crail.namenode;
+
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.function.ToLongFunction;
+
+/*
+ * Hierarchical timer wheel of four levels with 64 slots each. Level 0 holds the items expiring 
+ * within the next 64 ticks, every further level covers 64 times the range of the level below. 
+ * Once a level has wrapped around, the next slot of the level above is placed again into the 
+ * levels below. Expiration is rounded up to the tick, an item never expires early. Items beyond 
+ * the range of the wheel are parked in the last slot of the top level and placed again when it 
+ * comes up.
+ * 
+ * Not thread-safe, the owner serializes the calls.
+ */
+class TimerWheel<T> {
+	static final int WHEEL_BITS = 6;
+	static final int WHEEL_SLOTS = 1 << WHEEL_BITS;
+	static final int WHEEL_LEVELS = 4;
+	
+	private long tick;
+	private ToLongFunction<T> expiration;
+	private ArrayDeque<T>[][] wheel;
+	private long currentTick;
+	private int size;
+	
+	//the expiration of an item is given in ms, like the current time passed to the wheel
+	@SuppressWarnings("unchecked")
+	TimerWheel(long tick, long now, ToLongFunction<T> expiration){
+		this.tick = tick;
+		this.expiration = expiration;
+		this.wheel = (ArrayDeque<T>[][]) new ArrayDeque<?>[WHEEL_LEVELS][WHEEL_SLOTS];
+		for (int i = 0; i < WHEEL_LEVELS; i++){
+			for (int j = 0; j < WHEEL_SLOTS; j++){
+				wheel[i][j] = new ArrayDeque<T>();
+			}
+		}
+		this.currentTick = now / tick;
+		this.size = 0;
+	}
+	
+	//places the item, an item already expired is added to expired instead, returns false in that case
+	boolean add(T item, Collection<T> expired){
+		long itemTick = (expiration.applyAsLong(item) + tick - 1) / tick;
+		long delta = itemTick - currentTick;
+		if (delta <= 0){
+			expired.add(item);
+			return false;
+		}
+		int level = 0;
+		while (level < WHEEL_LEVELS - 1 && delta >= (1L << (WHEEL_BITS*(level + 1)))){
+			level++;
+		}
+		long range = 1L << (WHEEL_BITS*WHEEL_LEVELS);
+		if (delta >= range){
+			itemTick = currentTick + range - 1;
+		}
+		wheel[level][slot(itemTick, level)].add(item);
+		size++;
+		return true;
+	}
+	
+	//moves the wheel forward to the given time (ms), returns the number of items added to expired
+	int advance(long now, Collection<T> expired){
+		int count = 0;
+		long target = now / tick;
+		while (currentTick < target){
+			currentTick++;
+			//a wrapped level takes the next slot of the level above
+			for (int level = 1; level < WHEEL_LEVELS; level++){
+				if ((currentTick & mask(level - 1)) != 0){
+					break;
+				}
+				ArrayDeque<T> slot = wheel[level][slot(currentTick, level)];
+				for (T item = slot.poll(); item != null; item = slot.poll()){
+					size--;
+					if (!add(item, expired)){
+						count++;
+					}
+				}
+			}
+			ArrayDeque<T> slot = wheel[0][slot(currentTick, 0)];
+			for (T item = slot.poll(); item != null; item = slot.poll()){
+				size--;
+				expired.add(item);
+				count++;
+			}
+		}
+		return count;
+	}
+	
+	//appends all items still waiting in the wheel
+	void collect(Collection<T> items){
+		for (int i = 0; i < WHEEL_LEVELS; i++){
+			for (int j = 0; j < WHEEL_SLOTS; j++){
+				items.addAll(wheel[i][j]);
+			}
+		}
+	}
+	
+	int size(){
+		return size;
+	}
+	
+	private static int slot(long tick, int level) {
+		return (int) ((tick >>> (WHEEL_BITS*level)) & (WHEEL_SLOTS - 1));
+	}
+	
+	private static long mask(int level) {
+		return (1L << (WHEEL_BITS*(level + 1))) - 1;
+	}
+}
@@ -0,0 +1,192 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.apache.crail.namenode;
+
+import java.util.HashSet;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ConcurrentLongMapTest {
+	private static final int STABLE_KEYS = 1000;
+	private static final int CHURN_KEYS = 200000;
+
+	@Test
+	public void testPutGetRemove() {
+		ConcurrentLongMap<String> map = new ConcurrentLongMap<String>();
+		Assert.assertTrue(map.isEmpty());
+		Assert.assertNull(map.put(1, "a"));
+		Assert.assertNull(map.put(-1, "b"));
+		Assert.assertNull(map.put(Long.MAX_VALUE, "c"));
+		Assert.assertEquals("a", map.put(1, "d"));
+		Assert.assertEquals("d", map.putIfAbsent(1, "e"));
+		Assert.assertEquals(3, map.size());
+		Assert.assertEquals("d", map.get(1));
+		Assert.assertEquals("b", map.get(-1));
+		Assert.assertEquals("c", map.get(Long.MAX_VALUE));
+		Assert.assertNull(map.get(2));
+
+		Assert.assertEquals("d", map.remove(1));
+		Assert.assertNull(map.remove(1));
+		Assert.assertFalse(map.containsKey(1));
+		Assert.assertEquals(2, map.size());
+		Assert.assertNull(map.putIfAbsent(1, "f"));
+		Assert.assertEquals("f", map.get(1));
+		Assert.assertEquals(3, map.size());
+	}
+
+	@Test
+	public void testReservedKey() {
+		ConcurrentLongMap<String> map = new ConcurrentLongMap<String>();
+		try {
+			map.put(Long.MIN_VALUE, "a");
+			Assert.fail("reserved key accepted");
+		} catch(IllegalArgumentException e){
+		}
+		try {
+			map.putIfAbsent(Long.MIN_VALUE, "a");
+			Assert.fail("reserved key accepted");
+		} catch(IllegalArgumentException e){
+		}
+		try {
+			map.put(1, null);
+			Assert.fail("null value accepted");
+		} catch(NullPointerException e){
+		}
+		Assert.assertNull(map.get(Long.MIN_VALUE));
+		Assert.assertNull(map.remove(Long.MIN_VALUE));
+		Assert.assertTrue(map.isEmpty());
+	}
+
+	@Test
+	public void testRehash() {
+		ConcurrentLongMap<Long> map = new ConcurrentLongMap<Long>(4, 4);
+		for (long key = 0; key < CHURN_KEYS; key++){
+			map.put(key, key);
+			//removed keys leave their slot behind until the next rehash
+			if (key % 3 == 0){
+				Assert.assertEquals(Long.valueOf(key), map.remove(key));
+			}
+		}
+		Assert.assertEquals(CHURN_KEYS - (CHURN_KEYS + 2) / 3, map.size());
+		for (long key = 0; key < CHURN_KEYS; key++){
+			Assert.assertEquals(key % 3 == 0 ? null : Long.valueOf(key), map.get(key));
+		}
+		Assert.assertEquals(map.size(), map.keys().length);
+	}
+
+	//readers never lock, so keys that are present throughout must stay visible while writers add, remove and rehash
+	@Test
+	public void testConcurrentReaders() throws Exception {
+		final ConcurrentLongMap<Long> map = new ConcurrentLongMap<Long>(4, 4);
+		for (long key = 0; key < STABLE_KEYS; key++){
+			map.put(key, key);
+		}
+		final AtomicBoolean running = new AtomicBoolean(true);
+		final AtomicReference<String> error = new AtomicReference<String>();
+
+		Thread[] writers = new Thread[4];
+		for (int w = 0; w < writers.length; w++){
+			final long base = STABLE_KEYS + w*(long) CHURN_KEYS;
+			writers[w] = new Thread(() -> {
+				for (long key = base; key < base + CHURN_KEYS; key++){
+					map.put(key, key);
+					if (key >= base + 16){
+						map.remove(key - 16);
+					}
+				}
+			});
+		}
+		Thread[] readers = new Thread[2];
+		for (int r = 0; r < readers.length; r++){
+			readers[r] = new Thread(() -> {
+				while(running.get() && error.get() == null){
+					for (long key = 0; key < STABLE_KEYS; key++){
+						Long value = map.get(key);
+						if (value == null || value != key){
+							error.compareAndSet(null, "key " + key + " read as " + value);
+						}
+					}
+				}
+			});
+		}
+		for (Thread reader : readers){
+			reader.start();
+		}
+		for (Thread writer : writers){
+			writer.start();
+		}
+		for (Thread writer : writers){
+			writer.join();
+		}
+		running.set(false);
+		for (Thread reader : readers){
+			reader.join();
+		}
+		Assert.assertNull(error.get());
+		Assert.assertEquals(STABLE_KEYS + writers.length*16, map.size());
+	}
+
+	@Test
+	public void testIterationDuringRehash() throws Exception {
+		final ConcurrentLongMap<Long> map = new ConcurrentLongMap<Long>(4, 4);
+		for (long key = 0; key < STABLE_KEYS; key++){
+			map.put(key, key);
+		}
+		final AtomicBoolean running = new AtomicBoolean(true);
+		Thread writer = new Thread(() -> {
+			long key = STABLE_KEYS;
+			while(running.get()){
+				map.put(key, -key);
+				if (key - 8 >= STABLE_KEYS){
+					map.remove(key - 8);
+				}
+				key++;
+			}
+		});
+		writer.start();
+		try {
+			for (int round = 0; round < 200; round++){
+				HashSet<Long> keys = new HashSet<Long>();
+				for (long key : map.keys()){
+					Assert.assertNotEquals(Long.MIN_VALUE, key);
+					Assert.assertTrue("duplicate key " + key, keys.add(key));
+				}
+				int stable = 0;
+				for (Long value : map.values()){
+					Assert.assertNotNull(value);
+					if (value >= 0){
+						Assert.assertTrue(value < STABLE_KEYS);
+						stable++;
+					}
+				}
+				Assert.assertEquals(STABLE_KEYS, stable);
+				for (long key = 0; key < STABLE_KEYS; key++){
+					Assert.assertTrue("missing key " + key, keys.contains(key));
+				}
+			}
+		} finally {
+			running.set(false);
+			writer.join();
+		}
+	}
+}
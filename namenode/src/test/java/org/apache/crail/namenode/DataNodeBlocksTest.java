@@ -0,0 +1,235 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.apache.crail.namenode;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.crail.conf.CrailConstants;
+import org.apache.crail.metadata.BlockInfo;
+import org.apache.crail.metadata.DataNodeInfo;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class DataNodeBlocksTest {
+	//not a multiple of 64, so the last bitmap word is partially used
+	private static final int REGION_BLOCKS = 130;
+
+	private static DataNodeBlocks createDataNode() throws Exception {
+		DataNodeInfo dnInfo = new DataNodeInfo(0, 0, 0, new byte[]{127, 0, 0, 1}, 50020);
+		return DataNodeBlocks.fromDataNodeInfo(dnInfo);
+	}
+
+	private static BlockInfo createRegion(DataNodeBlocks dataNode, long lba) {
+		return new BlockInfo(dataNode, lba, lba, (int) (REGION_BLOCKS*CrailConstants.BLOCK_SIZE), 0);
+	}
+
+	private static void addRegion(DataNodeBlocks dataNode, BlockInfo region) {
+		for (long offset = 0; offset < region.getLength(); offset += CrailConstants.BLOCK_SIZE){
+			dataNode.addFreeBlock(new NameNodeBlockInfo(region, offset, (int) CrailConstants.BLOCK_SIZE));
+		}
+	}
+
+	private static String key(NameNodeBlockInfo block) {
+		return block.getRegion().getLba() + ":" + block.getOffset();
+	}
+
+	@Test
+	public void testAllocateAll() throws Exception {
+		DataNodeBlocks dataNode = createDataNode();
+		BlockInfo region = createRegion(dataNode, 0);
+		addRegion(dataNode, region);
+		Assert.assertEquals(REGION_BLOCKS, dataNode.getBlockCount());
+
+		HashSet<Long> offsets = new HashSet<Long>();
+		for (int i = 0; i < REGION_BLOCKS; i++){
+			NameNodeBlockInfo block = dataNode.getFreeBlock();
+			Assert.assertNotNull(block);
+			Assert.assertSame(region, block.getRegion());
+			Assert.assertEquals(CrailConstants.BLOCK_SIZE, block.getLength());
+			Assert.assertEquals(0, block.getOffset() % CrailConstants.BLOCK_SIZE);
+			Assert.assertTrue(block.getOffset() < region.getLength());
+			Assert.assertTrue(offsets.add(block.getOffset()));
+		}
+		Assert.assertEquals(0, dataNode.getBlockCount());
+		Assert.assertNull(dataNode.getFreeBlock());
+		Assert.assertTrue(dataNode.getFreeBlocks().isEmpty());
+	}
+
+	@Test
+	public void testInvalidAndDuplicateBlocks() throws Exception {
+		DataNodeBlocks dataNode = createDataNode();
+		BlockInfo region = createRegion(dataNode, 0);
+		int length = (int) CrailConstants.BLOCK_SIZE;
+		dataNode.addFreeBlock(new NameNodeBlockInfo(region, 0, length));
+		dataNode.addFreeBlock(new NameNodeBlockInfo(region, 0, length));
+		dataNode.addFreeBlock(new NameNodeBlockInfo(region, 1, length));
+		dataNode.addFreeBlock(new NameNodeBlockInfo(region, REGION_BLOCKS*CrailConstants.BLOCK_SIZE, length));
+		Assert.assertEquals(1, dataNode.getBlockCount());
+		Assert.assertEquals(1, dataNode.getFreeBlocks().size());
+
+		NameNodeBlockInfo block = dataNode.getFreeBlock();
+		Assert.assertEquals(0, block.getOffset());
+		Assert.assertNull(dataNode.getFreeBlock());
+	}
+
+	@Test
+	public void testReleaseAndReuse() throws Exception {
+		DataNodeBlocks dataNode = createDataNode();
+		addRegion(dataNode, createRegion(dataNode, 0));
+		ArrayList<NameNodeBlockInfo> blocks = new ArrayList<NameNodeBlockInfo>();
+		for (int i = 0; i < REGION_BLOCKS; i++){
+			blocks.add(dataNode.getFreeBlock());
+		}
+
+		//a released block is only handed out again once it has been counted
+		NameNodeBlockInfo released = blocks.get(REGION_BLOCKS - 1);
+		Assert.assertTrue(dataNode.releaseBlock(released));
+		Assert.assertFalse(dataNode.releaseBlock(released));
+		Assert.assertEquals(0, dataNode.getBlockCount());
+		Assert.assertNull(dataNode.getFreeBlock());
+		dataNode.addReleasedBlocks(1);
+		Assert.assertEquals(1, dataNode.getBlockCount());
+		NameNodeBlockInfo block = dataNode.getFreeBlock();
+		Assert.assertEquals(released.getOffset(), block.getOffset());
+		Assert.assertNull(dataNode.getFreeBlock());
+
+		for (NameNodeBlockInfo used : blocks){
+			Assert.assertTrue(dataNode.releaseBlock(used));
+		}
+		dataNode.addReleasedBlocks(blocks.size());
+		Assert.assertEquals(REGION_BLOCKS, dataNode.getBlockCount());
+		Assert.assertEquals(REGION_BLOCKS, dataNode.getFreeBlocks().size());
+	}
+
+	@Test
+	public void testMultipleRegions() throws Exception {
+		DataNodeBlocks dataNode = createDataNode();
+		BlockInfo first = createRegion(dataNode, 0);
+		BlockInfo second = createRegion(dataNode, 1L << 40);
+		addRegion(dataNode, first);
+		addRegion(dataNode, second);
+		Assert.assertEquals(2, dataNode.getRegions().size());
+		Assert.assertTrue(dataNode.regionExists(second));
+		Assert.assertSame(second, dataNode.getRegion(second.getLba()));
+		Assert.assertEquals(2*REGION_BLOCKS, dataNode.getBlockCount());
+
+		HashSet<String> blocks = new HashSet<String>();
+		int fromFirst = 0;
+		for (int i = 0; i < 2*REGION_BLOCKS; i++){
+			NameNodeBlockInfo block = dataNode.getFreeBlock();
+			Assert.assertTrue(blocks.add(key(block)));
+			if (block.getRegion() == first){
+				fromFirst++;
+			}
+		}
+		Assert.assertEquals(REGION_BLOCKS, fromFirst);
+		Assert.assertNull(dataNode.getFreeBlock());
+	}
+
+	//log replay repeats the allocations and frees without recording the chosen blocks, so the same sequence must pick the same blocks
+	@Test
+	public void testReplayAllocation() throws Exception {
+		DataNodeBlocks[] dataNodes = new DataNodeBlocks[2];
+		ArrayList<ArrayList<NameNodeBlockInfo>> taken = new ArrayList<ArrayList<NameNodeBlockInfo>>();
+		for (int i = 0; i < dataNodes.length; i++){
+			dataNodes[i] = createDataNode();
+			for (int r = 0; r < 3; r++){
+				addRegion(dataNodes[i], createRegion(dataNodes[i], r*(1L << 40)));
+			}
+			taken.add(new ArrayList<NameNodeBlockInfo>());
+		}
+		Random random = new Random(7);
+		for (int op = 0; op < 10000; op++){
+			boolean allocate = taken.get(0).isEmpty() || random.nextInt(3) > 0;
+			int victim = allocate ? -1 : random.nextInt(taken.get(0).size());
+			String[] keys = new String[dataNodes.length];
+			for (int i = 0; i < dataNodes.length; i++){
+				if (allocate){
+					NameNodeBlockInfo block = dataNodes[i].getFreeBlock();
+					keys[i] = block != null ? key(block) : null;
+					if (block != null){
+						taken.get(i).add(block);
+					}
+				} else {
+					NameNodeBlockInfo block = taken.get(i).remove(victim);
+					keys[i] = key(block);
+					Assert.assertTrue(dataNodes[i].releaseBlock(block));
+					dataNodes[i].addReleasedBlocks(1);
+				}
+			}
+			Assert.assertEquals(keys[0], keys[1]);
+		}
+	}
+
+	//threads take and return blocks concurrently, a block must never be handed out twice
+	@Test
+	public void testConcurrentAllocation() throws Exception {
+		final DataNodeBlocks dataNode = createDataNode();
+		for (int i = 0; i < 4; i++){
+			addRegion(dataNode, createRegion(dataNode, i*(1L << 40)));
+		}
+		final int total = dataNode.getBlockCount();
+		final ConcurrentHashMap<String, NameNodeBlockInfo> blocks = new ConcurrentHashMap<String, NameNodeBlockInfo>();
+		final AtomicReference<String> error = new AtomicReference<String>();
+		Thread[] threads = new Thread[8];
+		for (int t = 0; t < threads.length; t++){
+			threads[t] = new Thread(() -> {
+				ArrayList<NameNodeBlockInfo> taken = new ArrayList<NameNodeBlockInfo>();
+				try {
+					for (int round = 0; round < 2000; round++){
+						for (int i = 0; i < 96; i++){
+							NameNodeBlockInfo block = dataNode.getFreeBlock();
+							if (block == null){
+								break;
+							}
+							if (blocks.putIfAbsent(key(block), block) != null){
+								error.compareAndSet(null, "block " + key(block) + " handed out twice");
+							}
+							taken.add(block);
+						}
+						for (NameNodeBlockInfo block : taken){
+							blocks.remove(key(block));
+							if (!dataNode.releaseBlock(block)){
+								error.compareAndSet(null, "block " + key(block) + " already free");
+							}
+						}
+						dataNode.addReleasedBlocks(taken.size());
+						taken.clear();
+					}
+				} catch(InterruptedException e){
+					error.compareAndSet(null, e.toString());
+				}
+			});
+		}
+		for (Thread thread : threads){
+			thread.start();
+		}
+		for (Thread thread : threads){
+			thread.join();
+		}
+		Assert.assertNull(error.get());
+		Assert.assertEquals(total, dataNode.getBlockCount());
+		Assert.assertEquals(total, dataNode.getFreeBlocks().size());
+	}
+}
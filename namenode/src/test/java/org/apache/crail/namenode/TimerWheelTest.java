@@ -0,0 +1,157 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.apache.crail.namenode;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TimerWheelTest {
+	private static final long TICK = 100;
+	private static final long RANGE = 1L << (TimerWheel.WHEEL_BITS*TimerWheel.WHEEL_LEVELS);
+
+	private static class Item {
+		long expiration;
+
+		Item(long expiration){
+			this.expiration = expiration;
+		}
+
+		long getExpiration(){
+			return expiration;
+		}
+	}
+
+	//adds the items at the given start tick, advances one tick at a time and checks that every item expires on the first tick not before its expiration
+	private static void checkExpiration(long startTick, long[] expirations) {
+		TimerWheel<Item> wheel = new TimerWheel<Item>(TICK, startTick*TICK, Item::getExpiration);
+		ArrayList<Item> expired = new ArrayList<Item>();
+		HashMap<Item, Long> expected = new HashMap<Item, Long>();
+		long lastTick = startTick;
+		for (long expiration : expirations){
+			Item item = new Item(expiration);
+			long tick = (expiration + TICK - 1) / TICK;
+			boolean placed = wheel.add(item, expired);
+			Assert.assertEquals(tick > startTick, placed);
+			if (placed){
+				expected.put(item, tick);
+				lastTick = Math.max(lastTick, tick);
+			}
+		}
+		Assert.assertEquals(expected.size(), wheel.size());
+		Assert.assertEquals(expirations.length - expected.size(), expired.size());
+
+		expired.clear();
+		for (long tick = startTick + 1; tick <= lastTick; tick++){
+			int count = wheel.advance(tick*TICK + TICK - 1, expired);
+			Assert.assertEquals(expired.size(), count);
+			for (Item item : expired){
+				Assert.assertEquals("expiration " + item.getExpiration(), tick, (long) expected.remove(item));
+			}
+			expired.clear();
+		}
+		Assert.assertTrue(expected.isEmpty());
+		Assert.assertEquals(0, wheel.size());
+	}
+
+	@Test
+	public void testRoundsUpToTick() {
+		long start = 1000;
+		long now = start*TICK;
+		checkExpiration(start, new long[]{now - 1, now, now + 1, now + TICK - 1, now + TICK, now + TICK + 1, now + 2*TICK});
+	}
+
+	@Test
+	public void testLevelBoundaries() {
+		//around the range of every level, both from an aligned and an unaligned start
+		long[] starts = new long[]{0, 1, TimerWheel.WHEEL_SLOTS - 1, (1L << 12) - 1, (1L << 18) - 1, RANGE - 1, 123456789};
+		for (long start : starts){
+			ArrayList<Long> deltas = new ArrayList<Long>();
+			for (int level = 1; level <= TimerWheel.WHEEL_LEVELS; level++){
+				long boundary = 1L << (TimerWheel.WHEEL_BITS*level);
+				deltas.add(boundary - 1);
+				deltas.add(boundary);
+				deltas.add(boundary + 1);
+			}
+			long[] expirations = new long[deltas.size()];
+			for (int i = 0; i < expirations.length; i++){
+				expirations[i] = (start + deltas.get(i))*TICK;
+			}
+			checkExpiration(start, expirations);
+		}
+	}
+
+	@Test
+	public void testBeyondRange() {
+		long start = 42;
+		checkExpiration(start, new long[]{(start + RANGE)*TICK, (start + RANGE + 1)*TICK, (start + 2*RANGE + 7)*TICK - 1, (start + 3*RANGE)*TICK + 1});
+	}
+
+	@Test
+	public void testRandomExpirations() {
+		Random random = new Random(7);
+		long start = random.nextInt(1 << 20);
+		long[] expirations = new long[20000];
+		for (int i = 0; i < expirations.length; i++){
+			long delta = random.nextInt(10) == 0 ? (long) (random.nextDouble()*2*RANGE) : random.nextInt(1 << (6*(1 + random.nextInt(4))));
+			expirations[i] = start*TICK + delta*TICK - random.nextInt((int) TICK);
+		}
+		checkExpiration(start, expirations);
+	}
+
+	@Test
+	public void testAdvanceInSteps() {
+		//a late timer thread advances over many ticks at once
+		TimerWheel<Item> wheel = new TimerWheel<Item>(TICK, 0, Item::getExpiration);
+		ArrayList<Item> expired = new ArrayList<Item>();
+		for (long delta = 1; delta < 100000; delta += 7){
+			wheel.add(new Item(delta*TICK), expired);
+		}
+		Assert.assertTrue(expired.isEmpty());
+		long now = 0;
+		while (wheel.size() > 0){
+			now += 5000*TICK + 3;
+			int size = wheel.size();
+			expired.clear();
+			int count = wheel.advance(now, expired);
+			Assert.assertEquals(size - wheel.size(), count);
+			for (Item item : expired){
+				Assert.assertTrue(item.getExpiration() <= now);
+				Assert.assertTrue(item.getExpiration() > now - 5000*TICK - 3);
+			}
+		}
+	}
+
+	@Test
+	public void testCollect() {
+		TimerWheel<Item> wheel = new TimerWheel<Item>(TICK, 0, Item::getExpiration);
+		ArrayList<Item> expired = new ArrayList<Item>();
+		for (long delta = 1; delta < 3*RANGE; delta = delta*3 + 1){
+			wheel.add(new Item(delta*TICK), expired);
+		}
+		ArrayList<Item> items = new ArrayList<Item>();
+		wheel.collect(items);
+		Assert.assertEquals(wheel.size(), items.size());
+		Assert.assertTrue(expired.isEmpty());
+	}
+}
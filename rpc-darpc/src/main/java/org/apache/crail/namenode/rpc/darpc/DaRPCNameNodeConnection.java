@@ -31,9 +31,12 @@ import org.apache.crail.rpc.RpcCreateFile;
 import org.apache.crail.rpc.RpcDeleteFile;
 import org.apache.crail.rpc.RpcFuture;
 import org.apache.crail.rpc.RpcGetBlock;
+import org.apache.crail.rpc.RpcGetBlockRange;
+import org.apache.crail.rpc.RpcGetChildren;
 import org.apache.crail.rpc.RpcGetDataNode;
 import org.apache.crail.rpc.RpcGetFile;
 import org.apache.crail.rpc.RpcGetLocation;
+import org.apache.crail.rpc.RpcGetLocationRange;
 import org.apache.crail.rpc.RpcPing;
 import org.apache.crail.rpc.RpcProtocol;
 import org.apache.crail.rpc.RpcRenameFile;
@@ -59,12 +62,12 @@ public class DaRPCNameNodeConnection implements RpcConnection {
 	}	
 	
 	@Override
-	public RpcFuture<RpcCreateFile> createFile(FileName filename, CrailNodeType type, int storageClass, int locationClass, boolean enumerable) throws IOException {
+	public RpcFuture<RpcCreateFile> createFile(FileName filename, CrailNodeType type, int storageClass, int locationClass, boolean enumerable, int stripeWidth) throws IOException {
 		if (CrailConstants.DEBUG){
-			LOG.debug("RPC: createFile, fileType " + type + ", storageClass " + storageClass + ", locationClass " + locationClass);
+			LOG.debug("RPC: createFile, fileType " + type + ", storageClass " + storageClass + ", locationClass " + locationClass + ", stripeWidth " + stripeWidth);
 		}
 		
-		RpcRequestMessage.CreateFileReq createFileReq = new RpcRequestMessage.CreateFileReq(filename, type, storageClass, locationClass, enumerable);
+		RpcRequestMessage.CreateFileReq createFileReq = new RpcRequestMessage.CreateFileReq(filename, type, storageClass, locationClass, enumerable, stripeWidth);
 		DaRPCNameNodeRequest request = new DaRPCNameNodeRequest(createFileReq);
 		request.setCommand(RpcProtocol.CMD_CREATE_FILE);
 		
@@ -159,12 +162,12 @@ public class DaRPCNameNodeConnection implements RpcConnection {
 	}
 	
 	@Override
-	public DaRPCNameNodeFuture<RpcGetBlock> getBlock(long fd, long token, long position, long capacity) throws IOException {
+	public DaRPCNameNodeFuture<RpcGetBlock> getBlock(long fd, long token, long version, long position, long capacity) throws IOException {
 		if (CrailConstants.DEBUG){
-			LOG.debug("RPC: getBlock, fd " + fd + ", token " + token + ", position " + position + ", capacity " + capacity);
+			LOG.debug("RPC: getBlock, fd " + fd + ", token " + token + ", version " + version + ", position " + position + ", capacity " + capacity);
 		}
 		
-		RpcRequestMessage.GetBlockReq getBlockReq = new RpcRequestMessage.GetBlockReq(fd, token, position, capacity);
+		RpcRequestMessage.GetBlockReq getBlockReq = new RpcRequestMessage.GetBlockReq(fd, token, version, position, capacity);
 		DaRPCNameNodeRequest request = new DaRPCNameNodeRequest(getBlockReq);
 		request.setCommand(RpcProtocol.CMD_GET_BLOCK);
 		
@@ -178,6 +181,26 @@ public class DaRPCNameNodeConnection implements RpcConnection {
 		return nameNodeFuture;	
 	}
 	
+	@Override
+	public DaRPCNameNodeFuture<RpcGetBlockRange> getBlockRange(long fd, long token, long version, long position, long capacity, int count) throws IOException {
+		if (CrailConstants.DEBUG){
+			LOG.debug("RPC: getBlockRange, fd " + fd + ", token " + token + ", version " + version + ", position " + position + ", capacity " + capacity + ", count " + count);
+		}
+		
+		RpcRequestMessage.GetBlockRangeReq getBlockRangeReq = new RpcRequestMessage.GetBlockRangeReq(fd, token, version, position, capacity, count);
+		DaRPCNameNodeRequest request = new DaRPCNameNodeRequest(getBlockRangeReq);
+		request.setCommand(RpcProtocol.CMD_GET_BLOCK_RANGE);
+		
+		RpcResponseMessage.GetBlockRangeRes getBlockRangeRes = new RpcResponseMessage.GetBlockRangeRes();
+		DaRPCNameNodeResponse response = new DaRPCNameNodeResponse(getBlockRangeRes);
+		
+		DaRPCFuture<DaRPCNameNodeRequest, DaRPCNameNodeResponse> future = issueRPC(request, response);
+		
+		DaRPCNameNodeFuture<RpcGetBlockRange> nameNodeFuture = new DaRPCNameNodeFuture<RpcGetBlockRange>(future, getBlockRangeRes);
+		
+		return nameNodeFuture;	
+	}
+	
 	@Override
 	public DaRPCNameNodeFuture<RpcGetLocation> getLocation(FileName fileName, long position) throws IOException {
 		if (CrailConstants.DEBUG){
@@ -218,6 +241,46 @@ public class DaRPCNameNodeConnection implements RpcConnection {
 		return nameNodeFuture;	
 	}
 	
+	@Override
+	public DaRPCNameNodeFuture<RpcGetLocationRange> getLocationRange(FileName fileName, long position, long length) throws IOException {
+		if (CrailConstants.DEBUG){
+			LOG.debug("RPC: getLocationRange, position " + position + ", length " + length);
+		}		
+		
+		RpcRequestMessage.GetLocationRangeReq getLocationRangeReq = new RpcRequestMessage.GetLocationRangeReq(fileName, position, length);
+		DaRPCNameNodeRequest request = new DaRPCNameNodeRequest(getLocationRangeReq);
+		request.setCommand(RpcProtocol.CMD_GET_LOCATION_RANGE);
+		
+		RpcResponseMessage.GetLocationRangeRes getLocationRangeRes = new RpcResponseMessage.GetLocationRangeRes();
+		DaRPCNameNodeResponse response = new DaRPCNameNodeResponse(getLocationRangeRes);
+		
+		DaRPCFuture<DaRPCNameNodeRequest, DaRPCNameNodeResponse> future = issueRPC(request, response);
+		
+		DaRPCNameNodeFuture<RpcGetLocationRange> nameNodeFuture = new DaRPCNameNodeFuture<RpcGetLocationRange>(future, getLocationRangeRes);
+		
+		return nameNodeFuture;
+	}
+	
+	@Override
+	public DaRPCNameNodeFuture<RpcGetChildren> getChildren(FileName directory, int[] components, int count, boolean blocks) throws IOException {
+		if (CrailConstants.DEBUG){
+			LOG.debug("RPC: getChildren, count " + count + ", blocks " + blocks);
+		}		
+		
+		RpcRequestMessage.GetChildrenReq getChildrenReq = new RpcRequestMessage.GetChildrenReq(directory, components, count, blocks);
+		DaRPCNameNodeRequest request = new DaRPCNameNodeRequest(getChildrenReq);
+		request.setCommand(RpcProtocol.CMD_GET_CHILDREN);
+		
+		RpcResponseMessage.GetChildrenRes getChildrenRes = new RpcResponseMessage.GetChildrenRes();
+		DaRPCNameNodeResponse response = new DaRPCNameNodeResponse(getChildrenRes);
+		
+		DaRPCFuture<DaRPCNameNodeRequest, DaRPCNameNodeResponse> future = issueRPC(request, response);
+		
+		DaRPCNameNodeFuture<RpcGetChildren> nameNodeFuture = new DaRPCNameNodeFuture<RpcGetChildren>(future, getChildrenRes);
+		
+		return nameNodeFuture;
+	}
+	
 	@Override
 	public DaRPCNameNodeFuture<RpcGetDataNode> getDataNode(DataNodeInfo dnInfo) throws Exception {
 		RpcRequestMessage.GetDataNodeReq getDataNodeReq = new RpcRequestMessage.GetDataNodeReq(dnInfo);
@@ -269,6 +332,15 @@ public class DaRPCNameNodeConnection implements RpcConnection {
 		return nameNodeFuture;	
 	}
 	
+	//every request is posted to the queue pair right away
+	@Override
+	public void deferRequests() throws IOException {
+	}
+
+	@Override
+	public void flushRequests() throws IOException {
+	}
+	
 	@Override
 	public void close() throws Exception {
 		if (rpcEndpoint != null){
@@ -30,7 +30,7 @@ import com.ibm.darpc.DaRPCMessage;
 
 public class DaRPCNameNodeRequest implements DaRPCMessage {
 	public static final Logger LOG = CrailUtils.getLogger();
-	public static final int CSIZE = 4 + Math.max(RpcRequestMessage.SetFileReq.CSIZE, RpcRequestMessage.RenameFileReq.CSIZE);
+	public static final int CSIZE = 4 + Math.max(Math.max(RpcRequestMessage.SetFileReq.CSIZE, RpcRequestMessage.RenameFileReq.CSIZE), RpcRequestMessage.GetChildrenReq.CSIZE);
 	
 	private short cmd;
 	private short type;
@@ -40,7 +40,10 @@ public class DaRPCNameNodeRequest implements DaRPCMessage {
 	private RpcRequestMessage.RemoveFileReq removeReq;
 	private RpcRequestMessage.RenameFileReq renameFileReq;
 	private RpcRequestMessage.GetBlockReq getBlockReq;
+	private RpcRequestMessage.GetBlockRangeReq getBlockRangeReq;
 	private RpcRequestMessage.GetLocationReq getLocationReq;
+	private RpcRequestMessage.GetLocationRangeReq getLocationRangeReq;
+	private RpcRequestMessage.GetChildrenReq getChildrenReq;
 	private RpcRequestMessage.SetBlockReq setBlockReq;
 	private RpcRequestMessage.GetDataNodeReq getDataNodeReq;
 	private RpcRequestMessage.DumpNameNodeReq dumpNameNodeReq;
@@ -55,7 +58,10 @@ public class DaRPCNameNodeRequest implements DaRPCMessage {
 		this.removeReq = new RpcRequestMessage.RemoveFileReq();
 		this.renameFileReq = new RpcRequestMessage.RenameFileReq();
 		this.getBlockReq = new RpcRequestMessage.GetBlockReq();
+		this.getBlockRangeReq = new RpcRequestMessage.GetBlockRangeReq();
 		this.getLocationReq = new RpcRequestMessage.GetLocationReq();
+		this.getLocationRangeReq = new RpcRequestMessage.GetLocationRangeReq();
+		this.getChildrenReq = new RpcRequestMessage.GetChildrenReq();
 		this.setBlockReq = new RpcRequestMessage.SetBlockReq();
 		this.dumpNameNodeReq = new RpcRequestMessage.DumpNameNodeReq();
 		this.pingNameNodeReq = new RpcRequestMessage.PingNameNodeReq();
@@ -91,11 +97,26 @@ public class DaRPCNameNodeRequest implements DaRPCMessage {
 		this.getBlockReq = message;
 	}
 	
+	public DaRPCNameNodeRequest(RpcRequestMessage.GetBlockRangeReq message) {
+		this.type = message.getType();
+		this.getBlockRangeReq = message;
+	}
+	
 	public DaRPCNameNodeRequest(RpcRequestMessage.GetLocationReq message) {
 		this.type = message.getType();
 		this.getLocationReq = message;
 	}
 	
+	public DaRPCNameNodeRequest(RpcRequestMessage.GetLocationRangeReq message) {
+		this.type = message.getType();
+		this.getLocationRangeReq = message;
+	}
+
+	public DaRPCNameNodeRequest(RpcRequestMessage.GetChildrenReq message) {
+		this.type = message.getType();
+		this.getChildrenReq = message;
+	}
+	
 	public DaRPCNameNodeRequest(RpcRequestMessage.SetBlockReq message) {
 		this.type = message.getType();
 		this.setBlockReq = message;
@@ -148,9 +169,18 @@ public class DaRPCNameNodeRequest implements DaRPCMessage {
 		case RpcProtocol.REQ_GET_BLOCK:
 			written += getBlockReq.write(buffer);
 			break;
+		case RpcProtocol.REQ_GET_BLOCK_RANGE:
+			written += getBlockRangeReq.write(buffer);
+			break;
 		case RpcProtocol.REQ_GET_LOCATION:
 			written += getLocationReq.write(buffer);
 			break;			
+		case RpcProtocol.REQ_GET_LOCATION_RANGE:
+			written += getLocationRangeReq.write(buffer);
+			break;			
+		case RpcProtocol.REQ_GET_CHILDREN:
+			written += getChildrenReq.write(buffer);
+			break;			
 		case RpcProtocol.REQ_SET_BLOCK:
 			written += setBlockReq.write(buffer);
 			break;
@@ -191,9 +221,18 @@ public class DaRPCNameNodeRequest implements DaRPCMessage {
 		case RpcProtocol.REQ_GET_BLOCK:
 			getBlockReq.update(buffer);
 			break;
+		case RpcProtocol.REQ_GET_BLOCK_RANGE:
+			getBlockRangeReq.update(buffer);
+			break;
 		case RpcProtocol.REQ_GET_LOCATION:
 			getLocationReq.update(buffer);
 			break;			
+		case RpcProtocol.REQ_GET_LOCATION_RANGE:
+			getLocationRangeReq.update(buffer);
+			break;			
+		case RpcProtocol.REQ_GET_CHILDREN:
+			getChildrenReq.update(buffer);
+			break;			
 		case RpcProtocol.REQ_SET_BLOCK:
 			setBlockReq.update(buffer);
 			break;
@@ -241,10 +280,22 @@ public class DaRPCNameNodeRequest implements DaRPCMessage {
 		return getBlockReq;
 	}
 	
+	public RpcRequestMessage.GetBlockRangeReq getBlockRange() {
+		return getBlockRangeReq;
+	}
+	
 	public RpcRequestMessage.GetLocationReq getLocation() {
 		return getLocationReq;
 	}	
 
+	public RpcRequestMessage.GetLocationRangeReq getLocationRange() {
+		return getLocationRangeReq;
+	}	
+
+	public RpcRequestMessage.GetChildrenReq getChildren() {
+		return getChildrenReq;
+	}	
+
 	public RpcRequestMessage.SetBlockReq setBlock() {
 		return setBlockReq;
 	}
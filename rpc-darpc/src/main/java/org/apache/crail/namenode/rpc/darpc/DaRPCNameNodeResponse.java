@@ -27,7 +27,7 @@ import org.apache.crail.rpc.RpcResponseMessage;
 import com.ibm.darpc.DaRPCMessage;
 
 public class DaRPCNameNodeResponse implements DaRPCMessage, RpcNameNodeState {
-	public static final int CSIZE = 4 + Math.max(RpcResponseMessage.GetBlockRes.CSIZE, RpcResponseMessage.RenameRes.CSIZE);
+	public static final int CSIZE = 4 + Math.max(Math.max(RpcResponseMessage.GetBlockRangeRes.CSIZE, RpcResponseMessage.GetLocationRangeRes.CSIZE), RpcResponseMessage.RenameRes.CSIZE);
 	
 	private short type;
 	private short error;
@@ -37,7 +37,10 @@ public class DaRPCNameNodeResponse implements DaRPCMessage, RpcNameNodeState {
 	private RpcResponseMessage.DeleteFileRes delFileRes;
 	private RpcResponseMessage.RenameRes renameRes;
 	private RpcResponseMessage.GetBlockRes getBlockRes;
+	private RpcResponseMessage.GetBlockRangeRes getBlockRangeRes;
 	private RpcResponseMessage.GetLocationRes getLocationRes;	
+	private RpcResponseMessage.GetLocationRangeRes getLocationRangeRes;	
+	private RpcResponseMessage.GetChildrenRes getChildrenRes;	
 	private RpcResponseMessage.GetDataNodeRes getDataNodeRes;
 	private RpcResponseMessage.PingNameNodeRes pingNameNodeRes;
 	
@@ -51,7 +54,10 @@ public class DaRPCNameNodeResponse implements DaRPCMessage, RpcNameNodeState {
 		this.delFileRes = new RpcResponseMessage.DeleteFileRes();
 		this.renameRes = new RpcResponseMessage.RenameRes();
 		this.getBlockRes = new RpcResponseMessage.GetBlockRes();
+		this.getBlockRangeRes = new RpcResponseMessage.GetBlockRangeRes();
 		this.getLocationRes = new RpcResponseMessage.GetLocationRes();
+		this.getLocationRangeRes = new RpcResponseMessage.GetLocationRangeRes();
+		this.getChildrenRes = new RpcResponseMessage.GetChildrenRes();
 		this.getDataNodeRes = new RpcResponseMessage.GetDataNodeRes();
 		this.pingNameNodeRes = new RpcResponseMessage.PingNameNodeRes();
 	}
@@ -86,11 +92,26 @@ public class DaRPCNameNodeResponse implements DaRPCMessage, RpcNameNodeState {
 		this.getBlockRes = message;
 	}
 	
+	public DaRPCNameNodeResponse(RpcResponseMessage.GetBlockRangeRes message) {
+		this.type = message.getType();
+		this.getBlockRangeRes = message;
+	}
+	
 	public DaRPCNameNodeResponse(RpcResponseMessage.GetLocationRes message) {
 		this.type = message.getType();
 		this.getLocationRes = message;
 	}
 	
+	public DaRPCNameNodeResponse(RpcResponseMessage.GetLocationRangeRes message) {
+		this.type = message.getType();
+		this.getLocationRangeRes = message;
+	}
+
+	public DaRPCNameNodeResponse(RpcResponseMessage.GetChildrenRes message) {
+		this.type = message.getType();
+		this.getChildrenRes = message;
+	}
+	
 	public DaRPCNameNodeResponse(RpcResponseMessage.GetDataNodeRes message) {
 		this.type = message.getType();
 		this.getDataNodeRes = message;
@@ -134,11 +155,26 @@ public class DaRPCNameNodeResponse implements DaRPCMessage, RpcNameNodeState {
 				throw new Exception("Response type not set");
 			}
 			break;
+		case RpcProtocol.RES_GET_BLOCK_RANGE:
+			if (getBlockRangeRes == null){
+				throw new Exception("Response type not set");
+			}
+			break;
 		case RpcProtocol.RES_GET_LOCATION:
 			if (getLocationRes == null){
 				throw new Exception("Response type not set");
 			}
 			break;			
+		case RpcProtocol.RES_GET_LOCATION_RANGE:
+			if (getLocationRangeRes == null){
+				throw new Exception("Response type not set");
+			}
+			break;			
+		case RpcProtocol.RES_GET_CHILDREN:
+			if (getChildrenRes == null){
+				throw new Exception("Response type not set");
+			}
+			break;			
 		case RpcProtocol.RES_GET_DATANODE:
 			if (getDataNodeRes == null){
 				throw new Exception("Response type not set");
@@ -180,9 +216,18 @@ public class DaRPCNameNodeResponse implements DaRPCMessage, RpcNameNodeState {
 		case RpcProtocol.RES_GET_BLOCK:
 			written += getBlockRes.write(buffer);
 			break;
+		case RpcProtocol.RES_GET_BLOCK_RANGE:
+			written += getBlockRangeRes.write(buffer);
+			break;
 		case RpcProtocol.RES_GET_LOCATION:
 			written += getLocationRes.write(buffer);
 			break;			
+		case RpcProtocol.RES_GET_LOCATION_RANGE:
+			written += getLocationRangeRes.write(buffer);
+			break;			
+		case RpcProtocol.RES_GET_CHILDREN:
+			written += getChildrenRes.write(buffer);
+			break;			
 		case RpcProtocol.RES_GET_DATANODE:
 			written += getDataNodeRes.write(buffer);
 			break;			
@@ -223,10 +268,22 @@ public class DaRPCNameNodeResponse implements DaRPCMessage, RpcNameNodeState {
 			getBlockRes.update(buffer);
 			getBlockRes.setError(error);
 			break;
+		case RpcProtocol.RES_GET_BLOCK_RANGE:
+			getBlockRangeRes.update(buffer);
+			getBlockRangeRes.setError(error);
+			break;
 		case RpcProtocol.RES_GET_LOCATION:
 			getLocationRes.update(buffer);
 			getLocationRes.setError(error);
 			break;			
+		case RpcProtocol.RES_GET_LOCATION_RANGE:
+			getLocationRangeRes.update(buffer);
+			getLocationRangeRes.setError(error);
+			break;			
+		case RpcProtocol.RES_GET_CHILDREN:
+			getChildrenRes.update(buffer);
+			getChildrenRes.setError(error);
+			break;			
 		case RpcProtocol.RES_GET_DATANODE:
 			getDataNodeRes.update(buffer);
 			getDataNodeRes.setError(error);
@@ -274,10 +331,22 @@ public class DaRPCNameNodeResponse implements DaRPCMessage, RpcNameNodeState {
 		return getBlockRes;
 	}	
 	
+	public RpcResponseMessage.GetBlockRangeRes getBlockRange() {
+		return getBlockRangeRes;
+	}
+	
 	public RpcResponseMessage.GetLocationRes getLocation() {
 		return getLocationRes;
 	}	
 	
+	public RpcResponseMessage.GetLocationRangeRes getLocationRange() {
+		return getLocationRangeRes;
+	}	
+
+	public RpcResponseMessage.GetChildrenRes getChildren() {
+		return getChildrenRes;
+	}	
+	
 	public RpcResponseMessage.GetDataNodeRes getDataNode() {
 		return getDataNodeRes;
 	}	
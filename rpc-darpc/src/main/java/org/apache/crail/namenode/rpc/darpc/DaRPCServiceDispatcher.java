@@ -101,11 +101,26 @@ public class DaRPCServiceDispatcher extends DaRPCNameNodeProtocol implements DaR
 				this.getOps.incrementAndGet();
 				error = service.getBlock(request.getBlock(), response.getBlock(), response);
 				break;
+			case RpcProtocol.CMD_GET_BLOCK_RANGE:
+				this.totalOps.incrementAndGet();
+				this.getOps.incrementAndGet();
+				error = service.getBlockRange(request.getBlockRange(), response.getBlockRange(), response);
+				break;
 			case RpcProtocol.CMD_GET_LOCATION:
 				this.totalOps.incrementAndGet();
 				this.locationOps.incrementAndGet();
 				error = service.getLocation(request.getLocation(), response.getLocation(), response);
 				break;				
+			case RpcProtocol.CMD_GET_LOCATION_RANGE:
+				this.totalOps.incrementAndGet();
+				this.locationOps.incrementAndGet();
+				error = service.getLocationRange(request.getLocationRange(), response.getLocationRange(), response);
+				break;				
+			case RpcProtocol.CMD_GET_CHILDREN:
+				this.totalOps.incrementAndGet();
+				this.lookupOps.incrementAndGet();
+				error = service.getChildren(request.getChildren(), response.getChildren(), response);
+				break;				
 			case RpcProtocol.CMD_SET_BLOCK:
 				error = service.setBlock(request.setBlock(), response.getVoid(), response);
 				break;
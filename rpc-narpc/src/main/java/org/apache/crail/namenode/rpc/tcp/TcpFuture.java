@@ -18,6 +18,7 @@
 
 package org.apache.crail.namenode.rpc.tcp;
 
+import java.io.IOException;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
@@ -27,15 +28,40 @@ import org.apache.crail.rpc.RpcFuture;
 import com.ibm.narpc.NaRPCFuture;
 
 public class TcpFuture<T> implements RpcFuture<T> {
-	private NaRPCFuture<TcpNameNodeRequest, TcpNameNodeResponse> future;
+	private volatile NaRPCFuture<TcpNameNodeRequest, TcpNameNodeResponse> future;
 	private T response;
+	private long ticket;
 	private boolean prefetched;
+	//set for requests queued by the connection until they are sent as part of a batch
+	private TcpNameNodeRequest request;
+	private TcpNameNodeResponse frameResponse;
+	private volatile IOException error;
+	//connection the frame response goes back to once the reply has been decoded
+	private TcpRpcConnection connection;
 	
 	public TcpFuture(NaRPCFuture<TcpNameNodeRequest, TcpNameNodeResponse> future, T resp) {
 		this.future = future;
 		this.response = resp;
+		this.ticket = future.getTicket();
 		this.prefetched = false;
 	}
+	
+	TcpFuture(NaRPCFuture<TcpNameNodeRequest, TcpNameNodeResponse> future, TcpNameNodeResponse frameResponse, T resp, TcpRpcConnection connection) {
+		this(future, resp);
+		this.frameResponse = frameResponse;
+		this.connection = connection;
+	}
+	
+	TcpFuture(TcpNameNodeRequest request, TcpNameNodeResponse frameResponse, T resp, long ticket, TcpRpcConnection connection) {
+		this.future = null;
+		this.response = resp;
+		this.ticket = ticket;
+		this.prefetched = false;
+		this.request = request;
+		this.frameResponse = frameResponse;
+		this.error = null;
+		this.connection = connection;
+	}
 
 	@Override
 	public boolean cancel(boolean mayInterruptIfRunning) {
@@ -49,25 +75,44 @@ public class TcpFuture<T> implements RpcFuture<T> {
 
 	@Override
 	public boolean isDone() {
-		return future.isDone();
+		if (error != null){
+			return true;
+		}
+		NaRPCFuture<TcpNameNodeRequest, TcpNameNodeResponse> future = this.future;
+		return future != null && future.isDone();
 	}
 
 	@Override
 	public T get() throws InterruptedException, ExecutionException {
+		if (future == null){
+			flushDeferred();
+			waitIssued(Long.MAX_VALUE);
+		}
 		future.get();
+		release();
 		return response;
 	}
 
 	@Override
 	public T get(long timeout, TimeUnit unit) throws InterruptedException,
 			ExecutionException, TimeoutException {
+		if (future == null){
+			flushDeferred();
+			long start = System.nanoTime();
+			if (!waitIssued(unit.toNanos(timeout))){
+				throw new TimeoutException("request not sent within " + timeout + " " + unit);
+			}
+			timeout = Math.max(0, unit.toNanos(timeout) - (System.nanoTime() - start));
+			unit = TimeUnit.NANOSECONDS;
+		}
 		future.get(timeout, unit);
+		release();
 		return response;
 	}
 
 	@Override
 	public int getTicket() {
-		return (int) future.getTicket();
+		return (int) ticket;
 	}
 
 	@Override
@@ -79,4 +124,57 @@ public class TcpFuture<T> implements RpcFuture<T> {
 	public void setPrefetched(boolean prefetched) {
 		this.prefetched = prefetched;
 	}
+	
+	TcpNameNodeRequest getRequest() {
+		return request;
+	}
+	
+	TcpNameNodeResponse getFrameResponse() {
+		return frameResponse;
+	}
+	
+	synchronized void issued(NaRPCFuture<TcpNameNodeRequest, TcpNameNodeResponse> future) {
+		this.future = future;
+		this.request = null;
+		this.notifyAll();
+	}
+	
+	synchronized void failed(IOException error) {
+		this.error = error;
+		this.request = null;
+		this.notifyAll();
+	}
+	
+	//a request deferred by the waiting thread itself would otherwise never be sent
+	private void flushDeferred() {
+		if (connection != null){
+			connection.flushDeferred();
+		}
+	}
+	
+	private void release() {
+		TcpNameNodeResponse frameResponse = null;
+		synchronized(this){
+			frameResponse = this.frameResponse;
+			this.frameResponse = null;
+		}
+		if (frameResponse != null && connection != null){
+			connection.releaseResponse(frameResponse);
+		}
+	}
+	
+	private synchronized boolean waitIssued(long nanos) throws InterruptedException, ExecutionException {
+		long deadline = System.nanoTime() + nanos;
+		while (future == null && error == null){
+			long remaining = deadline - System.nanoTime();
+			if (remaining <= 0){
+				return false;
+			}
+			TimeUnit.NANOSECONDS.timedWait(this, remaining);
+		}
+		if (error != null){
+			throw new ExecutionException(error);
+		}
+		return true;
+	}
 }
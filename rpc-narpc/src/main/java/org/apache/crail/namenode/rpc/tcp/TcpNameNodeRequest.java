@@ -20,6 +20,7 @@ package org.apache.crail.namenode.rpc.tcp;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.util.Arrays;
 
 import org.apache.crail.rpc.RpcProtocol;
 import org.apache.crail.rpc.RpcRequestMessage;
@@ -30,7 +31,11 @@ import com.ibm.narpc.NaRPCMessage;
 
 public class TcpNameNodeRequest extends RpcRequestMessage implements NaRPCMessage {
 	public static final Logger LOG = CrailUtils.getLogger();
-	public static final int CSIZE = 2*Short.BYTES + Math.max(RpcRequestMessage.SetFileReq.CSIZE, RpcRequestMessage.RenameFileReq.CSIZE);
+	public static final int CSIZE = 2*Short.BYTES + Math.max(Math.max(RpcRequestMessage.SetFileReq.CSIZE, RpcRequestMessage.RenameFileReq.CSIZE), RpcRequestMessage.GetChildrenReq.CSIZE);
+	//several requests sent in one frame, followed by the number of requests and the requests themselves
+	public static final short CMD_BATCH = 64;
+	public static final short REQ_BATCH = 64;
+	public static final int BATCH_HEADER = 3*Short.BYTES;
 	
 	private short cmd;
 	private short type;
@@ -40,11 +45,16 @@ public class TcpNameNodeRequest extends RpcRequestMessage implements NaRPCMessag
 	private RpcRequestMessage.RemoveFileReq removeReq;
 	private RpcRequestMessage.RenameFileReq renameFileReq;
 	private RpcRequestMessage.GetBlockReq getBlockReq;
+	private RpcRequestMessage.GetBlockRangeReq getBlockRangeReq;
 	private RpcRequestMessage.GetLocationReq getLocationReq;
+	private RpcRequestMessage.GetLocationRangeReq getLocationRangeReq;
+	private RpcRequestMessage.GetChildrenReq getChildrenReq;
 	private RpcRequestMessage.SetBlockReq setBlockReq;
 	private RpcRequestMessage.GetDataNodeReq getDataNodeReq;
 	private RpcRequestMessage.DumpNameNodeReq dumpNameNodeReq;
 	private RpcRequestMessage.PingNameNodeReq pingNameNodeReq;
+	private TcpNameNodeRequest[] batch;
+	private int batchSize;
 
 	public TcpNameNodeRequest() {
 		this.cmd = 0;
@@ -55,11 +65,16 @@ public class TcpNameNodeRequest extends RpcRequestMessage implements NaRPCMessag
 		this.removeReq = new RpcRequestMessage.RemoveFileReq();
 		this.renameFileReq = new RpcRequestMessage.RenameFileReq();
 		this.getBlockReq = new RpcRequestMessage.GetBlockReq();
+		this.getBlockRangeReq = new RpcRequestMessage.GetBlockRangeReq();
 		this.getLocationReq = new RpcRequestMessage.GetLocationReq();
+		this.getLocationRangeReq = new RpcRequestMessage.GetLocationRangeReq();
+		this.getChildrenReq = new RpcRequestMessage.GetChildrenReq();
 		this.setBlockReq = new RpcRequestMessage.SetBlockReq();
 		this.dumpNameNodeReq = new RpcRequestMessage.DumpNameNodeReq();
 		this.pingNameNodeReq = new RpcRequestMessage.PingNameNodeReq();
 		this.getDataNodeReq = new RpcRequestMessage.GetDataNodeReq();
+		this.batch = new TcpNameNodeRequest[0];
+		this.batchSize = 0;
 	}	
 	
 	public TcpNameNodeRequest(RpcRequestMessage.CreateFileReq message) {
@@ -91,11 +106,26 @@ public class TcpNameNodeRequest extends RpcRequestMessage implements NaRPCMessag
 		this.getBlockReq = message;
 	}
 	
+	public TcpNameNodeRequest(RpcRequestMessage.GetBlockRangeReq message) {
+		this.type = message.getType();
+		this.getBlockRangeReq = message;
+	}
+	
 	public TcpNameNodeRequest(RpcRequestMessage.GetLocationReq message) {
 		this.type = message.getType();
 		this.getLocationReq = message;
 	}
 	
+	public TcpNameNodeRequest(RpcRequestMessage.GetLocationRangeReq message) {
+		this.type = message.getType();
+		this.getLocationRangeReq = message;
+	}
+
+	public TcpNameNodeRequest(RpcRequestMessage.GetChildrenReq message) {
+		this.type = message.getType();
+		this.getChildrenReq = message;
+	}
+	
 	public TcpNameNodeRequest(RpcRequestMessage.SetBlockReq message) {
 		this.type = message.getType();
 		this.setBlockReq = message;
@@ -116,14 +146,74 @@ public class TcpNameNodeRequest extends RpcRequestMessage implements NaRPCMessag
 		this.pingNameNodeReq = message;
 	}
 	
+	public TcpNameNodeRequest(TcpNameNodeRequest[] batch, int batchSize) {
+		this.cmd = CMD_BATCH;
+		this.type = REQ_BATCH;
+		this.batch = batch;
+		this.batchSize = batchSize;
+	}
+	
 	public void setCommand(short command) {
 		this.cmd = command;
 	}	
+	
+	public void setType(short type) {
+		this.type = type;
+	}
+	
+	//refills a frame with the given requests, lets a connection send all its batches with one request object
+	void setBatch(TcpNameNodeRequest[] batch, int batchSize) {
+		this.cmd = CMD_BATCH;
+		this.type = REQ_BATCH;
+		this.batch = batch;
+		this.batchSize = batchSize;
+	}
 
 	public int size(){
 		return CSIZE;
 	}
 	
+	//upper bound of the serialized size of this request
+	public int frameSize(){
+		switch(type){
+		case RpcProtocol.REQ_CREATE_FILE:
+			return 2*Short.BYTES + RpcRequestMessage.CreateFileReq.CSIZE;
+		case RpcProtocol.REQ_GET_FILE:
+			return 2*Short.BYTES + RpcRequestMessage.GetFileReq.CSIZE;
+		case RpcProtocol.REQ_SET_FILE:
+			return 2*Short.BYTES + RpcRequestMessage.SetFileReq.CSIZE;
+		case RpcProtocol.REQ_REMOVE_FILE:
+			return 2*Short.BYTES + RpcRequestMessage.RemoveFileReq.CSIZE;
+		case RpcProtocol.REQ_RENAME_FILE:
+			return 2*Short.BYTES + RpcRequestMessage.RenameFileReq.CSIZE;
+		case RpcProtocol.REQ_GET_BLOCK:
+			return 2*Short.BYTES + RpcRequestMessage.GetBlockReq.CSIZE;
+		case RpcProtocol.REQ_GET_BLOCK_RANGE:
+			return 2*Short.BYTES + RpcRequestMessage.GetBlockRangeReq.CSIZE;
+		case RpcProtocol.REQ_GET_LOCATION:
+			return 2*Short.BYTES + RpcRequestMessage.GetLocationReq.CSIZE;
+		case RpcProtocol.REQ_GET_LOCATION_RANGE:
+			return 2*Short.BYTES + RpcRequestMessage.GetLocationRangeReq.CSIZE;
+		case RpcProtocol.REQ_GET_CHILDREN:
+			return 2*Short.BYTES + RpcRequestMessage.GetChildrenReq.CSIZE;
+		case RpcProtocol.REQ_SET_BLOCK:
+			return 2*Short.BYTES + RpcRequestMessage.SetBlockReq.CSIZE;
+		case RpcProtocol.REQ_GET_DATANODE:
+			return 2*Short.BYTES + RpcRequestMessage.GetDataNodeReq.CSIZE;
+		case RpcProtocol.REQ_DUMP_NAMENODE:
+			return 2*Short.BYTES + RpcRequestMessage.DumpNameNodeReq.CSIZE;
+		case RpcProtocol.REQ_PING_NAMENODE:
+			return 2*Short.BYTES + RpcRequestMessage.PingNameNodeReq.CSIZE;
+		case REQ_BATCH:
+			int size = BATCH_HEADER;
+			for (int i = 0; i < batchSize; i++){
+				size += batch[i].frameSize();
+			}
+			return size;
+		}
+		return CSIZE;
+	}
+	
 	public int write(ByteBuffer buffer) throws IOException{
 		buffer.putShort(cmd);
 		buffer.putShort(type);
@@ -148,9 +238,18 @@ public class TcpNameNodeRequest extends RpcRequestMessage implements NaRPCMessag
 		case RpcProtocol.REQ_GET_BLOCK:
 			written += getBlockReq.write(buffer);
 			break;
+		case RpcProtocol.REQ_GET_BLOCK_RANGE:
+			written += getBlockRangeReq.write(buffer);
+			break;
 		case RpcProtocol.REQ_GET_LOCATION:
 			written += getLocationReq.write(buffer);
 			break;			
+		case RpcProtocol.REQ_GET_LOCATION_RANGE:
+			written += getLocationRangeReq.write(buffer);
+			break;			
+		case RpcProtocol.REQ_GET_CHILDREN:
+			written += getChildrenReq.write(buffer);
+			break;			
 		case RpcProtocol.REQ_SET_BLOCK:
 			written += setBlockReq.write(buffer);
 			break;
@@ -163,6 +262,13 @@ public class TcpNameNodeRequest extends RpcRequestMessage implements NaRPCMessag
 		case RpcProtocol.REQ_PING_NAMENODE:
 			written += pingNameNodeReq.write(buffer);
 			break;
+		case REQ_BATCH:
+			buffer.putShort((short) batchSize);
+			written += Short.BYTES;
+			for (int i = 0; i < batchSize; i++){
+				written += batch[i].write(buffer);
+			}
+			break;
 		}
 		
 		return written;
@@ -191,9 +297,18 @@ public class TcpNameNodeRequest extends RpcRequestMessage implements NaRPCMessag
 		case RpcProtocol.REQ_GET_BLOCK:
 			getBlockReq.update(buffer);
 			break;
+		case RpcProtocol.REQ_GET_BLOCK_RANGE:
+			getBlockRangeReq.update(buffer);
+			break;
 		case RpcProtocol.REQ_GET_LOCATION:
 			getLocationReq.update(buffer);
 			break;			
+		case RpcProtocol.REQ_GET_LOCATION_RANGE:
+			getLocationRangeReq.update(buffer);
+			break;			
+		case RpcProtocol.REQ_GET_CHILDREN:
+			getChildrenReq.update(buffer);
+			break;			
 		case RpcProtocol.REQ_SET_BLOCK:
 			setBlockReq.update(buffer);
 			break;
@@ -206,6 +321,19 @@ public class TcpNameNodeRequest extends RpcRequestMessage implements NaRPCMessag
 		case RpcProtocol.REQ_PING_NAMENODE:
 			pingNameNodeReq.update(buffer);
 			break;
+		case REQ_BATCH:
+			batchSize = buffer.getShort();
+			if (batch.length < batchSize){
+				int oldLength = batch.length;
+				batch = Arrays.copyOf(batch, batchSize);
+				for (int i = oldLength; i < batchSize; i++){
+					batch[i] = new TcpNameNodeRequest();
+				}
+			}
+			for (int i = 0; i < batchSize; i++){
+				batch[i].update(buffer);
+			}
+			break;
 		}
 	}
 
@@ -217,6 +345,14 @@ public class TcpNameNodeRequest extends RpcRequestMessage implements NaRPCMessag
 		return type;
 	}
 	
+	public int getBatchSize(){
+		return batchSize;
+	}
+	
+	public TcpNameNodeRequest getBatch(int index){
+		return batch[index];
+	}
+	
 	public RpcRequestMessage.CreateFileReq createFile(){
 		return this.createFileReq;
 	}
@@ -241,10 +377,22 @@ public class TcpNameNodeRequest extends RpcRequestMessage implements NaRPCMessag
 		return getBlockReq;
 	}
 	
+	public RpcRequestMessage.GetBlockRangeReq getBlockRange() {
+		return getBlockRangeReq;
+	}
+	
 	public RpcRequestMessage.GetLocationReq getLocation() {
 		return getLocationReq;
 	}	
 
+	public RpcRequestMessage.GetLocationRangeReq getLocationRange() {
+		return getLocationRangeReq;
+	}	
+
+	public RpcRequestMessage.GetChildrenReq getChildren() {
+		return getChildrenReq;
+	}	
+
 	public RpcRequestMessage.SetBlockReq setBlock() {
 		return setBlockReq;
 	}
@@ -19,7 +19,11 @@
 package org.apache.crail.namenode.rpc.tcp;
 
 import java.nio.ByteBuffer;
+import java.util.Arrays;
 
+import org.apache.crail.metadata.BlockInfo;
+import org.apache.crail.metadata.FileInfo;
+import org.apache.crail.rpc.RpcErrors;
 import org.apache.crail.rpc.RpcNameNodeState;
 import org.apache.crail.rpc.RpcProtocol;
 import org.apache.crail.rpc.RpcResponseMessage;
@@ -30,7 +34,13 @@ import com.ibm.narpc.NaRPCMessage;
 
 public class TcpNameNodeResponse extends RpcResponseMessage implements RpcNameNodeState, NaRPCMessage {
 	public static final Logger LOG = CrailUtils.getLogger();
-	public static final int CSIZE = 2*Short.BYTES + Math.max(RpcResponseMessage.GetBlockRes.CSIZE, RpcResponseMessage.RenameRes.CSIZE);
+	public static final int CSIZE = 2*Short.BYTES + Math.max(Math.max(RpcResponseMessage.GetBlockRangeRes.CSIZE, RpcResponseMessage.GetLocationRangeRes.CSIZE), RpcResponseMessage.RenameRes.CSIZE);
+	//responses of a batch of requests, in the order of the requests
+	public static final short RES_BATCH = 64;
+	public static final int BATCH_HEADER = 3*Short.BYTES;
+	//contents of a reused response before it is filled, never modified
+	private static final FileInfo EMPTY_FILE = new FileInfo();
+	private static final BlockInfo EMPTY_BLOCK = new BlockInfo();
 	
 	private short type;
 	private short error;
@@ -40,9 +50,14 @@ public class TcpNameNodeResponse extends RpcResponseMessage implements RpcNameNo
 	private RpcResponseMessage.DeleteFileRes delFileRes;
 	private RpcResponseMessage.RenameRes renameRes;
 	private RpcResponseMessage.GetBlockRes getBlockRes;
+	private RpcResponseMessage.GetBlockRangeRes getBlockRangeRes;
 	private RpcResponseMessage.GetLocationRes getLocationRes;	
+	private RpcResponseMessage.GetLocationRangeRes getLocationRangeRes;	
+	private RpcResponseMessage.GetChildrenRes getChildrenRes;	
 	private RpcResponseMessage.GetDataNodeRes getDataNodeRes;
 	private RpcResponseMessage.PingNameNodeRes pingNameNodeRes;
+	private TcpNameNodeResponse[] batch;
+	private int batchSize;
 	
 	public TcpNameNodeResponse() {
 		this.type = 0;
@@ -53,9 +68,14 @@ public class TcpNameNodeResponse extends RpcResponseMessage implements RpcNameNo
 		this.delFileRes = new RpcResponseMessage.DeleteFileRes();
 		this.renameRes = new RpcResponseMessage.RenameRes();
 		this.getBlockRes = new RpcResponseMessage.GetBlockRes();
+		this.getBlockRangeRes = new RpcResponseMessage.GetBlockRangeRes();
 		this.getLocationRes = new RpcResponseMessage.GetLocationRes();
+		this.getLocationRangeRes = new RpcResponseMessage.GetLocationRangeRes();
+		this.getChildrenRes = new RpcResponseMessage.GetChildrenRes();
 		this.getDataNodeRes = new RpcResponseMessage.GetDataNodeRes();
 		this.pingNameNodeRes = new RpcResponseMessage.PingNameNodeRes();
+		this.batch = new TcpNameNodeResponse[0];
+		this.batchSize = 0;
 	}
 	
 	public TcpNameNodeResponse(RpcResponseMessage.VoidRes message) {
@@ -88,11 +108,26 @@ public class TcpNameNodeResponse extends RpcResponseMessage implements RpcNameNo
 		this.getBlockRes = message;
 	}
 	
+	public TcpNameNodeResponse(RpcResponseMessage.GetBlockRangeRes message) {
+		this.type = message.getType();
+		this.getBlockRangeRes = message;
+	}
+	
 	public TcpNameNodeResponse(RpcResponseMessage.GetLocationRes message) {
 		this.type = message.getType();
 		this.getLocationRes = message;
 	}
 	
+	public TcpNameNodeResponse(RpcResponseMessage.GetLocationRangeRes message) {
+		this.type = message.getType();
+		this.getLocationRangeRes = message;
+	}
+
+	public TcpNameNodeResponse(RpcResponseMessage.GetChildrenRes message) {
+		this.type = message.getType();
+		this.getChildrenRes = message;
+	}
+	
 	public TcpNameNodeResponse(RpcResponseMessage.GetDataNodeRes message) {
 		this.type = message.getType();
 		this.getDataNodeRes = message;
@@ -103,14 +138,168 @@ public class TcpNameNodeResponse extends RpcResponseMessage implements RpcNameNo
 		this.pingNameNodeRes = message;
 	}
 	
+	TcpNameNodeResponse(RpcProtocol.NameNodeRpcMessage message) {
+		bind(message);
+	}
+	
+	public TcpNameNodeResponse(TcpNameNodeResponse[] batch, int batchSize) {
+		this.type = RES_BATCH;
+		this.batch = batch;
+		this.batchSize = batchSize;
+	}
+	
 	public void setType(short type) throws Exception {
 		this.type = type;
 	}	
+	
+	//prepares a reused response for a request with the given response type, nothing 
+	//an earlier request left in the message, e.g., a file token, must be sent along 
+	void reset(short type) {
+		this.type = type;
+		this.error = RpcErrors.ERR_OK;
+		switch(type){
+		case RpcProtocol.RES_CREATE_FILE:
+			createFileRes.setFileInfo(EMPTY_FILE);
+			createFileRes.setParentInfo(EMPTY_FILE);
+			createFileRes.setFileBlock(EMPTY_BLOCK);
+			createFileRes.setDirBlock(EMPTY_BLOCK);
+			break;
+		case RpcProtocol.RES_GET_FILE:
+			getFileRes.setFileInfo(EMPTY_FILE);
+			getFileRes.setFileBlock(EMPTY_BLOCK);
+			getFileRes.setLease(0);
+			break;
+		case RpcProtocol.RES_DELETE_FILE:
+			delFileRes.setFileInfo(EMPTY_FILE);
+			delFileRes.setParentInfo(EMPTY_FILE);
+			break;
+		case RpcProtocol.RES_RENAME_FILE:
+			renameRes.setSrcParent(EMPTY_FILE);
+			renameRes.setSrcFile(EMPTY_FILE);
+			renameRes.setSrcBlock(EMPTY_BLOCK);
+			renameRes.setDstParent(EMPTY_FILE);
+			renameRes.setDstFile(EMPTY_FILE);
+			renameRes.setDstBlock(EMPTY_BLOCK);
+			break;
+		case RpcProtocol.RES_GET_BLOCK:
+			getBlockRes.setBlockInfo(EMPTY_BLOCK);
+			break;
+		case RpcProtocol.RES_GET_BLOCK_RANGE:
+			getBlockRangeRes.clear();
+			break;
+		case RpcProtocol.RES_GET_LOCATION:
+			getLocationRes.setBlockInfo(EMPTY_BLOCK);
+			getLocationRes.setFd(0);
+			break;
+		case RpcProtocol.RES_GET_LOCATION_RANGE:
+			getLocationRangeRes.clear();
+			break;
+		case RpcProtocol.RES_GET_CHILDREN:
+			getChildrenRes.clear();
+			break;
+		case RpcProtocol.RES_GET_DATANODE:
+			getDataNodeRes.setServiceId(0);
+			getDataNodeRes.setFreeBlockCount(0);
+			break;
+		case RpcProtocol.RES_PING_NAMENODE:
+			pingNameNodeRes.setData(0);
+			break;
+		}
+	}
+	
+	//turns this response into a batch of the given size, the responses of the batch are kept for reuse
+	void setBatch(int batchSize) {
+		this.type = RES_BATCH;
+		this.error = RpcErrors.ERR_OK;
+		if (batch.length < batchSize){
+			int oldLength = batch.length;
+			batch = Arrays.copyOf(batch, batchSize);
+			for (int i = oldLength; i < batchSize; i++){
+				batch[i] = new TcpNameNodeResponse();
+			}
+		}
+		this.batchSize = batchSize;
+	}
+	
+	//points a client response at the message the reply is decoded into, lets connections reuse responses
+	void bind(RpcProtocol.NameNodeRpcMessage message) {
+		this.type = message.getType();
+		this.error = RpcErrors.ERR_OK;
+		switch(type){
+		case RpcProtocol.RES_VOID:
+			this.voidRes = (RpcResponseMessage.VoidRes) message;
+			break;
+		case RpcProtocol.RES_CREATE_FILE:
+			this.createFileRes = (RpcResponseMessage.CreateFileRes) message;
+			break;
+		case RpcProtocol.RES_GET_FILE:
+			this.getFileRes = (RpcResponseMessage.GetFileRes) message;
+			break;
+		case RpcProtocol.RES_DELETE_FILE:
+			this.delFileRes = (RpcResponseMessage.DeleteFileRes) message;
+			break;
+		case RpcProtocol.RES_RENAME_FILE:
+			this.renameRes = (RpcResponseMessage.RenameRes) message;
+			break;
+		case RpcProtocol.RES_GET_BLOCK:
+			this.getBlockRes = (RpcResponseMessage.GetBlockRes) message;
+			break;
+		case RpcProtocol.RES_GET_BLOCK_RANGE:
+			this.getBlockRangeRes = (RpcResponseMessage.GetBlockRangeRes) message;
+			break;
+		case RpcProtocol.RES_GET_LOCATION:
+			this.getLocationRes = (RpcResponseMessage.GetLocationRes) message;
+			break;
+		case RpcProtocol.RES_GET_LOCATION_RANGE:
+			this.getLocationRangeRes = (RpcResponseMessage.GetLocationRangeRes) message;
+			break;
+		case RpcProtocol.RES_GET_CHILDREN:
+			this.getChildrenRes = (RpcResponseMessage.GetChildrenRes) message;
+			break;
+		case RpcProtocol.RES_GET_DATANODE:
+			this.getDataNodeRes = (RpcResponseMessage.GetDataNodeRes) message;
+			break;
+		case RpcProtocol.RES_PING_NAMENODE:
+			this.pingNameNodeRes = (RpcResponseMessage.PingNameNodeRes) message;
+			break;
+		}
+	}
 
 	public int size(){
 		return CSIZE;
 	}
 	
+	//upper bound of the serialized size of a response of the given type
+	public static int frameSize(short type){
+		switch(type){
+		case RpcProtocol.RES_VOID:
+			return 2*Short.BYTES;
+		case RpcProtocol.RES_CREATE_FILE:
+			return 2*Short.BYTES + RpcResponseMessage.CreateFileRes.CSIZE;
+		case RpcProtocol.RES_GET_FILE:
+			return 2*Short.BYTES + RpcResponseMessage.GetFileRes.CSIZE;
+		case RpcProtocol.RES_DELETE_FILE:
+			return 2*Short.BYTES + RpcResponseMessage.DeleteFileRes.CSIZE;
+		case RpcProtocol.RES_RENAME_FILE:
+			return 2*Short.BYTES + RpcResponseMessage.RenameRes.CSIZE;
+		case RpcProtocol.RES_GET_BLOCK:
+			return 2*Short.BYTES + RpcResponseMessage.GetBlockRes.CSIZE;
+		case RpcProtocol.RES_GET_BLOCK_RANGE:
+			return 2*Short.BYTES + RpcResponseMessage.GetBlockRangeRes.CSIZE;
+		case RpcProtocol.RES_GET_LOCATION:
+			return 2*Short.BYTES + RpcResponseMessage.GetLocationRes.CSIZE;
+		case RpcProtocol.RES_GET_LOCATION_RANGE:
+			return 2*Short.BYTES + RpcResponseMessage.GetLocationRangeRes.CSIZE;
+		case RpcProtocol.RES_GET_CHILDREN:
+			return 2*Short.BYTES + RpcResponseMessage.GetChildrenRes.CSIZE;
+		case RpcProtocol.RES_GET_DATANODE:
+			return 2*Short.BYTES + RpcResponseMessage.GetDataNodeRes.CSIZE;
+		case RpcProtocol.RES_PING_NAMENODE:
+			return 2*Short.BYTES + RpcResponseMessage.PingNameNodeRes.CSIZE;
+		}
+		return CSIZE;
+	}
+	
 	public int write(ByteBuffer buffer){
 		buffer.putShort(type);
 		buffer.putShort(error);
@@ -135,15 +324,31 @@ public class TcpNameNodeResponse extends RpcResponseMessage implements RpcNameNo
 		case RpcProtocol.RES_GET_BLOCK:
 			written += getBlockRes.write(buffer);
 			break;
+		case RpcProtocol.RES_GET_BLOCK_RANGE:
+			written += getBlockRangeRes.write(buffer);
+			break;
 		case RpcProtocol.RES_GET_LOCATION:
 			written += getLocationRes.write(buffer);
 			break;			
+		case RpcProtocol.RES_GET_LOCATION_RANGE:
+			written += getLocationRangeRes.write(buffer);
+			break;			
+		case RpcProtocol.RES_GET_CHILDREN:
+			written += getChildrenRes.write(buffer);
+			break;			
 		case RpcProtocol.RES_GET_DATANODE:
 			written += getDataNodeRes.write(buffer);
 			break;			
 		case RpcProtocol.RES_PING_NAMENODE:
 			written += pingNameNodeRes.write(buffer);
 			break;			
+		case RES_BATCH:
+			buffer.putShort((short) batchSize);
+			written += Short.BYTES;
+			for (int i = 0; i < batchSize; i++){
+				written += batch[i].write(buffer);
+			}
+			break;
 		}
 		
 		return written;
@@ -178,10 +383,22 @@ public class TcpNameNodeResponse extends RpcResponseMessage implements RpcNameNo
 			getBlockRes.update(buffer);
 			getBlockRes.setError(error);
 			break;
+		case RpcProtocol.RES_GET_BLOCK_RANGE:
+			getBlockRangeRes.update(buffer);
+			getBlockRangeRes.setError(error);
+			break;
 		case RpcProtocol.RES_GET_LOCATION:
 			getLocationRes.update(buffer);
 			getLocationRes.setError(error);
 			break;			
+		case RpcProtocol.RES_GET_LOCATION_RANGE:
+			getLocationRangeRes.update(buffer);
+			getLocationRangeRes.setError(error);
+			break;			
+		case RpcProtocol.RES_GET_CHILDREN:
+			getChildrenRes.update(buffer);
+			getChildrenRes.setError(error);
+			break;			
 		case RpcProtocol.RES_GET_DATANODE:
 			getDataNodeRes.update(buffer);
 			getDataNodeRes.setError(error);
@@ -190,6 +407,15 @@ public class TcpNameNodeResponse extends RpcResponseMessage implements RpcNameNo
 			pingNameNodeRes.update(buffer);
 			pingNameNodeRes.setError(error);
 			break;		
+		case RES_BATCH:
+			int count = buffer.getShort();
+			if (count != batchSize){
+				throw new IllegalStateException("batch response carries " + count + " responses, expected " + batchSize);
+			}
+			for (int i = 0; i < batchSize; i++){
+				batch[i].update(buffer);
+			}
+			break;
 		}
 	}
 	
@@ -197,6 +423,10 @@ public class TcpNameNodeResponse extends RpcResponseMessage implements RpcNameNo
 		return type;
 	}
 	
+	public TcpNameNodeResponse getBatch(int index){
+		return batch[index];
+	}
+	
 	public short getError() {
 		return error;
 	}
@@ -229,10 +459,22 @@ public class TcpNameNodeResponse extends RpcResponseMessage implements RpcNameNo
 		return getBlockRes;
 	}	
 	
+	public RpcResponseMessage.GetBlockRangeRes getBlockRange() {
+		return getBlockRangeRes;
+	}
+	
 	public RpcResponseMessage.GetLocationRes getLocation() {
 		return getLocationRes;
 	}	
 	
+	public RpcResponseMessage.GetLocationRangeRes getLocationRange() {
+		return getLocationRangeRes;
+	}	
+
+	public RpcResponseMessage.GetChildrenRes getChildren() {
+		return getChildrenRes;
+	}	
+	
 	public RpcResponseMessage.GetDataNodeRes getDataNode() {
 		return getDataNodeRes;
 	}	
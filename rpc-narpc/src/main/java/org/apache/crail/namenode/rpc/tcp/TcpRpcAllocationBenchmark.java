@@ -0,0 +1,287 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.apache.crail.namenode.rpc.tcp;
+
+import java.lang.management.ManagementFactory;
+import java.net.InetSocketAddress;
+import java.util.Arrays;
+
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.CommandLineParser;
+import org.apache.commons.cli.DefaultParser;
+import org.apache.commons.cli.HelpFormatter;
+import org.apache.commons.cli.Option;
+import org.apache.commons.cli.Options;
+import org.apache.crail.CrailNodeType;
+import org.apache.crail.metadata.BlockInfo;
+import org.apache.crail.metadata.DataNodeInfo;
+import org.apache.crail.metadata.FileInfo;
+import org.apache.crail.metadata.FileName;
+import org.apache.crail.rpc.RpcErrors;
+import org.apache.crail.rpc.RpcNameNodeService;
+import org.apache.crail.rpc.RpcNameNodeState;
+import org.apache.crail.rpc.RpcRequestMessage;
+import org.apache.crail.rpc.RpcResponseMessage;
+
+import com.ibm.narpc.NaRPCClientGroup;
+import com.ibm.narpc.NaRPCEndpoint;
+import com.ibm.narpc.NaRPCServerEndpoint;
+import com.ibm.narpc.NaRPCServerGroup;
+
+/*
+ * Measures the bytes allocated per namenode RPC over loopback. Client and dispatcher run in this 
+ * process, the service answers every call from fixed metadata, so what is allocated is allocated 
+ * by the RPC layer. Allocations of the calling threads are reported as client, allocations of all 
+ * other threads, mostly the dispatcher, as server. 
+ */
+public class TcpRpcAllocationBenchmark {
+	private static final com.sun.management.ThreadMXBean threadBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+	
+	private static class FixedNameNodeService implements RpcNameNodeService {
+		private FileInfo fileInfo;
+		private BlockInfo blockInfo;
+		
+		public FixedNameNodeService() {
+			this.fileInfo = new FileInfo();
+			this.blockInfo = new BlockInfo(new DataNodeInfo(0, 0, 0, new byte[]{127, 0, 0, 1}, 50020), 0, 0, 1048576, 0);
+		}
+
+		public short createFile(RpcRequestMessage.CreateFileReq request, RpcResponseMessage.CreateFileRes response, RpcNameNodeState errorState) {
+			response.setFileInfo(fileInfo);
+			response.setParentInfo(fileInfo);
+			response.setFileBlock(blockInfo);
+			response.setDirBlock(blockInfo);
+			return RpcErrors.ERR_OK;
+		}
+
+		public short getFile(RpcRequestMessage.GetFileReq request, RpcResponseMessage.GetFileRes response, RpcNameNodeState errorState) {
+			response.setFileInfo(fileInfo);
+			response.setFileBlock(blockInfo);
+			return RpcErrors.ERR_OK;
+		}
+
+		public short setFile(RpcRequestMessage.SetFileReq request, RpcResponseMessage.VoidRes response, RpcNameNodeState errorState) {
+			return RpcErrors.ERR_OK;
+		}
+
+		public short removeFile(RpcRequestMessage.RemoveFileReq request, RpcResponseMessage.DeleteFileRes response, RpcNameNodeState errorState) {
+			response.setFileInfo(fileInfo);
+			response.setParentInfo(fileInfo);
+			return RpcErrors.ERR_OK;
+		}
+
+		public short renameFile(RpcRequestMessage.RenameFileReq request, RpcResponseMessage.RenameRes response, RpcNameNodeState errorState) {
+			return RpcErrors.ERR_OK;
+		}
+
+		public short getDataNode(RpcRequestMessage.GetDataNodeReq request, RpcResponseMessage.GetDataNodeRes response, RpcNameNodeState errorState) {
+			return RpcErrors.ERR_OK;
+		}
+
+		public short setBlock(RpcRequestMessage.SetBlockReq request, RpcResponseMessage.VoidRes response, RpcNameNodeState errorState) {
+			return RpcErrors.ERR_OK;
+		}
+
+		public short getBlock(RpcRequestMessage.GetBlockReq request, RpcResponseMessage.GetBlockRes response, RpcNameNodeState errorState) {
+			response.setBlockInfo(blockInfo);
+			return RpcErrors.ERR_OK;
+		}
+
+		public short getBlockRange(RpcRequestMessage.GetBlockRangeReq request, RpcResponseMessage.GetBlockRangeRes response, RpcNameNodeState errorState) {
+			response.setBlockInfo(blockInfo);
+			return RpcErrors.ERR_OK;
+		}
+
+		public short getLocation(RpcRequestMessage.GetLocationReq request, RpcResponseMessage.GetLocationRes response, RpcNameNodeState errorState) {
+			response.setBlockInfo(blockInfo);
+			return RpcErrors.ERR_OK;
+		}
+
+		public short getLocationRange(RpcRequestMessage.GetLocationRangeReq request, RpcResponseMessage.GetLocationRangeRes response, RpcNameNodeState errorState) {
+			return RpcErrors.ERR_OK;
+		}
+
+		public short getChildren(RpcRequestMessage.GetChildrenReq request, RpcResponseMessage.GetChildrenRes response, RpcNameNodeState errorState) {
+			return RpcErrors.ERR_OK;
+		}
+
+		public short dump(RpcRequestMessage.DumpNameNodeReq request, RpcResponseMessage.VoidRes response, RpcNameNodeState errorState) {
+			return RpcErrors.ERR_OK;
+		}
+
+		public short ping(RpcRequestMessage.PingNameNodeReq request, RpcResponseMessage.PingNameNodeRes response, RpcNameNodeState errorState) {
+			response.setData(request.getOp() + 1);
+			return RpcErrors.ERR_OK;
+		}
+	}
+	
+	private static long allocatedBytes() {
+		long[] ids = threadBean.getAllThreadIds();
+		long bytes = 0;
+		for (long allocated : threadBean.getThreadAllocatedBytes(ids)){
+			bytes += Math.max(allocated, 0);
+		}
+		return bytes;
+	}
+	
+	private static void call(TcpRpcConnection connection, String operation, FileName fileName) throws Exception {
+		if (operation.equals("getFile")){
+			connection.getFile(fileName, false).get();
+		} else if (operation.equals("createFile")){
+			connection.createFile(fileName, CrailNodeType.DATAFILE, 0, 0, true, 0).get();
+		} else if (operation.equals("getBlock")){
+			connection.getBlock(1, 0, 0, 0, 0).get();
+		} else if (operation.equals("ping")){
+			connection.pingNameNode().get();
+		} else {
+			throw new Exception("unknown operation " + operation);
+		}
+	}
+	
+	private static void run(final TcpRpcConnection connection, final String operation, final int threads, final long loop) throws Exception {
+		Thread[] workers = new Thread[threads];
+		final long[] clientBytes = new long[threads];
+		final Exception[] failures = new Exception[threads];
+		for (int t = 0; t < threads; t++){
+			final int id = t;
+			workers[t] = new Thread(new Runnable() {
+				public void run() {
+					try {
+						FileName fileName = new FileName("/bench/file" + id);
+						long start = threadBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+						for (long i = 0; i < loop; i++){
+							call(connection, operation, fileName);
+						}
+						clientBytes[id] = threadBean.getThreadAllocatedBytes(Thread.currentThread().getId()) - start;
+					} catch(Exception e){
+						failures[id] = e;
+					}
+				}
+			});
+		}
+		long start = System.nanoTime();
+		long startBytes = allocatedBytes();
+		for (Thread worker : workers){
+			worker.start();
+		}
+		for (Thread worker : workers){
+			worker.join();
+		}
+		//the workers have terminated, their allocations no longer show up in the total
+		long endBytes = allocatedBytes();
+		long end = System.nanoTime();
+		for (Exception failure : failures){
+			if (failure != null){
+				throw failure;
+			}
+		}
+		long calls = loop*threads;
+		long client = 0;
+		for (long bytes : clientBytes){
+			client += bytes;
+		}
+		long server = Math.max(endBytes - startBytes, 0);
+		System.out.println("operation " + operation + ", threads " + threads + ", calls/sec " + (long) (((double) calls) / ((double) (end - start)) * 1000000000.0) 
+				+ ", client bytes/call " + client/calls + ", server bytes/call " + server/calls);
+	}
+
+	public static void main(String[] args) throws Exception {
+		String operation = "getFile";
+		int maxThreads = 1;
+		long loop = 1000000;
+		int port = 9070;
+
+		Option operationOption = Option.builder("o").desc("operation [getFile|createFile|getBlock|ping]").hasArg().build();
+		Option threadsOption = Option.builder("k").desc("maximum number of threads, doubled from 1 [1..n]").hasArg().build();
+		Option loopOption = Option.builder("n").desc("calls per thread [1..n]").hasArg().build();
+		Option batchOption = Option.builder("b").desc("max. requests per frame, sets " + TcpRpcConstants.NAMENODE_TCP_BATCHSIZE_KEY + " [1..n]").hasArg().build();
+		Option portOption = Option.builder("p").desc("loopback port of the dispatcher").hasArg().build();
+		Option helpOption = Option.builder("h").desc("show this help message").build();
+
+		Options options = new Options();
+		options.addOption(operationOption);
+		options.addOption(threadsOption);
+		options.addOption(loopOption);
+		options.addOption(batchOption);
+		options.addOption(portOption);
+		options.addOption(helpOption);
+
+		CommandLineParser parser = new DefaultParser();
+		CommandLine line = parser.parse(options, Arrays.copyOfRange(args, 0, args.length));
+		if (line.hasOption(helpOption.getOpt())) {
+			HelpFormatter formatter = new HelpFormatter();
+			formatter.printHelp("TcpRpcAllocationBenchmark", options);
+			System.exit(-1);
+		}
+		if (line.hasOption(operationOption.getOpt())) {
+			operation = line.getOptionValue(operationOption.getOpt());
+		}
+		if (line.hasOption(threadsOption.getOpt())) {
+			maxThreads = Integer.parseInt(line.getOptionValue(threadsOption.getOpt()));
+		}
+		if (line.hasOption(loopOption.getOpt())) {
+			loop = Long.parseLong(line.getOptionValue(loopOption.getOpt()));
+		}
+		if (line.hasOption(batchOption.getOpt())) {
+			TcpRpcConstants.NAMENODE_TCP_BATCHSIZE = Integer.parseInt(line.getOptionValue(batchOption.getOpt()));
+		}
+		if (line.hasOption(portOption.getOpt())) {
+			port = Integer.parseInt(line.getOptionValue(portOption.getOpt()));
+		}
+		if (!threadBean.isThreadAllocatedMemorySupported()){
+			throw new Exception("the JVM does not support measuring allocated memory per thread");
+		}
+		threadBean.setThreadAllocatedMemoryEnabled(true);
+		
+		InetSocketAddress address = new InetSocketAddress("127.0.0.1", port);
+		NaRPCServerGroup<TcpNameNodeRequest, TcpNameNodeResponse> serverGroup = new NaRPCServerGroup<TcpNameNodeRequest, TcpNameNodeResponse>(
+				new TcpRpcDispatcher(new FixedNameNodeService()), TcpRpcConstants.NAMENODE_TCP_QUEUEDEPTH, 
+				TcpRpcConstants.NAMENODE_TCP_MESSAGESIZE, true, TcpRpcConstants.NAMENODE_TCP_CORES);
+		final NaRPCServerEndpoint<TcpNameNodeRequest, TcpNameNodeResponse> serverEndpoint = serverGroup.createServerEndpoint();
+		serverEndpoint.bind(address);
+		Thread acceptor = new Thread(new Runnable() {
+			public void run() {
+				try {
+					while (true) {
+						serverEndpoint.accept();
+					}
+				} catch (Exception e) {
+				}
+			}
+		});
+		acceptor.setDaemon(true);
+		acceptor.start();
+		
+		NaRPCClientGroup<TcpNameNodeRequest, TcpNameNodeResponse> clientGroup = new NaRPCClientGroup<TcpNameNodeRequest, TcpNameNodeResponse>(
+				TcpRpcConstants.NAMENODE_TCP_QUEUEDEPTH, TcpRpcConstants.NAMENODE_TCP_MESSAGESIZE, true);
+		NaRPCEndpoint<TcpNameNodeRequest, TcpNameNodeResponse> endpoint = clientGroup.createEndpoint();
+		endpoint.connect(address);
+		TcpRpcConnection connection = new TcpRpcConnection(endpoint);
+		
+		//warm up
+		run(connection, operation, 1, Math.min(loop, 100000));
+		System.out.println(TcpRpcConstants.NAMENODE_TCP_BATCHSIZE_KEY + " " + TcpRpcConstants.NAMENODE_TCP_BATCHSIZE + ", calls/thread " + loop);
+		for (int threads = 1; threads <= maxThreads; threads *= 2){
+			run(connection, operation, threads, loop);
+		}
+		connection.close();
+		System.exit(0);
+	}
+}
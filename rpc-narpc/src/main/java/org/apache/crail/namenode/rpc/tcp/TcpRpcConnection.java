@@ -31,14 +31,56 @@ import org.apache.crail.utils.CrailUtils;
 import org.slf4j.Logger;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
 
+/*
+ * With crail.namenode.tcp.batchsize > 1 requests are not sent by the calling thread directly but queued. 
+ * Whichever caller acquires the transmit lock sends all queued requests, packing up to batchsize requests 
+ * into one frame as long as the requests and their responses fit into the message size. Under load, requests 
+ * issued while a frame is being sent are thus coalesced, the linger optionally delays a frame to collect more. 
+ * Every request keeps its own ticket and future, the namenode executes a batch in order and replies with one frame.
+ * A thread can also defer its requests explicitly. They are then held in a list of the thread, which is appended 
+ * to the queue and sent under the transmit lock once the thread flushes them, so the requests go out in as few 
+ * frames as the message size allows and are not picked up one by one by other threads sending in the meantime.
+ * 
+ * Requests are taken from a pool and returned as soon as they are serialized, responses are returned once their 
+ * future has completed. Only the response message and the future handed to the caller are allocated per call.
+ */
 public class TcpRpcConnection implements RpcConnection {
 	static private final Logger LOG = CrailUtils.getLogger();
+	//length and ticket prepended to every message by NaRPC
+	private static final int MESSAGE_HEADER = Integer.BYTES + Long.BYTES;
+	
 	private NaRPCEndpoint<TcpNameNodeRequest, TcpNameNodeResponse> endpoint;
+	private ConcurrentLinkedQueue<TcpFuture<?>> pendingRequests;
+	private ReentrantLock transmitLock;
+	private ThreadLocal<ArrayList<TcpFuture<?>>> deferred;
+	private AtomicLong sequencer;
+	private TcpFuture<?>[] frame;
+	private TcpNameNodeRequest[] frameRequests;
+	private TcpNameNodeRequest frameRequest;
+	private ArrayBlockingQueue<TcpNameNodeRequest> requestPool;
+	private ArrayBlockingQueue<TcpNameNodeResponse> responsePool;
 
 	public TcpRpcConnection(
 			NaRPCEndpoint<TcpNameNodeRequest, TcpNameNodeResponse> endpoint) {
 		this.endpoint = endpoint;
+		this.pendingRequests = new ConcurrentLinkedQueue<TcpFuture<?>>();
+		this.transmitLock = new ReentrantLock();
+		this.deferred = new ThreadLocal<ArrayList<TcpFuture<?>>>();
+		this.sequencer = new AtomicLong(0);
+		this.frame = new TcpFuture<?>[Math.max(1, TcpRpcConstants.NAMENODE_TCP_BATCHSIZE)];
+		this.frameRequests = new TcpNameNodeRequest[frame.length];
+		this.frameRequest = new TcpNameNodeRequest();
+		this.requestPool = new ArrayBlockingQueue<TcpNameNodeRequest>(Math.max(1, TcpRpcConstants.NAMENODE_TCP_QUEUEDEPTH));
+		this.responsePool = new ArrayBlockingQueue<TcpNameNodeResponse>(Math.max(1, TcpRpcConstants.NAMENODE_TCP_QUEUEDEPTH));
 	}
 
 	public String toString() {
@@ -50,138 +92,283 @@ public class TcpRpcConnection implements RpcConnection {
 		return address;
 	}
 
+	public void deferRequests() throws IOException {
+		if (TcpRpcConstants.NAMENODE_TCP_BATCHSIZE > 1 && deferred.get() == null){
+			deferred.set(new ArrayList<TcpFuture<?>>());
+		}
+	}
+	
+	public void flushRequests() throws IOException {
+		ArrayList<TcpFuture<?>> requests = deferred.get();
+		deferred.remove();
+		if (requests != null){
+			transmitDeferred(requests);
+		}
+	}
+	
+	//sends the requests deferred so far by the calling thread, which keeps deferring further requests
+	void flushDeferred() {
+		ArrayList<TcpFuture<?>> requests = deferred.get();
+		if (requests != null){
+			transmitDeferred(requests);
+		}
+	}
+
 	public void close() throws IOException {
 		this.endpoint.close();
 	}
 
 	public RpcFuture<RpcCreateFile> createFile(FileName fileName,
-			CrailNodeType type, int storageAffinity, int locationAffinity, boolean enumerable)
+			CrailNodeType type, int storageAffinity, int locationAffinity, boolean enumerable, int stripeWidth)
 			throws IOException {
-		RpcRequestMessage.CreateFileReq req = new RpcRequestMessage.CreateFileReq(fileName, type, storageAffinity, locationAffinity, enumerable);
+		TcpNameNodeRequest request = getRequest(RpcProtocol.CMD_CREATE_FILE);
+		request.createFile().set(fileName, type, storageAffinity, locationAffinity, enumerable, stripeWidth);
 		RpcResponseMessage.CreateFileRes resp = new RpcResponseMessage.CreateFileRes();
-
-		TcpNameNodeRequest request = new TcpNameNodeRequest(req);
-		TcpNameNodeResponse response = new TcpNameNodeResponse(resp);
-		request.setCommand(RpcProtocol.CMD_CREATE_FILE);
-		NaRPCFuture<TcpNameNodeRequest, TcpNameNodeResponse> future = endpoint.issueRequest(request, response);
-		return new TcpFuture<RpcCreateFile>(future, resp);
+		TcpNameNodeResponse response = getResponse(resp);
+		return issueRequest(request, response, resp);
 	}
 
 	public RpcFuture<RpcGetFile> getFile(FileName fileName, boolean b)
 			throws IOException {
-		RpcRequestMessage.GetFileReq req = new RpcRequestMessage.GetFileReq(fileName, b);
+		TcpNameNodeRequest request = getRequest(RpcProtocol.CMD_GET_FILE);
+		request.getFile().set(fileName, b);
 		RpcResponseMessage.GetFileRes resp = new RpcResponseMessage.GetFileRes();
-
-		TcpNameNodeRequest request = new TcpNameNodeRequest(req);
-		TcpNameNodeResponse response = new TcpNameNodeResponse(resp);
-		request.setCommand(RpcProtocol.CMD_GET_FILE);
-		NaRPCFuture<TcpNameNodeRequest, TcpNameNodeResponse> future = endpoint.issueRequest(request, response);
-		return new TcpFuture<RpcGetFile>(future, resp);
+		TcpNameNodeResponse response = getResponse(resp);
+		return issueRequest(request, response, resp);
 	}
 
 	public RpcFuture<RpcVoid> setFile(FileInfo fileInfo, boolean b)
 			throws IOException {
-		RpcRequestMessage.SetFileReq req = new RpcRequestMessage.SetFileReq(fileInfo, b);
+		TcpNameNodeRequest request = getRequest(RpcProtocol.CMD_SET_FILE);
+		request.setFile().set(fileInfo, b);
 		RpcResponseMessage.VoidRes resp = new RpcResponseMessage.VoidRes();
-
-		TcpNameNodeRequest request = new TcpNameNodeRequest(req);
-		TcpNameNodeResponse response = new TcpNameNodeResponse(resp);
-		request.setCommand(RpcProtocol.CMD_SET_FILE);
-		NaRPCFuture<TcpNameNodeRequest, TcpNameNodeResponse> future = endpoint.issueRequest(request, response);
-		return new TcpFuture<RpcVoid>(future, resp);
+		TcpNameNodeResponse response = getResponse(resp);
+		return issueRequest(request, response, resp);
 	}
 
 	public RpcFuture<RpcDeleteFile> removeFile(FileName fileName, boolean b)
 			throws IOException {
-		RpcRequestMessage.RemoveFileReq req = new RpcRequestMessage.RemoveFileReq(fileName, b);
+		TcpNameNodeRequest request = getRequest(RpcProtocol.CMD_REMOVE_FILE);
+		request.removeFile().set(fileName, b);
 		RpcResponseMessage.DeleteFileRes resp = new RpcResponseMessage.DeleteFileRes();
-
-		TcpNameNodeRequest request = new TcpNameNodeRequest(req);
-		TcpNameNodeResponse response = new TcpNameNodeResponse(resp);
-		request.setCommand(RpcProtocol.CMD_REMOVE_FILE);
-		NaRPCFuture<TcpNameNodeRequest, TcpNameNodeResponse> future = endpoint.issueRequest(request, response);
-		return new TcpFuture<RpcDeleteFile>(future, resp);
+		TcpNameNodeResponse response = getResponse(resp);
+		return issueRequest(request, response, resp);
 	}
 
 	public RpcFuture<RpcRenameFile> renameFile(FileName fileName,
 			FileName fileName1) throws IOException {
-		RpcRequestMessage.RenameFileReq req = new RpcRequestMessage.RenameFileReq(fileName, fileName1);
+		TcpNameNodeRequest request = getRequest(RpcProtocol.CMD_RENAME_FILE);
+		request.renameFile().set(fileName, fileName1);
 		RpcResponseMessage.RenameRes resp = new RpcResponseMessage.RenameRes();
-
-		TcpNameNodeRequest request = new TcpNameNodeRequest(req);
-		TcpNameNodeResponse response = new TcpNameNodeResponse(resp);
-		request.setCommand(RpcProtocol.CMD_RENAME_FILE);
-		NaRPCFuture<TcpNameNodeRequest, TcpNameNodeResponse> future = endpoint.issueRequest(request, response);
-		return new TcpFuture<RpcRenameFile>(future, resp);
+		TcpNameNodeResponse response = getResponse(resp);
+		return issueRequest(request, response, resp);
 	}
 
-	public RpcFuture<RpcGetBlock> getBlock(long fd, long token, long position,
+	public RpcFuture<RpcGetBlock> getBlock(long fd, long token, long version, long position,
 			long capacity) throws IOException {
-		RpcRequestMessage.GetBlockReq req = new RpcRequestMessage.GetBlockReq(fd, token, position, capacity);
+		TcpNameNodeRequest request = getRequest(RpcProtocol.CMD_GET_BLOCK);
+		request.getBlock().set(fd, token, version, position, capacity);
 		RpcResponseMessage.GetBlockRes resp = new RpcResponseMessage.GetBlockRes();
+		TcpNameNodeResponse response = getResponse(resp);
+		return issueRequest(request, response, resp);
+	}
 
-		TcpNameNodeRequest request = new TcpNameNodeRequest(req);
-		TcpNameNodeResponse response = new TcpNameNodeResponse(resp);
-		request.setCommand(RpcProtocol.CMD_GET_BLOCK);
-		NaRPCFuture<TcpNameNodeRequest, TcpNameNodeResponse> future = endpoint.issueRequest(request, response);
-		return new TcpFuture<RpcGetBlock>(future, resp);
+	public RpcFuture<RpcGetBlockRange> getBlockRange(long fd, long token, long version, long position,
+			long capacity, int count) throws IOException {
+		TcpNameNodeRequest request = getRequest(RpcProtocol.CMD_GET_BLOCK_RANGE);
+		request.getBlockRange().set(fd, token, version, position, capacity, count);
+		RpcResponseMessage.GetBlockRangeRes resp = new RpcResponseMessage.GetBlockRangeRes();
+		TcpNameNodeResponse response = getResponse(resp);
+		return issueRequest(request, response, resp);
 	}
 
 	public RpcFuture<RpcGetLocation> getLocation(FileName fileName, long l)
 			throws IOException {
-		RpcRequestMessage.GetLocationReq req = new RpcRequestMessage.GetLocationReq(fileName, l);
+		TcpNameNodeRequest request = getRequest(RpcProtocol.CMD_GET_LOCATION);
+		request.getLocation().set(fileName, l);
 		RpcResponseMessage.GetLocationRes resp = new RpcResponseMessage.GetLocationRes();
+		TcpNameNodeResponse response = getResponse(resp);
+		return issueRequest(request, response, resp);
+	}
 
-		TcpNameNodeRequest request = new TcpNameNodeRequest(req);
-		TcpNameNodeResponse response = new TcpNameNodeResponse(resp);
-		request.setCommand(RpcProtocol.CMD_GET_LOCATION);
-		NaRPCFuture<TcpNameNodeRequest, TcpNameNodeResponse> future = endpoint.issueRequest(request, response);
-		return new TcpFuture<RpcGetLocation>(future, resp);
+	public RpcFuture<RpcGetLocationRange> getLocationRange(FileName fileName, long position, long length)
+			throws IOException {
+		TcpNameNodeRequest request = getRequest(RpcProtocol.CMD_GET_LOCATION_RANGE);
+		request.getLocationRange().set(fileName, position, length);
+		RpcResponseMessage.GetLocationRangeRes resp = new RpcResponseMessage.GetLocationRangeRes();
+		TcpNameNodeResponse response = getResponse(resp);
+		return issueRequest(request, response, resp);
+	}
+
+	public RpcFuture<RpcGetChildren> getChildren(FileName directory, int[] components, int count, boolean blocks)
+			throws IOException {
+		TcpNameNodeRequest request = getRequest(RpcProtocol.CMD_GET_CHILDREN);
+		request.getChildren().set(directory, components, count, blocks);
+		RpcResponseMessage.GetChildrenRes resp = new RpcResponseMessage.GetChildrenRes();
+		TcpNameNodeResponse response = getResponse(resp);
+		return issueRequest(request, response, resp);
 	}
 
 	public RpcFuture<RpcVoid> setBlock(BlockInfo blockInfo) throws Exception {
-		RpcRequestMessage.SetBlockReq req = new RpcRequestMessage.SetBlockReq(blockInfo);
+		TcpNameNodeRequest request = getRequest(RpcProtocol.CMD_SET_BLOCK);
+		request.setBlock().set(blockInfo);
 		RpcResponseMessage.VoidRes resp = new RpcResponseMessage.VoidRes();
-
-		TcpNameNodeRequest request = new TcpNameNodeRequest(req);
-		TcpNameNodeResponse response = new TcpNameNodeResponse(resp);
-		request.setCommand(RpcProtocol.CMD_SET_BLOCK);
-		NaRPCFuture<TcpNameNodeRequest, TcpNameNodeResponse> future = endpoint.issueRequest(request, response);
-		return new TcpFuture<RpcVoid>(future, resp);
+		TcpNameNodeResponse response = getResponse(resp);
+		return issueRequest(request, response, resp);
 	}
 
 	public RpcFuture<RpcGetDataNode> getDataNode(DataNodeInfo dataNodeInfo)
 			throws Exception {
-		RpcRequestMessage.GetDataNodeReq req = new RpcRequestMessage.GetDataNodeReq(dataNodeInfo);
+		TcpNameNodeRequest request = getRequest(RpcProtocol.CMD_GET_DATANODE);
+		request.getDataNode().set(dataNodeInfo);
 		RpcResponseMessage.GetDataNodeRes resp = new RpcResponseMessage.GetDataNodeRes();
-
-		TcpNameNodeRequest request = new TcpNameNodeRequest(req);
-		TcpNameNodeResponse response = new TcpNameNodeResponse(resp);
-		request.setCommand(RpcProtocol.CMD_GET_DATANODE);
-		NaRPCFuture<TcpNameNodeRequest, TcpNameNodeResponse> future = endpoint.issueRequest(request, response);
-		return new TcpFuture<RpcGetDataNode>(future, resp);
+		TcpNameNodeResponse response = getResponse(resp);
+		return issueRequest(request, response, resp);
 	}
 
 	public RpcFuture<RpcVoid> dumpNameNode() throws Exception {
-		RpcRequestMessage.DumpNameNodeReq req = new RpcRequestMessage.DumpNameNodeReq();
+		TcpNameNodeRequest request = getRequest(RpcProtocol.CMD_DUMP_NAMENODE);
 		RpcResponseMessage.VoidRes resp = new RpcResponseMessage.VoidRes();
-
-		TcpNameNodeRequest request = new TcpNameNodeRequest(req);
-		TcpNameNodeResponse response = new TcpNameNodeResponse(resp);
-		request.setCommand(RpcProtocol.CMD_DUMP_NAMENODE);
-		NaRPCFuture<TcpNameNodeRequest, TcpNameNodeResponse> future = endpoint.issueRequest(request, response);
-		return new TcpFuture<RpcVoid>(future, resp);
+		TcpNameNodeResponse response = getResponse(resp);
+		return issueRequest(request, response, resp);
 	}
 
 	public RpcFuture<RpcPing> pingNameNode() throws Exception {
-		RpcRequestMessage.PingNameNodeReq req = new RpcRequestMessage.PingNameNodeReq();
+		TcpNameNodeRequest request = getRequest(RpcProtocol.CMD_PING_NAMENODE);
 		RpcResponseMessage.PingNameNodeRes resp = new RpcResponseMessage.PingNameNodeRes();
-
-		TcpNameNodeRequest request = new TcpNameNodeRequest(req);
-		TcpNameNodeResponse response = new TcpNameNodeResponse(resp);
-		request.setCommand(RpcProtocol.CMD_PING_NAMENODE);
-		NaRPCFuture<TcpNameNodeRequest, TcpNameNodeResponse> future = endpoint.issueRequest(request, response);
-		return new TcpFuture<RpcPing>(future, resp);
+		TcpNameNodeResponse response = getResponse(resp);
+		return issueRequest(request, response, resp);
 	}
 
-}
\ No newline at end of file
+	//requests and responses beyond the pool capacity are left to the garbage collector
+	private TcpNameNodeRequest getRequest(short cmd) {
+		TcpNameNodeRequest request = requestPool.poll();
+		if (request == null){
+			request = new TcpNameNodeRequest();
+		}
+		request.setCommand(cmd);
+		request.setType(RpcProtocol.requestTypes[cmd]);
+		return request;
+	}
+	
+	private TcpNameNodeResponse getResponse(RpcProtocol.NameNodeRpcMessage message) {
+		TcpNameNodeResponse response = responsePool.poll();
+		if (response == null){
+			response = new TcpNameNodeResponse(message);
+		} else {
+			response.bind(message);
+		}
+		return response;
+	}
+	
+	void releaseResponse(TcpNameNodeResponse response) {
+		responsePool.offer(response);
+	}
+	
+	private <T> TcpFuture<T> issueRequest(TcpNameNodeRequest request, TcpNameNodeResponse response, T resp) throws IOException {
+		if (TcpRpcConstants.NAMENODE_TCP_BATCHSIZE <= 1){
+			try {
+				NaRPCFuture<TcpNameNodeRequest, TcpNameNodeResponse> future = endpoint.issueRequest(request, response);
+				return new TcpFuture<T>(future, response, resp, this);
+			} finally {
+				requestPool.offer(request);
+			}
+		}
+		TcpFuture<T> future = new TcpFuture<T>(request, response, resp, sequencer.incrementAndGet(), this);
+		ArrayList<TcpFuture<?>> requests = deferred.get();
+		if (requests != null){
+			requests.add(future);
+			return future;
+		}
+		pendingRequests.add(future);
+		transmitPending();
+		return future;
+	}
+	
+	//the transmit lock is taken before the requests are queued, the thread sends them itself
+	private void transmitDeferred(ArrayList<TcpFuture<?>> requests) {
+		if (requests.isEmpty()){
+			return;
+		}
+		transmitLock.lock();
+		try {
+			pendingRequests.addAll(requests);
+			requests.clear();
+			while(!pendingRequests.isEmpty()){
+				transmitFrame();
+			}
+		} finally {
+			transmitLock.unlock();
+		}
+		transmitPending();
+	}
+	
+	//the queue is re-checked after releasing the lock, a request queued while another thread 
+	//was about to release the lock would otherwise not be sent
+	private void transmitPending() {
+		while(!pendingRequests.isEmpty() && transmitLock.tryLock()){
+			try {
+				if (TcpRpcConstants.NAMENODE_TCP_LINGER > 0){
+					LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(TcpRpcConstants.NAMENODE_TCP_LINGER));
+				}
+				while(!pendingRequests.isEmpty()){
+					transmitFrame();
+				}
+			} finally {
+				transmitLock.unlock();
+			}
+		}
+	}
+	
+	private void transmitFrame() {
+		int capacity = TcpRpcConstants.NAMENODE_TCP_MESSAGESIZE - MESSAGE_HEADER - TcpNameNodeRequest.BATCH_HEADER;
+		int requestSize = 0;
+		int responseSize = 0;
+		int count = 0;
+		while(count < frame.length){
+			TcpFuture<?> next = pendingRequests.peek();
+			if (next == null){
+				break;
+			}
+			int nextRequestSize = next.getRequest().frameSize();
+			int nextResponseSize = TcpNameNodeResponse.frameSize(next.getFrameResponse().getType());
+			if (count > 0 && (requestSize + nextRequestSize > capacity || responseSize + nextResponseSize > capacity)){
+				break;
+			}
+			frame[count] = pendingRequests.poll();
+			frameRequests[count] = frame[count].getRequest();
+			count++;
+			requestSize += nextRequestSize;
+			responseSize += nextResponseSize;
+		}
+		
+		try {
+			NaRPCFuture<TcpNameNodeRequest, TcpNameNodeResponse> future = null;
+			if (count == 1){
+				future = endpoint.issueRequest(frameRequests[0], frame[0].getFrameResponse());
+			} else {
+				//the frame request is serialized right away, the frame response is filled when the reply arrives
+				TcpNameNodeResponse[] responses = new TcpNameNodeResponse[count];
+				for (int i = 0; i < count; i++){
+					responses[i] = frame[i].getFrameResponse();
+				}
+				frameRequest.setBatch(frameRequests, count);
+				future = endpoint.issueRequest(frameRequest, new TcpNameNodeResponse(responses, count));
+			}
+			for (int i = 0; i < count; i++){
+				frame[i].issued(future);
+			}
+		} catch(IOException e){
+			LOG.info("failed to send " + count + " requests, " + e.getMessage());
+			for (int i = 0; i < count; i++){
+				frame[i].failed(e);
+			}
+		} finally {
+			for (int i = 0; i < count; i++){
+				requestPool.offer(frameRequests[i]);
+			}
+			Arrays.fill(frame, 0, count, null);
+			Arrays.fill(frameRequests, 0, count, null);
+		}
+	}
+}
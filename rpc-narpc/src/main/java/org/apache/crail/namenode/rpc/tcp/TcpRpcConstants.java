@@ -31,11 +31,19 @@ public class TcpRpcConstants {
 	public static int NAMENODE_TCP_QUEUEDEPTH = 32;
 	
 	public static final String NAMENODE_TCP_MESSAGESIZE_KEY = "crail.namenode.tcp.messageSize";
-	public static int NAMENODE_TCP_MESSAGESIZE = 512;	
+	public static int NAMENODE_TCP_MESSAGESIZE = 1024;	
 	
 	public static final String NAMENODE_TCP_CORES_KEY = "crail.namenode.tcp.cores";
 	public static int NAMENODE_TCP_CORES = 1;	
 	
+	//max. number of requests a client sends to the namenode in one frame, 1 sends every request on its own
+	public static final String NAMENODE_TCP_BATCHSIZE_KEY = "crail.namenode.tcp.batchsize";
+	public static int NAMENODE_TCP_BATCHSIZE = 16;
+	
+	//microseconds a client waits for more requests before sending a frame
+	public static final String NAMENODE_TCP_LINGER_KEY = "crail.namenode.tcp.linger";
+	public static long NAMENODE_TCP_LINGER = 0;
+	
 	public static void updateConstants(CrailConfiguration conf){
 		if (conf.get(NAMENODE_TCP_QUEUEDEPTH_KEY) != null) {
 			NAMENODE_TCP_QUEUEDEPTH = Integer.parseInt(conf.get(NAMENODE_TCP_QUEUEDEPTH_KEY));
@@ -46,14 +54,28 @@ public class TcpRpcConstants {
 		if (conf.get(NAMENODE_TCP_CORES_KEY) != null) {
 			NAMENODE_TCP_CORES = Integer.parseInt(conf.get(NAMENODE_TCP_CORES_KEY));
 		}		
+		if (conf.get(NAMENODE_TCP_BATCHSIZE_KEY) != null) {
+			NAMENODE_TCP_BATCHSIZE = Integer.parseInt(conf.get(NAMENODE_TCP_BATCHSIZE_KEY));
+		}
+		if (conf.get(NAMENODE_TCP_LINGER_KEY) != null) {
+			NAMENODE_TCP_LINGER = Long.parseLong(conf.get(NAMENODE_TCP_LINGER_KEY));
+		}
 	}
 	
 	public static void verify() throws IOException {
+		if (NAMENODE_TCP_BATCHSIZE > Short.MAX_VALUE){
+			throw new IOException(NAMENODE_TCP_BATCHSIZE_KEY + " must not exceed " + Short.MAX_VALUE);
+		}
+		if (NAMENODE_TCP_LINGER < 0){
+			throw new IOException(NAMENODE_TCP_LINGER_KEY + " must not be negative");
+		}
 	}
 
 	public static void printConf(Logger logger) {
 		LOG.info(NAMENODE_TCP_QUEUEDEPTH_KEY + " " + NAMENODE_TCP_QUEUEDEPTH);
 		LOG.info(NAMENODE_TCP_MESSAGESIZE_KEY + " " + NAMENODE_TCP_MESSAGESIZE);
 		LOG.info(NAMENODE_TCP_CORES_KEY + " " + NAMENODE_TCP_CORES);
+		LOG.info(NAMENODE_TCP_BATCHSIZE_KEY + " " + NAMENODE_TCP_BATCHSIZE);
+		LOG.info(NAMENODE_TCP_LINGER_KEY + " " + NAMENODE_TCP_LINGER);
 	}	
 }
@@ -30,9 +30,23 @@ import org.slf4j.Logger;
 public class TcpRpcDispatcher implements NaRPCService<TcpNameNodeRequest, TcpNameNodeResponse> {
 	public static final Logger LOG = CrailUtils.getLogger();
 	private RpcNameNodeService service;
+	//a dispatcher thread sends the response of a request before it reads the next request, 
+	//every thread can therefore fill the same response objects over and over
+	private ThreadLocal<TcpNameNodeResponse> responses;
+	private ThreadLocal<TcpNameNodeResponse> batchResponses;
 	
 	public TcpRpcDispatcher(RpcNameNodeService service) {
 		this.service = service;
+		this.responses = new ThreadLocal<TcpNameNodeResponse>(){
+			protected TcpNameNodeResponse initialValue() {
+				return new TcpNameNodeResponse();
+			}
+		};
+		this.batchResponses = new ThreadLocal<TcpNameNodeResponse>(){
+			protected TcpNameNodeResponse initialValue() {
+				return new TcpNameNodeResponse();
+			}
+		};
 	}
 
 	@Override
@@ -42,11 +56,26 @@ public class TcpRpcDispatcher implements NaRPCService<TcpNameNodeRequest, TcpNam
 
 	@Override
 	public TcpNameNodeResponse processRequest(TcpNameNodeRequest request) {
-		TcpNameNodeResponse response = new TcpNameNodeResponse();
+		if (request.getCmd() != TcpNameNodeRequest.CMD_BATCH){
+			return processSingle(request, responses.get());
+		}
+		
+		//the requests of a batch are executed in order and answered in one frame
+		int batchSize = request.getBatchSize();
+		TcpNameNodeResponse response = batchResponses.get();
+		response.setBatch(batchSize);
+		for (int i = 0; i < batchSize; i++){
+			processSingle(request.getBatch(i), response.getBatch(i));
+		}
+		return response;
+	}
+	
+	private TcpNameNodeResponse processSingle(TcpNameNodeRequest request, TcpNameNodeResponse response) {
+		response.reset(RpcProtocol.RES_VOID);
 		short error = RpcErrors.ERR_OK;
 		try {
 			short type = RpcProtocol.responseTypes[request.getCmd()];
-			response.setType(type);
+			response.reset(type);
 			switch(request.getCmd()) {
 			case RpcProtocol.CMD_CREATE_FILE:
 				error = service.createFile(request.createFile(), response.createFile(), response);
@@ -66,9 +95,18 @@ public class TcpRpcDispatcher implements NaRPCService<TcpNameNodeRequest, TcpNam
 			case RpcProtocol.CMD_GET_BLOCK:
 				error = service.getBlock(request.getBlock(), response.getBlock(), response);
 				break;
+			case RpcProtocol.CMD_GET_BLOCK_RANGE:
+				error = service.getBlockRange(request.getBlockRange(), response.getBlockRange(), response);
+				break;
 			case RpcProtocol.CMD_GET_LOCATION:
 				error = service.getLocation(request.getLocation(), response.getLocation(), response);
 				break;				
+			case RpcProtocol.CMD_GET_LOCATION_RANGE:
+				error = service.getLocationRange(request.getLocationRange(), response.getLocationRange(), response);
+				break;				
+			case RpcProtocol.CMD_GET_CHILDREN:
+				error = service.getChildren(request.getChildren(), response.getChildren(), response);
+				break;				
 			case RpcProtocol.CMD_SET_BLOCK:
 				error = service.setBlock(request.setBlock(), response.getVoid(), response);
 				break;
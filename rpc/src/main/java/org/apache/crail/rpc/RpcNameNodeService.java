@@ -54,10 +54,22 @@ public interface RpcNameNodeService {
 			RpcResponseMessage.GetBlockRes response, RpcNameNodeState errorState)
 			throws Exception;
 
+	public abstract short getBlockRange(RpcRequestMessage.GetBlockRangeReq request,
+			RpcResponseMessage.GetBlockRangeRes response, RpcNameNodeState errorState)
+			throws Exception;
+
 	public abstract short getLocation(RpcRequestMessage.GetLocationReq request,
 			RpcResponseMessage.GetLocationRes response, RpcNameNodeState errorState)
 			throws Exception;
 
+	public abstract short getLocationRange(RpcRequestMessage.GetLocationRangeReq request,
+			RpcResponseMessage.GetLocationRangeRes response, RpcNameNodeState errorState)
+			throws Exception;
+
+	public abstract short getChildren(RpcRequestMessage.GetChildrenReq request,
+			RpcResponseMessage.GetChildrenRes response, RpcNameNodeState errorState)
+			throws Exception;
+
 	public abstract short dump(RpcRequestMessage.DumpNameNodeReq request,
 			RpcResponseMessage.VoidRes response, RpcNameNodeState errorState)
 			throws Exception;
@@ -40,6 +40,9 @@ public class RpcProtocol extends RpcErrors {
 	public static final short CMD_DUMP_NAMENODE = 10;
 	public static final short CMD_PING_NAMENODE = 11;
 	public static final short CMD_GET_DATANODE = 12;
+	public static final short CMD_GET_BLOCK_RANGE = 13;
+	public static final short CMD_GET_LOCATION_RANGE = 14;
+	public static final short CMD_GET_CHILDREN = 15;
 	
 	//request types
 	public static final short REQ_CREATE_FILE = 1;	
@@ -53,6 +56,9 @@ public class RpcProtocol extends RpcErrors {
 	public static final short REQ_DUMP_NAMENODE = 10;
 	public static final short REQ_PING_NAMENODE = 11;
 	public static final short REQ_GET_DATANODE = 12;
+	public static final short REQ_GET_BLOCK_RANGE = 13;
+	public static final short REQ_GET_LOCATION_RANGE = 14;
+	public static final short REQ_GET_CHILDREN = 15;
 	
 	//response types
 	public static final short RES_VOID = 1;
@@ -64,6 +70,9 @@ public class RpcProtocol extends RpcErrors {
 	public static final short RES_GET_LOCATION = 7;
 	public static final short RES_PING_NAMENODE = 9;
 	public static final short RES_GET_DATANODE = 10;
+	public static final short RES_GET_BLOCK_RANGE = 11;
+	public static final short RES_GET_LOCATION_RANGE = 12;
+	public static final short RES_GET_CHILDREN = 13;
 	
 	
 	static {
@@ -79,6 +88,9 @@ public class RpcProtocol extends RpcErrors {
 		requestTypes[CMD_DUMP_NAMENODE] = REQ_DUMP_NAMENODE;
 		requestTypes[CMD_PING_NAMENODE] = REQ_PING_NAMENODE;	
 		requestTypes[CMD_GET_DATANODE] = REQ_GET_DATANODE;
+		requestTypes[CMD_GET_BLOCK_RANGE] = REQ_GET_BLOCK_RANGE;
+		requestTypes[CMD_GET_LOCATION_RANGE] = REQ_GET_LOCATION_RANGE;
+		requestTypes[CMD_GET_CHILDREN] = REQ_GET_CHILDREN;
 		
 		responseTypes[0] = 0;
 		responseTypes[CMD_CREATE_FILE] = RES_CREATE_FILE;
@@ -92,6 +104,9 @@ public class RpcProtocol extends RpcErrors {
 		responseTypes[CMD_DUMP_NAMENODE] = RES_VOID;
 		responseTypes[CMD_PING_NAMENODE] = RES_PING_NAMENODE;	
 		responseTypes[CMD_GET_DATANODE] = RES_GET_DATANODE;
+		responseTypes[CMD_GET_BLOCK_RANGE] = RES_GET_BLOCK_RANGE;
+		responseTypes[CMD_GET_LOCATION_RANGE] = RES_GET_LOCATION_RANGE;
+		responseTypes[CMD_GET_CHILDREN] = RES_GET_CHILDREN;
 	}
 	
 
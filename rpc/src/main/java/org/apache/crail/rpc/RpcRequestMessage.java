@@ -29,13 +29,14 @@ import org.apache.crail.metadata.FileName;
 
 public class RpcRequestMessage {
 	public static class CreateFileReq implements RpcProtocol.NameNodeRpcMessage {
-		public static int CSIZE = FileName.CSIZE + 16;
+		public static int CSIZE = FileName.CSIZE + 20;
 		
 		protected FileName filename;
 		protected CrailNodeType type;
 		protected int storageClass;
 		protected int locationClass;
 		protected boolean enumerable;
+		protected int stripeWidth;
 		
 		public CreateFileReq(){
 			this.filename = new FileName();
@@ -43,14 +44,26 @@ public class RpcRequestMessage {
 			this.storageClass = 0;
 			this.locationClass = 0;
 			this.enumerable = true;
+			this.stripeWidth = 0;
+		}
+		
+		public CreateFileReq(FileName filename, CrailNodeType type, int storageClass, int locationClass, boolean enumerable, int stripeWidth) {
+			this.filename = filename;
+			this.type = type;
+			this.storageClass = storageClass;
+			this.locationClass = locationClass;
+			this.enumerable = enumerable;
+			this.stripeWidth = stripeWidth;
 		}
 		
-		public CreateFileReq(FileName filename, CrailNodeType type, int storageClass, int locationClass, boolean enumerable) {
+		//refills the request, lets clients reuse request objects across calls
+		public void set(FileName filename, CrailNodeType type, int storageClass, int locationClass, boolean enumerable, int stripeWidth) {
 			this.filename = filename;
 			this.type = type;
 			this.storageClass = storageClass;
 			this.locationClass = locationClass;
 			this.enumerable = enumerable;
+			this.stripeWidth = stripeWidth;
 		}
 
 		public FileName getFileName() {
@@ -72,6 +85,11 @@ public class RpcRequestMessage {
 		public boolean isEnumerable() {
 			return enumerable;
 		}
+		
+		//0 if the node takes the stripe width of its parent
+		public int getStripeWidth() {
+			return stripeWidth;
+		}
 
 		public int size() {
 			return CSIZE;
@@ -87,6 +105,7 @@ public class RpcRequestMessage {
 			buffer.putInt(storageClass);
 			buffer.putInt(locationClass);
 			buffer.putInt(enumerable ? 1 : 0);
+			buffer.putInt(stripeWidth);
 			
 			return CSIZE;
 		}		
@@ -99,13 +118,14 @@ public class RpcRequestMessage {
 			locationClass = buffer.getInt();
 			int _enumerable = buffer.getInt();
 			enumerable = (_enumerable == 1) ? true : false;			
+			stripeWidth = buffer.getInt();
 		}
 
 		@Override
 		public String toString() {
 			return "CreateFileReq [filename=" + filename + ", type=" + type
 					+ ", storageClass=" + storageClass + ", locationClass="
-					+ locationClass + ", enumerable=" + enumerable + "]";
+					+ locationClass + ", enumerable=" + enumerable + ", stripeWidth=" + stripeWidth + "]";
 		}
 	}
 	
@@ -124,6 +144,11 @@ public class RpcRequestMessage {
 			this.filename = filename;
 			this.writeable = writeable;
 		}
+		
+		public void set(FileName filename, boolean writeable) {
+			this.filename = filename;
+			this.writeable = writeable;
+		}
 
 		public FileName getFileName() {
 			return filename;
@@ -170,6 +195,11 @@ public class RpcRequestMessage {
 			this.fileInfo = fileInfo;
 			this.close = close;
 		}
+		
+		public void set(FileInfo fileInfo, boolean close) {
+			this.fileInfo = fileInfo;
+			this.close = close;
+		}
 
 		public FileInfo getFileInfo() {
 			return fileInfo;
@@ -225,6 +255,11 @@ public class RpcRequestMessage {
 			this.filename = filename;
 			this.recursive = recursive;
 		}
+		
+		public void set(FileName filename, boolean recursive) {
+			this.filename = filename;
+			this.recursive = recursive;
+		}
 
 		public FileName getFileName() {
 			return filename;
@@ -271,6 +306,11 @@ public class RpcRequestMessage {
 			this.srcFileName = srcFileName;
 			this.dstFileName = dstFileName;
 		}
+		
+		public void set(FileName srcFileName, FileName dstFileName) {
+			this.srcFileName = srcFileName;
+			this.dstFileName = dstFileName;
+		}
 
 		public FileName getSrcFileName() {
 			return srcFileName;
@@ -308,23 +348,34 @@ public class RpcRequestMessage {
 	}	
 	
 	public static class GetBlockReq implements RpcProtocol.NameNodeRpcMessage {
-		public static int CSIZE = 32;
+		public static int CSIZE = 40;
 		
 		protected long fd;
 		protected long token;
+		protected long version;
 		protected long position;
 		protected long capacity;
 
 		public GetBlockReq(){
 			this.fd = 0;
 			this.token = 0;
+			this.version = 0;
 			this.position = 0;
 			this.capacity = 0;	
 		}
 		
-		public GetBlockReq(long fd, long token, long position, long capacity) {
+		public GetBlockReq(long fd, long token, long version, long position, long capacity) {
 			this.fd = fd;
 			this.token = token;
+			this.version = version;
+			this.position = position;
+			this.capacity = capacity;
+		}
+		
+		public void set(long fd, long token, long version, long position, long capacity) {
+			this.fd = fd;
+			this.token = token;
+			this.version = version;
 			this.position = position;
 			this.capacity = capacity;
 		}
@@ -341,6 +392,11 @@ public class RpcRequestMessage {
 			return token;
 		}
 		
+		//the node version the client looked up, 0 if it does not know it
+		public long getVersion() {
+			return version;
+		}
+		
 		public long getCapacity(){
 			return capacity;
 		}
@@ -357,6 +413,7 @@ public class RpcRequestMessage {
 		public int write(ByteBuffer buffer) {
 			buffer.putLong(fd);
 			buffer.putLong(token);
+			buffer.putLong(version);
 			buffer.putLong(position);
 			buffer.putLong(capacity);
 			return CSIZE;
@@ -365,18 +422,127 @@ public class RpcRequestMessage {
 		public void update(ByteBuffer buffer) {
 			fd = buffer.getLong();
 			token = buffer.getLong();
+			version = buffer.getLong();
 			position = buffer.getLong();
 			capacity = buffer.getLong();
 		}
 
 		@Override
 		public String toString() {
-			return "GetBlockReq [fd=" + fd + ", token=" + token + ", position="
+			return "GetBlockReq [fd=" + fd + ", token=" + token + ", version=" + version + ", position="
 					+ position + ", capacity=" + capacity + "]";
 		}
 
 		public void setToken(long value) {
 			this.token = value;
+		}
+		
+		public void setVersion(long value) {
+			this.version = value;
+		}		
+	}
+	
+	public static class GetBlockRangeReq implements RpcProtocol.NameNodeRpcMessage {
+		public static int CSIZE = 44;
+		
+		protected long fd;
+		protected long token;
+		protected long version;
+		protected long position;
+		protected long capacity;
+		protected int count;
+
+		public GetBlockRangeReq(){
+			this.fd = 0;
+			this.token = 0;
+			this.version = 0;
+			this.position = 0;
+			this.capacity = 0;	
+			this.count = 0;
+		}
+		
+		public GetBlockRangeReq(long fd, long token, long version, long position, long capacity, int count) {
+			this.fd = fd;
+			this.token = token;
+			this.version = version;
+			this.position = position;
+			this.capacity = capacity;
+			this.count = count;
+		}
+		
+		public void set(long fd, long token, long version, long position, long capacity, int count) {
+			this.fd = fd;
+			this.token = token;
+			this.version = version;
+			this.position = position;
+			this.capacity = capacity;
+			this.count = count;
+		}
+
+		public long getFd() {
+			return fd;
+		}
+
+		public long getPosition(){
+			return this.position;
+		}
+
+		public long getToken() {
+			return token;
+		}
+		
+		//the node version the client looked up, 0 if it does not know it
+		public long getVersion() {
+			return version;
+		}
+		
+		public long getCapacity(){
+			return capacity;
+		}
+		
+		public int getCount(){
+			return count;
+		}
+		
+		public int size() {
+			return CSIZE;
+		}
+		
+		public short getType(){
+			return RpcProtocol.REQ_GET_BLOCK_RANGE;
+		}		
+		
+		public int write(ByteBuffer buffer) {
+			buffer.putLong(fd);
+			buffer.putLong(token);
+			buffer.putLong(version);
+			buffer.putLong(position);
+			buffer.putLong(capacity);
+			buffer.putInt(count);
+			return CSIZE;
+		}		
+
+		public void update(ByteBuffer buffer) {
+			fd = buffer.getLong();
+			token = buffer.getLong();
+			version = buffer.getLong();
+			position = buffer.getLong();
+			capacity = buffer.getLong();
+			count = buffer.getInt();
+		}
+
+		@Override
+		public String toString() {
+			return "GetBlockRangeReq [fd=" + fd + ", token=" + token + ", version=" + version + ", position="
+					+ position + ", capacity=" + capacity + ", count=" + count + "]";
+		}
+
+		public void setToken(long value) {
+			this.token = value;
+		}
+		
+		public void setVersion(long value) {
+			this.version = value;
 		}		
 	}
 	
@@ -395,6 +561,11 @@ public class RpcRequestMessage {
 			this.fileName = fileName;
 			this.position = position;
 		}
+		
+		public void set(FileName fileName, long position) {
+			this.fileName = fileName;
+			this.position = position;
+		}
 
 		public long getPosition(){
 			return this.position;
@@ -424,6 +595,142 @@ public class RpcRequestMessage {
 		}		
 	}
 	
+	public static class GetLocationRangeReq implements RpcProtocol.NameNodeRpcMessage {
+		public static int CSIZE = FileName.CSIZE + 16;
+		
+		protected FileName fileName;
+		protected long position;
+		protected long length;
+
+		public GetLocationRangeReq(){
+			this.fileName = new FileName();
+			this.position = 0;
+			this.length = 0;
+		}
+		
+		public GetLocationRangeReq(FileName fileName, long position, long length) {
+			this.fileName = fileName;
+			this.position = position;
+			this.length = length;
+		}
+		
+		public void set(FileName fileName, long position, long length) {
+			this.fileName = fileName;
+			this.position = position;
+			this.length = length;
+		}
+
+		public long getPosition(){
+			return this.position;
+		}
+		
+		public long getLength(){
+			return this.length;
+		}
+
+		public FileName getFileName() {
+			return fileName;
+		}
+		
+		public int size() {
+			return CSIZE;
+		}
+		
+		public short getType(){
+			return RpcProtocol.REQ_GET_LOCATION_RANGE;
+		}		
+		
+		public int write(ByteBuffer buffer) {
+			fileName.write(buffer);
+			buffer.putLong(position);
+			buffer.putLong(length);
+			return CSIZE;
+		}		
+
+		public void update(ByteBuffer buffer) {
+			fileName.update(buffer);
+			position = buffer.getLong();
+			length = buffer.getLong();
+		}		
+	}
+	
+	public static class GetChildrenReq implements RpcProtocol.NameNodeRpcMessage {
+		public static int CSIZE = FileName.CSIZE + 8 + RpcGetChildren.MAX_CHILDREN*4;
+		
+		protected FileName fileName;
+		protected int[] components;
+		protected int count;
+		protected boolean blocks;
+
+		public GetChildrenReq(){
+			this.fileName = new FileName();
+			this.components = new int[RpcGetChildren.MAX_CHILDREN];
+			this.count = 0;
+			this.blocks = false;
+		}
+		
+		public GetChildrenReq(FileName fileName, int[] components, int count, boolean blocks) {
+			this.fileName = fileName;
+			this.components = components;
+			this.count = count;
+			this.blocks = blocks;
+		}
+		
+		public void set(FileName fileName, int[] components, int count, boolean blocks) {
+			this.fileName = fileName;
+			this.components = components;
+			this.count = count;
+			this.blocks = blocks;
+		}
+
+		//the directory
+		public FileName getFileName() {
+			return fileName;
+		}
+		
+		//the name hash of a child, as in FileName
+		public int getComponent(int index){
+			return components[index];
+		}
+		
+		public int getCount(){
+			return count;
+		}
+		
+		public boolean includeBlocks(){
+			return blocks;
+		}
+		
+		public int size() {
+			return CSIZE;
+		}
+		
+		public short getType(){
+			return RpcProtocol.REQ_GET_CHILDREN;
+		}		
+		
+		public int write(ByteBuffer buffer) {
+			int written = fileName.write(buffer);
+			buffer.putInt(count);
+			buffer.putInt(blocks ? 1 : 0);
+			written += 8;
+			for (int i = 0; i < count; i++){
+				buffer.putInt(components[i]);
+				written += 4;
+			}
+			return written;
+		}		
+
+		public void update(ByteBuffer buffer) {
+			fileName.update(buffer);
+			count = Math.min(buffer.getInt(), RpcGetChildren.MAX_CHILDREN);
+			blocks = buffer.getInt() == 1;
+			for (int i = 0; i < count; i++){
+				components[i] = buffer.getInt();
+			}
+		}		
+	}
+	
 	public static class SetBlockReq implements RpcProtocol.NameNodeRpcMessage {
 		public static int CSIZE = BlockInfo.CSIZE;
 		
@@ -436,6 +743,10 @@ public class RpcRequestMessage {
 		public SetBlockReq(BlockInfo blockInfo) {
 			this.blockInfo = blockInfo;
 		}
+		
+		public void set(BlockInfo blockInfo) {
+			this.blockInfo = blockInfo;
+		}
 
 		public BlockInfo getBlockInfo() throws Exception {
 			return blockInfo;
@@ -482,6 +793,10 @@ public class RpcRequestMessage {
 		public GetDataNodeReq(DataNodeInfo dnInfo) {
 			this.dnInfo = dnInfo;
 		}
+		
+		public void set(DataNodeInfo dnInfo) {
+			this.dnInfo = dnInfo;
+		}
 
 		public DataNodeInfo getInfo(){
 			return this.dnInfo;
@@ -23,14 +23,17 @@ import java.net.UnknownHostException;
 import java.nio.ByteBuffer;
 
 import org.apache.crail.metadata.BlockInfo;
+import org.apache.crail.metadata.DataNodeInfo;
 import org.apache.crail.metadata.DataNodeStatistics;
 import org.apache.crail.metadata.FileInfo;
 import org.apache.crail.rpc.RpcCreateFile;
 import org.apache.crail.rpc.RpcDeleteFile;
 import org.apache.crail.rpc.RpcGetBlock;
 import org.apache.crail.rpc.RpcGetDataNode;
+import org.apache.crail.rpc.RpcGetChildren;
 import org.apache.crail.rpc.RpcGetFile;
 import org.apache.crail.rpc.RpcGetLocation;
+import org.apache.crail.rpc.RpcGetLocationRange;
 import org.apache.crail.rpc.RpcPing;
 import org.apache.crail.rpc.RpcRenameFile;
 import org.apache.crail.rpc.RpcVoid;
@@ -174,11 +177,12 @@ public class RpcResponseMessage {
 	}	
 	
 	public static class GetFileRes implements RpcProtocol.NameNodeRpcMessage, RpcGetFile {
-		public static int CSIZE = FileInfo.CSIZE + BlockInfo.CSIZE;
+		public static int CSIZE = FileInfo.CSIZE + BlockInfo.CSIZE + 16;
 		
 		private FileInfo fileInfo;
 		private BlockInfo fileBlock;
 		private boolean shipToken;
+		private long lease;
 		private short error;
 
 		public GetFileRes() {
@@ -186,6 +190,7 @@ public class RpcResponseMessage {
 			this.fileBlock = new BlockInfo();
 			
 			this.shipToken = false;
+			this.lease = 0;
 			this.error = 0;
 		}
 		
@@ -200,6 +205,9 @@ public class RpcResponseMessage {
 		public int write(ByteBuffer buffer) {
 			int written = fileInfo.write(buffer, shipToken);
 			written += fileBlock.write(buffer);
+			buffer.putLong(lease);
+			buffer.putLong(fileInfo.getVersion());
+			written += 16;
 			return written;
 		}		
 
@@ -207,6 +215,8 @@ public class RpcResponseMessage {
 			try {
 				fileInfo.update(buffer);
 				fileBlock.update(buffer);
+				lease = buffer.getLong();
+				fileInfo.setVersion(buffer.getLong());
 			} catch (UnknownHostException e) {
 				e.printStackTrace();
 			}
@@ -236,6 +246,15 @@ public class RpcResponseMessage {
 		public void shipToken(){
 			this.shipToken = true;
 		}
+		
+		//time in ms for which the client may cache the file metadata, 0 if it must not
+		public long getLease(){
+			return lease;
+		}
+		
+		public void setLease(long lease){
+			this.lease = lease;
+		}
 
 		public short getError(){
 			return error;
@@ -552,6 +571,209 @@ public class RpcResponseMessage {
 			return error;
 		}
 
+		public void setError(short error) {
+			this.error = error;
+		}		
+	}
+	
+	public static class GetLocationRangeRes implements RpcProtocol.NameNodeRpcMessage, RpcGetLocationRange {
+		public static int CSIZE = 8 + MAX_DATANODES*DataNodeInfo.CSIZE + MAX_BLOCKS;
+		
+		private DataNodeInfo[] dataNodes;
+		private byte[] blocks;
+		private int dataNodeCount;
+		private int blockCount;
+		private short error;
+		
+		public GetLocationRangeRes() {
+			this.dataNodes = new DataNodeInfo[MAX_DATANODES];
+			for (int i = 0; i < MAX_DATANODES; i++){
+				dataNodes[i] = new DataNodeInfo();
+			}
+			this.blocks = new byte[MAX_BLOCKS];
+			this.dataNodeCount = 0;
+			this.blockCount = 0;
+			this.error = 0;
+		}
+		
+		public int size() {
+			return CSIZE;
+		}
+		
+		public short getType(){
+			return RpcProtocol.RES_GET_LOCATION_RANGE;
+		}
+		
+		public int write(ByteBuffer buffer) {
+			buffer.putInt(dataNodeCount);
+			buffer.putInt(blockCount);
+			int written = 8;
+			for (int i = 0; i < dataNodeCount; i++){
+				written += dataNodes[i].write(buffer);
+			}
+			buffer.put(blocks, 0, blockCount);
+			written += blockCount;
+			return written;
+		}		
+
+		public void update(ByteBuffer buffer) {
+			try {
+				dataNodeCount = Math.min(buffer.getInt(), MAX_DATANODES);
+				blockCount = Math.min(buffer.getInt(), MAX_BLOCKS);
+				for (int i = 0; i < dataNodeCount; i++){
+					dataNodes[i].update(buffer);
+				}
+				buffer.get(blocks, 0, blockCount);
+			} catch (UnknownHostException e) {
+				e.printStackTrace();
+			}
+		}
+		
+		//adds the location of the next block, datanodes are sent only once per response
+		public boolean addBlock(DataNodeInfo dataNode) {
+			if (blockCount == MAX_BLOCKS){
+				return false;
+			}
+			int index = 0;
+			while(index < dataNodeCount && dataNodes[index].key() != dataNode.key()){
+				index++;
+			}
+			if (index == MAX_DATANODES){
+				return false;
+			}
+			if (index == dataNodeCount){
+				dataNodes[dataNodeCount++].setDataNodeInfo(dataNode);
+			}
+			blocks[blockCount++] = (byte) index;
+			return true;
+		}
+		
+		public int getBlockCount() {
+			return blockCount;
+		}
+		
+		public int getDataNodeCount() {
+			return dataNodeCount;
+		}
+		
+		public DataNodeInfo getDataNodeInfo(int index) {
+			return dataNodes[index];
+		}
+		
+		public int getDataNodeIndex(int block) {
+			return blocks[block];
+		}
+		
+		public void clear() {
+			this.dataNodeCount = 0;
+			this.blockCount = 0;
+		}
+
+		public short getError(){
+			return error;
+		}
+
+		public void setError(short error) {
+			this.error = error;
+		}		
+	}	
+	
+	public static class GetChildrenRes implements RpcProtocol.NameNodeRpcMessage, RpcGetChildren {
+		public static int CSIZE = 8 + MAX_CHILDREN*FileInfo.CSIZE;
+		//sent in place of children that do not exist
+		private static final FileInfo MISSING_FILE = new FileInfo();
+		private static final BlockInfo MISSING_BLOCK = new BlockInfo();
+		
+		private FileInfo[] fileInfos;
+		private BlockInfo[] blockInfos;
+		private int count;
+		private boolean blocks;
+		private short error;
+		
+		public GetChildrenRes() {
+			this.fileInfos = new FileInfo[MAX_CHILDREN];
+			this.blockInfos = new BlockInfo[MAX_CHILDREN];
+			for (int i = 0; i < MAX_CHILDREN; i++){
+				fileInfos[i] = new FileInfo();
+				blockInfos[i] = new BlockInfo();
+			}
+			this.count = 0;
+			this.blocks = false;
+			this.error = 0;
+		}
+		
+		public int size() {
+			return CSIZE;
+		}
+		
+		public short getType(){
+			return RpcProtocol.RES_GET_CHILDREN;
+		}
+		
+		public int write(ByteBuffer buffer) {
+			buffer.putInt(count);
+			buffer.putInt(blocks ? 1 : 0);
+			int written = 8;
+			for (int i = 0; i < count; i++){
+				written += fileInfos[i].write(buffer, false);
+				if (blocks){
+					written += blockInfos[i].write(buffer);
+				}
+			}
+			return written;
+		}		
+
+		public void update(ByteBuffer buffer) {
+			try {
+				count = Math.min(buffer.getInt(), MAX_CHILDREN);
+				blocks = buffer.getInt() == 1;
+				for (int i = 0; i < count; i++){
+					fileInfos[i].update(buffer);
+					if (blocks){
+						blockInfos[i].update(buffer);
+					}
+				}
+			} catch (UnknownHostException e) {
+				e.printStackTrace();
+			}
+		}
+		
+		public void setBlocks(boolean blocks) {
+			this.blocks = blocks;
+		}
+		
+		//adds the next child, a missing child is sent with fd -1
+		public boolean addChild(FileInfo fileInfo, BlockInfo blockInfo) {
+			if (count == (blocks ? MAX_CHILDREN_BLOCKS : MAX_CHILDREN)){
+				return false;
+			}
+			fileInfos[count].setFileInfo(fileInfo != null ? fileInfo : MISSING_FILE);
+			blockInfos[count].setBlockInfo(blockInfo != null ? blockInfo : MISSING_BLOCK);
+			count++;
+			return true;
+		}
+		
+		public int getChildCount() {
+			return count;
+		}
+		
+		public FileInfo getChild(int index) {
+			return fileInfos[index];
+		}
+		
+		public BlockInfo getChildBlock(int index) {
+			return blocks ? blockInfos[index] : null;
+		}
+		
+		public void clear() {
+			this.count = 0;
+			this.blocks = false;
+		}
+
+		public short getError(){
+			return error;
+		}
+
 		public void setError(short error) {
 			this.error = error;
 		}		
@@ -652,4 +874,95 @@ public class RpcResponseMessage {
 			this.error = error;
 		}
 	}
+	
+	public static class GetBlockRangeRes implements RpcProtocol.NameNodeRpcMessage, RpcGetBlockRange {
+		public static int CSIZE = 4 + MAX_BLOCKS*BlockInfo.CSIZE;
+		
+		private BlockInfo[] blockInfos;
+		private int count;
+		private short error;
+		
+		public GetBlockRangeRes() {
+			this.blockInfos = new BlockInfo[MAX_BLOCKS];
+			for (int i = 0; i < MAX_BLOCKS; i++){
+				blockInfos[i] = new BlockInfo();
+			}
+			this.count = 0;
+			this.error = 0;
+		}
+		
+		public int size() {
+			return CSIZE;
+		}
+		
+		public short getType(){
+			return RpcProtocol.RES_GET_BLOCK_RANGE;
+		}
+		
+		public int write(ByteBuffer buffer) {
+			buffer.putInt(count);
+			int written = 4;
+			for (int i = 0; i < count; i++){
+				written += blockInfos[i].write(buffer);
+			}
+			return written;
+		}		
+
+		public void update(ByteBuffer buffer) {
+			try {
+				count = Math.min(buffer.getInt(), MAX_BLOCKS);
+				for (int i = 0; i < count; i++){
+					blockInfos[i].update(buffer);
+				}
+			} catch (UnknownHostException e) {
+				e.printStackTrace();
+			}
+		}
+
+		public BlockInfo getBlockInfo() {
+			return blockInfos[0];
+		}
+
+		public void setBlockInfo(BlockInfo blockInfo) {
+			clear();
+			addBlockInfo(blockInfo);
+		}
+		
+		public BlockInfo getBlockInfo(int index) {
+			return blockInfos[index];
+		}
+		
+		public int getBlockCount() {
+			return count;
+		}
+		
+		public boolean addBlockInfo(BlockInfo blockInfo) {
+			if (blockInfo == null || count == MAX_BLOCKS){
+				return false;
+			}
+			this.blockInfos[count++].setBlockInfo(blockInfo);
+			return true;
+		}
+		
+		//slot of the next block, filled in place and added with commitBlockInfo, null if the response is full
+		public BlockInfo nextBlockInfo() {
+			return count < MAX_BLOCKS ? blockInfos[count] : null;
+		}
+		
+		public void commitBlockInfo() {
+			count++;
+		}
+		
+		public void clear() {
+			this.count = 0;
+		}
+		
+		public short getError(){
+			return error;
+		}
+
+		public void setError(short error) {
+			this.error = error;
+		}
+	}
 }
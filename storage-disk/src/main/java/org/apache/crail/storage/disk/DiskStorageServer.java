@@ -0,0 +1,300 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.crail.storage.disk;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.crail.conf.CrailConfiguration;
+import org.apache.crail.conf.CrailConstants;
+import org.apache.crail.storage.StorageResource;
+import org.apache.crail.storage.StorageServer;
+import org.apache.crail.storage.StorageUtils;
+import org.apache.crail.storage.tcp.TcpStorageChecksums;
+import org.apache.crail.storage.tcp.TcpStorageProtocol;
+import org.apache.crail.storage.tcp.TcpStorageRequest;
+import org.apache.crail.storage.tcp.TcpStorageResponse;
+import org.apache.crail.utils.CrailUtils;
+import org.slf4j.Logger;
+
+import com.ibm.narpc.NaRPCServerChannel;
+import com.ibm.narpc.NaRPCServerEndpoint;
+import com.ibm.narpc.NaRPCServerGroup;
+import com.ibm.narpc.NaRPCService;
+
+/*
+ * Storage server keeping the blocks in large files on a local disk. Every region is one file
+ * of the allocation size, blocks are read and written with positional FileChannel I/O by the 
+ * dispatcher threads of the server group, which form the I/O thread pool of the tier.
+ * Regions do not live in memory, the address of a region is its key times the allocation size.
+ */
+public class DiskStorageServer implements Runnable, StorageServer, NaRPCService<TcpStorageRequest, TcpStorageResponse> {
+	private static final Logger LOG = CrailUtils.getLogger();
+	private static final int PREALLOCATE_CHUNK = 1024*1024;
+	
+	private NaRPCServerGroup<TcpStorageRequest, TcpStorageResponse> serverGroup;
+	private NaRPCServerEndpoint<TcpStorageRequest, TcpStorageResponse> serverEndpoint;
+	private InetSocketAddress address;
+	private boolean alive;
+	private long regions;
+	private long keys;
+	private ConcurrentHashMap<Integer, FileChannel> dataChannels;
+	private TcpStorageChecksums checksums;
+	private String dataDirPath;
+	
+	@Override
+	public void init(CrailConfiguration conf, String[] args) throws Exception {
+		DiskStorageConstants.init(conf, args);
+		
+		//the server group creates the dispatcher requests, which refer to the region table
+		this.regions = DiskStorageConstants.STORAGE_DISK_STORAGE_LIMIT/DiskStorageConstants.STORAGE_DISK_ALLOCATION_SIZE;
+		this.keys = 0;
+		this.dataChannels = new ConcurrentHashMap<Integer, FileChannel>();
+		this.checksums = new TcpStorageChecksums((int) regions, DiskStorageConstants.STORAGE_DISK_ALLOCATION_SIZE);
+		this.serverGroup = new NaRPCServerGroup<TcpStorageRequest, TcpStorageResponse>(this, DiskStorageConstants.STORAGE_DISK_QUEUE_DEPTH, (int) CrailConstants.BLOCK_SIZE*2, false, DiskStorageConstants.STORAGE_DISK_CORES);
+		this.serverEndpoint = serverGroup.createServerEndpoint();
+		this.address = StorageUtils.getDataNodeAddress(DiskStorageConstants.STORAGE_DISK_INTERFACE, DiskStorageConstants.STORAGE_DISK_PORT);
+		serverEndpoint.bind(address);
+		this.alive = false;
+		this.dataDirPath = StorageUtils.getDatanodeDirectory(DiskStorageConstants.STORAGE_DISK_DATA_PATH, address);
+		StorageUtils.clean(DiskStorageConstants.STORAGE_DISK_DATA_PATH, dataDirPath);
+	}
+
+	@Override
+	public void printConf(Logger logger) {
+		DiskStorageConstants.printConf(logger);
+	}
+
+	@Override
+	public StorageResource allocateResource() throws Exception {
+		StorageResource resource = null;
+		if (keys < regions){
+			int fileId = (int) keys++;
+			String dataFilePath = Paths.get(dataDirPath, Integer.toString(fileId)).toString();
+			FileChannel dataChannel = FileChannel.open(Paths.get(dataFilePath), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+			preallocate(dataChannel, DiskStorageConstants.STORAGE_DISK_ALLOCATION_SIZE);
+			dataChannels.put(fileId, dataChannel);
+			long address = fileId*DiskStorageConstants.STORAGE_DISK_ALLOCATION_SIZE;
+			resource = StorageResource.createResource(address, (int) DiskStorageConstants.STORAGE_DISK_ALLOCATION_SIZE, fileId);
+		}
+		return resource;
+	}
+
+	@Override
+	public InetSocketAddress getAddress() {
+		return address;
+	}
+
+	@Override
+	public boolean isAlive() {
+		return alive;
+	}
+
+	@Override
+	public void run() {
+		try {
+			LOG.info("running disk storage server, address " + address + ", data path " + dataDirPath);
+			this.alive = true;
+			while(true){
+				NaRPCServerChannel endpoint = serverEndpoint.accept();
+				LOG.info("new connection " + endpoint.address());
+			}
+		} catch(Exception e){
+			e.printStackTrace();
+		}
+	}
+
+	@Override
+	public TcpStorageRequest createRequest() {
+		return new DispatcherRequest();
+	}
+
+	@Override
+	public TcpStorageResponse processRequest(TcpStorageRequest request) {
+		DispatcherRequest dispatcherRequest = (DispatcherRequest) request;
+		TcpStorageResponse response = dispatcherRequest.getResponse();
+		try {
+			if (request.type() == TcpStorageProtocol.REQ_WRITE){
+				TcpStorageRequest.WriteRequest writeRequest = request.getWriteRequest();
+				FileChannel channel = dataChannels.get(writeRequest.getKey());
+				ByteBuffer data = writeRequest.getBuffer();
+				long offset = writeRequest.getAddress() - writeRequest.getKey()*DiskStorageConstants.STORAGE_DISK_ALLOCATION_SIZE;
+				if (channel == null || !inRegion(offset, data.remaining())){
+					LOG.info("write request for unknown key " + writeRequest.getKey() + ", address " + writeRequest.getAddress());
+					return response.setError(TcpStorageProtocol.RET_KEY_UNKNOWN);
+				}
+				checksums.clear(writeRequest.getKey(), offset, data.remaining());
+				write(channel, data, offset);
+				return response.setWriteResponse(writeRequest.length());
+			} else if (request.type() == TcpStorageProtocol.REQ_READ){
+				TcpStorageRequest.ReadRequest readRequest = request.getReadRequest();
+				FileChannel channel = dataChannels.get(readRequest.getKey());
+				long offset = readRequest.getAddress() - readRequest.getKey()*DiskStorageConstants.STORAGE_DISK_ALLOCATION_SIZE;
+				if (channel == null || !inRegion(offset, readRequest.length()) || readRequest.length() > CrailConstants.BLOCK_SIZE){
+					LOG.info("read request for unknown key " + readRequest.getKey() + ", address " + readRequest.getAddress());
+					return response.setError(TcpStorageProtocol.RET_KEY_UNKNOWN);
+				}
+				ByteBuffer buffer = dispatcherRequest.getBuffer();
+				buffer.clear().limit(readRequest.length());
+				read(channel, buffer, offset);
+				buffer.flip();
+				return response.setReadResponse(buffer);
+			} else if (request.type() == TcpStorageProtocol.REQ_WRITEV){
+				TcpStorageRequest.VectorRequest vectorRequest = request.getVectorRequest();
+				int len = 0;
+				for (int i = 0; i < vectorRequest.count(); i++){
+					FileChannel channel = dataChannels.get(vectorRequest.getKey(i));
+					long offset = vectorRequest.getAddress(i) - vectorRequest.getKey(i)*DiskStorageConstants.STORAGE_DISK_ALLOCATION_SIZE;
+					if (channel == null){
+						LOG.info("vectored write request for unknown key " + vectorRequest.getKey(i));
+						return response.setError(TcpStorageProtocol.RET_KEY_UNKNOWN);
+					}
+					if (!inRegion(offset, vectorRequest.length(i))){
+						LOG.info("vectored write request out of range, key " + vectorRequest.getKey(i) + ", address " + vectorRequest.getAddress(i));
+						return response.setError(TcpStorageProtocol.RET_IO_ERROR);
+					}
+					checksums.clear(vectorRequest.getKey(i), offset, vectorRequest.length(i));
+					write(channel, vectorRequest.getBuffer(i), offset);
+					len += vectorRequest.length(i);
+				}
+				return response.setWritevResponse(len);
+			} else if (request.type() == TcpStorageProtocol.REQ_READV){
+				TcpStorageRequest.VectorRequest vectorRequest = request.getVectorRequest();
+				ByteBuffer buffer = dispatcherRequest.getBuffer();
+				buffer.clear();
+				response.setReadvResponse();
+				for (int i = 0; i < vectorRequest.count(); i++){
+					FileChannel channel = dataChannels.get(vectorRequest.getKey(i));
+					long offset = vectorRequest.getAddress(i) - vectorRequest.getKey(i)*DiskStorageConstants.STORAGE_DISK_ALLOCATION_SIZE;
+					if (channel == null){
+						LOG.info("vectored read request for unknown key " + vectorRequest.getKey(i));
+						return response.setError(TcpStorageProtocol.RET_KEY_UNKNOWN);
+					}
+					if (!inRegion(offset, vectorRequest.length(i)) || vectorRequest.length(i) > buffer.remaining()){
+						LOG.info("vectored read request out of range, key " + vectorRequest.getKey(i) + ", address " + vectorRequest.getAddress(i));
+						return response.setError(TcpStorageProtocol.RET_IO_ERROR);
+					}
+					//the segments are read one after the other into the dispatcher buffer
+					int position = buffer.position();
+					buffer.limit(position + vectorRequest.length(i));
+					read(channel, buffer, offset);
+					buffer.limit(buffer.capacity());
+					response.getReadvResponse().add(buffer, position, vectorRequest.length(i));
+				}
+				return response;
+			} else if (request.type() == TcpStorageProtocol.REQ_WRITE_CHECKSUMS){
+				TcpStorageRequest.ChecksumRequest checksumRequest = request.getChecksumRequest();
+				long offset = checksumRequest.getAddress() - checksumRequest.getKey()*DiskStorageConstants.STORAGE_DISK_ALLOCATION_SIZE;
+				if (!dataChannels.containsKey(checksumRequest.getKey()) || !checksums.write(checksumRequest.getKey(), offset, checksumRequest)){
+					LOG.info("checksum write request for unknown key " + checksumRequest.getKey() + ", address " + checksumRequest.getAddress());
+					return response.setError(TcpStorageProtocol.RET_KEY_UNKNOWN);
+				}
+				return response.setWriteChecksumsResponse();
+			} else if (request.type() == TcpStorageProtocol.REQ_READ_CHECKSUMS){
+				TcpStorageRequest.ChecksumRequest checksumRequest = request.getChecksumRequest();
+				long offset = checksumRequest.getAddress() - checksumRequest.getKey()*DiskStorageConstants.STORAGE_DISK_ALLOCATION_SIZE;
+				if (!dataChannels.containsKey(checksumRequest.getKey()) || !checksums.read(checksumRequest.getKey(), offset, checksumRequest.count(), response.getChecksumResponse().getChecksums())){
+					LOG.info("checksum read request for unknown key " + checksumRequest.getKey() + ", address " + checksumRequest.getAddress());
+					return response.setError(TcpStorageProtocol.RET_KEY_UNKNOWN);
+				}
+				return response.setReadChecksumsResponse(checksumRequest.count());
+			} else {
+				LOG.info("processing unknown request");
+				return response.setError(TcpStorageProtocol.RET_RPC_UNKNOWN);
+			}
+		} catch(IOException e){
+			LOG.info("disk I/O failed, " + e.getMessage());
+			return response.setError(TcpStorageProtocol.RET_IO_ERROR);
+		}
+	}
+
+	@Override
+	public void addEndpoint(NaRPCServerChannel channel){
+	}
+
+	@Override
+	public void removeEndpoint(NaRPCServerChannel channel){
+	}
+	
+	private static void write(FileChannel channel, ByteBuffer data, long offset) throws IOException {
+		while(data.hasRemaining()){
+			offset += channel.write(data, offset);
+		}
+	}
+	
+	//fills the remaining bytes of the buffer
+	private static void read(FileChannel channel, ByteBuffer buffer, long offset) throws IOException {
+		while(buffer.hasRemaining()){
+			int ret = channel.read(buffer, offset);
+			if (ret < 0){
+				//never written, not preallocated
+				while(buffer.hasRemaining()){
+					buffer.put((byte) 0);
+				}
+				break;
+			}
+			offset += ret;
+		}
+	}
+	
+	private static boolean inRegion(long offset, long length){
+		return offset >= 0 && length >= 0 && offset + length <= DiskStorageConstants.STORAGE_DISK_ALLOCATION_SIZE;
+	}
+	
+	//either writes the whole file so that its blocks are allocated on disk, or only sets the length and leaves a sparse file
+	private static void preallocate(FileChannel channel, long size) throws IOException {
+		if (!DiskStorageConstants.STORAGE_DISK_PREALLOCATE){
+			if (channel.size() < size){
+				channel.write(ByteBuffer.allocate(1), size - 1);
+			}
+			return;
+		}
+		ByteBuffer zeros = ByteBuffer.allocateDirect(PREALLOCATE_CHUNK);
+		for (long position = 0; position < size; ){
+			zeros.clear().limit((int) Math.min(zeros.capacity(), size - position));
+			position += channel.write(zeros, position);
+		}
+		channel.force(false);
+	}
+	
+	//NaRPC creates one request per dispatcher thread and fetches the next message only after the response 
+	//has been transmitted, so the response and the read buffer are reused by every message of the dispatcher
+	private static class DispatcherRequest extends TcpStorageRequest {
+		private TcpStorageResponse response;
+		private ByteBuffer buffer;
+		
+		public DispatcherRequest(){
+			this.response = new TcpStorageResponse();
+			this.buffer = ByteBuffer.allocateDirect((int) CrailConstants.BLOCK_SIZE);
+		}
+		
+		public TcpStorageResponse getResponse(){
+			return response;
+		}
+		
+		public ByteBuffer getBuffer(){
+			return buffer;
+		}
+	}
+}
@@ -0,0 +1,95 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.crail.storage.tcp;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import org.apache.crail.conf.CrailConstants;
+
+/*
+ * Checksums of the chunks of the regions of a storage server, kept in memory next to the data.
+ * The checksums of a region are allocated when the first checksum of the region is written, 
+ * data writes clear the checksums of the chunks they touch so that stale checksums are never served.
+ * Offsets are relative to the start of the region, checksums are stored as given by the client (see
+ * CrailChecksum.stored) and 0 means the chunk has none.
+ */
+public class TcpStorageChecksums {
+	private AtomicReferenceArray<long[]> regions;
+	private int chunksPerRegion;
+	
+	public TcpStorageChecksums(int regions, long regionSize){
+		this.regions = new AtomicReferenceArray<long[]>(regions);
+		this.chunksPerRegion = (int) ((regionSize + CrailConstants.CHECKSUM_CHUNK_SIZE - 1) / CrailConstants.CHECKSUM_CHUNK_SIZE);
+	}
+	
+	public void clear(int key, long offset, long length){
+		if (key < 0 || key >= regions.length() || length <= 0){
+			return;
+		}
+		long[] checksums = regions.get(key);
+		if (checksums != null){
+			int first = (int) (offset / CrailConstants.CHECKSUM_CHUNK_SIZE);
+			int last = (int) ((offset + length - 1) / CrailConstants.CHECKSUM_CHUNK_SIZE);
+			Arrays.fill(checksums, Math.max(0, first), Math.min(last + 1, checksums.length), 0);
+		}
+	}
+	
+	public boolean write(int key, long offset, TcpStorageRequest.ChecksumRequest request){
+		int first = chunk(key, offset, request.count());
+		if (first < 0){
+			return false;
+		}
+		long[] checksums = regions.get(key);
+		if (checksums == null){
+			regions.compareAndSet(key, null, new long[chunksPerRegion]);
+			checksums = regions.get(key);
+		}
+		for (int i = 0; i < request.count(); i++){
+			checksums[first + i] = request.getChecksum(i);
+		}
+		return true;
+	}
+	
+	public boolean read(int key, long offset, int count, long[] dst){
+		int first = chunk(key, offset, count);
+		if (first < 0){
+			return false;
+		}
+		long[] checksums = regions.get(key);
+		if (checksums == null){
+			Arrays.fill(dst, 0, count, 0);
+		} else {
+			System.arraycopy(checksums, first, dst, 0, count);
+		}
+		return true;
+	}
+	
+	//index of the first chunk, -1 if the range is not chunk aligned or outside of the region
+	private int chunk(int key, long offset, int count){
+		if (key < 0 || key >= regions.length() || offset < 0 || count < 0 || offset % CrailConstants.CHECKSUM_CHUNK_SIZE != 0){
+			return -1;
+		}
+		long first = offset / CrailConstants.CHECKSUM_CHUNK_SIZE;
+		if (first + count > chunksPerRegion){
+			return -1;
+		}
+		return (int) first;
+	}
+}
@@ -19,6 +19,8 @@
 package org.apache.crail.storage.tcp;
 
 import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.apache.crail.CrailBufferCache;
 import org.apache.crail.CrailStatistics;
@@ -34,7 +36,11 @@ import com.ibm.narpc.NaRPCClientGroup;
 import com.ibm.narpc.NaRPCEndpoint;
 
 public class TcpStorageClient implements StorageClient {
+	private static final Logger LOG = CrailUtils.getLogger();
 	private NaRPCClientGroup<TcpStorageRequest, TcpStorageResponse> clientGroup;
+	private ConcurrentHashMap<InetSocketAddress, TcpStorageLocalEndpoint> localCache;
+	//local datanodes whose data files cannot be mapped, reached over the socket instead
+	private ConcurrentHashMap<InetSocketAddress, Boolean> unmapped;
 
 	@Override
 	public void init(CrailStatistics statistics, CrailBufferCache bufferCache, CrailConfiguration conf, String[] args)
@@ -42,6 +48,8 @@ public class TcpStorageClient implements StorageClient {
 		TcpStorageConstants.updateConstants(conf);
 
 		this.clientGroup = new NaRPCClientGroup<TcpStorageRequest, TcpStorageResponse>(TcpStorageConstants.STORAGE_TCP_QUEUE_DEPTH, (int) CrailConstants.BLOCK_SIZE*2, false);
+		this.localCache = new ConcurrentHashMap<InetSocketAddress, TcpStorageLocalEndpoint>();
+		this.unmapped = new ConcurrentHashMap<InetSocketAddress, Boolean>();
 	}
 
 	@Override
@@ -56,9 +64,29 @@ public class TcpStorageClient implements StorageClient {
 	@Override
 	public StorageEndpoint createEndpoint(DataNodeInfo info) throws IOException {
 		try {
+			InetSocketAddress address = CrailUtils.datanodeInfo2SocketAddr(info);
+			//checksums are kept by the server, local access would bypass them
+			if (TcpStorageConstants.STORAGE_TCP_LOCAL_MAP && !CrailUtils.isChecksumEnabled(info.getStorageClass()) && CrailUtils.isLocalAddress(address.getAddress()) && !unmapped.containsKey(address)){
+				TcpStorageLocalEndpoint localEndpoint = localCache.get(address);
+				if (localEndpoint == null){
+					try {
+						localEndpoint = new TcpStorageLocalEndpoint(address);
+						localCache.put(address, localEndpoint);
+					} catch(IOException e){
+						//the datanode uses a different data path, or runs as another user or in another container
+						if (unmapped.putIfAbsent(address, Boolean.TRUE) == null){
+							LOG.info(e.getMessage() + ", using the socket for datanode " + address);
+						}
+					}
+				}
+				if (localEndpoint != null){
+					return localEndpoint;
+				}
+			}
+			
 			NaRPCEndpoint<TcpStorageRequest, TcpStorageResponse> narpcEndpoint = clientGroup.createEndpoint();
 			TcpStorageEndpoint endpoint = new TcpStorageEndpoint(narpcEndpoint);
-			endpoint.connect(CrailUtils.datanodeInfo2SocketAddr(info));
+			endpoint.connect(address);
 			return endpoint;
 		} catch(Exception e){
 			throw new IOException(e);
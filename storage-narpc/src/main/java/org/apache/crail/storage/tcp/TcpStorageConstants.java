@@ -55,6 +55,9 @@ public class TcpStorageConstants {
 	public static final String STORAGE_TCP_CORES_KEY = "crail.storage.tcp.cores";
 	public static int STORAGE_TCP_CORES = 1;		
 	
+	public static final String STORAGE_TCP_LOCAL_MAP_KEY = "crail.storage.tcp.localmap";
+	public static boolean STORAGE_TCP_LOCAL_MAP = true;
+	
     public static void init(CrailConfiguration conf, String[] args) throws Exception {
         if (args != null) {
                 Option portOption = Option.builder("p").desc("port to start server on").hasArg().build();
@@ -109,6 +112,9 @@ public class TcpStorageConstants {
 		if (conf.get(STORAGE_TCP_CORES_KEY) != null) {
 			STORAGE_TCP_CORES = Integer.parseInt(conf.get(STORAGE_TCP_CORES_KEY));
 		}		
+		if (conf.get(STORAGE_TCP_LOCAL_MAP_KEY) != null) {
+			STORAGE_TCP_LOCAL_MAP = conf.getBoolean(STORAGE_TCP_LOCAL_MAP_KEY, false);
+		}
 	}	
 	
 	public static void printConf(Logger logger) {
@@ -119,6 +125,7 @@ public class TcpStorageConstants {
 		logger.info(STORAGE_TCP_DATA_PATH_KEY + " " + STORAGE_TCP_DATA_PATH);
 		logger.info(STORAGE_TCP_QUEUE_DEPTH_KEY + " " + STORAGE_TCP_QUEUE_DEPTH);
 		logger.info(STORAGE_TCP_CORES_KEY + " " + STORAGE_TCP_CORES);
+		logger.info(STORAGE_TCP_LOCAL_MAP_KEY + " " + STORAGE_TCP_LOCAL_MAP);
 	}	
 
 }
@@ -20,11 +20,16 @@ package org.apache.crail.storage.tcp;
 
 import java.io.IOException;
 import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.util.List;
 
 import org.apache.crail.CrailBuffer;
+import org.apache.crail.conf.CrailConstants;
 import org.apache.crail.metadata.BlockInfo;
 import org.apache.crail.storage.StorageEndpoint;
 import org.apache.crail.storage.StorageFuture;
+import org.apache.crail.storage.StorageMultiFuture;
+import org.apache.crail.storage.StorageSegment;
 import org.apache.crail.utils.CrailUtils;
 import org.slf4j.Logger;
 
@@ -58,7 +63,8 @@ public class TcpStorageEndpoint implements StorageEndpoint {
 			throws IOException, InterruptedException {
 //		LOG.info("TCP read, buffer " + buffer.remaining() + ", block " + block.getLkey() + "/" + block.getAddr() + "/" + block.getLength() + ", offset " + offset);
 		TcpStorageRequest.ReadRequest readReq = new TcpStorageRequest.ReadRequest(block.getLkey(), block.getAddr() + offset, buffer.remaining());
-		TcpStorageResponse.ReadResponse readResp = new TcpStorageResponse.ReadResponse(buffer.getByteBuffer());
+		//the data is received asynchronously, into a view of the range so that the caller can move on with the buffer
+		TcpStorageResponse.ReadResponse readResp = new TcpStorageResponse.ReadResponse(buffer.getByteBuffer().slice());
 		
 		TcpStorageRequest req = new TcpStorageRequest(readReq);
 		TcpStorageResponse resp = new TcpStorageResponse(readResp);
@@ -81,4 +87,106 @@ public class TcpStorageEndpoint implements StorageEndpoint {
 		return new TcpStorageFuture(narpcFuture, writeReq.length());
 	}
 
+	@Override
+	public StorageFuture writeChecksums(long[] checksums, int index, int count, BlockInfo block, long offset) throws IOException, InterruptedException {
+		TcpStorageRequest.ChecksumRequest checksumReq = new TcpStorageRequest.ChecksumRequest(block.getLkey(), block.getAddr() + offset, count, true, checksums, index);
+		TcpStorageResponse.WriteResponse writeResp = new TcpStorageResponse.WriteResponse();
+		
+		TcpStorageRequest req = new TcpStorageRequest(checksumReq);
+		TcpStorageResponse resp = new TcpStorageResponse(writeResp, TcpStorageProtocol.REQ_WRITE_CHECKSUMS);
+		
+		//checksums do not count towards the bytes transferred
+		NaRPCFuture<TcpStorageRequest, TcpStorageResponse> narpcFuture = endpoint.issueRequest(req, resp);
+		return new TcpStorageFuture(narpcFuture, 0);
+	}
+
+	@Override
+	public StorageFuture readChecksums(long[] checksums, int index, int count, BlockInfo block, long offset) throws IOException, InterruptedException {
+		TcpStorageRequest.ChecksumRequest checksumReq = new TcpStorageRequest.ChecksumRequest(block.getLkey(), block.getAddr() + offset, count, false, null, 0);
+		TcpStorageResponse.ChecksumResponse checksumResp = new TcpStorageResponse.ChecksumResponse(checksums, index, count);
+		
+		TcpStorageRequest req = new TcpStorageRequest(checksumReq);
+		TcpStorageResponse resp = new TcpStorageResponse(checksumResp);
+		
+		NaRPCFuture<TcpStorageRequest, TcpStorageResponse> narpcFuture = endpoint.issueRequest(req, resp);
+		return new TcpStorageFuture(narpcFuture, 0);
+	}
+
+	@Override
+	public StorageFuture writev(List<StorageSegment> segments) throws IOException, InterruptedException {
+		StorageMultiFuture future = new StorageMultiFuture();
+		for (int start = 0, end = 0; start < segments.size(); start = end){
+			end = vectorEnd(segments, start);
+			if (end - start == 1){
+				StorageSegment segment = segments.get(start);
+				future.add(write(segment.prepare(), segment.getBlock(), segment.getOffset()));
+				continue;
+			}
+			TcpStorageRequest.VectorRequest vectorReq = new TcpStorageRequest.VectorRequest(end - start, true);
+			int len = 0;
+			for (int i = start; i < end; i++){
+				StorageSegment segment = segments.get(i);
+				BlockInfo block = segment.getBlock();
+				vectorReq.add(block.getLkey(), block.getAddr() + segment.getOffset(), segment.getLength(), segment.getBuffer().getByteBuffer(), segment.getBufferPosition());
+				len += segment.getLength();
+			}
+			TcpStorageResponse.WriteResponse writeResp = new TcpStorageResponse.WriteResponse();
+			
+			TcpStorageRequest req = new TcpStorageRequest(vectorReq);
+			TcpStorageResponse resp = new TcpStorageResponse(writeResp, TcpStorageProtocol.REQ_WRITEV);
+			
+			NaRPCFuture<TcpStorageRequest, TcpStorageResponse> narpcFuture = endpoint.issueRequest(req, resp);
+			future.add(new TcpStorageFuture(narpcFuture, len));
+		}
+		return future;
+	}
+
+	@Override
+	public StorageFuture readv(List<StorageSegment> segments) throws IOException, InterruptedException {
+		StorageMultiFuture future = new StorageMultiFuture();
+		for (int start = 0, end = 0; start < segments.size(); start = end){
+			end = vectorEnd(segments, start);
+			if (end - start == 1){
+				StorageSegment segment = segments.get(start);
+				future.add(read(segment.prepare(), segment.getBlock(), segment.getOffset()));
+				continue;
+			}
+			TcpStorageRequest.VectorRequest vectorReq = new TcpStorageRequest.VectorRequest(end - start, false);
+			TcpStorageResponse.ReadvResponse readvResp = new TcpStorageResponse.ReadvResponse(end - start);
+			CrailBuffer buffer = null;
+			ByteBuffer view = null;
+			int len = 0;
+			for (int i = start; i < end; i++){
+				StorageSegment segment = segments.get(i);
+				BlockInfo block = segment.getBlock();
+				//segments typically share the buffer, they are received into a private view of it
+				if (segment.getBuffer() != buffer){
+					buffer = segment.getBuffer();
+					view = buffer.getByteBuffer().duplicate();
+				}
+				vectorReq.add(block.getLkey(), block.getAddr() + segment.getOffset(), segment.getLength(), null, 0);
+				readvResp.add(view, segment.getBufferPosition(), segment.getLength());
+				len += segment.getLength();
+			}
+			
+			TcpStorageRequest req = new TcpStorageRequest(vectorReq);
+			TcpStorageResponse resp = new TcpStorageResponse(readvResp);
+			
+			NaRPCFuture<TcpStorageRequest, TcpStorageResponse> narpcFuture = endpoint.issueRequest(req, resp);
+			future.add(new TcpStorageFuture(narpcFuture, len));
+		}
+		return future;
+	}
+	
+	//end of the vectored request starting at the given segment, bounded by the number of segments and one block of data
+	private static int vectorEnd(List<StorageSegment> segments, int start){
+		int end = start + 1;
+		long len = segments.get(start).getLength();
+		while(end < segments.size() && end - start < TcpStorageProtocol.VECTOR_SEGMENTS && len + segments.get(end).getLength() <= CrailConstants.BLOCK_SIZE){
+			len += segments.get(end).getLength();
+			end++;
+		}
+		return end;
+	}
+
 }
@@ -18,6 +18,7 @@
 
 package org.apache.crail.storage.tcp;
 
+import java.io.IOException;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
@@ -53,14 +54,14 @@ public class TcpStorageFuture implements StorageFuture, StorageResult {
 
 	@Override
 	public StorageResult get() throws InterruptedException, ExecutionException {
-		future.get();
+		checkError(future.get());
 		return this;
 	}
 
 	@Override
 	public StorageResult get(long timeout, TimeUnit unit)
 			throws InterruptedException, ExecutionException, TimeoutException {
-		future.get(timeout, unit);
+		checkError(future.get(timeout, unit));
 		return this;
 	}
 
@@ -73,5 +74,11 @@ public class TcpStorageFuture implements StorageFuture, StorageResult {
 	public int getLen() {
 		return len;
 	}
+	
+	private static void checkError(TcpStorageResponse response) throws ExecutionException {
+		if (response != null && response.getError() != TcpStorageProtocol.RET_OK){
+			throw new ExecutionException(new IOException("TCP storage operation failed, error " + response.getError()));
+		}
+	}
 
 }
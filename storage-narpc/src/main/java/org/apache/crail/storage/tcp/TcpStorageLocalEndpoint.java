@@ -0,0 +1,138 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.crail.storage.tcp;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.crail.CrailBuffer;
+import org.apache.crail.conf.CrailConstants;
+import org.apache.crail.metadata.BlockInfo;
+import org.apache.crail.storage.StorageEndpoint;
+import org.apache.crail.storage.StorageFuture;
+import org.apache.crail.storage.StorageUtils;
+import org.apache.crail.utils.CrailUtils;
+import org.slf4j.Logger;
+
+/*
+ * Endpoint for a datanode running on the same host. The data files of the TCP storage server are
+ * mapped into the client and data is copied directly between the mapped files and the client buffers,
+ * bypassing the loopback socket. Files are named by the key of their region and mapped on first use,
+ * the offset of a block within its file follows from its lba.
+ */
+public class TcpStorageLocalEndpoint implements StorageEndpoint {
+	private static final Logger LOG = CrailUtils.getLogger();
+	private ConcurrentHashMap<Integer, ByteBuffer> bufferMap;
+	private File dataDir;
+	private InetSocketAddress address;
+	
+	public TcpStorageLocalEndpoint(InetSocketAddress datanodeAddr) throws IOException {
+		LOG.info("new local endpoint for address " + datanodeAddr);
+		String dataPath = StorageUtils.getDatanodeDirectory(TcpStorageConstants.STORAGE_TCP_DATA_PATH, datanodeAddr);
+		this.dataDir = new File(dataPath);
+		if (!dataDir.isDirectory() || !dataDir.canRead() || !dataDir.canWrite()){
+			throw new IOException("Local TCP data path missing or not accessible " + dataPath);
+		}
+		this.address = datanodeAddr;
+		this.bufferMap = new ConcurrentHashMap<Integer, ByteBuffer>();
+	}
+
+	@Override
+	public StorageFuture write(CrailBuffer buffer, BlockInfo remoteMr, long remoteOffset) throws IOException,
+			InterruptedException {
+		int length = buffer.remaining();
+		ByteBuffer mappedBuffer = getMappedBuffer(remoteMr, remoteOffset, length);
+		ByteBuffer srcBuffer = buffer.getByteBuffer().duplicate();
+		srcBuffer.limit(buffer.limit()).position(buffer.position());
+		mappedBuffer.put(srcBuffer);
+		return new TcpStorageLocalFuture(length);
+	}
+
+	@Override
+	public StorageFuture read(CrailBuffer buffer, BlockInfo remoteMr, long remoteOffset) throws IOException,
+			InterruptedException {
+		int length = buffer.remaining();
+		ByteBuffer mappedBuffer = getMappedBuffer(remoteMr, remoteOffset, length);
+		ByteBuffer dstBuffer = buffer.getByteBuffer().duplicate();
+		dstBuffer.limit(buffer.limit()).position(buffer.position());
+		dstBuffer.put(mappedBuffer);
+		return new TcpStorageLocalFuture(length);
+	}
+	
+	@Override
+	public void close() throws IOException, InterruptedException {
+	}
+
+	@Override
+	public boolean isLocal() {
+		return true;
+	}
+	
+	//view of the mapped data file covering the requested range
+	private ByteBuffer getMappedBuffer(BlockInfo remoteMr, long remoteOffset, int length) throws IOException {
+		if (length > CrailConstants.BLOCK_SIZE){
+			throw new IOException("operation size too large " + length);
+		}
+		if (length <= 0){
+			throw new IOException("operation size too small, len " + length);
+		}	
+		if (remoteOffset < 0){
+			throw new IOException("remote offset too small " + remoteOffset);
+		}
+		long fileOffset = remoteMr.getLba() % TcpStorageConstants.STORAGE_TCP_ALLOCATION_SIZE + remoteOffset;
+		if (fileOffset + length > TcpStorageConstants.STORAGE_TCP_ALLOCATION_SIZE){
+			throw new IOException("remote fileOffset + remoteOffset + len too large " + (fileOffset + length));
+		}
+		
+		ByteBuffer mappedBuffer = bufferMap.get(remoteMr.getLkey());
+		if (mappedBuffer == null){
+			mappedBuffer = mmap(remoteMr.getLkey());
+		}
+		mappedBuffer = mappedBuffer.duplicate();
+		mappedBuffer.limit((int) (fileOffset + length)).position((int) fileOffset);
+		return mappedBuffer;
+	}
+	
+	//data files are created by the server while it registers its regions
+	private synchronized ByteBuffer mmap(int key) throws IOException {
+		ByteBuffer mappedBuffer = bufferMap.get(key);
+		if (mappedBuffer != null){
+			return mappedBuffer;
+		}
+		File dataFile = new File(dataDir, Integer.toString(key));
+		if (!dataFile.exists()){
+			throw new IOException("No data file for key " + key + ", address " + address);
+		}
+		RandomAccessFile randomFile = new RandomAccessFile(dataFile, "rw");
+		try {
+			FileChannel channel = randomFile.getChannel();
+			mappedBuffer = channel.map(MapMode.READ_WRITE, 0, TcpStorageConstants.STORAGE_TCP_ALLOCATION_SIZE);
+		} finally {
+			randomFile.close();
+		}
+		bufferMap.put(key, mappedBuffer);
+		return mappedBuffer;
+	}
+}
@@ -21,7 +21,16 @@ package org.apache.crail.storage.tcp;
 public class TcpStorageProtocol {
 	public static final int REQ_READ = 1;	
 	public static final int REQ_WRITE = 2;
+	public static final int REQ_READV = 3;
+	public static final int REQ_WRITEV = 4;
+	public static final int REQ_WRITE_CHECKSUMS = 5;
+	public static final int REQ_READ_CHECKSUMS = 6;
+	
+	//a vectored request carries at most VECTOR_SEGMENTS segments and at most one block of data
+	public static final int VECTOR_SEGMENTS = 64;
 	
 	public static final int RET_OK = 0;
 	public static final int RET_RPC_UNKNOWN = 1;
+	public static final int RET_KEY_UNKNOWN = 2;
+	public static final int RET_IO_ERROR = 3;
 }
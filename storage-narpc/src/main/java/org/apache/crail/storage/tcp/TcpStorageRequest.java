@@ -27,15 +27,19 @@ import com.ibm.narpc.NaRPCMessage;
 
 public class TcpStorageRequest implements NaRPCMessage {
 	public static final int HEADER_SIZE = Integer.BYTES;
-	public static final int CSIZE = HEADER_SIZE + Math.max(WriteRequest.CSIZE, ReadRequest.CSIZE);
+	public static final int CSIZE = HEADER_SIZE + Math.max(Math.max(WriteRequest.CSIZE, ReadRequest.CSIZE), Math.max(VectorRequest.CSIZE, ChecksumRequest.CSIZE));
 	
 	private int type;
 	private WriteRequest writeRequest;
 	private ReadRequest readRequest;
+	private VectorRequest vectorRequest;
+	private ChecksumRequest checksumRequest;
 	
 	public TcpStorageRequest(){
 		writeRequest = new WriteRequest();
 		readRequest = new ReadRequest();
+		vectorRequest = new VectorRequest();
+		checksumRequest = new ChecksumRequest();
 	}
 
 	public TcpStorageRequest(WriteRequest writeRequest) {
@@ -47,6 +51,16 @@ public class TcpStorageRequest implements NaRPCMessage {
 		this.readRequest = readRequest;
 		this.type = TcpStorageProtocol.REQ_READ;
 	}
+	
+	public TcpStorageRequest(VectorRequest vectorRequest) {
+		this.vectorRequest = vectorRequest;
+		this.type = vectorRequest.hasData() ? TcpStorageProtocol.REQ_WRITEV : TcpStorageProtocol.REQ_READV;
+	}
+	
+	public TcpStorageRequest(ChecksumRequest checksumRequest) {
+		this.checksumRequest = checksumRequest;
+		this.type = checksumRequest.hasChecksums() ? TcpStorageProtocol.REQ_WRITE_CHECKSUMS : TcpStorageProtocol.REQ_READ_CHECKSUMS;
+	}
 
 	public int size() {
 		return CSIZE;
@@ -63,6 +77,10 @@ public class TcpStorageRequest implements NaRPCMessage {
 			writeRequest.update(buffer);
 		} else if (type == TcpStorageProtocol.REQ_READ){
 			readRequest.update(buffer);
+		} else if (type == TcpStorageProtocol.REQ_WRITEV || type == TcpStorageProtocol.REQ_READV){
+			vectorRequest.update(buffer, type == TcpStorageProtocol.REQ_WRITEV);
+		} else if (type == TcpStorageProtocol.REQ_WRITE_CHECKSUMS || type == TcpStorageProtocol.REQ_READ_CHECKSUMS){
+			checksumRequest.update(buffer, type == TcpStorageProtocol.REQ_WRITE_CHECKSUMS);
 		}
 	}
 
@@ -74,6 +92,10 @@ public class TcpStorageRequest implements NaRPCMessage {
 			written += writeRequest.write(buffer);
 		} else if (type == TcpStorageProtocol.REQ_READ){
 			written += readRequest.write(buffer);
+		} else if (type == TcpStorageProtocol.REQ_WRITEV || type == TcpStorageProtocol.REQ_READV){
+			written += vectorRequest.write(buffer);
+		} else if (type == TcpStorageProtocol.REQ_WRITE_CHECKSUMS || type == TcpStorageProtocol.REQ_READ_CHECKSUMS){
+			written += checksumRequest.write(buffer);
 		}
 		return written;
 	}
@@ -88,7 +110,7 @@ public class TcpStorageRequest implements NaRPCMessage {
 		private ByteBuffer data;
 		
 		public WriteRequest(){
-			data = ByteBuffer.allocateDirect((int) CrailConstants.BLOCK_SIZE);
+			data = null;
 		}
 		
 		public WriteRequest(int key, long address, int length, ByteBuffer buffer) {
@@ -118,15 +140,14 @@ public class TcpStorageRequest implements NaRPCMessage {
 			return CSIZE;
 		}
 		
+		//the payload is not copied, data refers to the receive buffer and is only valid until the next message is fetched
 		public void update(ByteBuffer buffer) throws IOException {
 			key = buffer.getInt();
 			address = buffer.getLong();
 			length = buffer.getInt();
 			int remaining = buffer.getInt();
 			buffer.limit(buffer.position() + remaining);
-			data.clear();
-			data.put(buffer);
-			data.flip();
+			data = buffer;
 		}
 
 		public int write(ByteBuffer buffer) throws IOException {
@@ -187,12 +208,209 @@ public class TcpStorageRequest implements NaRPCMessage {
 		}		
 	}
 
+	//key, address and length of every segment, followed by the data of the segment for writes
+	public static class VectorRequest {
+		public static final int SEGMENT_SIZE = Integer.BYTES + Long.BYTES + Integer.BYTES;
+		public static final int CSIZE = Integer.BYTES + TcpStorageProtocol.VECTOR_SEGMENTS*SEGMENT_SIZE + (int) CrailConstants.BLOCK_SIZE;
+		
+		private int count;
+		private boolean hasData;
+		private int[] keys;
+		private long[] addresses;
+		private int[] lengths;
+		private ByteBuffer[] buffers;
+		private int[] positions;
+		
+		public VectorRequest(){
+			this(TcpStorageProtocol.VECTOR_SEGMENTS, false);
+		}
+		
+		public VectorRequest(int capacity, boolean hasData){
+			this.count = 0;
+			this.hasData = hasData;
+			this.keys = new int[capacity];
+			this.addresses = new long[capacity];
+			this.lengths = new int[capacity];
+			this.buffers = new ByteBuffer[capacity];
+			this.positions = new int[capacity];
+		}
+		
+		//for writes the data is taken from the given position of the buffer when the request is sent
+		public void add(int key, long address, int length, ByteBuffer buffer, int position){
+			keys[count] = key;
+			addresses[count] = address;
+			lengths[count] = length;
+			buffers[count] = buffer;
+			positions[count] = position;
+			count++;
+		}
+		
+		public int count(){
+			return count;
+		}
+		
+		public boolean hasData(){
+			return hasData;
+		}
+		
+		public int getKey(int index){
+			return keys[index];
+		}
+		
+		public long getAddress(int index){
+			return addresses[index];
+		}
+		
+		public int length(int index){
+			return lengths[index];
+		}
+		
+		//data of a write segment, refers to the receive buffer and is only valid until the next message is fetched
+		public ByteBuffer getBuffer(int index){
+			ByteBuffer buffer = buffers[index];
+			buffer.limit(positions[index] + lengths[index]).position(positions[index]);
+			return buffer;
+		}
+
+		public int size() {
+			return CSIZE;
+		}
+		
+		public void update(ByteBuffer buffer, boolean hasData) throws IOException {
+			this.hasData = hasData;
+			this.count = buffer.getInt();
+			if (count < 0 || count > keys.length){
+				throw new IOException("invalid number of segments " + count);
+			}
+			for (int i = 0; i < count; i++){
+				keys[i] = buffer.getInt();
+				addresses[i] = buffer.getLong();
+				lengths[i] = buffer.getInt();
+				if (hasData){
+					buffers[i] = buffer;
+					positions[i] = buffer.position();
+					buffer.position(buffer.position() + lengths[i]);
+				}
+			}
+		}
+
+		public int write(ByteBuffer buffer) throws IOException {
+			int written = Integer.BYTES;
+			buffer.putInt(count);
+			for (int i = 0; i < count; i++){
+				buffer.putInt(keys[i]);
+				buffer.putLong(addresses[i]);
+				buffer.putInt(lengths[i]);
+				written += SEGMENT_SIZE;
+				if (hasData){
+					ByteBuffer data = buffers[i];
+					data.clear();
+					data.position(positions[i]);
+					data.limit(positions[i] + lengths[i]);
+					buffer.put(data);
+					written += lengths[i];
+				}
+			}
+			return written;
+		}
+	}
+
+	//count checksums of consecutive chunks starting at a chunk aligned address, followed by the checksums for writes
+	public static class ChecksumRequest {
+		public static final int MAX_CHUNKS = (int) (CrailConstants.BLOCK_SIZE / CrailConstants.CHECKSUM_CHUNK_SIZE);
+		public static final int FIELDS_SIZE = Integer.BYTES + Long.BYTES + Integer.BYTES;
+		public static final int CSIZE = FIELDS_SIZE + MAX_CHUNKS*Long.BYTES;
+		
+		private int key;
+		private long address;
+		private int count;
+		private boolean hasChecksums;
+		private long[] checksums;
+		private int index;
+		
+		public ChecksumRequest(){
+			this.checksums = new long[MAX_CHUNKS];
+			this.index = 0;
+		}
+		
+		//for writes the checksums are checksums[index..index+count)
+		public ChecksumRequest(int key, long address, int count, boolean hasChecksums, long[] checksums, int index){
+			this.key = key;
+			this.address = address;
+			this.count = count;
+			this.hasChecksums = hasChecksums;
+			this.checksums = checksums;
+			this.index = index;
+		}
+		
+		public int getKey(){
+			return key;
+		}
+		
+		public long getAddress() {
+			return address;
+		}
+		
+		public int count(){
+			return count;
+		}
+		
+		public boolean hasChecksums(){
+			return hasChecksums;
+		}
+		
+		public long getChecksum(int i){
+			return checksums[index + i];
+		}
+
+		public int size() {
+			return CSIZE;
+		}
+		
+		public void update(ByteBuffer buffer, boolean hasChecksums) throws IOException {
+			this.hasChecksums = hasChecksums;
+			this.key = buffer.getInt();
+			this.address = buffer.getLong();
+			this.count = buffer.getInt();
+			if (count < 0 || count > checksums.length){
+				throw new IOException("invalid number of checksums " + count);
+			}
+			this.index = 0;
+			if (hasChecksums){
+				for (int i = 0; i < count; i++){
+					checksums[i] = buffer.getLong();
+				}
+			}
+		}
+
+		public int write(ByteBuffer buffer) throws IOException {
+			buffer.putInt(key);
+			buffer.putLong(address);
+			buffer.putInt(count);
+			if (!hasChecksums){
+				return FIELDS_SIZE;
+			}
+			for (int i = 0; i < count; i++){
+				buffer.putLong(checksums[index + i]);
+			}
+			return FIELDS_SIZE + count*Long.BYTES;
+		}
+	}
+
 	public WriteRequest getWriteRequest() {
 		return writeRequest;
 	}
 
 	public ReadRequest getReadRequest() {
 		return readRequest;
-	}	
+	}
+	
+	public VectorRequest getVectorRequest() {
+		return vectorRequest;
+	}
+	
+	public ChecksumRequest getChecksumRequest() {
+		return checksumRequest;
+	}
 
 }
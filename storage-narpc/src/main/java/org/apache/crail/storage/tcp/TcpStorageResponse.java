@@ -22,20 +22,33 @@ import java.io.IOException;
 import java.nio.ByteBuffer;
 
 import org.apache.crail.conf.CrailConstants;
+import org.apache.crail.storage.tcp.TcpStorageRequest.ChecksumRequest;
 import org.apache.crail.storage.tcp.TcpStorageRequest.ReadRequest;
+import org.apache.crail.storage.tcp.TcpStorageRequest.VectorRequest;
 import org.apache.crail.storage.tcp.TcpStorageRequest.WriteRequest;
 
 import com.ibm.narpc.NaRPCMessage;
 
 public class TcpStorageResponse implements NaRPCMessage {
 	public static final int HEADER_SIZE = Integer.BYTES + Integer.BYTES;
-	public static final int CSIZE = HEADER_SIZE + Math.max(WriteRequest.CSIZE, ReadRequest.CSIZE);
+	public static final int CSIZE = HEADER_SIZE + Math.max(Math.max(WriteRequest.CSIZE, ReadRequest.CSIZE), VectorRequest.CSIZE);
 	
 	private int error;
 	private int type;
 	private WriteResponse writeResponse;
 	private ReadResponse readResponse;
+	private ReadvResponse readvResponse;
+	private ChecksumResponse checksumResponse;
 	
+	public TcpStorageResponse() {
+		this.writeResponse = new WriteResponse();
+		this.readResponse = new ReadResponse(null);
+		this.readvResponse = new ReadvResponse(TcpStorageProtocol.VECTOR_SEGMENTS);
+		this.checksumResponse = new ChecksumResponse(new long[ChecksumRequest.MAX_CHUNKS], 0, 0);
+		this.type = 0;
+		this.error = TcpStorageProtocol.RET_OK;
+	}
+
 	public TcpStorageResponse(WriteResponse writeResponse) {
 		this.writeResponse = writeResponse;
 		this.type = TcpStorageProtocol.REQ_WRITE;
@@ -48,6 +61,24 @@ public class TcpStorageResponse implements NaRPCMessage {
 		this.error = TcpStorageProtocol.RET_OK;
 	}
 
+	public TcpStorageResponse(WriteResponse writeResponse, int type) {
+		this.writeResponse = writeResponse;
+		this.type = type;
+		this.error = TcpStorageProtocol.RET_OK;
+	}
+	
+	public TcpStorageResponse(ReadvResponse readvResponse) {
+		this.readvResponse = readvResponse;
+		this.type = TcpStorageProtocol.REQ_READV;
+		this.error = TcpStorageProtocol.RET_OK;
+	}
+
+	public TcpStorageResponse(ChecksumResponse checksumResponse) {
+		this.checksumResponse = checksumResponse;
+		this.type = TcpStorageProtocol.REQ_READ_CHECKSUMS;
+		this.error = TcpStorageProtocol.RET_OK;
+	}
+
 	public TcpStorageResponse(int error) {
 		this.error = error;
 	}
@@ -55,15 +86,85 @@ public class TcpStorageResponse implements NaRPCMessage {
 	public int size() {
 		return CSIZE;
 	}
+	
+	public int getError() {
+		return error;
+	}
+	
+	//turns a reusable response into a write response
+	public TcpStorageResponse setWriteResponse(int size) {
+		this.writeResponse.size = size;
+		this.type = TcpStorageProtocol.REQ_WRITE;
+		this.error = TcpStorageProtocol.RET_OK;
+		return this;
+	}
+	
+	//turns a reusable response into a read response sending the remaining bytes of data
+	public TcpStorageResponse setReadResponse(ByteBuffer data) {
+		this.readResponse.data = data;
+		this.type = TcpStorageProtocol.REQ_READ;
+		this.error = TcpStorageProtocol.RET_OK;
+		return this;
+	}
+	
+	//turns a reusable response into the response of a vectored write
+	public TcpStorageResponse setWritevResponse(int size) {
+		this.writeResponse.size = size;
+		this.type = TcpStorageProtocol.REQ_WRITEV;
+		this.error = TcpStorageProtocol.RET_OK;
+		return this;
+	}
+	
+	//turns a reusable response into an empty vectored read response, segments are added with getReadvResponse().add
+	public TcpStorageResponse setReadvResponse() {
+		this.readvResponse.count = 0;
+		this.type = TcpStorageProtocol.REQ_READV;
+		this.error = TcpStorageProtocol.RET_OK;
+		return this;
+	}
+	
+	public ReadvResponse getReadvResponse() {
+		return readvResponse;
+	}
+	
+	//turns a reusable response into the response of a checksum write
+	public TcpStorageResponse setWriteChecksumsResponse() {
+		this.writeResponse.size = 0;
+		this.type = TcpStorageProtocol.REQ_WRITE_CHECKSUMS;
+		this.error = TcpStorageProtocol.RET_OK;
+		return this;
+	}
+	
+	//turns a reusable response into a checksum read response, the checksums are stored in getChecksumResponse().getChecksums()
+	public TcpStorageResponse setReadChecksumsResponse(int count) {
+		this.checksumResponse.count = count;
+		this.type = TcpStorageProtocol.REQ_READ_CHECKSUMS;
+		this.error = TcpStorageProtocol.RET_OK;
+		return this;
+	}
+	
+	public ChecksumResponse getChecksumResponse() {
+		return checksumResponse;
+	}
+	
+	public TcpStorageResponse setError(int error) {
+		this.type = 0;
+		this.error = error;
+		return this;
+	}
 
 	@Override
 	public void update(ByteBuffer buffer) throws IOException {
 		error = buffer.getInt();
 		type = buffer.getInt();
-		if (type == TcpStorageProtocol.REQ_WRITE){
+		if (type == TcpStorageProtocol.REQ_WRITE || type == TcpStorageProtocol.REQ_WRITEV || type == TcpStorageProtocol.REQ_WRITE_CHECKSUMS){
 			writeResponse.update(buffer);
 		} else if (type == TcpStorageProtocol.REQ_READ){
 			readResponse.update(buffer);
+		} else if (type == TcpStorageProtocol.REQ_READV){
+			readvResponse.update(buffer);
+		} else if (type == TcpStorageProtocol.REQ_READ_CHECKSUMS){
+			checksumResponse.update(buffer);
 		}
 	}
 
@@ -72,10 +173,14 @@ public class TcpStorageResponse implements NaRPCMessage {
 		buffer.putInt(error);
 		buffer.putInt(type);
 		int written = HEADER_SIZE;
-		if (type == TcpStorageProtocol.REQ_WRITE){
+		if (type == TcpStorageProtocol.REQ_WRITE || type == TcpStorageProtocol.REQ_WRITEV || type == TcpStorageProtocol.REQ_WRITE_CHECKSUMS){
 			written += writeResponse.write(buffer);
 		} else if (type == TcpStorageProtocol.REQ_READ){
 			written += readResponse.write(buffer);
+		} else if (type == TcpStorageProtocol.REQ_READV){
+			written += readvResponse.write(buffer);
+		} else if (type == TcpStorageProtocol.REQ_READ_CHECKSUMS){
+			written += checksumResponse.write(buffer);
 		}		
 		return written;
 	}
@@ -133,5 +238,96 @@ public class TcpStorageResponse implements NaRPCMessage {
 		}		
 	}	
 	
+	//the length and the data of every segment, the segments are ranges of the given buffers
+	public static class ReadvResponse {
+		private int count;
+		private ByteBuffer[] buffers;
+		private int[] positions;
+		private int[] lengths;
+		
+		public ReadvResponse(int capacity){
+			this.count = 0;
+			this.buffers = new ByteBuffer[capacity];
+			this.positions = new int[capacity];
+			this.lengths = new int[capacity];
+		}
+		
+		public void add(ByteBuffer buffer, int position, int length){
+			buffers[count] = buffer;
+			positions[count] = position;
+			lengths[count] = length;
+			count++;
+		}
+
+		public int write(ByteBuffer buffer) throws IOException {
+			int written = Integer.BYTES;
+			buffer.putInt(count);
+			for (int i = 0; i < count; i++){
+				ByteBuffer data = buffers[i];
+				data.clear();
+				data.position(positions[i]);
+				data.limit(positions[i] + lengths[i]);
+				buffer.putInt(lengths[i]);
+				buffer.put(data);
+				written += Integer.BYTES + lengths[i];
+			}
+			return written;
+		}
+
+		public void update(ByteBuffer buffer) throws IOException {
+			int segments = buffer.getInt();
+			if (segments != count){
+				throw new IOException("unexpected number of segments " + segments + ", expected " + count);
+			}
+			int limit = buffer.limit();
+			for (int i = 0; i < count; i++){
+				int remaining = buffer.getInt();
+				int end = buffer.position() + remaining;
+				ByteBuffer data = buffers[i];
+				data.clear();
+				data.position(positions[i]);
+				data.limit(positions[i] + Math.min(remaining, lengths[i]));
+				buffer.limit(buffer.position() + data.remaining());
+				data.put(buffer);
+				buffer.limit(limit);
+				buffer.position(end);
+			}
+		}
+	}
+	
+	//the number of checksums followed by the checksums, received into checksums[index..index+count)
+	public static class ChecksumResponse {
+		private int count;
+		private long[] checksums;
+		private int index;
+		
+		public ChecksumResponse(long[] checksums, int index, int count){
+			this.checksums = checksums;
+			this.index = index;
+			this.count = count;
+		}
+		
+		public long[] getChecksums(){
+			return checksums;
+		}
+
+		public int write(ByteBuffer buffer) throws IOException {
+			buffer.putInt(count);
+			for (int i = 0; i < count; i++){
+				buffer.putLong(checksums[index + i]);
+			}
+			return Integer.BYTES + count*Long.BYTES;
+		}
+
+		public void update(ByteBuffer buffer) throws IOException {
+			int received = buffer.getInt();
+			if (received != count){
+				throw new IOException("unexpected number of checksums " + received + ", expected " + count);
+			}
+			for (int i = 0; i < count; i++){
+				checksums[index + i] = buffer.getLong();
+			}
+		}
+	}
 
 }
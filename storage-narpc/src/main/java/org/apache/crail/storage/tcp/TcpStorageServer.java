@@ -49,20 +49,23 @@ public class TcpStorageServer implements Runnable, StorageServer, NaRPCService<T
 	private long regions;
 	private long keys;
 	private ConcurrentHashMap<Integer, ByteBuffer> dataBuffers;
+	private TcpStorageChecksums checksums;
 	private String dataDirPath;
 	
 	@Override
 	public void init(CrailConfiguration conf, String[] args) throws Exception {
 		TcpStorageConstants.init(conf, args);
 		
+		//the server group creates the dispatcher requests, which refer to the region table
+		this.regions = TcpStorageConstants.STORAGE_TCP_STORAGE_LIMIT/TcpStorageConstants.STORAGE_TCP_ALLOCATION_SIZE;
+		this.keys = 0;
+		this.dataBuffers = new ConcurrentHashMap<Integer, ByteBuffer>();
+		this.checksums = new TcpStorageChecksums((int) regions, TcpStorageConstants.STORAGE_TCP_ALLOCATION_SIZE);
 		this.serverGroup = new NaRPCServerGroup<TcpStorageRequest, TcpStorageResponse>(this, TcpStorageConstants.STORAGE_TCP_QUEUE_DEPTH, (int) CrailConstants.BLOCK_SIZE*2, false, TcpStorageConstants.STORAGE_TCP_CORES);
 		this.serverEndpoint = serverGroup.createServerEndpoint();
 		this.address = StorageUtils.getDataNodeAddress(TcpStorageConstants.STORAGE_TCP_INTERFACE, TcpStorageConstants.STORAGE_TCP_PORT);
 		serverEndpoint.bind(address);
 		this.alive = false;
-		this.regions = TcpStorageConstants.STORAGE_TCP_STORAGE_LIMIT/TcpStorageConstants.STORAGE_TCP_ALLOCATION_SIZE;
-		this.keys = 0;
-		this.dataBuffers = new ConcurrentHashMap<Integer, ByteBuffer>();
 		this.dataDirPath = StorageUtils.getDatanodeDirectory(TcpStorageConstants.STORAGE_TCP_DATA_PATH, address);
 		StorageUtils.clean(TcpStorageConstants.STORAGE_TCP_DATA_PATH, dataDirPath);
 	}
@@ -114,34 +117,101 @@ public class TcpStorageServer implements Runnable, StorageServer, NaRPCService<T
 		}
 	}
 
+	//NaRPC creates one request per dispatcher thread and fetches the next message only after the response 
+	//has been transmitted, so the response and the buffer views can be reused by every message of the dispatcher
 	@Override
 	public TcpStorageRequest createRequest() {
-		return new TcpStorageRequest();
+		return new DispatcherRequest(dataBuffers, (int) regions);
 	}
 
 	@Override
 	public TcpStorageResponse processRequest(TcpStorageRequest request) {
+		DispatcherRequest dispatcherRequest = (DispatcherRequest) request;
+		TcpStorageResponse response = dispatcherRequest.getResponse();
 		if (request.type() == TcpStorageProtocol.REQ_WRITE){
 			TcpStorageRequest.WriteRequest writeRequest = request.getWriteRequest();
-			ByteBuffer buffer = dataBuffers.get(writeRequest.getKey()).duplicate();
-			long offset = writeRequest.getAddress() - CrailUtils.getAddress(buffer);
+			ByteBuffer buffer = dispatcherRequest.getView(writeRequest.getKey());
+			if (buffer == null){
+				LOG.info("write request for unknown key " + writeRequest.getKey());
+				return response.setError(TcpStorageProtocol.RET_KEY_UNKNOWN);
+			}
+			long offset = writeRequest.getAddress() - dispatcherRequest.getAddress(writeRequest.getKey());
 //			LOG.info("processing write request, key " + writeRequest.getKey() + ", address " + writeRequest.getAddress() + ", length " + writeRequest.length() + ", remaining " + writeRequest.getBuffer().remaining() + ", offset " + offset);
+			//single copy from the receive buffer into the mapped region
+			checksums.clear(writeRequest.getKey(), offset, writeRequest.getBuffer().remaining());
 			buffer.clear().position((int) offset);
 			buffer.put(writeRequest.getBuffer());
-			TcpStorageResponse.WriteResponse writeResponse = new TcpStorageResponse.WriteResponse(writeRequest.length());
-			return new TcpStorageResponse(writeResponse);
+			return response.setWriteResponse(writeRequest.length());
 		} else if (request.type() == TcpStorageProtocol.REQ_READ){
 			TcpStorageRequest.ReadRequest readRequest = request.getReadRequest();
-			ByteBuffer buffer = dataBuffers.get(readRequest.getKey()).duplicate();
-			long offset = readRequest.getAddress() - CrailUtils.getAddress(buffer);
+			ByteBuffer buffer = dispatcherRequest.getView(readRequest.getKey());
+			if (buffer == null){
+				LOG.info("read request for unknown key " + readRequest.getKey());
+				return response.setError(TcpStorageProtocol.RET_KEY_UNKNOWN);
+			}
+			long offset = readRequest.getAddress() - dispatcherRequest.getAddress(readRequest.getKey());
 //			LOG.info("processing read request, address " + readRequest.getAddress() + ", length " + readRequest.length() + ", offset " + offset);
+			//the mapped range is copied once, straight into the send buffer
 			long limit = offset + readRequest.length();
 			buffer.clear().position((int) offset).limit((int) limit);
-			TcpStorageResponse.ReadResponse readResponse = new TcpStorageResponse.ReadResponse(buffer);
-			return new TcpStorageResponse(readResponse);
+			return response.setReadResponse(buffer);
+		} else if (request.type() == TcpStorageProtocol.REQ_WRITEV){
+			TcpStorageRequest.VectorRequest vectorRequest = request.getVectorRequest();
+			int len = 0;
+			for (int i = 0; i < vectorRequest.count(); i++){
+				ByteBuffer buffer = dispatcherRequest.getView(vectorRequest.getKey(i));
+				if (buffer == null){
+					LOG.info("vectored write request for unknown key " + vectorRequest.getKey(i));
+					return response.setError(TcpStorageProtocol.RET_KEY_UNKNOWN);
+				}
+				long offset = vectorRequest.getAddress(i) - dispatcherRequest.getAddress(vectorRequest.getKey(i));
+				if (offset < 0 || offset + vectorRequest.length(i) > buffer.capacity()){
+					LOG.info("vectored write request out of range, key " + vectorRequest.getKey(i) + ", address " + vectorRequest.getAddress(i));
+					return response.setError(TcpStorageProtocol.RET_IO_ERROR);
+				}
+				checksums.clear(vectorRequest.getKey(i), offset, vectorRequest.length(i));
+				buffer.clear().position((int) offset);
+				buffer.put(vectorRequest.getBuffer(i));
+				len += vectorRequest.length(i);
+			}
+			return response.setWritevResponse(len);
+		} else if (request.type() == TcpStorageProtocol.REQ_READV){
+			TcpStorageRequest.VectorRequest vectorRequest = request.getVectorRequest();
+			response.setReadvResponse();
+			for (int i = 0; i < vectorRequest.count(); i++){
+				ByteBuffer buffer = dispatcherRequest.getView(vectorRequest.getKey(i));
+				if (buffer == null){
+					LOG.info("vectored read request for unknown key " + vectorRequest.getKey(i));
+					return response.setError(TcpStorageProtocol.RET_KEY_UNKNOWN);
+				}
+				long offset = vectorRequest.getAddress(i) - dispatcherRequest.getAddress(vectorRequest.getKey(i));
+				if (offset < 0 || offset + vectorRequest.length(i) > buffer.capacity()){
+					LOG.info("vectored read request out of range, key " + vectorRequest.getKey(i) + ", address " + vectorRequest.getAddress(i));
+					return response.setError(TcpStorageProtocol.RET_IO_ERROR);
+				}
+				//the ranges are copied into the send buffer one after the other when the response is transmitted
+				response.getReadvResponse().add(buffer, (int) offset, vectorRequest.length(i));
+			}
+			return response;
+		} else if (request.type() == TcpStorageProtocol.REQ_WRITE_CHECKSUMS){
+			TcpStorageRequest.ChecksumRequest checksumRequest = request.getChecksumRequest();
+			if (dispatcherRequest.getView(checksumRequest.getKey()) == null 
+					|| !checksums.write(checksumRequest.getKey(), checksumRequest.getAddress() - dispatcherRequest.getAddress(checksumRequest.getKey()), checksumRequest)){
+				LOG.info("checksum write request for unknown key " + checksumRequest.getKey() + ", address " + checksumRequest.getAddress());
+				return response.setError(TcpStorageProtocol.RET_KEY_UNKNOWN);
+			}
+			return response.setWriteChecksumsResponse();
+		} else if (request.type() == TcpStorageProtocol.REQ_READ_CHECKSUMS){
+			TcpStorageRequest.ChecksumRequest checksumRequest = request.getChecksumRequest();
+			if (dispatcherRequest.getView(checksumRequest.getKey()) == null 
+					|| !checksums.read(checksumRequest.getKey(), checksumRequest.getAddress() - dispatcherRequest.getAddress(checksumRequest.getKey()), checksumRequest.count(), response.getChecksumResponse().getChecksums())){
+				LOG.info("checksum read request for unknown key " + checksumRequest.getKey() + ", address " + checksumRequest.getAddress());
+				return response.setError(TcpStorageProtocol.RET_KEY_UNKNOWN);
+			}
+			return response.setReadChecksumsResponse(checksumRequest.count());
 		} else {
 			LOG.info("processing unknown request");
-			return new TcpStorageResponse(TcpStorageProtocol.RET_RPC_UNKNOWN);
+			return response.setError(TcpStorageProtocol.RET_RPC_UNKNOWN);
 		}
 	}
 
@@ -152,4 +222,45 @@ public class TcpStorageServer implements Runnable, StorageServer, NaRPCService<T
 	@Override
 	public void removeEndpoint(NaRPCServerChannel channel){
 	}
+	
+	//request of one dispatcher thread together with its response and its private views of the mapped regions
+	private static class DispatcherRequest extends TcpStorageRequest {
+		private ConcurrentHashMap<Integer, ByteBuffer> dataBuffers;
+		private TcpStorageResponse response;
+		private ByteBuffer[] views;
+		private long[] addresses;
+		
+		public DispatcherRequest(ConcurrentHashMap<Integer, ByteBuffer> dataBuffers, int regions){
+			this.dataBuffers = dataBuffers;
+			this.response = new TcpStorageResponse();
+			this.views = new ByteBuffer[regions];
+			this.addresses = new long[regions];
+		}
+		
+		public TcpStorageResponse getResponse(){
+			return response;
+		}
+		
+		public ByteBuffer getView(int key){
+			if (key < 0 || key >= views.length){
+				return null;
+			}
+			ByteBuffer view = views[key];
+			if (view == null){
+				ByteBuffer buffer = dataBuffers.get(key);
+				if (buffer == null){
+					return null;
+				}
+				view = buffer.duplicate();
+				views[key] = view;
+				addresses[key] = CrailUtils.getAddress(buffer);
+			}
+			return view;
+		}
+		
+		//base address of a region, only valid after getView returned a view for the key
+		public long getAddress(int key){
+			return addresses[key];
+		}
+	}
 }